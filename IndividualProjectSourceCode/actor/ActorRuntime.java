@@ -0,0 +1,125 @@
+package actor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import core.Room;
+import tracing.Span;
+import tracing.TraceContext;
+import tracing.Tracer;
+
+/**
+ * Optional actor-per-room execution model.
+ * Every room gets a RoomActor whose mailbox is drained on a virtual thread, so rooms run
+ * in parallel while each room's state is only touched by one thread at a time. Install it
+ * with SmartHomeController.setActorRuntime; device commands, decorator timer callbacks
+ * and strategy actions are then delivered to the owning room as messages.
+ */
+public class ActorRuntime {
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Room, RoomActor> actors;
+    
+    /**
+     * Creates a runtime that drains mailboxes on virtual threads
+     */
+    public ActorRuntime() {
+        this(Executors.newVirtualThreadPerTaskExecutor());
+    }
+    
+    /**
+     * Creates a runtime on the given executor (for example a fixed pool for testing)
+     * @param executor the executor that drains mailboxes
+     */
+    public ActorRuntime(ExecutorService executor) {
+        this.executor = executor;
+        this.actors = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Gets the actor for a room, creating it on first use
+     * @param room the room
+     * @return the room's actor
+     */
+    public RoomActor actorFor(Room room) {
+        return actors.computeIfAbsent(room, r -> new RoomActor(r, executor));
+    }
+    
+    /**
+     * Sends a message to a room without waiting
+     * @param room the target room
+     * @param message the action to run on the room's thread
+     */
+    public void tell(Room room, Runnable message) {
+        TraceContext trace = Tracer.currentContext();
+        if (trace == null) {
+            actorFor(room).tell(message);
+            return;
+        }
+        // Keep the sender's trace on the room's thread
+        actorFor(room).tell(() -> {
+            Span span = Tracer.continueTrace(trace, "RoomActor.message", room.getName());
+            try {
+                message.run();
+            } finally {
+                span.close();
+            }
+        });
+    }
+    
+    /**
+     * Sends a message to a room and returns its result
+     * @param room the target room
+     * @param message the action to run on the room's thread
+     * @return a future with the result
+     */
+    public <T> CompletableFuture<T> ask(Room room, Callable<T> message) {
+        TraceContext trace = Tracer.currentContext();
+        if (trace == null) {
+            return actorFor(room).ask(message);
+        }
+        return actorFor(room).ask(() -> {
+            Span span = Tracer.continueTrace(trace, "RoomActor.message", room.getName());
+            try {
+                return message.call();
+            } finally {
+                span.close();
+            }
+        });
+    }
+    
+    /**
+     * Gets the mailbox metrics of every room actor
+     * @return one entry per room
+     */
+    public List<MailboxStats> getStats() {
+        List<MailboxStats> stats = new ArrayList<>(actors.size());
+        for (RoomActor actor : actors.values()) {
+            stats.add(actor.getStats());
+        }
+        return stats;
+    }
+    
+    /**
+     * Gets the total number of messages waiting across all rooms
+     * @return the summed mailbox depth
+     */
+    public long getTotalDepth() {
+        long total = 0;
+        for (RoomActor actor : actors.values()) {
+            total += actor.getStats().getDepth();
+        }
+        return total;
+    }
+    
+    /**
+     * Stops accepting work; queued messages already scheduled still run
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,54 @@
+package actor;
+
+/**
+ * Point-in-time mailbox metrics for one room actor
+ */
+public class MailboxStats {
+    private final String roomName;
+    private final int depth;
+    private final int maxDepth;
+    private final long processed;
+    private final long failed;
+    
+    MailboxStats(String roomName, int depth, int maxDepth, long processed, long failed) {
+        this.roomName = roomName;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.processed = processed;
+        this.failed = failed;
+    }
+    
+    public String getRoomName() {
+        return roomName;
+    }
+    
+    /**
+     * Gets the number of messages waiting in the mailbox
+     */
+    public int getDepth() {
+        return depth;
+    }
+    
+    /**
+     * Gets the highest depth the mailbox has reached
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    public long getProcessed() {
+        return processed;
+    }
+    
+    /**
+     * Gets the number of messages that threw an exception
+     */
+    public long getFailed() {
+        return failed;
+    }
+    
+    @Override
+    public String toString() {
+        return roomName + ": depth " + depth + " (max " + maxDepth + "), " + processed + " processed, " + failed + " failed";
+    }
+}
@@ -0,0 +1,132 @@
+package actor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.Room;
+
+/**
+ * Mailbox for one room. Messages are run one at a time, in order, so the room's
+ * devices are only ever touched by a single thread and need no locks. The mailbox is
+ * drained by a task on the runtime's executor whenever it has messages.
+ */
+public class RoomActor {
+    // Messages handled per drain before yielding the thread to other rooms
+    private static final int BATCH_LIMIT = 256;
+    
+    private final Room room;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> mailbox;
+    private final AtomicBoolean scheduled;
+    private final AtomicInteger depth;
+    private final AtomicLong processed;
+    private final AtomicLong failed;
+    private volatile int maxDepth;
+    private volatile Thread currentThread;
+    
+    RoomActor(Room room, Executor executor) {
+        this.room = room;
+        this.executor = executor;
+        this.mailbox = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+        this.depth = new AtomicInteger();
+        this.processed = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+    
+    public Room getRoom() {
+        return room;
+    }
+    
+    /**
+     * Sends a message without waiting for it to run
+     * @param message the action to run on the room's thread
+     */
+    public void tell(Runnable message) {
+        mailbox.add(message);
+        int current = depth.incrementAndGet();
+        if (current > maxDepth) {
+            maxDepth = current;
+        }
+        schedule();
+    }
+    
+    /**
+     * Sends a message and returns its result when it has run
+     * @param message the action to run on the room's thread
+     * @return a future with the action's result
+     */
+    public <T> CompletableFuture<T> ask(Callable<T> message) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (Thread.currentThread() == currentThread) {
+            // Already on this room's thread: run inline instead of deadlocking on our own mailbox
+            try {
+                result.complete(message.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        tell(() -> {
+            try {
+                result.complete(message.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Checks whether the caller is running on this room's thread
+     * @return true inside a message of this actor
+     */
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == currentThread;
+    }
+    
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+    
+    private void drain() {
+        currentThread = Thread.currentThread();
+        try {
+            for (int i = 0; i < BATCH_LIMIT; i++) {
+                Runnable message = mailbox.poll();
+                if (message == null) {
+                    break;
+                }
+                depth.decrementAndGet();
+                try {
+                    message.run();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                }
+                processed.incrementAndGet();
+            }
+        } finally {
+            currentThread = null;
+            scheduled.set(false);
+            // A message may have arrived after the last poll; make sure someone drains it
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+    
+    /**
+     * Gets the current mailbox metrics
+     * @return the metrics snapshot
+     */
+    public MailboxStats getStats() {
+        return new MailboxStats(room.getName(), depth.get(), maxDepth, processed.get(), failed.get());
+    }
+}
@@ -0,0 +1,83 @@
+package analytics;
+
+import java.util.Arrays;
+
+/**
+ * Running integrals of piecewise-constant rates, one per slot.
+ * Each slot keeps the integral of its closed segments plus the sum of the rates and of
+ * rate * start of its open segments, so its value at any time is
+ * closed + activeRate * now - activeRateStart: an O(1) read however many devices
+ * contribute to the slot.
+ */
+final class RateIntegrals {
+    private double[] closed;
+    private double[] activeRate;
+    private double[] activeRateStart;
+    
+    RateIntegrals(int size) {
+        closed = new double[Math.max(size, 1)];
+        activeRate = new double[closed.length];
+        activeRateStart = new double[closed.length];
+    }
+    
+    /**
+     * Starts a segment
+     * @param slot the slot
+     * @param rate the rate of the segment
+     * @param start the start time
+     */
+    void open(int slot, double rate, double start) {
+        ensure(slot);
+        activeRate[slot] += rate;
+        activeRateStart[slot] += rate * start;
+    }
+    
+    /**
+     * Ends a segment started with open(slot, rate, start)
+     * @param slot the slot
+     * @param rate the rate of the segment
+     * @param start the start time of the segment
+     * @param end the end time
+     */
+    void close(int slot, double rate, double start, double end) {
+        ensure(slot);
+        activeRate[slot] -= rate;
+        activeRateStart[slot] -= rate * start;
+        closed[slot] += rate * (end - start);
+    }
+    
+    /**
+     * Gets the integral of a slot up to a time
+     * @param slot the slot
+     * @param now the time
+     * @return the integral
+     */
+    double value(int slot, double now) {
+        if (slot >= closed.length) {
+            return 0;
+        }
+        return closed[slot] + activeRate[slot] * now - activeRateStart[slot];
+    }
+    
+    /**
+     * Gets the integral of every slot up to a time
+     * @param now the time
+     * @return one value per slot
+     */
+    double[] snapshot(double now) {
+        double[] values = new double[closed.length];
+        for (int slot = 0; slot < values.length; slot++) {
+            values[slot] = closed[slot] + activeRate[slot] * now - activeRateStart[slot];
+        }
+        return values;
+    }
+    
+    private void ensure(int slot) {
+        if (slot >= closed.length) {
+            int length = Math.max(slot + 1, closed.length * 2);
+            closed = Arrays.copyOf(closed, length);
+            activeRate = Arrays.copyOf(activeRate, length);
+            activeRateStart = Arrays.copyOf(activeRateStart, length);
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package analytics;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.DeviceProperty;
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.Light;
+import devices.Thermostat;
+import observer.DeviceStateObserver;
+
+/**
+ * Streaming usage aggregates for billing (Observer Pattern).
+ * Every power, brightness and temperature change updates running integrals of on-time,
+ * estimated energy and time at each thermostat setpoint, per device, per room and per
+ * device type. Reads such as "kWh for this room this month" are O(1) and never replay
+ * history. Register it with SmartHomeController.addStateObserver.
+ */
+public class UsageAggregator implements DeviceStateObserver {
+    // Setpoints from 10 to 30 °C are tracked in half-degree buckets
+    public static final double MIN_SETPOINT = 10.0;
+    public static final double SETPOINT_STEP = 0.5;
+    public static final int SETPOINT_BUCKETS = 41;
+    
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+    private static final int TYPE_COUNT = DeviceType.values().length;
+    
+    // Integrals are indexed by device id, room id or DeviceType ordinal; times are millis since epoch
+    private static final int DEVICE = 0;
+    private static final int ROOM = 1;
+    private static final int TYPE = 2;
+    
+    private final ZoneId zone;
+    private final long epoch;
+    private final double[] ratedWatts;
+    
+    private final RateIntegrals[] onTime;
+    private final RateIntegrals[] energy;
+    private final RateIntegrals deviceSetpoint;
+    private final RateIntegrals roomSetpoint;
+    private final RateIntegrals typeSetpoint;
+    
+    // Open segments per device id
+    private double[] onSince;
+    private double[] energySince;
+    private double[] watts;
+    private int[] setpoint;
+    private double[] setpointSince;
+    private int[] thermostatIndex;
+    private int thermostatCount;
+    
+    // Integral values at the start of the current month
+    private long monthStart;
+    private long monthEnd;
+    private double[][] monthOnBase;
+    private double[][] monthEnergyBase;
+    
+    /**
+     * Creates an aggregator using the system time zone for month boundaries
+     * @param controller the home whose devices are aggregated
+     */
+    public UsageAggregator(SmartHomeController controller) {
+        this(controller, ZoneId.systemDefault());
+    }
+    
+    /**
+     * Creates an aggregator and starts tracking devices that are already on
+     * @param controller the home whose devices are aggregated
+     * @param zone the time zone that defines month boundaries
+     */
+    public UsageAggregator(SmartHomeController controller, ZoneId zone) {
+        this.zone = zone;
+        this.epoch = System.currentTimeMillis();
+        this.ratedWatts = new double[TYPE_COUNT];
+        ratedWatts[DeviceType.LIGHT.ordinal()] = 10;
+        ratedWatts[DeviceType.THERMOSTAT.ordinal()] = 2000;
+        ratedWatts[DeviceType.DOOR.ordinal()] = 2;
+        ratedWatts[DeviceType.SECURITY_CAMERA.ordinal()] = 6;
+        
+        int devices = Math.max(controller.getDeviceCount(), 16);
+        int rooms = Math.max(controller.getRoomCount(), 4);
+        this.onTime = new RateIntegrals[] {new RateIntegrals(devices), new RateIntegrals(rooms), new RateIntegrals(TYPE_COUNT)};
+        this.energy = new RateIntegrals[] {new RateIntegrals(devices), new RateIntegrals(rooms), new RateIntegrals(TYPE_COUNT)};
+        this.deviceSetpoint = new RateIntegrals(SETPOINT_BUCKETS);
+        this.roomSetpoint = new RateIntegrals(SETPOINT_BUCKETS);
+        this.typeSetpoint = new RateIntegrals(SETPOINT_BUCKETS);
+        this.onSince = new double[devices];
+        this.energySince = new double[devices];
+        this.watts = new double[devices];
+        this.setpoint = new int[devices];
+        this.setpointSince = new double[devices];
+        this.thermostatIndex = new int[devices];
+        Arrays.fill(onSince, -1);
+        Arrays.fill(setpoint, -1);
+        Arrays.fill(thermostatIndex, -1);
+        
+        startMonth(epoch);
+        for (Room room : controller.getAllRooms()) {
+            for (Device device : room.getAllDevices()) {
+                if (device.isOn() && device.getId() >= 0) {
+                    switchedOn(device, device.getId(), 0);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Sets the power drawn by a device type when on (lights scale with brightness)
+     * @param type the device type
+     * @param watts the rated power in watts
+     */
+    public synchronized void setRatedPower(DeviceType type, double watts) {
+        ratedWatts[type.ordinal()] = watts;
+    }
+    
+    /**
+     * Starts the segments of a device that is already on when it is registered, e.g. an
+     * imported or replicated device, or one added after the aggregator was created
+     */
+    @Override
+    public synchronized void deviceAdded(Device device, long timestamp) {
+        int id = device.getId();
+        if (id < 0 || !device.isOn()) {
+            return;
+        }
+        rollMonth(timestamp);
+        switchedOn(device, id, timestamp - epoch);
+    }
+    
+    @Override
+    public synchronized void stateChanged(Device device, DeviceProperty property, double oldValue,
+                                          double newValue, long timestamp) {
+        int id = device.getId();
+        if (id < 0) {
+            return;
+        }
+        rollMonth(timestamp);
+        ensureDevice(id);
+        double time = timestamp - epoch;
+        switch (property) {
+            case POWER:
+                if (newValue != 0) {
+                    switchedOn(device, id, time);
+                } else {
+                    switchedOff(device, id, time);
+                }
+                break;
+            case BRIGHTNESS:
+                if (onSince[id] >= 0) {
+                    closeEnergy(device, id, time);
+                    openEnergy(device, id, time, ratedWatts[device.getType().ordinal()] * newValue / 100.0);
+                }
+                break;
+            case TEMPERATURE:
+                if (onSince[id] >= 0) {
+                    closeSetpoint(device, id, time);
+                    openSetpoint(device, id, time, bucketOf(newValue));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private void switchedOn(Device device, int id, double time) {
+        ensureDevice(id);
+        if (onSince[id] >= 0) {
+            return;
+        }
+        onSince[id] = time;
+        forEachScope(device, (integrals, slot) -> integrals.open(slot, 1, time), onTime);
+        openEnergy(device, id, time, currentWatts(device));
+        if (device instanceof Thermostat) {
+            openSetpoint(device, id, time, bucketOf(((Thermostat) device).getTemperature()));
+        }
+    }
+    
+    private void switchedOff(Device device, int id, double time) {
+        if (onSince[id] < 0) {
+            return;
+        }
+        double start = onSince[id];
+        forEachScope(device, (integrals, slot) -> integrals.close(slot, 1, start, time), onTime);
+        onSince[id] = -1;
+        closeEnergy(device, id, time);
+        closeSetpoint(device, id, time);
+    }
+    
+    private void openEnergy(Device device, int id, double time, double rate) {
+        watts[id] = rate;
+        energySince[id] = time;
+        forEachScope(device, (integrals, slot) -> integrals.open(slot, rate, time), energy);
+    }
+    
+    private void closeEnergy(Device device, int id, double time) {
+        double rate = watts[id];
+        double start = energySince[id];
+        forEachScope(device, (integrals, slot) -> integrals.close(slot, rate, start, time), energy);
+        watts[id] = 0;
+    }
+    
+    private void openSetpoint(Device device, int id, double time, int bucket) {
+        if (thermostatIndex[id] < 0) {
+            thermostatIndex[id] = thermostatCount++;
+        }
+        setpoint[id] = bucket;
+        setpointSince[id] = time;
+        deviceSetpoint.open(thermostatIndex[id] * SETPOINT_BUCKETS + bucket, 1, time);
+        int room = device.getRoom().getId();
+        if (room >= 0) {
+            roomSetpoint.open(room * SETPOINT_BUCKETS + bucket, 1, time);
+        }
+        typeSetpoint.open(bucket, 1, time);
+    }
+    
+    private void closeSetpoint(Device device, int id, double time) {
+        int bucket = setpoint[id];
+        if (bucket < 0) {
+            return;
+        }
+        double start = setpointSince[id];
+        deviceSetpoint.close(thermostatIndex[id] * SETPOINT_BUCKETS + bucket, 1, start, time);
+        int room = device.getRoom().getId();
+        if (room >= 0) {
+            roomSetpoint.close(room * SETPOINT_BUCKETS + bucket, 1, start, time);
+        }
+        typeSetpoint.close(bucket, 1, start, time);
+        setpoint[id] = -1;
+    }
+    
+    /**
+     * Applies an update to the device, room and type integrals of a device
+     */
+    private void forEachScope(Device device, ScopeUpdate update, RateIntegrals[] integrals) {
+        update.apply(integrals[DEVICE], device.getId());
+        int room = device.getRoom().getId();
+        if (room >= 0) {
+            update.apply(integrals[ROOM], room);
+        }
+        update.apply(integrals[TYPE], device.getType().ordinal());
+    }
+    
+    private interface ScopeUpdate {
+        void apply(RateIntegrals integrals, int slot);
+    }
+    
+    private double currentWatts(Device device) {
+        double rated = ratedWatts[device.getType().ordinal()];
+        if (device instanceof Light) {
+            return rated * ((Light) device).getBrightness() / 100.0;
+        }
+        return rated;
+    }
+    
+    private static int bucketOf(double temperature) {
+        int bucket = (int) Math.round((temperature - MIN_SETPOINT) / SETPOINT_STEP);
+        return Math.max(0, Math.min(SETPOINT_BUCKETS - 1, bucket));
+    }
+    
+    private void ensureDevice(int id) {
+        if (id >= onSince.length) {
+            int length = Math.max(id + 1, onSince.length * 2);
+            int oldLength = onSince.length;
+            onSince = Arrays.copyOf(onSince, length);
+            energySince = Arrays.copyOf(energySince, length);
+            watts = Arrays.copyOf(watts, length);
+            setpoint = Arrays.copyOf(setpoint, length);
+            setpointSince = Arrays.copyOf(setpointSince, length);
+            thermostatIndex = Arrays.copyOf(thermostatIndex, length);
+            Arrays.fill(onSince, oldLength, length, -1);
+            Arrays.fill(setpoint, oldLength, length, -1);
+            Arrays.fill(thermostatIndex, oldLength, length, -1);
+        }
+    }
+    
+    /**
+     * Moves the month baseline forward when a month boundary has passed.
+     * Called before every update and read, so no state change can precede the snapshot.
+     */
+    private void rollMonth(long now) {
+        while (now >= monthEnd) {
+            long boundary = monthEnd;
+            monthOnBase = snapshot(onTime, boundary - epoch);
+            monthEnergyBase = snapshot(energy, boundary - epoch);
+            monthStart = boundary;
+            monthEnd = ZonedDateTime.ofInstant(Instant.ofEpochMilli(boundary), zone).plusMonths(1).toInstant().toEpochMilli();
+        }
+    }
+    
+    private void startMonth(long now) {
+        ZonedDateTime start = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), zone)
+            .withDayOfMonth(1).toLocalDate().atStartOfDay(zone);
+        monthStart = start.toInstant().toEpochMilli();
+        monthEnd = start.plusMonths(1).toInstant().toEpochMilli();
+        monthOnBase = new double[3][0];
+        monthEnergyBase = new double[3][0];
+    }
+    
+    private static double[][] snapshot(RateIntegrals[] integrals, double at) {
+        double[][] values = new double[integrals.length][];
+        for (int scope = 0; scope < integrals.length; scope++) {
+            values[scope] = integrals[scope].snapshot(at);
+        }
+        return values;
+    }
+    
+    private UsageTotals totals(int scope, int slot, boolean monthOnly) {
+        if (slot < 0) {
+            // Not registered with a home, so nothing was recorded for it
+            return new UsageTotals(0, 0);
+        }
+        long now = System.currentTimeMillis();
+        rollMonth(now);
+        double time = now - epoch;
+        double on = onTime[scope].value(slot, time);
+        double wattMillis = energy[scope].value(slot, time);
+        if (monthOnly) {
+            on -= base(monthOnBase[scope], slot);
+            wattMillis -= base(monthEnergyBase[scope], slot);
+        }
+        return new UsageTotals(on / MILLIS_PER_HOUR, wattMillis / MILLIS_PER_HOUR / 1000.0);
+    }
+    
+    private static double base(double[] values, int slot) {
+        return slot < values.length ? values[slot] : 0;
+    }
+    
+    /**
+     * Gets the usage of a device since the aggregator started
+     * @param device the device
+     * @return the on-time and energy
+     */
+    public synchronized UsageTotals getUsage(Device device) {
+        return totals(DEVICE, device.getId(), false);
+    }
+    
+    /**
+     * Gets the usage of all devices in a room since the aggregator started
+     * @param room the room
+     * @return the on-time and energy
+     */
+    public synchronized UsageTotals getUsage(Room room) {
+        return totals(ROOM, room.getId(), false);
+    }
+    
+    /**
+     * Gets the usage of all devices of a type since the aggregator started
+     * @param type the device type
+     * @return the on-time and energy
+     */
+    public synchronized UsageTotals getUsage(DeviceType type) {
+        return totals(TYPE, type.ordinal(), false);
+    }
+    
+    /**
+     * Gets the usage of a device in the current calendar month
+     * @param device the device
+     * @return the on-time and energy
+     */
+    public synchronized UsageTotals getMonthUsage(Device device) {
+        return totals(DEVICE, device.getId(), true);
+    }
+    
+    /**
+     * Gets the usage of all devices in a room in the current calendar month
+     * @param room the room
+     * @return the on-time and energy
+     */
+    public synchronized UsageTotals getMonthUsage(Room room) {
+        return totals(ROOM, room.getId(), true);
+    }
+    
+    /**
+     * Gets the usage of all devices of a type in the current calendar month
+     * @param type the device type
+     * @return the on-time and energy
+     */
+    public synchronized UsageTotals getMonthUsage(DeviceType type) {
+        return totals(TYPE, type.ordinal(), true);
+    }
+    
+    /**
+     * Gets the start of the current billing month
+     * @return the month start in epoch milliseconds
+     */
+    public synchronized long getMonthStart() {
+        rollMonth(System.currentTimeMillis());
+        return monthStart;
+    }
+    
+    /**
+     * Gets how long a thermostat has run at each setpoint
+     * @param thermostat the thermostat
+     * @return hours by setpoint in °C, for setpoints with any time
+     */
+    public synchronized Map<Double, Double> getSetpointHours(Device thermostat) {
+        int id = thermostat.getId();
+        if (id < 0 || id >= thermostatIndex.length || thermostatIndex[id] < 0) {
+            return new LinkedHashMap<>();
+        }
+        return setpointHours(deviceSetpoint, thermostatIndex[id] * SETPOINT_BUCKETS);
+    }
+    
+    /**
+     * Gets how long the thermostats of a room have run at each setpoint, summed
+     * @param room the room
+     * @return hours by setpoint in °C, for setpoints with any time
+     */
+    public synchronized Map<Double, Double> getSetpointHours(Room room) {
+        if (room.getId() < 0) {
+            return new LinkedHashMap<>();
+        }
+        return setpointHours(roomSetpoint, room.getId() * SETPOINT_BUCKETS);
+    }
+    
+    /**
+     * Gets how long all thermostats have run at each setpoint, summed
+     * @return hours by setpoint in °C, for setpoints with any time
+     */
+    public synchronized Map<Double, Double> getSetpointHours() {
+        return setpointHours(typeSetpoint, 0);
+    }
+    
+    private Map<Double, Double> setpointHours(RateIntegrals integrals, int firstSlot) {
+        double time = System.currentTimeMillis() - epoch;
+        Map<Double, Double> hours = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < SETPOINT_BUCKETS; bucket++) {
+            double millis = integrals.value(firstSlot + bucket, time);
+            if (millis > 0) {
+                hours.put(MIN_SETPOINT + bucket * SETPOINT_STEP, millis / MILLIS_PER_HOUR);
+            }
+        }
+        return hours;
+    }
+}
@@ -0,0 +1,37 @@
+package analytics;
+
+import java.util.Locale;
+
+/**
+ * On-time and energy of a device, room or device type over some period
+ */
+public class UsageTotals {
+    private final double onHours;
+    private final double energyKwh;
+    
+    UsageTotals(double onHours, double energyKwh) {
+        this.onHours = onHours;
+        this.energyKwh = energyKwh;
+    }
+    
+    /**
+     * Gets the cumulative time switched on, summed over devices
+     * @return the on-time in hours
+     */
+    public double getOnHours() {
+        return onHours;
+    }
+    
+    /**
+     * Gets the estimated energy use
+     * @return the energy in kWh
+     */
+    public double getEnergyKwh() {
+        return energyKwh;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%.2f h on, %.3f kWh", onHours, energyKwh);
+    }
+}
@@ -0,0 +1,74 @@
+package cache;
+
+/**
+ * Point-in-time counters of a DeviceStateCache
+ */
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long coalesced;
+    private final long loadFailures;
+    private final long evictions;
+    private final long invalidations;
+    private final int size;
+    
+    CacheStats(long hits, long misses, long coalesced, long loadFailures,
+               long evictions, long invalidations, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.coalesced = coalesced;
+        this.loadFailures = loadFailures;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.size = size;
+    }
+    
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Gets the number of reads that started a gateway fetch
+     */
+    public long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Gets the number of reads that joined a fetch already in flight
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+    
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+    
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    public long getInvalidations() {
+        return invalidations;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * Gets the share of reads served without a new fetch (hits and coalesced reads)
+     * @return a ratio between 0 and 1
+     */
+    public double getHitRate() {
+        long total = hits + misses + coalesced;
+        return total == 0 ? 0 : (hits + coalesced) / (double) total;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("hit rate %.1f%% (%d hits, %d misses, %d coalesced), %d entries, %d evictions, %d invalidations, %d load failures",
+                getHitRate() * 100, hits, misses, coalesced, size, evictions, invalidations, loadFailures);
+    }
+}
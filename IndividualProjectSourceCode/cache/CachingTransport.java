@@ -0,0 +1,98 @@
+package cache;
+
+import java.util.concurrent.CompletableFuture;
+
+import command.DeviceCommand;
+import devices.Device;
+import devices.DeviceState;
+import transport.DeviceTransport;
+import transport.StatePushListener;
+
+/**
+ * Transport wrapper that serves reads from a DeviceStateCache (Decorator Pattern).
+ * Acknowledged commands write their resulting state through to the cache, and
+ * state changes pushed by gateways invalidate the affected entry.
+ */
+public class CachingTransport implements DeviceTransport {
+    private final DeviceTransport delegate;
+    private final DeviceStateCache cache;
+    
+    /**
+     * Wraps a transport with a new cache that loads through it
+     * @param delegate the transport that reaches the gateways
+     * @param maxEntries the maximum number of cached devices
+     * @param defaultTtlMillis the default entry TTL
+     */
+    public CachingTransport(DeviceTransport delegate, int maxEntries, long defaultTtlMillis) {
+        this.delegate = delegate;
+        this.cache = new DeviceStateCache(delegate::read, maxEntries, defaultTtlMillis);
+        delegate.addPushListener((device, state) -> cache.invalidate(device));
+    }
+    
+    /**
+     * Gets the underlying cache, e.g. to set per-type TTLs or read its stats
+     * @return the cache
+     */
+    public DeviceStateCache getCache() {
+        return cache;
+    }
+    
+    @Override
+    public CompletableFuture<Void> send(DeviceCommand command) {
+        return delegate.send(command).thenApply(ignored -> {
+            Device device = command.getDevice();
+            DeviceState before = cache.peek(device);
+            if (before == null) {
+                before = DeviceState.of(device);
+            }
+            cache.put(device, expectedState(before, command));
+            return null;
+        });
+    }
+    
+    @Override
+    public CompletableFuture<DeviceState> read(Device device) {
+        return cache.get(device);
+    }
+    
+    @Override
+    public void addPushListener(StatePushListener listener) {
+        delegate.addPushListener(listener);
+    }
+    
+    @Override
+    public void close() {
+        delegate.close();
+    }
+    
+    /**
+     * Computes the state a device will have once a command is applied
+     * @param state the state before the command
+     * @param command the command
+     * @return the state after the command
+     */
+    static DeviceState expectedState(DeviceState state, DeviceCommand command) {
+        switch (command.getAction()) {
+            case TURN_ON:
+                return state.withOn(true);
+            case TURN_OFF:
+                return state.withOn(false);
+            case TOGGLE:
+                return state.withOn(!state.isOn());
+            case SET_BRIGHTNESS:
+                return state.withBrightness((int) command.getValue());
+            case SET_TEMPERATURE:
+                return state.withTemperature((float) command.getValue());
+            case LOCK:
+                return state.withLocked(true);
+            case UNLOCK:
+                return state.withLocked(false);
+            case START_RECORDING:
+                return state.withRecording(true);
+            case STOP_RECORDING:
+                return state.withRecording(false);
+            default:
+                return state;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import core.DeviceType;
+import devices.Device;
+import devices.DeviceState;
+
+/**
+ * Read-through cache of remote device state.
+ *
+ * Entries expire after a per-device-type TTL and the cache holds at most maxEntries
+ * devices, evicting the least recently used. Concurrent misses for the same device share
+ * one fetch. Commands write their expected state through (see CachingTransport) and
+ * pushed gateway events invalidate the entry.
+ */
+public class DeviceStateCache {
+    private final Function<Device, CompletableFuture<DeviceState>> loader;
+    private final int maxEntries;
+    private final long defaultTtlNanos;
+    private final Map<String, Long> ttlByType;
+    private final LinkedHashMap<Device, Entry> entries;
+    private final ConcurrentHashMap<Device, CompletableFuture<DeviceState>> loading;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    /**
+     * Creates a cache
+     * @param loader fetches a device's state, typically DeviceTransport::read
+     * @param maxEntries the maximum number of cached devices
+     * @param defaultTtlMillis how long an entry stays fresh unless its type has its own TTL
+     */
+    public DeviceStateCache(Function<Device, CompletableFuture<DeviceState>> loader,
+                            int maxEntries, long defaultTtlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.loader = loader;
+        this.maxEntries = maxEntries;
+        this.defaultTtlNanos = TimeUnit.MILLISECONDS.toNanos(defaultTtlMillis);
+        this.ttlByType = new HashMap<>();
+        this.loading = new ConcurrentHashMap<>();
+        this.entries = new LinkedHashMap<Device, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Device, Entry> eldest) {
+                if (size() > DeviceStateCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Sets the TTL for one device type, e.g. short for thermostats, long for doors
+     * @param type the device type
+     * @param ttlMillis how long its entries stay fresh
+     */
+    public void setTtl(DeviceType type, long ttlMillis) {
+        setTtl(type.name(), ttlMillis);
+    }
+    
+    /**
+     * Sets the TTL for one device type by name, which also covers plugin types.
+     * Decorated devices and subclasses use the TTL of the type they report.
+     * @param typeName the type name, as returned by Device.getTypeName()
+     * @param ttlMillis how long its entries stay fresh
+     */
+    public synchronized void setTtl(String typeName, long ttlMillis) {
+        ttlByType.put(typeName.toUpperCase(Locale.ROOT), TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+    }
+    
+    /**
+     * Gets a device's state, from the cache when fresh or from the loader otherwise
+     * @param device the device to read
+     * @return a future with the state
+     */
+    public CompletableFuture<DeviceState> get(Device device) {
+        synchronized (this) {
+            Entry entry = entries.get(device);
+            if (entry != null && System.nanoTime() < entry.expiresAt) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.state);
+            }
+        }
+        
+        CompletableFuture<DeviceState> placeholder = new CompletableFuture<>();
+        CompletableFuture<DeviceState> existing = loading.putIfAbsent(device, placeholder);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        
+        misses.incrementAndGet();
+        CompletableFuture<DeviceState> fetch;
+        try {
+            fetch = loader.apply(device);
+        } catch (RuntimeException e) {
+            fetch = new CompletableFuture<>();
+            fetch.completeExceptionally(e);
+        }
+        fetch.whenComplete((state, error) -> {
+            // Only cache the result if no invalidation or write happened meanwhile
+            if (loading.remove(device, placeholder)) {
+                if (error == null) {
+                    store(device, state);
+                }
+            }
+            if (error != null) {
+                loadFailures.incrementAndGet();
+                placeholder.completeExceptionally(error);
+            } else {
+                placeholder.complete(state);
+            }
+        });
+        return placeholder;
+    }
+    
+    /**
+     * Gets a device's state, waiting for a fetch if needed
+     * @param device the device to read
+     * @return the state
+     */
+    public DeviceState getNow(Device device) {
+        return get(device).join();
+    }
+    
+    /**
+     * Stores a known state (write-through after a successful command)
+     * @param device the device
+     * @param state its new state
+     */
+    public void put(Device device, DeviceState state) {
+        store(device, state);
+        // A fetch still in flight predates this write, so its result must not be cached
+        loading.remove(device);
+    }
+    
+    private synchronized void store(Device device, DeviceState state) {
+        long ttl = ttlByType.getOrDefault(device.getTypeName().toUpperCase(Locale.ROOT), defaultTtlNanos);
+        entries.put(device, new Entry(state, System.nanoTime() + ttl));
+    }
+    
+    /**
+     * Drops a device's entry, so the next read fetches it again
+     * @param device the device
+     */
+    public void invalidate(Device device) {
+        synchronized (this) {
+            entries.remove(device);
+        }
+        loading.remove(device);
+        invalidations.incrementAndGet();
+    }
+    
+    /**
+     * Drops every entry
+     */
+    public void invalidateAll() {
+        synchronized (this) {
+            entries.clear();
+        }
+        loading.clear();
+        invalidations.incrementAndGet();
+    }
+    
+    /**
+     * Gets the current state without fetching
+     * @param device the device
+     * @return the cached state, or null if absent or expired
+     */
+    public synchronized DeviceState peek(Device device) {
+        Entry entry = entries.get(device);
+        return entry != null && System.nanoTime() < entry.expiresAt ? entry.state : null;
+    }
+    
+    /**
+     * Gets the hit-rate and eviction counters
+     * @return a snapshot of the counters
+     */
+    public CacheStats getStats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new CacheStats(hits.get(), misses.get(), coalesced.get(), loadFailures.get(),
+                evictions.get(), invalidations.get(), size);
+    }
+    
+    private static class Entry {
+        final DeviceState state;
+        final long expiresAt;
+        
+        Entry(DeviceState state, long expiresAt) {
+            this.state = state;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package capability;
+
+import devices.Device;
+
+/**
+ * A behavior attached to a device at runtime, such as a timer or motion sensing.
+ * Unlike a decorator it does not wrap the device: the device keeps a single identity
+ * and its own state, and simply calls the attached capabilities from its hooks.
+ */
+public interface Capability {
+    /**
+     * Gets the key this capability is stored under
+     * @return the capability key
+     */
+    CapabilityKey<?> getKey();
+    
+    /**
+     * Adjusts the device description, e.g. by adding a prefix
+     * @param description the description so far
+     * @return the adjusted description
+     */
+    default String describe(String description) {
+        return description;
+    }
+    
+    /**
+     * Called after the device was switched on or off
+     * @param device the device
+     * @param on the new power state
+     */
+    default void powerChanged(Device device, boolean on) {
+    }
+}
@@ -0,0 +1,87 @@
+package capability;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Identifies a kind of capability. Each key gets a small dense index, so a device can
+ * keep its capabilities in an array and look one up in constant time. The index depends
+ * on class-loading order; the declared order does not, and is what descriptions use.
+ * @param <T> the capability type
+ */
+public final class CapabilityKey<T extends Capability> {
+    private static final Comparator<CapabilityKey<?>> BY_ORDER =
+        Comparator.<CapabilityKey<?>>comparingInt(key -> key.order).thenComparing(key -> key.name);
+    private static int nextIndex;
+    private static volatile List<CapabilityKey<?>> ordered = List.of();
+    
+    private final String name;
+    private final Class<T> type;
+    private final int order;
+    private final int index;
+    
+    /**
+     * Creates a key ordered after all keys with a declared order
+     * @param name the capability name
+     * @param type the capability class
+     */
+    public CapabilityKey(String name, Class<T> type) {
+        this(name, type, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Creates a key; declare one static key per capability class
+     * @param name the capability name
+     * @param type the capability class
+     * @param order where the capability applies among others, lowest first; e.g. a
+     *              higher order puts its description prefix in front
+     */
+    public CapabilityKey(String name, Class<T> type, int order) {
+        this.name = name;
+        this.type = type;
+        this.order = order;
+        this.index = register(this);
+    }
+    
+    private static synchronized int register(CapabilityKey<?> key) {
+        List<CapabilityKey<?>> keys = new ArrayList<>(ordered);
+        keys.add(key);
+        keys.sort(BY_ORDER);
+        ordered = List.copyOf(keys);
+        return nextIndex++;
+    }
+    
+    /**
+     * Gets all keys created so far in their declared order
+     * @return the keys, lowest order first
+     */
+    public static List<CapabilityKey<?>> inOrder() {
+        return ordered;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Class<T> getType() {
+        return type;
+    }
+    
+    public int getOrder() {
+        return order;
+    }
+    
+    /**
+     * Gets the slot this capability occupies in a device's capability array
+     * @return the dense index
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,14 @@
+package capability;
+
+import java.util.Timer;
+
+/**
+ * Shared daemon timer for capability callbacks. A java.util.Timer owns a thread,
+ * so one per device would not scale past a few thousand devices.
+ */
+final class CapabilityScheduler {
+    static final Timer TIMER = new Timer("device-capability-timer", true);
+    
+    private CapabilityScheduler() {
+    }
+}
@@ -0,0 +1,107 @@
+package capability;
+
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import devices.Device;
+
+/**
+ * Switches a device on when motion is detected
+ */
+public class MotionSensorCapability implements Capability {
+    public static final CapabilityKey<MotionSensorCapability> KEY =
+        new CapabilityKey<>("motion", MotionSensorCapability.class, 10);
+    
+    private static final long RESET_DELAY_MILLIS = 5 * 60 * 1000;
+    
+    private final Device device;
+    private final List<Runnable> motionListeners;
+    private volatile boolean motionDetected;
+    private TimerTask resetTask;
+    
+    private MotionSensorCapability(Device device) {
+        this.device = device;
+        this.motionListeners = new CopyOnWriteArrayList<>();
+    }
+    
+    /**
+     * Attaches motion sensing to a device, or returns the sensor already attached
+     * @param device the device
+     * @return the device's motion sensor capability
+     */
+    public static MotionSensorCapability attachTo(Device device) {
+        MotionSensorCapability existing = device.getCapability(KEY);
+        if (existing != null) {
+            return existing;
+        }
+        MotionSensorCapability sensor = new MotionSensorCapability(device);
+        device.attach(sensor);
+        return sensor;
+    }
+    
+    @Override
+    public CapabilityKey<?> getKey() {
+        return KEY;
+    }
+    
+    /**
+     * Simulates motion being detected
+     */
+    public void detectMotion() {
+        motionDetected = true;
+        device.getController().notifyObservers(
+            "Motion detected near " + device.getDescription()
+        );
+        
+        // Auto-turn on when motion is detected
+        if (!device.isOn()) {
+            device.turnOn();
+        }
+        for (Runnable listener : motionListeners) {
+            listener.run();
+        }
+        
+        // Reset motion detection after 5 minutes (restarts on repeated motion)
+        synchronized (this) {
+            if (resetTask != null) {
+                resetTask.cancel();
+            }
+            resetTask = new TimerTask() {
+                @Override
+                public void run() {
+                    device.getController().runInRoom(device.getRoom(), () -> motionDetected = false);
+                }
+            };
+            CapabilityScheduler.TIMER.schedule(resetTask, RESET_DELAY_MILLIS);
+        }
+    }
+    
+    /**
+     * Adds an action run on every detected motion, e.g. to start a camera recording
+     * @param listener the action; it runs on the thread that reported the motion
+     */
+    public void addMotionListener(Runnable listener) {
+        motionListeners.add(listener);
+    }
+    
+    public void removeMotionListener(Runnable listener) {
+        motionListeners.remove(listener);
+    }
+    
+    public boolean isMotionDetected() {
+        return motionDetected;
+    }
+    
+    @Override
+    public void powerChanged(Device device, boolean on) {
+        device.getController().notifyObservers(
+            "Motion sensor for " + device.getDescription() + (on ? " activated" : " deactivated")
+        );
+    }
+    
+    @Override
+    public String describe(String description) {
+        return "Motion-Sensing " + description;
+    }
+}
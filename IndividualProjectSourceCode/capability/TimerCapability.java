@@ -0,0 +1,99 @@
+package capability;
+
+import java.time.LocalDateTime;
+import java.util.TimerTask;
+
+import devices.Device;
+
+/**
+ * Turns a device off after a delay
+ */
+public class TimerCapability implements Capability {
+    // Ordered after motion sensing, so descriptions read "Timer-Enabled Motion-Sensing ..."
+    public static final CapabilityKey<TimerCapability> KEY = new CapabilityKey<>("timer", TimerCapability.class, 20);
+    
+    private final Device device;
+    private volatile LocalDateTime scheduledTime;
+    private volatile TimerTask pendingTask;
+    
+    private TimerCapability(Device device) {
+        this.device = device;
+    }
+    
+    /**
+     * Attaches a timer to a device, or returns the one already attached
+     * @param device the device
+     * @return the device's timer capability
+     */
+    public static TimerCapability attachTo(Device device) {
+        TimerCapability existing = device.getCapability(KEY);
+        if (existing != null) {
+            return existing;
+        }
+        TimerCapability timer = new TimerCapability(device);
+        device.attach(timer);
+        return timer;
+    }
+    
+    @Override
+    public CapabilityKey<?> getKey() {
+        return KEY;
+    }
+    
+    /**
+     * Sets a timer to turn off the device after specified minutes
+     * @param minutes the number of minutes until automatic turn off
+     */
+    public void setTimer(int minutes) {
+        if (pendingTask != null) {
+            pendingTask.cancel();
+        }
+        
+        scheduledTime = LocalDateTime.now().plusMinutes(minutes);
+        
+        device.getController().notifyObservers(
+            device.getDescription() + " set to turn off in " + minutes + " minutes"
+        );
+        
+        TimerTask task = new TimerTask() {
+            @Override
+            public void run() {
+                // Deliver to the room's actor (if any) so the device is only touched by its room's thread
+                TimerTask fired = this;
+                device.getController().runInRoom(device.getRoom(), () -> {
+                    // Skip if the timer was cancelled or reset while this message was queued
+                    if (pendingTask == fired) {
+                        device.turnOff();
+                        scheduledTime = null;
+                        pendingTask = null;
+                    }
+                });
+            }
+        };
+        pendingTask = task;
+        CapabilityScheduler.TIMER.schedule(task, minutes * 60 * 1000L);
+    }
+    
+    public boolean isTimerActive() {
+        LocalDateTime time = scheduledTime;
+        return time != null && LocalDateTime.now().isBefore(time);
+    }
+    
+    public void cancelTimer() {
+        TimerTask task = pendingTask;
+        if (task != null) {
+            task.cancel();
+            pendingTask = null;
+        }
+        scheduledTime = null;
+        
+        device.getController().notifyObservers(
+            "Timer cancelled for " + device.getDescription()
+        );
+    }
+    
+    @Override
+    public String describe(String description) {
+        return "Timer-Enabled " + description;
+    }
+}
@@ -0,0 +1,58 @@
+package changefeed;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of one change-feed read: either a batch of records or, for a client that
+ * fell too far behind, a snapshot to restart from
+ */
+public class ChangeBatch {
+    private final List<ChangeRecord> records;
+    private final HomeSnapshot snapshot;
+    private final long nextSequence;
+    private final boolean more;
+    
+    ChangeBatch(List<ChangeRecord> records, HomeSnapshot snapshot, long nextSequence, boolean more) {
+        this.records = Collections.unmodifiableList(records);
+        this.snapshot = snapshot;
+        this.nextSequence = nextSequence;
+        this.more = more;
+    }
+    
+    /**
+     * Gets the records, oldest first
+     * @return the records (empty when a snapshot is returned)
+     */
+    public List<ChangeRecord> getRecords() {
+        return records;
+    }
+    
+    /**
+     * Gets the snapshot to restart from
+     * @return the snapshot, or null if the client could be served from the feed
+     */
+    public HomeSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public boolean isSnapshot() {
+        return snapshot != null;
+    }
+    
+    /**
+     * Gets the cursor for the next read
+     * @return the sequence to pass to the next readSince call
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+    
+    /**
+     * Checks whether more records were available than fitted in the batch
+     * @return true if the client should read again right away
+     */
+    public boolean hasMore() {
+        return more;
+    }
+}
@@ -0,0 +1,307 @@
+package changefeed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DeviceProperty;
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.DeviceState;
+import observer.DeviceStateObserver;
+
+/**
+ * Change-data-capture feed of one home (Observer Pattern).
+ *
+ * Every room added, device added and device property change gets the next sequence number
+ * and is kept in a fixed-size in-memory ring. Records pushed out of the ring go to an
+ * optional ChangeSpill on disk. Clients poll readSince(cursor) and get the following
+ * records in batches; a client whose cursor is older than anything kept, or further
+ * behind than the replay limit, gets a HomeSnapshot and a resume point instead.
+ */
+public class ChangeFeed implements DeviceStateObserver {
+    // Sequences reserved in the spill at a time: one forced write per this many changes
+    private static final long SEQUENCE_LEASE = 4096;
+    
+    private final SmartHomeController home;
+    private final ChangeRecord[] ring;
+    private final int mask;
+    private long lastSequence;
+    // The first sequence this process put into the ring; older ones can only be in the spill
+    private long ringStart;
+    private ChangeSpill spill;
+    // Sequences up to this one are recorded as reserved in the spill
+    private long reservedSequence;
+    private long maxReplay;
+    
+    private long recorded;
+    private long spilled;
+    private long spillFailures;
+    private long snapshotsServed;
+    
+    /**
+     * Creates a feed; call start() to begin recording
+     * @param home the home to record
+     * @param capacity the number of records kept in memory (rounded up to a power of two)
+     */
+    public ChangeFeed(SmartHomeController home, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.home = home;
+        this.ring = new ChangeRecord[size];
+        this.mask = size - 1;
+        this.ringStart = 1;
+        this.maxReplay = Long.MAX_VALUE;
+    }
+    
+    /**
+     * Sets the disk spill for records pushed out of the ring. A spill that already holds
+     * records makes the feed continue after its last sequence, so cursors survive restarts.
+     * After a crash the records that were only in memory (or in unflushed buffers) are
+     * lost, so the feed continues after the highest sequence it had reserved in the spill,
+     * which is at least the highest one any client saw.
+     * @param spill the spill, or null to drop old records
+     */
+    public synchronized void setSpill(ChangeSpill spill) {
+        this.spill = spill;
+        if (spill != null) {
+            long resume = spill.wasClosedCleanly() ? spill.getLastSequence()
+                    : Math.max(spill.getLastSequence(), spill.getReservedSequence());
+            if (resume > lastSequence) {
+                lastSequence = resume;
+                ringStart = lastSequence + 1;
+            }
+            reservedSequence = spill.getReservedSequence();
+        }
+    }
+    
+    /**
+     * Sets how far behind a client may be and still get a replay rather than a snapshot
+     * @param maxReplay the largest number of records replayed to one client
+     */
+    public synchronized void setMaxReplay(long maxReplay) {
+        this.maxReplay = maxReplay;
+    }
+    
+    /**
+     * Starts recording the home's changes
+     */
+    public void start() {
+        home.addStateObserver(this);
+    }
+    
+    /**
+     * Stops recording
+     */
+    public void stop() {
+        home.removeStateObserver(this);
+    }
+    
+    /**
+     * Stops recording and moves the records still in memory to the spill, so a feed
+     * opened on the same spill later continues without a gap
+     * @throws IOException if the spill cannot be written
+     */
+    public void close() throws IOException {
+        stop();
+        synchronized (this) {
+            if (spill == null) {
+                return;
+            }
+            long from = Math.max(Math.max(ringStart, lastSequence - ring.length + 1), spill.getLastSequence() + 1);
+            for (long sequence = from; sequence <= lastSequence; sequence++) {
+                spill.append(ring[(int) (sequence & mask)]);
+            }
+            spill.close();
+            spill = null;
+        }
+    }
+    
+    @Override
+    public void roomAdded(Room room, long timestamp) {
+        append(timestamp, ChangeType.ROOM_ADDED, room.getId(), -1, room.getName(), null, null, 0, 0, null);
+    }
+    
+    @Override
+    public void deviceAdded(Device device, long timestamp) {
+        append(timestamp, ChangeType.DEVICE_ADDED, device.getRoom().getId(), device.getId(),
+                device.getName(), device.getType(), null, 0, 0, DeviceState.of(device));
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        if (device.getId() < 0) {
+            // Not registered yet: its state is recorded with its DEVICE_ADDED record
+            return;
+        }
+        append(timestamp, ChangeType.STATE_CHANGED, device.getRoom().getId(), device.getId(),
+                null, null, property, oldValue, newValue, null);
+    }
+    
+    private synchronized void append(long timestamp, ChangeType type, int roomId, int deviceId, String name,
+                                     DeviceType deviceType, DeviceProperty property,
+                                     double oldValue, double newValue, DeviceState state) {
+        long sequence = ++lastSequence;
+        if (spill != null && sequence > reservedSequence) {
+            try {
+                spill.reserveSequences(sequence + SEQUENCE_LEASE - 1);
+                reservedSequence = sequence + SEQUENCE_LEASE - 1;
+            } catch (IOException e) {
+                disableSpill(e);
+            }
+        }
+        int slot = (int) (sequence & mask);
+        ChangeRecord evicted = ring[slot];
+        if (evicted != null && spill != null) {
+            try {
+                spill.append(evicted);
+                spilled++;
+            } catch (IOException e) {
+                disableSpill(e);
+            }
+        }
+        ring[slot] = new ChangeRecord(sequence, timestamp, type, roomId, deviceId, name,
+                deviceType, property, oldValue, newValue, state);
+        recorded++;
+    }
+    
+    private void disableSpill(IOException e) {
+        // A broken disk must not stop device changes; clients fall back to snapshots
+        spillFailures++;
+        spill = null;
+        home.notifyObservers("Change feed spill disabled: " + e.getMessage());
+    }
+    
+    /**
+     * Reads the changes after a cursor
+     * @param sequence the last sequence the client has seen (0 to read from the start)
+     * @param maxRecords the most records to return
+     * @return the next records, or a snapshot if the client is too far behind
+     */
+    public ChangeBatch readSince(long sequence, int maxRecords) {
+        if (maxRecords < 1) {
+            throw new IllegalArgumentException("maxRecords must be positive");
+        }
+        List<ChangeRecord> records = new ArrayList<>(Math.min(maxRecords, 1024));
+        long first = sequence + 1;
+        long last;
+        ChangeSpill currentSpill;
+        synchronized (this) {
+            last = lastSequence;
+            long oldestInRing = Math.max(ringStart, last - ring.length + 1);
+            boolean tooFarBehind = sequence > last || last - sequence > maxReplay;
+            if (!tooFarBehind && first >= oldestInRing) {
+                copyFromRing(first, last, maxRecords, records);
+                return new ChangeBatch(records, null, lastOf(sequence, records), lastOf(sequence, records) < last);
+            }
+            currentSpill = tooFarBehind ? null : spill;
+        }
+        // Snapshots are taken outside the feed lock: a committing transaction holds the
+        // state lock while it records its changes here
+        if (currentSpill == null || first < currentSpill.getFirstSequence()) {
+            return snapshotBatch();
+        }
+        
+        // Older than the ring: read the spill without blocking writers
+        try {
+            records.addAll(currentSpill.read(first, maxRecords));
+        } catch (IOException e) {
+            return snapshotBatch();
+        }
+        if (records.isEmpty() || records.get(0).getSequence() != first) {
+            // The spill dropped the segment in the meantime
+            return snapshotBatch();
+        }
+        if (records.size() < maxRecords) {
+            synchronized (this) {
+                long next = lastOf(sequence, records) + 1;
+                long oldestInRing = Math.max(ringStart, lastSequence - ring.length + 1);
+                if (next >= oldestInRing) {
+                    copyFromRing(next, lastSequence, maxRecords, records);
+                }
+                last = lastSequence;
+            }
+        }
+        return new ChangeBatch(records, null, lastOf(sequence, records), lastOf(sequence, records) < last);
+    }
+    
+    private void copyFromRing(long from, long to, int maxRecords, List<ChangeRecord> records) {
+        for (long next = from; next <= to && records.size() < maxRecords; next++) {
+            records.add(ring[(int) (next & mask)]);
+        }
+    }
+    
+    private static long lastOf(long sequence, List<ChangeRecord> records) {
+        return records.isEmpty() ? sequence : records.get(records.size() - 1).getSequence();
+    }
+    
+    private ChangeBatch snapshotBatch() {
+        HomeSnapshot snapshot = snapshot();
+        synchronized (this) {
+            snapshotsServed++;
+        }
+        return new ChangeBatch(new ArrayList<>(), snapshot, snapshot.getResumeSequence(), false);
+    }
+    
+    /**
+     * Captures the whole home with the sequence to resume from. No transaction commits
+     * while it is taken, so it never contains a half-applied mode.
+     * @return the snapshot
+     */
+    public HomeSnapshot snapshot() {
+        return home.readConsistent(() -> {
+            // Taken first: changes racing with the capture are replayed, never lost
+            long resume = getLastSequence();
+            List<HomeSnapshot.RoomEntry> rooms = new ArrayList<>();
+            List<HomeSnapshot.DeviceEntry> devices = new ArrayList<>();
+            for (Room room : home.getAllRooms()) {
+                rooms.add(new HomeSnapshot.RoomEntry(room.getId(), room.getName()));
+                for (Device device : room.getAllDevices()) {
+                    devices.add(new HomeSnapshot.DeviceEntry(device.getId(), room.getId(), device.getName(),
+                            device.getType(), DeviceState.of(device)));
+                }
+            }
+            return new HomeSnapshot(resume, System.currentTimeMillis(), rooms, devices);
+        });
+    }
+    
+    /**
+     * Gets the newest sequence
+     * @return the sequence, or 0 if nothing was recorded
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+    
+    /**
+     * Gets the oldest sequence that can still be replayed
+     * @return the sequence; older cursors get a snapshot
+     */
+    public synchronized long getOldestSequence() {
+        long oldestInRing = Math.max(ringStart, lastSequence - ring.length + 1);
+        if (spill != null && spill.getFirstSequence() > 0) {
+            return Math.min(oldestInRing, spill.getFirstSequence());
+        }
+        return oldestInRing;
+    }
+    
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+    
+    public synchronized long getSpilledCount() {
+        return spilled;
+    }
+    
+    public synchronized long getSpillFailureCount() {
+        return spillFailures;
+    }
+    
+    public synchronized long getSnapshotsServed() {
+        return snapshotsServed;
+    }
+}
@@ -0,0 +1,140 @@
+package changefeed;
+
+import core.DeviceProperty;
+import core.DeviceType;
+import devices.DeviceState;
+
+/**
+ * One entry of a change feed. Room and device names are only carried by the records
+ * that add them; later records refer to rooms and devices by id. A DEVICE_ADDED record
+ * also carries the device's full state, so a device added already switched on or
+ * configured is rebuilt correctly from the feed alone.
+ */
+public class ChangeRecord {
+    private final long sequence;
+    private final long timestamp;
+    private final ChangeType type;
+    private final int roomId;
+    private final int deviceId;
+    private final String name;
+    private final DeviceType deviceType;
+    private final DeviceProperty property;
+    private final double oldValue;
+    private final double newValue;
+    private final DeviceState state;
+    
+    ChangeRecord(long sequence, long timestamp, ChangeType type, int roomId, int deviceId, String name,
+                 DeviceType deviceType, DeviceProperty property, double oldValue, double newValue,
+                 DeviceState state) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.roomId = roomId;
+        this.deviceId = deviceId;
+        this.name = name;
+        this.deviceType = deviceType;
+        this.property = property;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.state = state;
+    }
+    
+    /**
+     * Gets the position of the record in its feed; sequences start at 1 and have no gaps
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    /**
+     * Gets when the change happened
+     * @return the time in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public ChangeType getType() {
+        return type;
+    }
+    
+    public int getRoomId() {
+        return roomId;
+    }
+    
+    /**
+     * Gets the device id
+     * @return the id, or -1 for ROOM_ADDED
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+    
+    /**
+     * Gets the name of the added room or device
+     * @return the name, or null for STATE_CHANGED
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Gets the type of the added device
+     * @return the type, or null unless DEVICE_ADDED
+     */
+    public DeviceType getDeviceType() {
+        return deviceType;
+    }
+    
+    /**
+     * Gets the changed property
+     * @return the property, or null unless STATE_CHANGED
+     */
+    public DeviceProperty getProperty() {
+        return property;
+    }
+    
+    public double getOldValue() {
+        return oldValue;
+    }
+    
+    /**
+     * Gets the value after the change. It is absolute, so applying a record twice is harmless.
+     * @return the new value
+     */
+    public double getNewValue() {
+        return newValue;
+    }
+    
+    /**
+     * Gets the state of the added device when it was added
+     * @return the state, or null unless DEVICE_ADDED (and for records spilled without one)
+     */
+    public DeviceState getState() {
+        return state;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(sequence).append(' ').append(timestamp).append(' ').append(type);
+        switch (type) {
+            case ROOM_ADDED:
+                text.append(" room=").append(roomId).append(" \"").append(name).append('"');
+                break;
+            case DEVICE_ADDED:
+                text.append(" device=").append(deviceId).append(" room=").append(roomId)
+                    .append(' ').append(deviceType).append(" \"").append(name).append('"');
+                if (state != null) {
+                    text.append(' ').append(state);
+                }
+                break;
+            default:
+                text.append(" device=").append(deviceId).append(' ').append(property)
+                    .append(' ').append(oldValue).append("->").append(newValue);
+                break;
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,374 @@
+package changefeed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import core.DeviceProperty;
+import core.DeviceType;
+import devices.DeviceState;
+
+/**
+ * On-disk overflow for a change feed: records evicted from the in-memory ring are appended
+ * to segment files, so clients that were away a little longer can still replay them.
+ *
+ * Each segment holds up to recordsPerSegment records and is named after its first sequence;
+ * once there are more than maxSegments, the oldest is deleted. Every 64th record offset is
+ * kept in memory, so a read seeks close to its start instead of scanning the segment.
+ * Existing segments are picked up again when a spill is opened on the same directory.
+ * A record that does not follow the previous one (after a crash) starts a new segment, so
+ * each segment holds consecutive sequences. The feed also reserves sequence ranges here
+ * before handing them out, so after a crash it can continue above anything clients saw.
+ */
+public class ChangeSpill implements Closeable {
+    private static final int INDEX_INTERVAL = 64;
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".log";
+    private static final String CLEAN_MARKER = "clean-shutdown";
+    private static final String HIGH_WATER = "high-water";
+    private static final ChangeType[] CHANGE_TYPES = ChangeType.values();
+    private static final DeviceType[] DEVICE_TYPES = DeviceType.values();
+    private static final DeviceProperty[] PROPERTIES = DeviceProperty.values();
+    
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+    private final TreeMap<Long, Segment> segments;
+    private Segment active;
+    private DataOutputStream out;
+    private final boolean closedCleanly;
+    private long reservedSequence;
+    
+    /**
+     * Opens a spill directory, creating it if needed
+     * @param directory where segment files are kept
+     * @param recordsPerSegment the number of records per segment file
+     * @param maxSegments the number of segment files kept
+     * @throws IOException if the directory cannot be created or read
+     */
+    public ChangeSpill(Path directory, int recordsPerSegment, int maxSegments) throws IOException {
+        if (recordsPerSegment < 1 || maxSegments < 1) {
+            throw new IllegalArgumentException("recordsPerSegment and maxSegments must be positive");
+        }
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = maxSegments;
+        this.segments = new TreeMap<>();
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long first = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                segments.put(first, scan(file, first));
+            }
+        }
+        if (!segments.isEmpty()) {
+            active = segments.lastEntry().getValue();
+        }
+        closedCleanly = Files.deleteIfExists(directory.resolve(CLEAN_MARKER));
+        Path highWater = directory.resolve(HIGH_WATER);
+        if (Files.exists(highWater)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(highWater))) {
+                reservedSequence = in.readLong();
+            }
+        }
+    }
+    
+    /**
+     * Rebuilds the index of an existing segment, cutting off a record torn by a crash
+     */
+    private static Segment scan(Path file, long first) throws IOException {
+        Segment segment = new Segment(file, first);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                long offset = segment.length;
+                if (segment.count % INDEX_INTERVAL == 0) {
+                    segment.addIndex(offset);
+                }
+                int size;
+                try {
+                    size = skipRecord(in);
+                } catch (EOFException e) {
+                    if (segment.count % INDEX_INTERVAL == 0) {
+                        segment.indexSize--;
+                    }
+                    break;
+                }
+                segment.length += size;
+                segment.count++;
+            }
+        }
+        if (Files.size(file) > segment.length) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(segment.length);
+            }
+        }
+        return segment;
+    }
+    
+    /**
+     * Appends a record; records must arrive in sequence order
+     * @param record the record to keep
+     * @throws IOException if writing fails
+     */
+    public synchronized void append(ChangeRecord record) throws IOException {
+        if (active == null || active.count >= recordsPerSegment
+                || record.getSequence() != getLastSequence() + 1) {
+            startSegment(record.getSequence());
+        } else if (out == null) {
+            out = open(active.path);
+        }
+        if (active.count % INDEX_INTERVAL == 0) {
+            active.addIndex(active.length);
+        }
+        int before = out.size();
+        write(out, record);
+        active.length += out.size() - before;
+        active.count++;
+    }
+    
+    private void startSegment(long first) throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, first, SUFFIX));
+        active = new Segment(file, first);
+        segments.put(first, active);
+        out = open(file);
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            Files.deleteIfExists(oldest.path);
+        }
+    }
+    
+    /**
+     * Durably records that sequences up to the given one may be handed out. Written to a
+     * temporary file, forced to disk and moved into place, so a crash leaves either the
+     * old or the new mark.
+     * @param sequence the highest sequence that may be used
+     * @throws IOException if the mark cannot be written
+     */
+    public synchronized void reserveSequences(long sequence) throws IOException {
+        Path temporary = directory.resolve(HIGH_WATER + ".tmp");
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES).putLong(0, sequence);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(HIGH_WATER), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        reservedSequence = sequence;
+    }
+    
+    /**
+     * Gets the highest sequence reserved by reserveSequences, in this or an earlier session
+     * @return the sequence, or 0 if none was reserved
+     */
+    public synchronized long getReservedSequence() {
+        return reservedSequence;
+    }
+    
+    private static DataOutputStream open(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+    
+    /**
+     * Reads records starting at a sequence
+     * @param fromSequence the first sequence wanted
+     * @param maxRecords the most records to return
+     * @return the records, oldest first (empty if none are kept from that point)
+     * @throws IOException if reading fails
+     */
+    public synchronized List<ChangeRecord> read(long fromSequence, int maxRecords) throws IOException {
+        List<ChangeRecord> records = new ArrayList<>(Math.min(maxRecords, 1024));
+        if (segments.isEmpty() || fromSequence > getLastSequence()) {
+            return records;
+        }
+        if (out != null) {
+            out.flush();
+        }
+        long wanted = Math.max(fromSequence, getFirstSequence());
+        Long key = segments.floorKey(wanted);
+        for (Segment segment : segments.tailMap(key, true).values()) {
+            if (!records.isEmpty() && segment.first != wanted) {
+                // Sequences lost in a crash: stop at the gap rather than skip over it
+                break;
+            }
+            long from = Math.max(wanted, segment.first);
+            int slot = (int) Math.min((from - segment.first) / INDEX_INTERVAL, segment.indexSize - 1);
+            if (slot < 0 || segment.count == 0) {
+                continue;
+            }
+            long sequence = segment.first + (long) slot * INDEX_INTERVAL;
+            long end = segment.first + segment.count;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path)))) {
+                in.skipNBytes(segment.index[slot]);
+                for (; sequence < end && records.size() < maxRecords; sequence++) {
+                    ChangeRecord record = read(in);
+                    if (record.getSequence() >= from) {
+                        records.add(record);
+                    }
+                }
+            }
+            if (records.size() >= maxRecords) {
+                break;
+            }
+            wanted = Math.max(wanted, end);
+        }
+        return records;
+    }
+    
+    /**
+     * Gets the oldest kept sequence
+     * @return the sequence, or 0 if the spill is empty
+     */
+    public synchronized long getFirstSequence() {
+        return segments.isEmpty() ? 0 : segments.firstKey();
+    }
+    
+    /**
+     * Gets the newest kept sequence
+     * @return the sequence, or 0 if the spill is empty
+     */
+    public synchronized long getLastSequence() {
+        return active == null ? 0 : active.first + active.count - 1;
+    }
+    
+    /**
+     * Gets the disk space used by the segments
+     * @return the size in bytes
+     */
+    public synchronized long getSizeBytes() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.length;
+        }
+        return size;
+    }
+    
+    /**
+     * Checks whether the previous user of the directory closed it, so every record it
+     * produced was written. After a crash the newest records may never have reached disk.
+     * @return true if the last session ended with close()
+     */
+    public boolean wasClosedCleanly() {
+        return closedCleanly;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        Files.write(directory.resolve(CLEAN_MARKER), new byte[0]);
+    }
+    
+    /**
+     * Writes one record. A DEVICE_ADDED record keeps its state in the fields it does not
+     * otherwise use: the property byte holds the flags, the two values brightness and
+     * temperature. Segments written before states were recorded have -1 there.
+     */
+    private static void write(DataOutputStream out, ChangeRecord record) throws IOException {
+        DeviceState state = record.getState();
+        out.writeLong(record.getSequence());
+        out.writeLong(record.getTimestamp());
+        out.writeByte(record.getType().ordinal());
+        out.writeInt(record.getRoomId());
+        out.writeInt(record.getDeviceId());
+        out.writeByte(record.getDeviceType() == null ? -1 : record.getDeviceType().ordinal());
+        if (state != null) {
+            out.writeByte((state.isOn() ? 1 : 0) | (state.isLocked() ? 2 : 0) | (state.isRecording() ? 4 : 0));
+            out.writeDouble(state.getBrightness());
+            out.writeDouble(state.getTemperature());
+        } else {
+            out.writeByte(record.getProperty() == null ? -1 : record.getProperty().ordinal());
+            out.writeDouble(record.getOldValue());
+            out.writeDouble(record.getNewValue());
+        }
+        if (record.getType() != ChangeType.STATE_CHANGED) {
+            out.writeUTF(record.getName());
+        }
+    }
+    
+    private static ChangeRecord read(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        ChangeType type = CHANGE_TYPES[in.readByte()];
+        int roomId = in.readInt();
+        int deviceId = in.readInt();
+        byte deviceType = in.readByte();
+        byte property = in.readByte();
+        double oldValue = in.readDouble();
+        double newValue = in.readDouble();
+        String name = type == ChangeType.STATE_CHANGED ? null : in.readUTF();
+        if (type == ChangeType.DEVICE_ADDED) {
+            DeviceState state = property < 0 ? null : new DeviceState((property & 1) != 0, (int) oldValue,
+                    (float) newValue, (property & 2) != 0, (property & 4) != 0);
+            return new ChangeRecord(sequence, timestamp, type, roomId, deviceId, name,
+                    DEVICE_TYPES[deviceType], null, 0, 0, state);
+        }
+        return new ChangeRecord(sequence, timestamp, type, roomId, deviceId, name,
+                deviceType < 0 ? null : DEVICE_TYPES[deviceType],
+                property < 0 ? null : PROPERTIES[property], oldValue, newValue, null);
+    }
+    
+    /**
+     * Reads past one record
+     * @return its size in bytes
+     */
+    private static int skipRecord(DataInputStream in) throws IOException {
+        byte[] fixed = new byte[8 + 8 + 1 + 4 + 4 + 1 + 1 + 8 + 8];
+        in.readFully(fixed);
+        int size = fixed.length;
+        if (CHANGE_TYPES[fixed[16]] != ChangeType.STATE_CHANGED) {
+            int length = in.readUnsignedShort();
+            in.skipNBytes(length);
+            size += 2 + length;
+        }
+        return size;
+    }
+    
+    /**
+     * One segment file with its sparse offset index
+     */
+    private static class Segment {
+        final Path path;
+        final long first;
+        long[] index = new long[4];
+        int indexSize;
+        int count;
+        long length;
+        
+        Segment(Path path, long first) {
+            this.path = path;
+            this.first = first;
+        }
+        
+        void addIndex(long offset) {
+            if (indexSize == index.length) {
+                index = Arrays.copyOf(index, indexSize * 2);
+            }
+            index[indexSize++] = offset;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package changefeed;
+
+/**
+ * Enum representing the kinds of change recorded in a change feed
+ */
+public enum ChangeType {
+    ROOM_ADDED,
+    DEVICE_ADDED,
+    STATE_CHANGED
+}
@@ -0,0 +1,117 @@
+package changefeed;
+
+import java.util.Collections;
+import java.util.List;
+
+import core.DeviceType;
+import devices.DeviceState;
+
+/**
+ * Compact picture of a whole home, given to change-feed clients that fell too far behind.
+ * The client rebuilds its model from the snapshot and continues reading after the resume
+ * sequence. Changes just after the resume point may already be part of the snapshot;
+ * because records carry absolute values, applying them again leaves the same state.
+ */
+public class HomeSnapshot {
+    private final long resumeSequence;
+    private final long timestamp;
+    private final List<RoomEntry> rooms;
+    private final List<DeviceEntry> devices;
+    
+    HomeSnapshot(long resumeSequence, long timestamp, List<RoomEntry> rooms, List<DeviceEntry> devices) {
+        this.resumeSequence = resumeSequence;
+        this.timestamp = timestamp;
+        this.rooms = Collections.unmodifiableList(rooms);
+        this.devices = Collections.unmodifiableList(devices);
+    }
+    
+    /**
+     * Gets the sequence to continue reading after
+     * @return the resume sequence
+     */
+    public long getResumeSequence() {
+        return resumeSequence;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public List<RoomEntry> getRooms() {
+        return rooms;
+    }
+    
+    public List<DeviceEntry> getDevices() {
+        return devices;
+    }
+    
+    /**
+     * One room of the snapshot
+     */
+    public static class RoomEntry {
+        private final int id;
+        private final String name;
+        
+        RoomEntry(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        @Override
+        public String toString() {
+            return "room=" + id + " \"" + name + "\"";
+        }
+    }
+    
+    /**
+     * One device of the snapshot with its state
+     */
+    public static class DeviceEntry {
+        private final int id;
+        private final int roomId;
+        private final String name;
+        private final DeviceType type;
+        private final DeviceState state;
+        
+        DeviceEntry(int id, int roomId, String name, DeviceType type, DeviceState state) {
+            this.id = id;
+            this.roomId = roomId;
+            this.name = name;
+            this.type = type;
+            this.state = state;
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        public int getRoomId() {
+            return roomId;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public DeviceType getType() {
+            return type;
+        }
+        
+        public DeviceState getState() {
+            return state;
+        }
+        
+        @Override
+        public String toString() {
+            return "device=" + id + " room=" + roomId + " " + type + " \"" + name + "\" " + state;
+        }
+    }
+}
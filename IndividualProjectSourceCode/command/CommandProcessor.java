@@ -0,0 +1,449 @@
+package command;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.DeviceState;
+import group.DeviceGroup;
+import group.GroupRegistry;
+import importer.ImportResult;
+import importer.InventoryImporter;
+import plugin.DeviceTypeRegistry;
+import topology.Topology;
+import topology.TopologyLevel;
+import topology.TopologyNode;
+import tracing.Span;
+import tracing.Tracer;
+
+/**
+ * Parses and executes one-line text commands against the controller.
+ * Rooms and devices are addressed by name; names containing spaces are double-quoted.
+ *
+ * Supported commands:
+ *   room add &lt;room&gt;              room on|off &lt;room&gt;
+ *   device add &lt;room&gt; &lt;type&gt; &lt;name&gt;
+ *   on|off|toggle &lt;room&gt; &lt;device&gt;
+ *   brightness &lt;room&gt; &lt;device&gt; &lt;0-100&gt;
+ *   temp &lt;room&gt; &lt;device&gt; &lt;celsius&gt;
+ *   lock|unlock &lt;room&gt; &lt;device&gt;
+ *   record start|stop &lt;room&gt; &lt;device&gt;
+ *   status &lt;room&gt; &lt;device&gt;
+ *   all on|off
+ *   mode &lt;name&gt;
+ *   import &lt;inventory file (.csv or .jsonl)&gt;
+ *   area add building|floor|zone &lt;path&gt;   area assign &lt;room&gt; &lt;path&gt;
+ *   area on|off|status &lt;path&gt;         (paths look like "Building B/Floor 2")
+ *   group add|remove &lt;group&gt; &lt;room&gt; &lt;device&gt;
+ *   group on|off|lock|unlock &lt;group&gt;
+ *   find &lt;predicate&gt;   e.g. find type = LIGHT and on and brightness &gt; 70
+ *   trace &lt;sample rate 0-1&gt;   trace export &lt;file&gt;   trace summary|clear
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public class CommandProcessor {
+    // Devices named in a find result; the count is always complete
+    private static final int MAX_LISTED_DEVICES = 20;
+    // Slowest stages shown by trace summary
+    private static final int MAX_LISTED_STAGES = 5;
+    
+    private final SmartHomeController controller;
+    private final List<String> tokens;
+    
+    /**
+     * Creates a command processor for the given controller
+     * @param controller the controller to execute commands against
+     */
+    public CommandProcessor(SmartHomeController controller) {
+        this.controller = controller;
+        this.tokens = new ArrayList<>(8);
+    }
+    
+    /**
+     * Parses and executes a single command line
+     * @param line the command text
+     * @return a short result ("OK" or a status line), or null if the line is blank or a comment
+     * @throws IllegalArgumentException if the command is malformed or its target does not exist
+     */
+    public String execute(String line) {
+        // Each command is a trace of its own, recorded if sampled
+        Span trace = Tracer.startTrace("command", line);
+        try {
+            return executeLine(line);
+        } finally {
+            trace.close();
+        }
+    }
+    
+    private String executeLine(String line) {
+        tokenize(line);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        
+        String verb = tokens.get(0).toLowerCase();
+        switch (verb) {
+            case "room":
+                return executeRoomCommand();
+            case "device":
+                expectArgs(4, "device add <room> <type> <name>");
+                if (!tokens.get(1).equalsIgnoreCase("add")) {
+                    throw new IllegalArgumentException("Unknown device command: " + tokens.get(1));
+                }
+                controller.createDevice(tokens.get(2), parseType(tokens.get(3)), tokens.get(4));
+                return "OK";
+            case "on":
+                return apply(DeviceCommand.Action.TURN_ON, 0);
+            case "off":
+                return apply(DeviceCommand.Action.TURN_OFF, 0);
+            case "toggle":
+                return apply(DeviceCommand.Action.TOGGLE, 0);
+            case "lock":
+                return apply(DeviceCommand.Action.LOCK, 0);
+            case "unlock":
+                return apply(DeviceCommand.Action.UNLOCK, 0);
+            case "brightness":
+                expectArgs(3, "brightness <room> <device> <0-100>");
+                return applyTo(DeviceCommand.Action.SET_BRIGHTNESS, parseNumber(tokens.get(3)));
+            case "temp":
+                expectArgs(3, "temp <room> <device> <celsius>");
+                return applyTo(DeviceCommand.Action.SET_TEMPERATURE, parseNumber(tokens.get(3)));
+            case "record":
+                return executeRecordCommand();
+            case "status":
+                expectArgs(2, "status <room> <device>");
+                Device device = findDevice(tokens.get(1), tokens.get(2));
+                return describe(device, controller.readState(device));
+            case "all":
+                return executeAllCommand();
+            case "mode":
+                expectArgs(1, "mode <name>");
+                String mode = tokens.get(1);
+                if (!controller.hasAutomationMode(mode)) {
+                    throw new IllegalArgumentException("Unknown mode: " + mode);
+                }
+                controller.setAutomationMode(mode);
+                controller.executeCurrentModeAtomically();
+                return "OK";
+            case "import":
+                expectArgs(1, "import <file>");
+                return importInventory(tokens.get(1));
+            case "area":
+                return executeAreaCommand();
+            case "group":
+                return executeGroupCommand();
+            case "find":
+                // The predicate has its own syntax, so it is taken from the raw line
+                String predicate = line.trim().substring(tokens.get(0).length()).trim();
+                return findDevices(predicate);
+            case "trace":
+                return executeTraceCommand();
+            default:
+                throw new IllegalArgumentException("Unknown command: " + tokens.get(0));
+        }
+    }
+    
+    private String importInventory(String path) {
+        InventoryImporter importer = new InventoryImporter(controller);
+        try {
+            ImportResult result = importer.importFile(Paths.get(path), InventoryImporter.Format.fromFileName(path));
+            return "OK " + result;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read " + path + ": " + e.getMessage());
+        }
+    }
+    
+    private String findDevices(String predicate) {
+        List<Device> found = controller.getDeviceIndex().find(predicate);
+        StringBuilder result = new StringBuilder("OK ").append(found.size());
+        int shown = Math.min(found.size(), MAX_LISTED_DEVICES);
+        for (int i = 0; i < shown; i++) {
+            Device device = found.get(i);
+            result.append(i == 0 ? ": " : ", ").append(device.getRoom().getName()).append('/').append(device.getName());
+        }
+        if (found.size() > shown) {
+            result.append(", ... (").append(found.size() - shown).append(" more)");
+        }
+        return result.toString();
+    }
+    
+    private String executeTraceCommand() {
+        if (tokens.size() < 2) {
+            throw new IllegalArgumentException("Usage: trace <sample rate 0-1> | trace export <file> | trace summary|clear");
+        }
+        String action = tokens.get(1).toLowerCase();
+        switch (action) {
+            case "export":
+                expectArgs(2, "trace export <file>");
+                try {
+                    return "OK " + Tracer.export(Paths.get(tokens.get(2))) + " spans";
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Cannot write " + tokens.get(2) + ": " + e.getMessage());
+                }
+            case "summary":
+                expectArgs(1, "trace summary");
+                List<String> stages = Tracer.summarize();
+                StringBuilder result = new StringBuilder("OK ").append(stages.get(0));
+                for (int i = 1; i < Math.min(stages.size(), MAX_LISTED_STAGES + 1); i++) {
+                    result.append(i == 1 ? ": " : "; ").append(stages.get(i).replaceAll("\\s+", " "));
+                }
+                return result.toString();
+            case "clear":
+                expectArgs(1, "trace clear");
+                Tracer.clear();
+                return "OK";
+            default:
+                expectArgs(1, "trace <sample rate 0-1>");
+                Tracer.setSampleRate(parseNumber(tokens.get(1)));
+                return "OK";
+        }
+    }
+    
+    private String executeAreaCommand() {
+        if (tokens.size() < 3) {
+            throw new IllegalArgumentException("Usage: area add|assign|on|off|status ...");
+        }
+        Topology topology = controller.getTopology();
+        String action = tokens.get(1).toLowerCase();
+        switch (action) {
+            case "add":
+                expectArgs(3, "area add building|floor|zone <path>");
+                topology.addNode(parseLevel(tokens.get(2)), tokens.get(3));
+                return "OK";
+            case "assign":
+                expectArgs(3, "area assign <room> <path>");
+                topology.assignRoom(findRoom(tokens.get(2)), findArea(tokens.get(3)));
+                return "OK";
+            case "on":
+            case "off":
+                expectArgs(2, "area on|off <path>");
+                int failed = topology.dispatch(findArea(tokens.get(2)),
+                    action.equals("on") ? DeviceCommand.Action.TURN_ON : DeviceCommand.Action.TURN_OFF, 0).size();
+                return failed == 0 ? "OK" : "OK " + failed + " commands failed";
+            case "status":
+                expectArgs(2, "area status <path>");
+                return findArea(tokens.get(2)).getSummary().toString();
+            default:
+                throw new IllegalArgumentException("Unknown area command: " + tokens.get(1));
+        }
+    }
+    
+    private String executeGroupCommand() {
+        if (tokens.size() < 3) {
+            throw new IllegalArgumentException("Usage: group add|remove|on|off|lock|unlock <group> ...");
+        }
+        GroupRegistry groups = controller.getGroups();
+        String action = tokens.get(1).toLowerCase();
+        String group = tokens.get(2);
+        switch (action) {
+            case "add":
+                expectArgs(4, "group add <group> <room> <device>");
+                groups.getOrCreateGroup(group).add(findDevice(tokens.get(3), tokens.get(4)));
+                return "OK";
+            case "remove":
+                expectArgs(4, "group remove <group> <room> <device>");
+                DeviceGroup existing = groups.getGroup(group);
+                if (existing == null || !existing.remove(findDevice(tokens.get(3), tokens.get(4)))) {
+                    throw new IllegalArgumentException("Not in group " + group + ": " + tokens.get(3) + "/" + tokens.get(4));
+                }
+                return "OK";
+            case "on":
+                return broadcast(group, DeviceCommand.Action.TURN_ON);
+            case "off":
+                return broadcast(group, DeviceCommand.Action.TURN_OFF);
+            case "lock":
+                return broadcast(group, DeviceCommand.Action.LOCK);
+            case "unlock":
+                return broadcast(group, DeviceCommand.Action.UNLOCK);
+            default:
+                throw new IllegalArgumentException("Unknown group command: " + tokens.get(1));
+        }
+    }
+    
+    private String broadcast(String group, DeviceCommand.Action action) {
+        expectArgs(2, "group " + tokens.get(1) + " <group>");
+        int failed = controller.getGroups().broadcast(group, action, 0).size();
+        return failed == 0 ? "OK" : "OK " + failed + " commands failed";
+    }
+    
+    private TopologyNode findArea(String path) {
+        TopologyNode node = controller.getTopology().find(path);
+        if (node == null) {
+            throw new IllegalArgumentException("No such area: " + path);
+        }
+        return node;
+    }
+    
+    private static TopologyLevel parseLevel(String text) {
+        try {
+            TopologyLevel level = TopologyLevel.valueOf(text.toUpperCase());
+            if (level != TopologyLevel.SITE) {
+                return level;
+            }
+        } catch (IllegalArgumentException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Unknown area level: " + text);
+    }
+    
+    private String executeRoomCommand() {
+        expectArgs(2, "room add|on|off <room>");
+        String action = tokens.get(1).toLowerCase();
+        String roomName = tokens.get(2);
+        switch (action) {
+            case "add":
+                controller.addRoom(roomName);
+                return "OK";
+            case "on":
+                findRoom(roomName).turnAllDevicesOn();
+                return "OK";
+            case "off":
+                findRoom(roomName).turnAllDevicesOff();
+                return "OK";
+            default:
+                throw new IllegalArgumentException("Unknown room command: " + tokens.get(1));
+        }
+    }
+    
+    private String executeRecordCommand() {
+        expectArgs(3, "record start|stop <room> <device>");
+        String action = tokens.get(1).toLowerCase();
+        tokens.remove(1);
+        if (action.equals("start")) {
+            return apply(DeviceCommand.Action.START_RECORDING, 0);
+        } else if (action.equals("stop")) {
+            return apply(DeviceCommand.Action.STOP_RECORDING, 0);
+        }
+        throw new IllegalArgumentException("Unknown record command: " + action);
+    }
+    
+    private String executeAllCommand() {
+        expectArgs(1, "all on|off");
+        String action = tokens.get(1).toLowerCase();
+        if (!action.equals("on") && !action.equals("off")) {
+            throw new IllegalArgumentException("Unknown all command: " + tokens.get(1));
+        }
+        DeviceCommand.Action deviceAction = action.equals("on")
+            ? DeviceCommand.Action.TURN_ON : DeviceCommand.Action.TURN_OFF;
+        List<DeviceCommand> commands = new ArrayList<>();
+        for (Room room : controller.getAllRooms()) {
+            for (Device device : room.getAllDevices()) {
+                commands.add(new DeviceCommand(device, deviceAction));
+            }
+        }
+        int failed = controller.dispatch(commands).size();
+        return failed == 0 ? "OK" : "OK " + failed + " of " + commands.size() + " commands failed";
+    }
+    
+    private String apply(DeviceCommand.Action action, double value) {
+        expectArgs(2, tokens.get(0) + " <room> <device>");
+        return applyTo(action, value);
+    }
+    
+    private String applyTo(DeviceCommand.Action action, double value) {
+        controller.dispatch(new DeviceCommand(findDevice(tokens.get(1), tokens.get(2)), action, value));
+        return "OK";
+    }
+    
+    private Room findRoom(String roomName) {
+        Room room = controller.getRoom(roomName);
+        if (room == null) {
+            throw new IllegalArgumentException("No such room: " + roomName);
+        }
+        return room;
+    }
+    
+    private Device findDevice(String roomName, String deviceName) {
+        Device device = findRoom(roomName).getDevice(deviceName);
+        if (device == null) {
+            throw new IllegalArgumentException("No such device: " + roomName + "/" + deviceName);
+        }
+        return device;
+    }
+    
+    /**
+     * Builds a compact one-line status for a device from its (possibly cached) state
+     */
+    private static String describe(Device device, DeviceState state) {
+        StringBuilder status = new StringBuilder(64);
+        status.append(device.getRoom().getName()).append('/').append(device.getName());
+        status.append(state.isOn() ? " ON" : " OFF");
+        switch (device.getType()) {
+            case LIGHT:
+                status.append(" brightness=").append(state.getBrightness());
+                break;
+            case THERMOSTAT:
+                status.append(" temperature=").append(state.getTemperature());
+                break;
+            case DOOR:
+                status.append(state.isLocked() ? " locked" : " unlocked");
+                break;
+            case SECURITY_CAMERA:
+                status.append(state.isRecording() ? " recording" : " idle");
+                break;
+            default:
+                break;
+        }
+        return status.toString();
+    }
+    
+    // A built-in or plugin type name, checked before the room is created
+    private static String parseType(String text) {
+        String name = text.toUpperCase();
+        if (name.equals("CAMERA")) {
+            return DeviceType.SECURITY_CAMERA.name();
+        }
+        if (DeviceTypeRegistry.getDefault().getPlugin(name) == null) {
+            throw new IllegalArgumentException("Unknown device type: " + text);
+        }
+        return name;
+    }
+    
+    private static double parseNumber(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + text);
+        }
+    }
+    
+    private void expectArgs(int count, String usage) {
+        if (tokens.size() != count + 1) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+    
+    /**
+     * Splits a line on whitespace, keeping double-quoted names together
+     */
+    private void tokenize(String line) {
+        tokens.clear();
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#' && tokens.isEmpty()) {
+                return;
+            } else if (c == '"') {
+                int close = line.indexOf('"', i + 1);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unterminated quote");
+                }
+                tokens.add(line.substring(i + 1, close));
+                i = close + 1;
+            } else {
+                int start = i;
+                while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                tokens.add(line.substring(start, i));
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DeviceType;
+import devices.Device;
+import devices.Door;
+import devices.Light;
+import devices.SecurityCamera;
+import devices.Thermostat;
+import plugin.DeviceTypePlugin;
+import plugin.DeviceTypeRegistry;
+
+/**
+ * A single command addressed to one device (Command Pattern)
+ */
+public class DeviceCommand {
+    /**
+     * The actions a device command can perform
+     */
+    public enum Action {
+        TURN_ON,
+        TURN_OFF,
+        TOGGLE,
+        SET_BRIGHTNESS,
+        SET_TEMPERATURE,
+        LOCK,
+        UNLOCK,
+        START_RECORDING,
+        STOP_RECORDING
+    }
+    
+    private final Device device;
+    private final Action action;
+    private final double value;
+    
+    /**
+     * Creates a command without a value
+     * @param device the target device
+     * @param action the action to perform
+     */
+    public DeviceCommand(Device device, Action action) {
+        this(device, action, 0);
+    }
+    
+    /**
+     * Creates a command with a value (brightness or temperature)
+     * @param device the target device
+     * @param action the action to perform
+     * @param value the value for the action
+     */
+    public DeviceCommand(Device device, Action action, double value) {
+        this.device = device;
+        this.action = action;
+        this.value = value;
+    }
+    
+    /**
+     * Builds the same command for each of a list of devices
+     * @param devices the target devices
+     * @param action the action for each device
+     * @param value the action's value, if it takes one
+     * @return the commands, in the order of the devices
+     */
+    public static List<DeviceCommand> forAll(List<? extends Device> devices, Action action, double value) {
+        List<DeviceCommand> commands = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            commands.add(new DeviceCommand(device, action, value));
+        }
+        return commands;
+    }
+    
+    public Device getDevice() {
+        return device;
+    }
+    
+    public Action getAction() {
+        return action;
+    }
+    
+    public double getValue() {
+        return value;
+    }
+    
+    /**
+     * Checks that the command can be applied to its device
+     * @throws IllegalArgumentException if the action does not fit the device or the value is out of range
+     */
+    public void validate() {
+        if (device.getType() == DeviceType.OTHER) {
+            validatePluginCommand();
+            return;
+        }
+        switch (action) {
+            case SET_BRIGHTNESS:
+                requireType(Light.class);
+                if (value < 0 || value > 100) {
+                    throw new IllegalArgumentException("Brightness must be between 0 and 100: " + (int) value);
+                }
+                break;
+            case SET_TEMPERATURE:
+                requireType(Thermostat.class);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw new IllegalArgumentException("Invalid temperature: " + value);
+                }
+                break;
+            case LOCK:
+            case UNLOCK:
+                requireType(Door.class);
+                break;
+            case START_RECORDING:
+            case STOP_RECORDING:
+                requireType(SecurityCamera.class);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Validates and applies the command to its device
+     */
+    public void apply() {
+        validate();
+        if (device.getType() == DeviceType.OTHER) {
+            DeviceTypeRegistry.getDefault().getPlugin(device).apply(this);
+            return;
+        }
+        switch (action) {
+            case TURN_ON:
+                device.turnOn();
+                break;
+            case TURN_OFF:
+                device.turnOff();
+                break;
+            case TOGGLE:
+                device.toggle();
+                break;
+            case SET_BRIGHTNESS:
+                ((Light) device).setBrightness((int) value);
+                break;
+            case SET_TEMPERATURE:
+                ((Thermostat) device).setTemperature((float) value);
+                break;
+            case LOCK:
+                ((Door) device).lock();
+                break;
+            case UNLOCK:
+                ((Door) device).unlock();
+                break;
+            case START_RECORDING:
+                ((SecurityCamera) device).startRecording();
+                break;
+            case STOP_RECORDING:
+                ((SecurityCamera) device).stopRecording();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+    
+    // A plugin type declares its actions; the values keep their built-in meaning and range
+    private void validatePluginCommand() {
+        DeviceTypePlugin plugin = DeviceTypeRegistry.getDefault().getPlugin(device);
+        if (plugin == null) {
+            throw new IllegalArgumentException("Unknown device type " + device.getTypeName() + " of "
+                + device.getDescription());
+        }
+        if (!plugin.getActions().contains(action)) {
+            throw new IllegalArgumentException(action + " is not supported by " + device.getDescription());
+        }
+        if (action == Action.SET_BRIGHTNESS && (value < 0 || value > 100)) {
+            throw new IllegalArgumentException("Brightness must be between 0 and 100: " + (int) value);
+        }
+        if (action == Action.SET_TEMPERATURE && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("Invalid temperature: " + value);
+        }
+    }
+    
+    private void requireType(Class<? extends Device> type) {
+        if (!type.isInstance(device)) {
+            throw new IllegalArgumentException(
+                action + " is not supported by " + device.getDescription()
+            );
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return action + " " + device.getDescription();
+    }
+}
@@ -0,0 +1,13 @@
+package core;
+
+/**
+ * Enum representing the device properties reported to state observers.
+ * Boolean properties are reported as 1 (on, locked, recording) or 0.
+ */
+public enum DeviceProperty {
+    POWER,
+    BRIGHTNESS,
+    TEMPERATURE,
+    LOCK,
+    RECORDING
+}
@@ -0,0 +1,595 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+import actor.ActorRuntime;
+import command.DeviceCommand;
+import devices.Device;
+import devices.DeviceState;
+import devices.Door;
+import devices.SecurityCamera;
+import transport.DeviceTransport;
+
+/**
+ * A group of device commands that is applied completely or not at all.
+ *
+ * Commands are staged first, and the version of each device is recorded the first time
+ * it is staged or read through expect(). commit() validates every command and sends them to
+ * the gateways without holding any lock. It then takes the state locks of the rooms it
+ * touches, checks that no recorded device has changed since (optimistic concurrency),
+ * applies the commands locally and publishes one commit event; only the local apply also
+ * holds the home's consistent-read lock. Changes in other rooms go on meanwhile. If a
+ * command is invalid, a device has changed, a gateway rejects a command or applying fails,
+ * every device is restored (on the hardware, to its current local state) and a
+ * TransactionException is thrown.
+ *
+ * With an actor runtime, the commit first leases the actor of every room it touches: each
+ * actor runs a message that waits for the commit's work, so the room's commands are still
+ * applied on the room's own thread and nothing else in the room interleaves. The room locks
+ * are taken only once every room is leased, because a room thread may be waiting for its
+ * lock in an earlier message. Room messages must therefore never wait for another room.
+ */
+public class DeviceTransaction {
+    private enum Status {
+        OPEN,
+        COMMITTED,
+        ROLLED_BACK
+    }
+    
+    private final SmartHomeController controller;
+    private final List<DeviceCommand> commands;
+    private final Map<Device, Long> versions;
+    private List<Runnable> afterCommit;
+    private Status status;
+    
+    /**
+     * Creates a transaction; use SmartHomeController.beginTransaction()
+     * @param controller the home the transaction changes
+     */
+    DeviceTransaction(SmartHomeController controller) {
+        this.controller = controller;
+        this.commands = new ArrayList<>();
+        this.versions = new LinkedHashMap<>();
+        this.status = Status.OPEN;
+    }
+    
+    /**
+     * Gets the home the transaction changes
+     * @return the home's controller
+     */
+    public SmartHomeController getController() {
+        return controller;
+    }
+    
+    /**
+     * Stages a command; nothing is applied until commit
+     * @param command the command to stage
+     * @return this transaction
+     */
+    public DeviceTransaction stage(DeviceCommand command) {
+        expect(command.getDevice());
+        commands.add(command);
+        return this;
+    }
+    
+    /**
+     * Stages several commands
+     * @param toStage the commands to stage
+     * @return this transaction
+     */
+    public DeviceTransaction stageAll(List<DeviceCommand> toStage) {
+        for (DeviceCommand command : toStage) {
+            stage(command);
+        }
+        return this;
+    }
+    
+    /**
+     * Reads a device and makes the commit depend on it: if the device changes before
+     * the commit, the transaction fails with a conflict
+     * @param device the device to read
+     * @return the device's current state
+     */
+    public DeviceState expect(Device device) {
+        requireOpen();
+        // Version first: a change racing with the read then shows up as a conflict
+        versions.putIfAbsent(device, device.getVersion());
+        return DeviceState.of(device);
+    }
+    
+    /**
+     * Adds an action to run once the transaction has committed, e.g. starting a fade
+     * @param action the action; it is dropped if the transaction rolls back
+     */
+    public void afterCommit(Runnable action) {
+        requireOpen();
+        if (afterCommit == null) {
+            afterCommit = new ArrayList<>();
+        }
+        afterCommit.add(action);
+    }
+    
+    /**
+     * Gets the staged commands
+     * @return the commands in staging order
+     */
+    public List<DeviceCommand> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+    
+    /**
+     * Checks whether the transaction can still be committed
+     * @return true if neither committed nor rolled back
+     */
+    public boolean isOpen() {
+        return status == Status.OPEN;
+    }
+    
+    /**
+     * Discards the staged commands
+     */
+    public void rollback() {
+        requireOpen();
+        status = Status.ROLLED_BACK;
+    }
+    
+    /**
+     * Validates and applies every staged command as one atomic change
+     * @return the home's state version after this commit
+     * @throws TransactionConflictException if a staged device changed in the meantime
+     * @throws TransactionException if a command is invalid or could not be applied
+     */
+    public long commit() {
+        requireOpen();
+        // Whatever happens below, the transaction is finished
+        status = Status.ROLLED_BACK;
+        
+        List<String> problems = new ArrayList<>();
+        for (DeviceCommand command : commands) {
+            try {
+                command.validate();
+            } catch (IllegalArgumentException e) {
+                problems.add(e.getMessage());
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw rolledBack(new TransactionException("Invalid commands: " + String.join("; ", problems)));
+        }
+        
+        // The hardware is talked to before any lock is taken; a conflict found afterwards
+        // sends the devices back to whatever state they have by then
+        Map<Device, DeviceState> before = new LinkedHashMap<>();
+        for (DeviceCommand command : commands) {
+            before.computeIfAbsent(command.getDevice(), DeviceState::of);
+        }
+        DeviceTransport transport = controller.getTransport();
+        if (transport != null) {
+            sendAll(transport, before);
+        }
+        
+        long commitVersion;
+        Lock serial = controller.getCommitLock();
+        serial.lock();
+        try {
+            Map<Room, RoomLease> leases = leaseRooms();
+            try {
+                commitVersion = applyLocked(transport, before, leases);
+            } finally {
+                release(leases);
+            }
+        } finally {
+            serial.unlock();
+        }
+        
+        status = Status.COMMITTED;
+        if (afterCommit != null) {
+            for (Runnable action : afterCommit) {
+                action.run();
+            }
+        }
+        return commitVersion;
+    }
+    
+    /**
+     * Checks the versions and applies the commands under the locks of the rooms touched;
+     * the home's consistent-read lock is held only while applying
+     */
+    private long applyLocked(DeviceTransport transport, Map<Device, DeviceState> before,
+                             Map<Room, RoomLease> leases) {
+        List<Lock> roomLocks = lockRooms();
+        TransactionConflictException conflict = null;
+        Map<Device, DeviceState> current = null;
+        try {
+            for (Map.Entry<Device, Long> entry : versions.entrySet()) {
+                long version = entry.getKey().getVersion();
+                if (version != entry.getValue()) {
+                    conflict = new TransactionConflictException(entry.getKey().getDescription()
+                            + " changed during the transaction (version " + entry.getValue() + ", now " + version + ")");
+                    break;
+                }
+            }
+            if (conflict == null) {
+                Lock lock = controller.getStateLock().writeLock();
+                lock.lock();
+                try {
+                    return applyAll(transport, before, leases);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (transport != null) {
+                current = new LinkedHashMap<>();
+                for (Device device : before.keySet()) {
+                    current.put(device, DeviceState.of(device));
+                }
+            }
+        } finally {
+            for (int i = roomLocks.size() - 1; i >= 0; i--) {
+                roomLocks.get(i).unlock();
+            }
+        }
+        
+        // The commands already reached the hardware: undo them outside the locks
+        if (current != null) {
+            int unrestored = compensate(transport, current.keySet(), current);
+            if (unrestored > 0) {
+                conflict = new TransactionConflictException(conflict.getMessage() + "; "
+                        + unrestored + " device(s) could not be restored");
+            }
+        }
+        throw rolledBack(conflict);
+    }
+    
+    /**
+     * Takes the write lock of every room with a recorded device, in room id order
+     * @return the held locks, in the order taken
+     */
+    private List<Lock> lockRooms() {
+        List<Room> rooms = new ArrayList<>();
+        for (Device device : versions.keySet()) {
+            Room room = device.getRoom();
+            if (!rooms.contains(room)) {
+                rooms.add(room);
+            }
+        }
+        rooms.sort(Comparator.comparingInt(Room::getId));
+        List<Lock> locks = new ArrayList<>(rooms.size());
+        for (Room room : rooms) {
+            Lock lock = room.getStateLock().writeLock();
+            lock.lock();
+            locks.add(lock);
+        }
+        return locks;
+    }
+    
+    /**
+     * Leases the actor of every room the commands touch, or none without an actor runtime.
+     * A room whose actor is the calling thread is applied here directly.
+     */
+    private Map<Room, RoomLease> leaseRooms() {
+        ActorRuntime runtime = controller.getActorRuntime();
+        if (runtime == null) {
+            return Collections.emptyMap();
+        }
+        Map<Room, RoomLease> leases = new LinkedHashMap<>();
+        for (DeviceCommand command : commands) {
+            Room room = command.getDevice().getRoom();
+            if (room != null && !leases.containsKey(room) && !runtime.actorFor(room).isCurrentThread()) {
+                RoomLease lease = new RoomLease();
+                leases.put(room, lease);
+                runtime.tell(room, lease::hold);
+            }
+        }
+        for (RoomLease lease : leases.values()) {
+            lease.held.join();
+        }
+        return leases;
+    }
+    
+    /**
+     * Ends every lease
+     * @return the events the room threads suppressed while applying
+     */
+    private static long release(Map<Room, RoomLease> leases) {
+        long suppressed = 0;
+        for (RoomLease lease : leases.values()) {
+            suppressed += lease.release();
+        }
+        return suppressed;
+    }
+    
+    /**
+     * Sends every command to the hardware and waits for all acknowledgements.
+     * If any is rejected, devices that did receive commands are sent back to their snapshot.
+     */
+    private void sendAll(DeviceTransport transport, Map<Device, DeviceState> before) {
+        List<CompletableFuture<Void>> acknowledgements = new ArrayList<>(commands.size());
+        for (DeviceCommand command : commands) {
+            acknowledgements.add(send(transport, command));
+        }
+        
+        DeviceCommand failedCommand = null;
+        Throwable failure = null;
+        Set<Device> reached = new LinkedHashSet<>();
+        for (int i = 0; i < commands.size(); i++) {
+            try {
+                acknowledgements.get(i).join();
+                reached.add(commands.get(i).getDevice());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failedCommand = commands.get(i);
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure == null) {
+            return;
+        }
+        
+        int unrestored = compensate(transport, reached, before);
+        String message = failedCommand + " failed (" + failure.getMessage() + ")";
+        if (unrestored > 0) {
+            message += "; " + unrestored + " device(s) could not be restored";
+        }
+        throw rolledBack(new TransactionException(message, failure));
+    }
+    
+    private int compensate(DeviceTransport transport, Set<Device> reached, Map<Device, DeviceState> before) {
+        Map<Device, List<CompletableFuture<Void>>> restores = new LinkedHashMap<>();
+        for (Device device : reached) {
+            List<CompletableFuture<Void>> sent = new ArrayList<>();
+            for (DeviceCommand restore : restoreCommands(device, before.get(device), null)) {
+                sent.add(send(transport, restore));
+            }
+            restores.put(device, sent);
+        }
+        int unrestored = 0;
+        for (List<CompletableFuture<Void>> sent : restores.values()) {
+            try {
+                CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                unrestored++;
+            }
+        }
+        return unrestored;
+    }
+    
+    private static CompletableFuture<Void> send(DeviceTransport transport, DeviceCommand command) {
+        try {
+            return transport.send(command);
+        } catch (RuntimeException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+    
+    /**
+     * Applies the commands to the local device model with text events folded into one
+     * commit event, restoring the snapshots if anything fails
+     */
+    private long applyAll(DeviceTransport transport, Map<Device, DeviceState> before, Map<Room, RoomLease> leases) {
+        RuntimeException failure = null;
+        long commitVersion = -1;
+        String summary;
+        controller.beginBulkUpdate();
+        try {
+            applyInRooms(commands, leases, DeviceCommand::apply);
+            commitVersion = controller.nextStateVersion();
+            summary = "Transaction " + commitVersion + " committed: " + commands.size()
+                    + " commands on " + before.size() + " devices";
+        } catch (RuntimeException e) {
+            failure = e;
+            List<DeviceCommand> restores = new ArrayList<>();
+            for (Map.Entry<Device, DeviceState> entry : before.entrySet()) {
+                Device device = entry.getKey();
+                restores.addAll(restoreCommands(device, entry.getValue(), DeviceState.of(device)));
+                if (transport != null) {
+                    for (DeviceCommand restore : restoreCommands(device, entry.getValue(), null)) {
+                        send(transport, restore);
+                    }
+                }
+            }
+            applyInRooms(restores, leases, restore -> {
+                try {
+                    restore.apply();
+                } catch (RuntimeException ignored) {
+                    // Keep restoring the other devices
+                }
+            });
+            summary = "Transaction rolled back: " + e.getMessage();
+        }
+        // The room threads fold their text events into this commit's summary
+        controller.endBulkUpdate(summary, release(leases));
+        if (failure != null) {
+            throw new TransactionException("Applying the transaction failed: " + failure.getMessage(), failure);
+        }
+        return commitVersion;
+    }
+    
+    /**
+     * Applies commands in order, each room's share on its leased room thread (rooms without
+     * a lease on this thread). Every room finishes before the first failure is rethrown.
+     */
+    private static void applyInRooms(List<DeviceCommand> toApply, Map<Room, RoomLease> leases,
+                                     Consumer<DeviceCommand> action) {
+        if (leases.isEmpty()) {
+            for (DeviceCommand command : toApply) {
+                action.accept(command);
+            }
+            return;
+        }
+        Map<Room, List<DeviceCommand>> byRoom = new LinkedHashMap<>();
+        for (DeviceCommand command : toApply) {
+            byRoom.computeIfAbsent(command.getDevice().getRoom(), room -> new ArrayList<>()).add(command);
+        }
+        List<CompletableFuture<Void>> applied = new ArrayList<>(byRoom.size());
+        for (Map.Entry<Room, List<DeviceCommand>> entry : byRoom.entrySet()) {
+            List<DeviceCommand> roomCommands = entry.getValue();
+            Runnable work = () -> {
+                for (DeviceCommand command : roomCommands) {
+                    action.accept(command);
+                }
+            };
+            RoomLease lease = leases.get(entry.getKey());
+            applied.add(lease == null ? runHere(work) : lease.submit(work));
+        }
+        RuntimeException failure = null;
+        for (CompletableFuture<Void> room : applied) {
+            try {
+                room.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Builds the commands that bring a device back to a snapshot
+     * @param device the device
+     * @param target the snapshot to restore
+     * @param current the device's current state, or null to restore every field
+     * @return the restoring commands
+     */
+    private static List<DeviceCommand> restoreCommands(Device device, DeviceState target, DeviceState current) {
+        List<DeviceCommand> restores = new ArrayList<>();
+        if (target.getBrightness() >= 0
+                && (current == null || current.getBrightness() != target.getBrightness())) {
+            restores.add(new DeviceCommand(device, DeviceCommand.Action.SET_BRIGHTNESS, target.getBrightness()));
+        }
+        if (!Float.isNaN(target.getTemperature())
+                && (current == null || Float.compare(current.getTemperature(), target.getTemperature()) != 0)) {
+            restores.add(new DeviceCommand(device, DeviceCommand.Action.SET_TEMPERATURE, target.getTemperature()));
+        }
+        if (device instanceof Door && (current == null || current.isLocked() != target.isLocked())) {
+            restores.add(new DeviceCommand(device,
+                    target.isLocked() ? DeviceCommand.Action.LOCK : DeviceCommand.Action.UNLOCK));
+        }
+        if (device instanceof SecurityCamera && (current == null || current.isRecording() != target.isRecording())) {
+            restores.add(new DeviceCommand(device,
+                    target.isRecording() ? DeviceCommand.Action.START_RECORDING : DeviceCommand.Action.STOP_RECORDING));
+        }
+        if (current == null || current.isOn() != target.isOn()) {
+            restores.add(new DeviceCommand(device,
+                    target.isOn() ? DeviceCommand.Action.TURN_ON : DeviceCommand.Action.TURN_OFF));
+        }
+        return restores;
+    }
+    
+    /**
+     * Runs work on the calling thread
+     * @return a completed future, failed if the work threw
+     */
+    private static CompletableFuture<Void> runHere(Runnable task) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        complete(done, task);
+        return done;
+    }
+    
+    private static void complete(CompletableFuture<Void> done, Runnable task) {
+        try {
+            task.run();
+            done.complete(null);
+        } catch (RuntimeException | Error e) {
+            done.completeExceptionally(e);
+        }
+    }
+    
+    private TransactionException rolledBack(TransactionException error) {
+        controller.notifyObservers("Transaction rolled back: " + error.getMessage());
+        return error;
+    }
+    
+    private void requireOpen() {
+        if (status != Status.OPEN) {
+            throw new IllegalStateException("Transaction is already " + status.name().toLowerCase().replace('_', ' '));
+        }
+    }
+    
+    /**
+     * A room actor held by a commit: its message runs the commit's work on the room's thread
+     * until released, under the room locks the committing thread holds
+     */
+    private final class RoomLease {
+        private final BlockingQueue<Runnable> work = new LinkedBlockingQueue<>();
+        private final CompletableFuture<Void> held = new CompletableFuture<>();
+        private final CompletableFuture<Long> released = new CompletableFuture<>();
+        private final Runnable end = () -> { };
+        private boolean ending;
+        
+        /**
+         * The lease's message; runs on the room's thread until release()
+         */
+        void hold() {
+            controller.borrowStateLock();
+            controller.beginBulkUpdate();
+            boolean interrupted = false;
+            try {
+                held.complete(null);
+                while (true) {
+                    Runnable next;
+                    try {
+                        next = work.take();
+                    } catch (InterruptedException e) {
+                        // The commit is waiting for this room; finish it first
+                        interrupted = true;
+                        continue;
+                    }
+                    if (next == end) {
+                        break;
+                    }
+                    next.run();
+                }
+            } finally {
+                long suppressed = controller.endBulkUpdateQuietly();
+                controller.returnStateLock();
+                released.complete(suppressed);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        
+        /**
+         * Queues work for the room's thread
+         * @param task the work
+         * @return a future completed when the work has run
+         */
+        CompletableFuture<Void> submit(Runnable task) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            work.add(() -> complete(done, task));
+            return done;
+        }
+        
+        /**
+         * Lets the room's actor go on with its mailbox; only the first call has an effect
+         * @return the events suppressed on the room's thread during the lease
+         */
+        long release() {
+            if (!ending) {
+                ending = true;
+                work.add(end);
+            }
+            return released.join();
+        }
+    }
+}
@@ -7,5 +7,7 @@ public enum DeviceType {
     LIGHT,
     THERMOSTAT,
     DOOR,
-    SECURITY_CAMERA
+    SECURITY_CAMERA,
+    // A type supplied by a plugin (see plugin.DeviceTypePlugin); Device.getTypeName() tells them apart
+    OTHER
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hosts many isolated homes in one process.
+ * Each home has its own SmartHomeController with its own rooms, observers and modes.
+ * Homes are sharded across a fixed pool of single-threaded workers by home id, so work
+ * for one home always runs on the same worker and never concurrently with itself.
+ */
+public class HomeRegistry {
+    private final ConcurrentHashMap<String, SmartHomeController> homes;
+    private final ExecutorService[] shards;
+    private volatile Consumer<SmartHomeController> homeInitializer;
+    
+    /**
+     * Creates a registry with one shard per available processor
+     */
+    public HomeRegistry() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a registry
+     * @param shardCount the number of worker threads homes are spread across
+     */
+    public HomeRegistry(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        this.homes = new ConcurrentHashMap<>();
+        this.shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = "home-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    /**
+     * Sets an action run on every newly created home, e.g. to register automation modes.
+     * Stateless strategies can be shared between homes.
+     * @param initializer the setup action
+     */
+    public void setHomeInitializer(Consumer<SmartHomeController> initializer) {
+        this.homeInitializer = initializer;
+    }
+    
+    /**
+     * Creates a new home
+     * @param homeId the home identifier
+     * @return the home's controller
+     * @throws IllegalArgumentException if a home with this id already exists
+     */
+    public SmartHomeController createHome(String homeId) {
+        SmartHomeController controller = new SmartHomeController(homeId);
+        if (homes.putIfAbsent(homeId, controller) != null) {
+            throw new IllegalArgumentException("Home already exists: " + homeId);
+        }
+        Consumer<SmartHomeController> initializer = homeInitializer;
+        if (initializer != null) {
+            initializer.accept(controller);
+        }
+        return controller;
+    }
+    
+    /**
+     * Gets a home by id
+     * @param homeId the home identifier
+     * @return the home's controller, or null if not found
+     */
+    public SmartHomeController getHome(String homeId) {
+        return homes.get(homeId);
+    }
+    
+    /**
+     * Removes a home
+     * @param homeId the home identifier
+     * @return the removed controller, or null if not found
+     */
+    public SmartHomeController removeHome(String homeId) {
+        return homes.remove(homeId);
+    }
+    
+    /**
+     * Gets the number of hosted homes
+     * @return the home count
+     */
+    public int getHomeCount() {
+        return homes.size();
+    }
+    
+    /**
+     * Gets the ids of all hosted homes
+     * @return list of home ids
+     */
+    public List<String> getHomeIds() {
+        return new ArrayList<>(homes.keySet());
+    }
+    
+    /**
+     * Gets the shard a home's work runs on
+     * @param homeId the home identifier
+     * @return the shard index
+     */
+    public int shardOf(String homeId) {
+        return Math.floorMod(homeId.hashCode(), shards.length);
+    }
+    
+    /**
+     * Runs a task against a home on the home's shard
+     * @param homeId the home identifier
+     * @param task the task, given the home's controller
+     * @return a future with the task's result
+     */
+    public <T> CompletableFuture<T> submit(String homeId, Function<SmartHomeController, T> task) {
+        SmartHomeController controller = homes.get(homeId);
+        if (controller == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Unknown home: " + homeId));
+            return failed;
+        }
+        return CompletableFuture.supplyAsync(() -> task.apply(controller), shards[shardOf(homeId)]);
+    }
+    
+    /**
+     * Runs an action against a home on the home's shard
+     * @param homeId the home identifier
+     * @param action the action, given the home's controller
+     * @return a future completed when the action has run
+     */
+    public CompletableFuture<Void> execute(String homeId, Consumer<SmartHomeController> action) {
+        return submit(homeId, controller -> {
+            action.accept(controller);
+            return null;
+        });
+    }
+    
+    /**
+     * Stops the shard workers; already submitted tasks still run
+     */
+    public void shutdown() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
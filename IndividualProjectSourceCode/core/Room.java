@@ -4,7 +4,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import command.DeviceCommand;
 import devices.Device;
 
 /**
@@ -13,14 +15,28 @@ import devices.Device;
 public class Room {
     private String name;
     private Map<String, Device> devices;
+    private SmartHomeController controller;
+    private int id = -1;
+    // Device changes in the room share the read lock; a commit touching the room takes the write lock
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
     
     /**
-     * Creates a new Room with the given name
+     * Creates a new Room with the given name in the default home
      * @param name the room name
      */
     public Room(String name) {
+        this(name, SmartHomeController.getInstance());
+    }
+    
+    /**
+     * Creates a new Room with the given name
+     * @param name the room name
+     * @param controller the controller of the home the room belongs to
+     */
+    public Room(String name, SmartHomeController controller) {
         this.name = name;
         this.devices = new HashMap<>();
+        this.controller = controller;
     }
     
     /**
@@ -31,12 +47,40 @@ public class Room {
         return name;
     }
     
+    /**
+     * Gets the dense per-home room id assigned by SmartHomeController.addRoom
+     * @return the room id, or -1 for a room that was not added through the controller
+     */
+    public int getId() {
+        return id;
+    }
+    
+    void assignId(int id) {
+        this.id = id;
+    }
+    
+    ReentrantReadWriteLock getStateLock() {
+        return stateLock;
+    }
+    
+    /**
+     * Gets the controller of the home this room belongs to
+     * @return the home's controller
+     */
+    public SmartHomeController getController() {
+        return controller;
+    }
+    
     /**
      * Adds a device to the room
      * @param device the device to add
      */
     public void addDevice(Device device) {
+        boolean added = controller.registerDevice(device);
         devices.put(device.getName(), device);
+        if (added) {
+            controller.notifyDeviceAdded(device);
+        }
     }
     
     /**
@@ -60,18 +104,26 @@ public class Room {
      * Turns on all devices in the room
      */
     public void turnAllDevicesOn() {
-        for (Device device : devices.values()) {
-            device.turnOn();
-        }
+        dispatchToAll(DeviceCommand.Action.TURN_ON);
     }
     
     /**
      * Turns off all devices in the room
      */
     public void turnAllDevicesOff() {
+        dispatchToAll(DeviceCommand.Action.TURN_OFF);
+    }
+    
+    /**
+     * Sends the same action to every device in the room as one batch
+     * @param action the action to send
+     */
+    private void dispatchToAll(DeviceCommand.Action action) {
+        List<DeviceCommand> commands = new ArrayList<>(devices.size());
         for (Device device : devices.values()) {
-            device.turnOff();
+            commands.add(new DeviceCommand(device, action));
         }
+        controller.dispatch(commands);
     }
     
     @Override
@@ -1,63 +1,238 @@
 package core;
 
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
+import actor.ActorRuntime;
+import command.DeviceCommand;
 import devices.Device;
+import devices.DeviceState;
 import factory.DeviceFactory;
 import factory.ConcreteDeviceFactory;
+import group.GroupRegistry;
+import observer.DeviceStateObserver;
 import observer.SystemObserver;
+import plugin.DeviceTypePlugin;
+import plugin.DeviceTypeRegistry;
+import query.DeviceIndex;
+import query.NameIndex;
 import strategy.AutomationStrategy;
+import topology.Topology;
+import tracing.Span;
+import tracing.Tracer;
+import transport.DeviceTransport;
 
 /**
  * SmartHomeController (Singleton Pattern)
- * Central controller for the smart home system
+ * Central controller for one smart home. getInstance() returns the default home;
+ * hosts running many homes create one controller per home (see HomeRegistry),
+ * and rooms and devices reach their own home's controller through Room.getController().
  */
 public class SmartHomeController {
-    // Singleton instance
+    // Singleton instance (the default home)
     private static SmartHomeController instance;
     
+    // Devices build nothing per home, so every home can share one factory
+    private static final DeviceFactory SHARED_FACTORY = new ConcreteDeviceFactory();
+    
+    // The transaction whose commands dispatch() stages on the current thread, if any
+    private static final ThreadLocal<DeviceTransaction> ACTIVE_TRANSACTION = new ThreadLocal<>();
+    
+    // Attempts for executeCurrentModeAtomically before a conflict is reported
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+    
+    private final String homeId;
+    private volatile ZoneId zoneId = ZoneId.systemDefault();
+    
     // Collections
     private Map<String, Room> rooms;
     private Map<String, AutomationStrategy> automationModes;
     private List<SystemObserver> observers;
+    private List<DeviceStateObserver> stateObservers;
+    private List<Device> devicesById;
+    private int roomCount;
     
     // Components
     private DeviceFactory deviceFactory;
     private AutomationStrategy currentMode;
+    private DeviceTransport transport;
+    private ActorRuntime actorRuntime;
+    private volatile DeviceIndex deviceIndex;
+    private volatile NameIndex nameIndex;
+    private volatile Topology topology;
+    private volatile GroupRegistry groups;
+    
+    // Bulk updates are scoped to the thread that started them; the counter lets other
+    // threads skip the thread-local lookup while no bulk update is running anywhere
+    private final ThreadLocal<BulkUpdate> bulkUpdate = ThreadLocal.withInitial(BulkUpdate::new);
+    private final AtomicInteger bulkUpdatingThreads = new AtomicInteger();
+    
+    // Device changes lock only their room (see roomStateLock). A commit holds the write lock
+    // while it applies locally, so consistent multi-device reads, which share the read lock,
+    // never see it half-applied. Commits are serialised so their room leases cannot cross.
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // Room threads applying a commit on behalf of the thread holding the write lock
+    private final ThreadLocal<Boolean> borrowedStateLock = new ThreadLocal<>();
+    private final AtomicInteger borrowingThreads = new AtomicInteger();
+    private volatile long stateVersion;
     
     /**
-     * Private constructor (part of Singleton pattern)
+     * Creates the controller of an independent home.
+     * Collections start empty and small so that thousands of idle homes fit in one JVM.
+     * @param homeId the home identifier
      */
-    private SmartHomeController() {
+    public SmartHomeController(String homeId) {
+        this.homeId = homeId;
         rooms = new HashMap<>();
-        automationModes = new HashMap<>();
-        observers = new ArrayList<>();
-        deviceFactory = new ConcreteDeviceFactory();
+        automationModes = Collections.emptyMap();
+        observers = new CopyOnWriteArrayList<>();
+        stateObservers = new CopyOnWriteArrayList<>();
+        deviceFactory = SHARED_FACTORY;
+        devicesById = Collections.emptyList();
     }
     
     /**
-     * Gets the singleton instance of SmartHomeController
+     * Gets the singleton instance of SmartHomeController (the default home)
      * @return the singleton instance
      */
-    public static SmartHomeController getInstance() {
+    public static synchronized SmartHomeController getInstance() {
         if (instance == null) {
-            instance = new SmartHomeController();
+            instance = new SmartHomeController("default");
         }
         return instance;
     }
     
+    /**
+     * Gets the identifier of this home
+     * @return the home identifier
+     */
+    public String getHomeId() {
+        return homeId;
+    }
+    
+    /**
+     * Gets the home's time zone, used for calendar schedules
+     * @return the time zone (the system default unless set)
+     */
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+    
+    /**
+     * Sets the home's time zone
+     * @param zoneId the time zone
+     */
+    public void setZoneId(ZoneId zoneId) {
+        this.zoneId = zoneId;
+    }
+    
+    /**
+     * Gets the home's device query index, building it on first use so idle homes stay small
+     * @return the index, kept current by the device setters from then on
+     */
+    public DeviceIndex getDeviceIndex() {
+        DeviceIndex index = deviceIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = deviceIndex;
+                if (index == null) {
+                    index = new DeviceIndex(this);
+                    index.start();
+                    deviceIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Gets the home's room and device name index, building it on first use
+     * @return the index, kept current by addRoom and createDevice from then on
+     */
+    public NameIndex getNameIndex() {
+        NameIndex index = nameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nameIndex;
+                if (index == null) {
+                    index = new NameIndex(this);
+                    index.start();
+                    nameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Gets the home's building/floor/zone topology, creating an empty one on first use
+     * @return the topology, following device changes from then on
+     */
+    public Topology getTopology() {
+        Topology current = topology;
+        if (current == null) {
+            synchronized (this) {
+                current = topology;
+                if (current == null) {
+                    current = new Topology(this);
+                    current.start();
+                    topology = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Gets the home's named device groups, creating an empty registry on first use
+     * @return the group registry
+     */
+    public GroupRegistry getGroups() {
+        GroupRegistry current = groups;
+        if (current == null) {
+            synchronized (this) {
+                current = groups;
+                if (current == null) {
+                    current = new GroupRegistry(this);
+                    groups = current;
+                }
+            }
+        }
+        return current;
+    }
+    
     /**
      * Adds a new room to the system
      * @param name the room name
      * @return the newly created room
      */
     public Room addRoom(String name) {
-        Room room = new Room(name);
+        Room room = new Room(name, this);
+        room.assignId(roomCount++);
         rooms.put(name, room);
         notifyObservers("Room added: " + name);
+        if (!stateObservers.isEmpty()) {
+            long timestamp = System.currentTimeMillis();
+            for (DeviceStateObserver observer : stateObservers) {
+                observer.roomAdded(room, timestamp);
+            }
+        }
         return room;
     }
     
@@ -78,6 +253,63 @@ public class SmartHomeController {
         return new ArrayList<>(rooms.values());
     }
     
+    /**
+     * Gets the number of room ids handed out; room ids are 0 to getRoomCount() - 1
+     * @return the room count
+     */
+    public int getRoomCount() {
+        return roomCount;
+    }
+    
+    /**
+     * Gives a device its dense per-home id, unless it already has one.
+     * Called by Room.addDevice.
+     * @param device the device to register
+     * @return true if the device was new to the home
+     */
+    public synchronized boolean registerDevice(Device device) {
+        if (device.getId() >= 0) {
+            return false;
+        }
+        if (devicesById.isEmpty()) {
+            devicesById = new ArrayList<>();
+        }
+        device.assignId(devicesById.size());
+        devicesById.add(device);
+        return true;
+    }
+    
+    /**
+     * Tells state observers that a device joined the home; called by Room.addDevice
+     * @param device the new device
+     */
+    void notifyDeviceAdded(Device device) {
+        if (stateObservers.isEmpty()) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        for (DeviceStateObserver observer : stateObservers) {
+            observer.deviceAdded(device, timestamp);
+        }
+    }
+    
+    /**
+     * Gets a device by its dense per-home id
+     * @param id the device id
+     * @return the device, or null if no device has this id
+     */
+    public synchronized Device getDeviceById(int id) {
+        return id >= 0 && id < devicesById.size() ? devicesById.get(id) : null;
+    }
+    
+    /**
+     * Gets the number of device ids handed out; device ids are 0 to getDeviceCount() - 1
+     * @return the device count
+     */
+    public synchronized int getDeviceCount() {
+        return devicesById.size();
+    }
+    
     /**
      * Registers an observer to receive system notifications
      * @param observer the observer to add
@@ -99,20 +331,144 @@ public class SmartHomeController {
      * @param event the event message
      */
     public void notifyObservers(String event) {
+        if (bulkUpdatingThreads.get() > 0) {
+            BulkUpdate update = bulkUpdate.get();
+            if (update.depth > 0) {
+                update.suppressed++;
+                return;
+            }
+        }
         for (SystemObserver observer : observers) {
-            observer.update(event);
+            Span span = Tracer.span("SystemObserver.update", observer.getClass());
+            try {
+                observer.update(event);
+            } finally {
+                span.close();
+            }
         }
     }
     
+    /**
+     * Registers an observer to receive structured device state changes
+     * @param observer the observer to add
+     */
+    public void addStateObserver(DeviceStateObserver observer) {
+        stateObservers.add(observer);
+    }
+    
+    /**
+     * Removes a device state observer
+     * @param observer the observer to remove
+     */
+    public void removeStateObserver(DeviceStateObserver observer) {
+        stateObservers.remove(observer);
+    }
+    
+    /**
+     * Notifies state observers that a device property was set.
+     * State changes are delivered even during bulk updates, since they carry data rather than text.
+     * @param device the device
+     * @param property the property that was set
+     * @param oldValue the previous value
+     * @param newValue the new value
+     */
+    public void notifyStateChanged(Device device, DeviceProperty property, double oldValue, double newValue) {
+        if (stateObservers.isEmpty()) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        for (DeviceStateObserver observer : stateObservers) {
+            Span span = Tracer.span("DeviceStateObserver.stateChanged", observer.getClass());
+            try {
+                observer.stateChanged(device, property, oldValue, newValue, timestamp);
+            } finally {
+                span.close();
+            }
+        }
+    }
+    
+    /**
+     * Starts a bulk update on the calling thread. Until the matching endBulkUpdate call,
+     * observer notifications raised by this thread are counted instead of delivered one
+     * by one; events from other threads are delivered as usual.
+     */
+    public void beginBulkUpdate() {
+        BulkUpdate update = bulkUpdate.get();
+        if (update.depth++ == 0) {
+            bulkUpdatingThreads.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Ends a bulk update and sends one summary notification for the suppressed events
+     * @param summary a description of the bulk update
+     * @return the number of events suppressed during the update
+     */
+    public long endBulkUpdate(String summary) {
+        return endBulkUpdate(summary, 0);
+    }
+    
+    /**
+     * Ends a bulk update whose change also ran on other threads
+     * @param summary a description of the bulk update
+     * @param elsewhere the events those threads suppressed (see endBulkUpdateQuietly)
+     * @return the number of events suppressed during the update
+     */
+    long endBulkUpdate(String summary, long elsewhere) {
+        boolean outermost = bulkUpdate.get().depth == 1;
+        long count = endBulkUpdateQuietly() + elsewhere;
+        if (outermost) {
+            notifyObservers(summary + " (" + count + " events)");
+        }
+        return count;
+    }
+    
+    /**
+     * Ends a bulk update without a summary; the thread that owns the change reports it
+     * @return the number of events suppressed on this thread
+     */
+    long endBulkUpdateQuietly() {
+        BulkUpdate update = bulkUpdate.get();
+        if (update.depth == 0) {
+            throw new IllegalStateException("No bulk update in progress on this thread");
+        }
+        long count = update.suppressed;
+        if (--update.depth == 0) {
+            update.suppressed = 0;
+            bulkUpdatingThreads.decrementAndGet();
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the factory used to create devices
+     * @return the device factory
+     */
+    public DeviceFactory getDeviceFactory() {
+        return deviceFactory;
+    }
+    
     /**
      * Registers an automation mode strategy
      * @param name the mode name
      * @param strategy the automation strategy
      */
     public void registerAutomationMode(String name, AutomationStrategy strategy) {
+        if (automationModes.isEmpty()) {
+            automationModes = new HashMap<>(4);
+        }
         automationModes.put(name, strategy);
     }
     
+    /**
+     * Checks whether an automation mode is registered
+     * @param modeName the mode name
+     * @return true if a strategy is registered under the name
+     */
+    public boolean hasAutomationMode(String modeName) {
+        return automationModes.containsKey(modeName);
+    }
+    
     /**
      * Sets the current automation mode
      * @param modeName the name of the mode to set
@@ -129,12 +485,453 @@ public class SmartHomeController {
      * Executes the current automation mode
      */
     public void executeCurrentMode() {
-        if (currentMode != null) {
-            currentMode.execute(this);
-            notifyObservers("Executed automation mode: " + currentMode.getName());
+        AutomationStrategy mode = currentMode;
+        if (mode != null) {
+            Span trace = Tracer.startTrace("mode", mode.getName());
+            try {
+                Span span = Tracer.span("AutomationStrategy.execute", mode.getClass());
+                try {
+                    mode.execute(this);
+                } finally {
+                    span.close();
+                }
+                notifyObservers("Executed automation mode: " + mode.getName());
+            } finally {
+                trace.close();
+            }
+        }
+    }
+    
+    /**
+     * Executes the current automation mode as one transaction: the commands the strategy
+     * dispatches are staged and applied together, so the mode is applied completely or not
+     * at all and readers never see it half-applied. Retried when a device changes meanwhile.
+     * @throws TransactionException if the mode could not be applied
+     */
+    public void executeCurrentModeAtomically() {
+        AutomationStrategy mode = currentMode;
+        if (mode != null) {
+            executeAtomically(mode);
+        }
+    }
+    
+    /**
+     * Executes a registered automation mode as one transaction without making it the
+     * current mode, e.g. for scheduled runs that must not override the user's choice
+     * @param modeName the name of the mode to run
+     * @throws IllegalArgumentException if no such mode is registered
+     * @throws TransactionException if the mode could not be applied
+     */
+    public void executeModeAtomically(String modeName) {
+        AutomationStrategy mode = automationModes.get(modeName);
+        if (mode == null) {
+            throw new IllegalArgumentException("Unknown automation mode: " + modeName);
+        }
+        executeAtomically(mode);
+    }
+    
+    private void executeAtomically(AutomationStrategy mode) {
+        Span trace = Tracer.startTrace("mode", mode.getName());
+        try {
+            for (int attempt = 1; ; attempt++) {
+                DeviceTransaction transaction = beginTransaction();
+                ACTIVE_TRANSACTION.set(transaction);
+                Span execution = Tracer.span("AutomationStrategy.execute", mode.getClass());
+                try {
+                    mode.execute(this);
+                } catch (RuntimeException e) {
+                    transaction.rollback();
+                    throw e;
+                } finally {
+                    execution.close();
+                    ACTIVE_TRANSACTION.remove();
+                }
+                Span commit = Tracer.span("DeviceTransaction.commit", mode.getName());
+                try {
+                    transaction.commit();
+                    break;
+                } catch (TransactionConflictException e) {
+                    if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+                        throw e;
+                    }
+                } finally {
+                    commit.close();
+                }
+            }
+            notifyObservers("Executed automation mode: " + mode.getName());
+        } finally {
+            trace.close();
+        }
+    }
+    
+    /**
+     * Starts a transaction against this home
+     * @return the new, empty transaction
+     */
+    public DeviceTransaction beginTransaction() {
+        return new DeviceTransaction(this);
+    }
+    
+    /**
+     * Runs an action once the transaction staging this thread's commands has committed,
+     * or right away when no transaction is active (e.g. starting a fade after a mode)
+     * @param action the action to run
+     */
+    public void runAfterCommit(Runnable action) {
+        DeviceTransaction transaction = activeTransaction();
+        if (transaction == null) {
+            action.run();
+        } else {
+            transaction.afterCommit(action);
+        }
+    }
+    
+    /**
+     * Reads several devices consistently: no transaction commits while the reader runs
+     * @param reader the read to perform
+     * @return the reader's result
+     */
+    public <T> T readConsistent(Supplier<T> reader) {
+        Lock lock = isBorrowingStateLock() ? BorrowedLock.INSTANCE : stateLock.readLock();
+        lock.lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets the state version, which increases with every committed transaction
+     * @return the version
+     */
+    public long getStateVersion() {
+        return stateVersion;
+    }
+    
+    /**
+     * Gets the lock held while changing a device in a room, so that the change never lands
+     * in the middle of a commit touching the room. It is the read side of the room's lock,
+     * except on a room thread applying a commit, which already runs under the committer's locks.
+     * @param room the device's room
+     * @return the lock to hold
+     */
+    public Lock roomStateLock(Room room) {
+        if (isBorrowingStateLock()) {
+            return BorrowedLock.INSTANCE;
+        }
+        return room.getStateLock().readLock();
+    }
+    
+    private boolean isBorrowingStateLock() {
+        return borrowingThreads.get() > 0 && borrowedStateLock.get() != null;
+    }
+    
+    ReentrantReadWriteLock getStateLock() {
+        return stateLock;
+    }
+    
+    Lock getCommitLock() {
+        return commitLock;
+    }
+    
+    /**
+     * Marks the calling room thread as working for the thread that holds the commit's locks
+     */
+    void borrowStateLock() {
+        borrowedStateLock.set(Boolean.TRUE);
+        borrowingThreads.incrementAndGet();
+    }
+    
+    /**
+     * Ends borrowStateLock on the calling thread
+     */
+    void returnStateLock() {
+        borrowedStateLock.remove();
+        borrowingThreads.decrementAndGet();
+    }
+    
+    /**
+     * Advances the state version; called by a committing transaction under the write lock
+     */
+    long nextStateVersion() {
+        return ++stateVersion;
+    }
+    
+    private DeviceTransaction activeTransaction() {
+        DeviceTransaction transaction = ACTIVE_TRANSACTION.get();
+        return transaction != null && transaction.getController() == this ? transaction : null;
+    }
+    
+    /**
+     * Sets the transport used to reach device hardware
+     * @param transport the transport, or null to apply commands directly
+     */
+    public void setTransport(DeviceTransport transport) {
+        this.transport = transport;
+    }
+    
+    /**
+     * Gets the transport used to reach device hardware
+     * @return the transport, or null if commands are applied directly
+     */
+    public DeviceTransport getTransport() {
+        return transport;
+    }
+    
+    /**
+     * Sets the actor runtime. When set, each room's device commands, timer callbacks and
+     * strategy actions run as messages on that room's actor instead of the caller's thread.
+     * @param actorRuntime the runtime, or null to run everything on the calling thread
+     */
+    public void setActorRuntime(ActorRuntime actorRuntime) {
+        this.actorRuntime = actorRuntime;
+    }
+    
+    /**
+     * Gets the actor runtime
+     * @return the runtime, or null if actions run on the calling thread
+     */
+    public ActorRuntime getActorRuntime() {
+        return actorRuntime;
+    }
+    
+    /**
+     * Runs an action against a room: as a message on the room's actor when an actor
+     * runtime is set, otherwise immediately on the calling thread
+     * @param room the room the action touches
+     * @param action the action to run
+     */
+    public void runInRoom(Room room, Runnable action) {
+        if (actorRuntime == null || room == null) {
+            action.run();
+        } else {
+            actorRuntime.tell(room, action);
         }
     }
     
+    /**
+     * Reads a device's state through the transport (and its cache, if any),
+     * or directly from the device when there is no transport. The gateway is waited for
+     * without holding any lock; a local read never sees a commit half-applied to the device.
+     * @param device the device to read
+     * @return the device state
+     */
+    public DeviceState readState(Device device) {
+        if (transport == null) {
+            return readLocal(device);
+        }
+        try {
+            return transport.read(device).join();
+        } catch (CompletionException e) {
+            // Fall back to the last known local state when the gateway is unreachable
+            return readLocal(device);
+        }
+    }
+    
+    private DeviceState readLocal(Device device) {
+        Lock lock = roomStateLock(device.getRoom());
+        lock.lock();
+        try {
+            return DeviceState.of(device);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Dispatches a batch of device commands.
+     * Without a transport each command is applied directly, in order. With a transport all
+     * commands are sent at once and each device's state is updated when its gateway
+     * acknowledges, so the whole batch takes about one round trip instead of one per device.
+     * With an actor runtime the commands are grouped by room and each room applies its
+     * share on its own actor, so rooms proceed in parallel while keeping per-room order.
+     * Commands are applied per device type: each type's DeviceTypePlugin gets its share of
+     * the batch in one applyAll call (see DeviceTypeRegistry.plan); every device still sees
+     * its own commands in order.
+     * Inside executeCurrentModeAtomically the commands are staged in the mode's transaction instead.
+     * @param commands the commands to dispatch
+     * @return the commands that failed (empty if all succeeded)
+     */
+    public List<DeviceCommand> dispatch(List<DeviceCommand> commands) {
+        DeviceTransaction transaction = activeTransaction();
+        if (transaction != null) {
+            // Failures surface when the transaction commits
+            transaction.stageAll(commands);
+            return new ArrayList<>();
+        }
+        // No lock here: each device change takes its room's lock itself, so a waiting
+        // commit never blocks a room thread that this dispatch is waiting for
+        Span span = Tracer.span("dispatch", commands.size());
+        try {
+            return dispatchBatch(commands);
+        } finally {
+            span.close();
+        }
+    }
+    
+    private List<DeviceCommand> dispatchBatch(List<DeviceCommand> commands) {
+        List<DeviceCommand> failed = new ArrayList<>();
+        List<DeviceCommand> accepted = commands;
+        List<CompletableFuture<Void>> acknowledgements = null;
+        if (transport != null) {
+            accepted = new ArrayList<>(commands.size());
+            acknowledgements = new ArrayList<>(commands.size());
+            for (DeviceCommand command : commands) {
+                try {
+                    command.validate();
+                    acknowledgements.add(transport.send(command));
+                    accepted.add(command);
+                } catch (RuntimeException e) {
+                    commandFailed(command, e, failed);
+                }
+            }
+        }
+        
+        if (actorRuntime == null) {
+            applyByType(accepted, acknowledgements, failed);
+            return failed;
+        }
+        
+        Map<Room, List<Integer>> byRoom = new LinkedHashMap<>();
+        for (int i = 0; i < accepted.size(); i++) {
+            byRoom.computeIfAbsent(accepted.get(i).getDevice().getRoom(), room -> new ArrayList<>()).add(i);
+        }
+        List<DeviceCommand> toApply = accepted;
+        List<CompletableFuture<Void>> acks = acknowledgements;
+        List<CompletableFuture<List<DeviceCommand>>> roomResults = new ArrayList<>(byRoom.size());
+        for (Map.Entry<Room, List<Integer>> entry : byRoom.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            roomResults.add(actorRuntime.ask(entry.getKey(), () -> {
+                List<DeviceCommand> roomCommands = new ArrayList<>(indices.size());
+                List<CompletableFuture<Void>> roomAcks = acks == null ? null : new ArrayList<>(indices.size());
+                for (int index : indices) {
+                    roomCommands.add(toApply.get(index));
+                    if (roomAcks != null) {
+                        roomAcks.add(acks.get(index));
+                    }
+                }
+                List<DeviceCommand> roomFailed = new ArrayList<>();
+                applyByType(roomCommands, roomAcks, roomFailed);
+                return roomFailed;
+            }));
+        }
+        for (CompletableFuture<List<DeviceCommand>> roomResult : roomResults) {
+            failed.addAll(roomResult.join());
+        }
+        return failed;
+    }
+    
+    /**
+     * Dispatches a single device command
+     * @param command the command to dispatch
+     * @throws IllegalArgumentException if the command is invalid for its device
+     * @throws transport.TransportException if the transport could not deliver it
+     */
+    public void dispatch(DeviceCommand command) {
+        DeviceTransaction transaction = activeTransaction();
+        if (transaction != null) {
+            transaction.stage(command);
+            return;
+        }
+        dispatchOne(command);
+    }
+    
+    private void dispatchOne(DeviceCommand command) {
+        if (transport != null) {
+            command.validate();
+            joinUnwrapped(transport.send(command));
+        }
+        if (actorRuntime == null) {
+            command.apply();
+        } else {
+            joinUnwrapped(actorRuntime.ask(command.getDevice().getRoom(), () -> {
+                command.apply();
+                return null;
+            }));
+        }
+    }
+    
+    /**
+     * Waits for the acknowledgements (if any), then applies the acknowledged, valid commands
+     * one device type at a time. A single command is applied as is, with its usual event.
+     */
+    private void applyByType(List<DeviceCommand> commands, List<CompletableFuture<Void>> acknowledgements,
+                             List<DeviceCommand> failed) {
+        if (commands.size() == 1) {
+            applyAcknowledged(commands.get(0), acknowledgements == null ? null : acknowledgements.get(0), failed);
+            return;
+        }
+        List<DeviceCommand> valid = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            DeviceCommand command = commands.get(i);
+            try {
+                if (acknowledgements != null) {
+                    acknowledgements.get(i).join();
+                }
+                command.validate();
+                valid.add(command);
+            } catch (CompletionException e) {
+                commandFailed(command, e.getCause(), failed);
+            } catch (RuntimeException e) {
+                commandFailed(command, e, failed);
+            }
+        }
+        for (DeviceTypeRegistry.TypeBatch batch : DeviceTypeRegistry.getDefault().plan(valid)) {
+            DeviceTypePlugin plugin = batch.getPlugin();
+            if (plugin == null || batch.getCommands().size() == 1) {
+                for (DeviceCommand command : batch.getCommands()) {
+                    applyAcknowledged(command, null, failed);
+                }
+                continue;
+            }
+            Span span = Tracer.span("DeviceTypePlugin.applyAll", plugin.getTypeName());
+            try {
+                plugin.applyAll(batch.getCommands());
+            } catch (RuntimeException e) {
+                // The plugin cannot say which commands took effect; its setters are idempotent, so retrying them is safe
+                for (DeviceCommand command : batch.getCommands()) {
+                    commandFailed(command, e, failed);
+                }
+            } finally {
+                span.close();
+            }
+        }
+    }
+    
+    /**
+     * Waits for a command's acknowledgement (if it has one) and applies it locally
+     */
+    private void applyAcknowledged(DeviceCommand command, CompletableFuture<Void> acknowledgement,
+                                   List<DeviceCommand> failed) {
+        try {
+            if (acknowledgement != null) {
+                acknowledgement.join();
+            }
+            command.apply();
+        } catch (CompletionException e) {
+            commandFailed(command, e.getCause(), failed);
+        } catch (RuntimeException e) {
+            commandFailed(command, e, failed);
+        }
+    }
+    
+    private static void joinUnwrapped(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private void commandFailed(DeviceCommand command, Throwable error, List<DeviceCommand> failed) {
+        failed.add(command);
+        notifyObservers("Command failed: " + command + " (" + error.getMessage() + ")");
+    }
+    
     /**
      * Creates a new device using the factory pattern
      * @param roomName the name of the room for the device
@@ -153,4 +950,67 @@ public class SmartHomeController {
         notifyObservers("Device created: " + name + " (" + type + ") in " + roomName);
         return device;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Creates a new device of a type given by name, which may be a plugin type
+     * @param roomName the name of the room for the device
+     * @param typeName the name of the type, e.g. "LIGHT" or "BLIND"
+     * @param name the name for the device
+     * @return the created device
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public Device createDevice(String roomName, String typeName, String name) {
+        Room room = getRoom(roomName);
+        if (room == null) {
+            room = addRoom(roomName);
+        }
+        
+        Device device = deviceFactory.createDevice(typeName, name, room);
+        room.addDevice(device);
+        notifyObservers("Device created: " + name + " (" + device.getTypeName() + ") in " + roomName);
+        return device;
+    }
+    
+    /**
+     * The bulk update state of one thread
+     */
+    private static final class BulkUpdate {
+        int depth;
+        long suppressed;
+    }
+    
+    /**
+     * The state locks as seen by a room thread applying a commit: the committing thread
+     * already holds them for it, so there is nothing to acquire
+     */
+    private static final class BorrowedLock implements Lock {
+        static final BorrowedLock INSTANCE = new BorrowedLock();
+        
+        @Override
+        public void lock() {
+        }
+        
+        @Override
+        public void lockInterruptibly() {
+        }
+        
+        @Override
+        public boolean tryLock() {
+            return true;
+        }
+        
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) {
+            return true;
+        }
+        
+        @Override
+        public void unlock() {
+        }
+        
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("The borrowed state lock has no conditions");
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package core;
+
+/**
+ * Thrown when a device in a transaction was changed by someone else after it was staged
+ */
+public class TransactionConflictException extends TransactionException {
+    private static final long serialVersionUID = 1L;
+    
+    public TransactionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package core;
+
+/**
+ * Thrown when a device transaction cannot be committed; nothing from it remains applied
+ */
+public class TransactionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    public TransactionException(String message) {
+        super(message);
+    }
+    
+    public TransactionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
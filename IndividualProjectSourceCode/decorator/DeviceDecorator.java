@@ -1,11 +1,19 @@
 package decorator;
 
+import capability.Capability;
+import capability.CapabilityKey;
+import core.DeviceType;
 import core.Room;
 import devices.Device;
+import tracing.Span;
+import tracing.Tracer;
 
 /**
  * Base decorator class for devices (Decorator Pattern)
+ * @deprecated attach capabilities to the device instead (see capability.Capability);
+ * decorators remain as thin adapters over the capability model.
  */
+@Deprecated
 public abstract class DeviceDecorator extends Device {
     protected Device wrappedDevice;
     
@@ -23,11 +31,56 @@ public abstract class DeviceDecorator extends Device {
         return wrappedDevice;
     }
     
+    /**
+     * Gets the undecorated device at the bottom of the wrapper chain
+     * @return the base device
+     */
+    public Device getBaseDevice() {
+        return baseOf(wrappedDevice);
+    }
+    
+    /**
+     * Strips all decorators from a device
+     * @param device a device, possibly decorated
+     * @return the base device
+     */
+    protected static Device baseOf(Device device) {
+        while (device instanceof DeviceDecorator) {
+            device = ((DeviceDecorator) device).wrappedDevice;
+        }
+        return device;
+    }
+    
     @Override
     public String getName() {
         return wrappedDevice.getName();
     }
     
+    @Override
+    public int getId() {
+        return wrappedDevice.getId();
+    }
+    
+    @Override
+    public void assignId(int id) {
+        wrappedDevice.assignId(id);
+    }
+    
+    @Override
+    public DeviceType getType() {
+        return wrappedDevice.getType();
+    }
+    
+    @Override
+    public String getTypeName() {
+        return wrappedDevice.getTypeName();
+    }
+    
+    @Override
+    public long getVersion() {
+        return wrappedDevice.getVersion();
+    }
+    
     @Override
     public Room getRoom() {
         return wrappedDevice.getRoom();
@@ -40,18 +93,54 @@ public abstract class DeviceDecorator extends Device {
     
     @Override
     public void turnOn() {
-        wrappedDevice.turnOn();
-        isOn = wrappedDevice.isOn();
+        Span span = Tracer.span("DeviceDecorator.turnOn", getClass());
+        try {
+            wrappedDevice.turnOn();
+            isOn = wrappedDevice.isOn();
+        } finally {
+            span.close();
+        }
     }
     
     @Override
     public void turnOff() {
-        wrappedDevice.turnOff();
-        isOn = wrappedDevice.isOn();
+        Span span = Tracer.span("DeviceDecorator.turnOff", getClass());
+        try {
+            wrappedDevice.turnOff();
+            isOn = wrappedDevice.isOn();
+        } finally {
+            span.close();
+        }
+    }
+    
+    @Override
+    public void setPower(boolean on, boolean announce) {
+        Span span = Tracer.span("DeviceDecorator.setPower", getClass());
+        try {
+            wrappedDevice.setPower(on, announce);
+            isOn = wrappedDevice.isOn();
+        } finally {
+            span.close();
+        }
     }
     
     @Override
     public String getDescription() {
         return wrappedDevice.getDescription();
     }
-}
\ No newline at end of file
+    
+    @Override
+    public void attach(Capability capability) {
+        wrappedDevice.attach(capability);
+    }
+    
+    @Override
+    public void detach(CapabilityKey<?> key) {
+        wrappedDevice.detach(key);
+    }
+    
+    @Override
+    public <T extends Capability> T getCapability(CapabilityKey<T> key) {
+        return wrappedDevice.getCapability(key);
+    }
+}
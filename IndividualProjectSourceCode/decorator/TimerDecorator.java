@@ -1,22 +1,19 @@
 package decorator;
 
-import core.SmartHomeController;
+import capability.TimerCapability;
 import devices.Device;
 
-import java.time.LocalDateTime;
-import java.util.Timer;
-import java.util.TimerTask;
 /**
  * Adds timer functionality to a device (Decorator Pattern)
+ * @deprecated use TimerCapability.attachTo(device); this adapter delegates to it
  */
+@Deprecated
 public class TimerDecorator extends DeviceDecorator {
-    private LocalDateTime scheduledTime;
-    private Timer timer;
+    private final TimerCapability timer;
     
     public TimerDecorator(Device device) {
         super(device);
-        this.scheduledTime = null;
-        this.timer = new Timer();
+        this.timer = TimerCapability.attachTo(baseOf(device));
     }
     
     /**
@@ -24,44 +21,14 @@ public class TimerDecorator extends DeviceDecorator {
      * @param minutes the number of minutes until automatic turn off
      */
     public void setTimer(int minutes) {
-        if (timer != null) {
-            timer.cancel();
-        }
-        
-        timer = new Timer();
-        scheduledTime = LocalDateTime.now().plusMinutes(minutes);
-        
-        SmartHomeController.getInstance().notifyObservers(
-            getDescription() + " set to turn off in " + minutes + " minutes"
-        );
-        
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                turnOff();
-                scheduledTime = null;
-            }
-        }, minutes * 60 * 1000);
+        timer.setTimer(minutes);
     }
     
     public boolean isTimerActive() {
-        return scheduledTime != null && LocalDateTime.now().isBefore(scheduledTime);
+        return timer.isTimerActive();
     }
     
     public void cancelTimer() {
-        if (timer != null) {
-            timer.cancel();
-            timer = new Timer();
-            scheduledTime = null;
-            
-            SmartHomeController.getInstance().notifyObservers(
-                "Timer cancelled for " + getDescription()
-            );
-        }
+        timer.cancelTimer();
     }
-    
-    @Override
-    public String getDescription() {
-        return "Timer-Enabled " + super.getDescription();
-    }
-}
\ No newline at end of file
+}
@@ -1,15 +1,33 @@
 package devices;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.Lock;
+
+import capability.Capability;
+import capability.CapabilityKey;
+import core.DeviceProperty;
+import core.DeviceType;
 import core.Room;
 import core.SmartHomeController;
+import tracing.Span;
+import tracing.Tracer;
 
 /**
  * Abstract base class for all smart home devices
  */
 public abstract class Device {
+    private static final AtomicLongFieldUpdater<Device> VERSION =
+        AtomicLongFieldUpdater.newUpdater(Device.class, "version");
+    
     protected String name;
     protected boolean isOn;
     protected Room room;
+    private int id = -1;
+    // Bumped on every state change; transactions use it to detect concurrent changes
+    private volatile long version;
+    // Attached capabilities indexed by CapabilityKey.getIndex(); null until the first attach
+    private volatile Capability[] capabilities;
     
     /**
      * Creates a new device
@@ -30,6 +48,40 @@ public abstract class Device {
         return name;
     }
     
+    /**
+     * Gets the dense per-home device id
+     * @return the id, or -1 until the device is added to a room
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * Sets the dense per-home device id; used by SmartHomeController.registerDevice
+     * @param id the id
+     * @throws IllegalStateException if the device already has an id
+     */
+    public void assignId(int id) {
+        if (this.id >= 0) {
+            throw new IllegalStateException(getDescription() + " already has id " + this.id);
+        }
+        this.id = id;
+    }
+    
+    /**
+     * Gets the type of the device
+     * @return the device type
+     */
+    public abstract DeviceType getType();
+    
+    /**
+     * Gets the name of the device's type, which also tells plugin types apart
+     * @return the type name, e.g. "LIGHT" or "BLIND"
+     */
+    public String getTypeName() {
+        return getType().name();
+    }
+    
     /**
      * Gets the room where the device is located
      * @return the room
@@ -38,6 +90,44 @@ public abstract class Device {
         return room;
     }
     
+    /**
+     * Gets the controller of the home this device belongs to
+     * @return the home's controller
+     */
+    public SmartHomeController getController() {
+        return getRoom().getController();
+    }
+    
+    /**
+     * Gets the state version, which increases with every change to the device's state
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Takes the room's state lock for a change, so that the change never lands in the
+     * middle of a transaction committing to the room; release it with unlock()
+     * @return the held lock
+     */
+    protected final Lock lockState() {
+        Lock lock = getController().roomStateLock(getRoom());
+        lock.lock();
+        return lock;
+    }
+    
+    /**
+     * Records a state change: bumps the version and notifies the home's state observers
+     * @param property the property that changed
+     * @param oldValue the previous value
+     * @param newValue the new value
+     */
+    protected void stateChanged(DeviceProperty property, double oldValue, double newValue) {
+        VERSION.incrementAndGet(this);
+        getController().notifyStateChanged(this, property, oldValue, newValue);
+    }
+    
     /**
      * Checks if the device is on
      * @return true if the device is on, false otherwise
@@ -50,23 +140,43 @@ public abstract class Device {
      * Turns on the device
      */
     public void turnOn() {
-        if (!isOn) {
-            isOn = true;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " turned ON"
-            );
-        }
+        setPower(true, true);
     }
     
     /**
      * Turns off the device
      */
     public void turnOff() {
-        if (isOn) {
-            isOn = false;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " turned OFF"
-            );
+        setPower(false, true);
+    }
+    
+    /**
+     * Turns the device on or off, optionally without a text event (used for batches)
+     * @param on true to turn on
+     * @param announce true to notify system observers
+     */
+    public void setPower(boolean on, boolean announce) {
+        Lock lock = lockState();
+        try {
+            if (isOn != on) {
+                Span span = Tracer.span("Device.setPower", this);
+                try {
+                    isOn = on;
+                    if (announce) {
+                        getController().notifyObservers(
+                            getDescription() + (on ? " turned ON" : " turned OFF")
+                        );
+                    }
+                    stateChanged(DeviceProperty.POWER, on ? 0 : 1, on ? 1 : 0);
+                    if (capabilities != null) {
+                        firePowerChanged(on);
+                    }
+                } finally {
+                    span.close();
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -86,6 +196,79 @@ public abstract class Device {
      * @return a string describing the device
      */
     public String getDescription() {
-        return room.getName() + " " + name;
+        String description = room.getName() + " " + name;
+        Capability[] current = capabilities;
+        if (current != null) {
+            for (CapabilityKey<?> key : CapabilityKey.inOrder()) {
+                int index = key.getIndex();
+                if (index < current.length && current[index] != null) {
+                    description = current[index].describe(description);
+                }
+            }
+        }
+        return description;
+    }
+    
+    /**
+     * Attaches a capability, replacing any capability with the same key
+     * @param capability the capability to attach
+     */
+    public synchronized void attach(Capability capability) {
+        int index = capability.getKey().getIndex();
+        Capability[] current = capabilities;
+        Capability[] updated = current == null
+            ? new Capability[index + 1]
+            : Arrays.copyOf(current, Math.max(current.length, index + 1));
+        updated[index] = capability;
+        // Publish a new array so readers never see a half-updated one
+        capabilities = updated;
+    }
+    
+    /**
+     * Detaches a capability
+     * @param key the capability key
+     */
+    public synchronized void detach(CapabilityKey<?> key) {
+        Capability[] current = capabilities;
+        if (current != null && key.getIndex() < current.length) {
+            Capability[] updated = current.clone();
+            updated[key.getIndex()] = null;
+            capabilities = updated;
+        }
+    }
+    
+    /**
+     * Gets an attached capability
+     * @param key the capability key
+     * @return the capability, or null if not attached
+     */
+    public <T extends Capability> T getCapability(CapabilityKey<T> key) {
+        Capability[] current = capabilities;
+        if (current == null || key.getIndex() >= current.length) {
+            return null;
+        }
+        return key.getType().cast(current[key.getIndex()]);
+    }
+    
+    /**
+     * Checks whether a capability is attached
+     * @param key the capability key
+     * @return true if attached
+     */
+    public boolean hasCapability(CapabilityKey<?> key) {
+        return getCapability(key) != null;
+    }
+    
+    private void firePowerChanged(boolean on) {
+        for (Capability capability : capabilities) {
+            if (capability != null) {
+                Span span = Tracer.span("Capability.powerChanged", capability.getClass());
+                try {
+                    capability.powerChanged(this, on);
+                } finally {
+                    span.close();
+                }
+            }
+        }
     }
 }
\ No newline at end of file
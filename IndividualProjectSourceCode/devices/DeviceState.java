@@ -0,0 +1,130 @@
+package devices;
+
+/**
+ * Immutable snapshot of a device's observable state.
+ * Fields that do not apply to the device type hold neutral values
+ * (brightness -1, temperature NaN, locked and recording false).
+ */
+public class DeviceState {
+    private final boolean on;
+    private final int brightness;
+    private final float temperature;
+    private final boolean locked;
+    private final boolean recording;
+    
+    public DeviceState(boolean on, int brightness, float temperature, boolean locked, boolean recording) {
+        this.on = on;
+        this.brightness = brightness;
+        this.temperature = temperature;
+        this.locked = locked;
+        this.recording = recording;
+    }
+    
+    /**
+     * Captures the current state of a device
+     * @param device the device to read
+     * @return a snapshot of its state
+     */
+    public static DeviceState of(Device device) {
+        return new DeviceState(
+            device.isOn(),
+            device instanceof Light ? ((Light) device).getBrightness() : -1,
+            device instanceof Thermostat ? ((Thermostat) device).getTemperature() : Float.NaN,
+            device instanceof Door && ((Door) device).isLocked(),
+            device instanceof SecurityCamera && ((SecurityCamera) device).isRecording()
+        );
+    }
+    
+    public boolean isOn() {
+        return on;
+    }
+    
+    public int getBrightness() {
+        return brightness;
+    }
+    
+    public float getTemperature() {
+        return temperature;
+    }
+    
+    public boolean isLocked() {
+        return locked;
+    }
+    
+    public boolean isRecording() {
+        return recording;
+    }
+    
+    /**
+     * Returns a copy with a different on/off state
+     */
+    public DeviceState withOn(boolean on) {
+        return new DeviceState(on, brightness, temperature, locked, recording);
+    }
+    
+    /**
+     * Returns a copy with a different brightness
+     */
+    public DeviceState withBrightness(int brightness) {
+        return new DeviceState(on, brightness, temperature, locked, recording);
+    }
+    
+    /**
+     * Returns a copy with a different temperature
+     */
+    public DeviceState withTemperature(float temperature) {
+        return new DeviceState(on, brightness, temperature, locked, recording);
+    }
+    
+    /**
+     * Returns a copy with a different lock state
+     */
+    public DeviceState withLocked(boolean locked) {
+        return new DeviceState(on, brightness, temperature, locked, recording);
+    }
+    
+    /**
+     * Returns a copy with a different recording state
+     */
+    public DeviceState withRecording(boolean recording) {
+        return new DeviceState(on, brightness, temperature, locked, recording);
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof DeviceState)) {
+            return false;
+        }
+        DeviceState state = (DeviceState) other;
+        return on == state.on && brightness == state.brightness
+            && Float.compare(temperature, state.temperature) == 0
+            && locked == state.locked && recording == state.recording;
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = Boolean.hashCode(on);
+        hash = 31 * hash + brightness;
+        hash = 31 * hash + Float.hashCode(temperature);
+        hash = 31 * hash + Boolean.hashCode(locked);
+        return 31 * hash + Boolean.hashCode(recording);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(on ? "ON" : "OFF");
+        if (brightness >= 0) {
+            text.append(" brightness=").append(brightness);
+        }
+        if (!Float.isNaN(temperature)) {
+            text.append(" temperature=").append(temperature);
+        }
+        if (locked) {
+            text.append(" locked");
+        }
+        if (recording) {
+            text.append(" recording");
+        }
+        return text.toString();
+    }
+}
@@ -1,7 +1,12 @@
 package devices;
 
+import java.util.concurrent.locks.Lock;
+
+import core.DeviceProperty;
+import core.DeviceType;
 import core.Room;
-import core.SmartHomeController;
+import tracing.Span;
+import tracing.Tracer;
 /**
  * Smart door device
  */
@@ -13,21 +18,43 @@ public class Door extends Device {
         this.isLocked = true; // Default to locked
     }
     
+    @Override
+    public DeviceType getType() {
+        return DeviceType.DOOR;
+    }
+    
     public void lock() {
-        if (!isLocked) {
-            isLocked = true;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " locked"
-            );
-        }
+        setLocked(true, true);
     }
     
     public void unlock() {
-        if (isLocked) {
-            isLocked = false;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " unlocked"
-            );
+        setLocked(false, true);
+    }
+    
+    /**
+     * Locks or unlocks the door, optionally without a text event (used for batches)
+     * @param locked true to lock
+     * @param announce true to notify system observers
+     */
+    public void setLocked(boolean locked, boolean announce) {
+        Lock lock = lockState();
+        try {
+            if (isLocked != locked) {
+                Span span = Tracer.span("Door.setLocked", this);
+                try {
+                    isLocked = locked;
+                    if (announce) {
+                        getController().notifyObservers(
+                            getDescription() + (locked ? " locked" : " unlocked")
+                        );
+                    }
+                    stateChanged(DeviceProperty.LOCK, locked ? 0 : 1, locked ? 1 : 0);
+                } finally {
+                    span.close();
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
     
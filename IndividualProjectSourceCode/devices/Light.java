@@ -1,7 +1,12 @@
 package devices;
 
+import java.util.concurrent.locks.Lock;
+
+import core.DeviceProperty;
+import core.DeviceType;
 import core.Room;
-import core.SmartHomeController;
+import tracing.Span;
+import tracing.Tracer;
 
 /**
  * Smart light device
@@ -14,13 +19,40 @@ public class Light extends Device {
         this.brightness = 100; // Default to full brightness
     }
     
+    @Override
+    public DeviceType getType() {
+        return DeviceType.LIGHT;
+    }
+    
     public void setBrightness(int level) {
-        if (level >= 0 && level <= 100) {
-            int oldBrightness = this.brightness;
-            this.brightness = level;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " brightness changed from " + oldBrightness + "% to " + level + "%"
-            );
+        setBrightness(level, true);
+    }
+    
+    /**
+     * Sets the brightness, optionally without a text event (used for the steps of a fade)
+     * @param level the brightness from 0 to 100
+     * @param announce true to notify system observers
+     */
+    public void setBrightness(int level, boolean announce) {
+        Lock lock = lockState();
+        try {
+            if (level >= 0 && level <= 100) {
+                Span span = Tracer.span("Light.setBrightness", this);
+                try {
+                    int oldBrightness = this.brightness;
+                    this.brightness = level;
+                    if (announce) {
+                        getController().notifyObservers(
+                            getDescription() + " brightness changed from " + oldBrightness + "% to " + level + "%"
+                        );
+                    }
+                    stateChanged(DeviceProperty.BRIGHTNESS, oldBrightness, level);
+                } finally {
+                    span.close();
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -1,8 +1,13 @@
 
 package devices;
 
+import java.util.concurrent.locks.Lock;
+
+import core.DeviceProperty;
+import core.DeviceType;
 import core.Room;
-import core.SmartHomeController;
+import tracing.Span;
+import tracing.Tracer;
 /**
  * Smart security camera device
  */
@@ -14,21 +19,43 @@ public class SecurityCamera extends Device {
         this.isRecording = false;
     }
     
+    @Override
+    public DeviceType getType() {
+        return DeviceType.SECURITY_CAMERA;
+    }
+    
     public void startRecording() {
-        if (!isRecording) {
-            isRecording = true;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " started recording"
-            );
-        }
+        setRecording(true, true);
     }
     
     public void stopRecording() {
-        if (isRecording) {
-            isRecording = false;
-            SmartHomeController.getInstance().notifyObservers(
-                getDescription() + " stopped recording"
-            );
+        setRecording(false, true);
+    }
+    
+    /**
+     * Starts or stops recording, optionally without a text event (used for batches)
+     * @param recording true to record
+     * @param announce true to notify system observers
+     */
+    public void setRecording(boolean recording, boolean announce) {
+        Lock lock = lockState();
+        try {
+            if (isRecording != recording) {
+                Span span = Tracer.span("SecurityCamera.setRecording", this);
+                try {
+                    isRecording = recording;
+                    if (announce) {
+                        getController().notifyObservers(
+                            getDescription() + (recording ? " started recording" : " stopped recording")
+                        );
+                    }
+                    stateChanged(DeviceProperty.RECORDING, recording ? 0 : 1, recording ? 1 : 0);
+                } finally {
+                    span.close();
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -1,7 +1,12 @@
 package devices;
 
+import java.util.concurrent.locks.Lock;
+
+import core.DeviceProperty;
+import core.DeviceType;
 import core.Room;
-import core.SmartHomeController;
+import tracing.Span;
+import tracing.Tracer;
 /**
  * Smart thermostat device
  */
@@ -13,12 +18,39 @@ public class Thermostat extends Device {
         this.temperature = 22.0f; // Default temperature in Celsius
     }
     
+    @Override
+    public DeviceType getType() {
+        return DeviceType.THERMOSTAT;
+    }
+    
     public void setTemperature(float temp) {
-        float oldTemp = this.temperature;
-        this.temperature = temp;
-        SmartHomeController.getInstance().notifyObservers(
-            getDescription() + " temperature changed from " + oldTemp + "°C to " + temp + "°C"
-        );
+        setTemperature(temp, true);
+    }
+    
+    /**
+     * Sets the temperature, optionally without a text event (used for the steps of a ramp)
+     * @param temp the temperature in °C
+     * @param announce true to notify system observers
+     */
+    public void setTemperature(float temp, boolean announce) {
+        Lock lock = lockState();
+        try {
+            Span span = Tracer.span("Thermostat.setTemperature", this);
+            try {
+                float oldTemp = this.temperature;
+                this.temperature = temp;
+                if (announce) {
+                    getController().notifyObservers(
+                        getDescription() + " temperature changed from " + oldTemp + "°C to " + temp + "°C"
+                    );
+                }
+                stateChanged(DeviceProperty.TEMPERATURE, oldTemp, temp);
+            } finally {
+                span.close();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
     
     public float getTemperature() {
@@ -3,25 +3,43 @@ package factory;
 import core.DeviceType;
 import core.Room;
 import devices.*;
+import plugin.DeviceTypePlugin;
+import plugin.DeviceTypeRegistry;
 
 /**
- * Concrete implementation of the DeviceFactory (Factory Pattern)
+ * Concrete implementation of the DeviceFactory (Factory Pattern).
+ * Devices are created by the device types in a DeviceTypeRegistry, so plugin types
+ * need no changes here.
  */
 public class ConcreteDeviceFactory implements DeviceFactory {
+    private final DeviceTypeRegistry registry;
+    
+    /**
+     * Creates a factory for the types in the default registry
+     */
+    public ConcreteDeviceFactory() {
+        this(DeviceTypeRegistry.getDefault());
+    }
+    
+    /**
+     * Creates a factory for the types in a registry
+     * @param registry the device types
+     */
+    public ConcreteDeviceFactory(DeviceTypeRegistry registry) {
+        this.registry = registry;
+    }
     
     @Override
     public Device createDevice(DeviceType type, String name, Room room) {
-        switch (type) {
-            case LIGHT:
-                return new Light(name, room);
-            case THERMOSTAT:
-                return new Thermostat(name, room);
-            case DOOR:
-                return new Door(name, room);
-            case SECURITY_CAMERA:
-                return new SecurityCamera(name, room);
-            default:
-                throw new IllegalArgumentException("Unknown device type: " + type);
+        DeviceTypePlugin plugin = type == DeviceType.OTHER ? null : registry.getPlugin(type);
+        if (plugin == null) {
+            throw new IllegalArgumentException("Unknown device type: " + type);
         }
+        return plugin.createDevice(name, room);
+    }
+    
+    @Override
+    public Device createDevice(String typeName, String name, Room room) {
+        return registry.createDevice(typeName, name, room);
     }
 }
\ No newline at end of file
@@ -16,4 +16,20 @@ public interface DeviceFactory {
      * @return the created device
      */
     Device createDevice(DeviceType type, String name, Room room);
+    
+    /**
+     * Creates a new device of a type given by name, which may be a plugin type
+     * @param typeName the name of the type, e.g. "LIGHT" or "BLIND"
+     * @param name the name for the device
+     * @param room the room where the device will be located
+     * @return the created device
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    default Device createDevice(String typeName, String name, Room room) {
+        try {
+            return createDevice(DeviceType.valueOf(typeName.toUpperCase()), name, room);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown device type: " + typeName);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package group;
+
+import devices.Device;
+
+/**
+ * A named, possibly overlapping set of devices such as "Exterior Doors" or "Lobby Lights".
+ * Membership is a compressed bitmap of device ids; it is guarded by the registry's lock.
+ */
+public class DeviceGroup {
+    private final GroupRegistry registry;
+    private final String name;
+    private final DeviceSet members;
+    
+    DeviceGroup(GroupRegistry registry, String name) {
+        this.registry = registry;
+        this.name = name;
+        this.members = new DeviceSet();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Adds a device of the registry's home
+     * @param device the device
+     * @return true if it was not a member yet
+     * @throws IllegalArgumentException if the device belongs to another home or has no id
+     */
+    public boolean add(Device device) {
+        registry.checkDevice(device);
+        synchronized (registry) {
+            return members.add(device.getId());
+        }
+    }
+    
+    /**
+     * Removes a device
+     * @param device the device
+     * @return true if it was a member
+     */
+    public boolean remove(Device device) {
+        synchronized (registry) {
+            return members.remove(device.getId());
+        }
+    }
+    
+    public boolean contains(Device device) {
+        synchronized (registry) {
+            return members.contains(device.getId());
+        }
+    }
+    
+    /**
+     * Counts the members
+     * @return the number of devices in the group
+     */
+    public int size() {
+        synchronized (registry) {
+            return members.cardinality();
+        }
+    }
+    
+    /**
+     * Gets the members
+     * @return a copy of the member ids
+     */
+    public DeviceSet getMembers() {
+        synchronized (registry) {
+            return members.copy();
+        }
+    }
+    
+    // The live member set, read by the registry while it holds its lock
+    DeviceSet members() {
+        return members;
+    }
+    
+    @Override
+    public String toString() {
+        return name + " (" + size() + " devices)";
+    }
+}
@@ -0,0 +1,546 @@
+package group;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed bitmap of dense device ids.
+ *
+ * Ids are split into chunks of 65536 by their high 16 bits. A chunk with few members is
+ * stored as a sorted array of its low 16 bits (2 bytes per member); a chunk with more
+ * than 4096 members switches to a plain 8 KB bitmap. Small groups over a large id space
+ * therefore cost little memory, and dense groups cost at most one bit per id.
+ * Set operations work chunk by chunk and always return a new set. Not thread-safe.
+ */
+public class DeviceSet {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+    
+    // Chunk keys in ascending order, with each chunk's container
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+    
+    /**
+     * Creates an empty set
+     */
+    public DeviceSet() {
+        this.keys = new char[4];
+        this.containers = new Container[4];
+    }
+    
+    /**
+     * Creates a set holding the given ids
+     * @param ids the device ids
+     * @return the new set
+     */
+    public static DeviceSet of(int... ids) {
+        DeviceSet set = new DeviceSet();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+    
+    /**
+     * Adds an id
+     * @param id a non-negative device id
+     * @return true if the id was not in the set
+     */
+    public boolean add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Device ids are non-negative: " + id);
+        }
+        char key = (char) (id >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayContainer());
+        }
+        int before = containers[i].cardinality;
+        containers[i] = containers[i].add((char) id);
+        return containers[i].cardinality != before;
+    }
+    
+    /**
+     * Removes an id
+     * @param id the device id
+     * @return true if the id was in the set
+     */
+    public boolean remove(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int i = find((char) (id >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        int before = containers[i].cardinality;
+        containers[i] = containers[i].remove((char) id);
+        boolean removed = containers[i].cardinality != before;
+        if (containers[i].cardinality == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        }
+        return removed;
+    }
+    
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int i = find((char) (id >>> 16));
+        return i >= 0 && containers[i].contains((char) id);
+    }
+    
+    /**
+     * Counts the members
+     * @return the number of ids in the set
+     */
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += containers[i].cardinality;
+        }
+        return count;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Calls an action for every id in ascending order, without boxing
+     * @param action the action
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+    
+    /**
+     * Gets the ids as an array
+     * @return the ids in ascending order
+     */
+    public int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int[] next = new int[1];
+        forEach(id -> ids[next[0]++] = id);
+        return ids;
+    }
+    
+    /**
+     * Estimates the memory the set holds, to compare with a plain bitmap
+     * @return the approximate size in bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = keys.length * 2L + containers.length * 8L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Computes the union of two sets
+     * @param other the other set
+     * @return a new set with the ids in either set
+     */
+    public DeviceSet or(DeviceSet other) {
+        DeviceSet result = new DeviceSet();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], Container.or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the intersection of two sets
+     * @param other the other set
+     * @return a new set with the ids in both sets
+     */
+    public DeviceSet and(DeviceSet other) {
+        DeviceSet result = new DeviceSet();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (other.keys[j] < keys[i]) {
+                j++;
+            } else {
+                Container both = Container.and(containers[i], other.containers[j]);
+                if (both.cardinality > 0) {
+                    result.append(keys[i], both);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the difference of two sets
+     * @param other the ids to leave out
+     * @return a new set with the ids of this set that are not in the other
+     */
+    public DeviceSet andNot(DeviceSet other) {
+        DeviceSet result = new DeviceSet();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container rest = j < other.size && other.keys[j] == keys[i]
+                ? Container.andNot(containers[i], other.containers[j])
+                : containers[i].copy();
+            if (rest.cardinality > 0) {
+                result.append(keys[i], rest);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Copies the set
+     * @return a new set with the same ids
+     */
+    public DeviceSet copy() {
+        return or(new DeviceSet());
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof DeviceSet)) {
+            return false;
+        }
+        return Arrays.equals(toArray(), ((DeviceSet) other).toArray());
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+    
+    @Override
+    public String toString() {
+        return "DeviceSet[" + cardinality() + " ids, " + size + " chunks]";
+    }
+    
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+    
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+    
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+    
+    /**
+     * The members of one chunk of 65536 ids
+     */
+    private abstract static class Container {
+        int cardinality;
+        
+        // add and remove return the container to keep, which may have changed representation
+        abstract Container add(char low);
+        
+        abstract Container remove(char low);
+        
+        abstract boolean contains(char low);
+        
+        abstract void forEach(int high, IntConsumer action);
+        
+        abstract Container copy();
+        
+        abstract long sizeInBytes();
+        
+        static Container or(Container a, Container b) {
+            if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+                ArrayContainer x = (ArrayContainer) a;
+                ArrayContainer y = (ArrayContainer) b;
+                if (x.cardinality + y.cardinality <= ARRAY_LIMIT) {
+                    return x.merge(y);
+                }
+            }
+            BitmapContainer result = BitmapContainer.from(a);
+            if (b instanceof BitmapContainer) {
+                long[] words = ((BitmapContainer) b).words;
+                for (int w = 0; w < WORDS; w++) {
+                    result.words[w] |= words[w];
+                }
+                result.recount();
+            } else {
+                ArrayContainer y = (ArrayContainer) b;
+                for (int k = 0; k < y.cardinality; k++) {
+                    result.add(y.values[k]);
+                }
+            }
+            return result.shrink();
+        }
+        
+        static Container and(Container a, Container b) {
+            if (a instanceof ArrayContainer) {
+                return ((ArrayContainer) a).filter(b, true);
+            }
+            if (b instanceof ArrayContainer) {
+                return ((ArrayContainer) b).filter(a, true);
+            }
+            BitmapContainer result = BitmapContainer.from(a);
+            long[] words = ((BitmapContainer) b).words;
+            for (int w = 0; w < WORDS; w++) {
+                result.words[w] &= words[w];
+            }
+            result.recount();
+            return result.shrink();
+        }
+        
+        static Container andNot(Container a, Container b) {
+            if (a instanceof ArrayContainer) {
+                return ((ArrayContainer) a).filter(b, false);
+            }
+            BitmapContainer result = BitmapContainer.from(a);
+            if (b instanceof BitmapContainer) {
+                long[] words = ((BitmapContainer) b).words;
+                for (int w = 0; w < WORDS; w++) {
+                    result.words[w] &= ~words[w];
+                }
+                result.recount();
+            } else {
+                ArrayContainer y = (ArrayContainer) b;
+                for (int k = 0; k < y.cardinality; k++) {
+                    result.clear(y.values[k]);
+                }
+            }
+            return result.shrink();
+        }
+    }
+    
+    /**
+     * Sorted array of the low 16 bits of up to 4096 members
+     */
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        
+        ArrayContainer() {
+            this.values = new char[4];
+        }
+        
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+        
+        @Override
+        Container add(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                BitmapContainer bitmap = BitmapContainer.from(this);
+                bitmap.add(low);
+                return bitmap;
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+            return this;
+        }
+        
+        @Override
+        Container remove(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+        
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+        
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int k = 0; k < cardinality; k++) {
+                action.accept(high | values[k]);
+            }
+        }
+        
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+        
+        @Override
+        long sizeInBytes() {
+            return 16 + values.length * 2L;
+        }
+        
+        ArrayContainer merge(ArrayContainer other) {
+            char[] merged = new char[Math.max(cardinality + other.cardinality, 1)];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < cardinality && j < other.cardinality) {
+                char x = values[i];
+                char y = other.values[j];
+                if (x <= y) {
+                    i++;
+                    j += x == y ? 1 : 0;
+                    merged[n++] = x;
+                } else {
+                    j++;
+                    merged[n++] = y;
+                }
+            }
+            while (i < cardinality) {
+                merged[n++] = values[i++];
+            }
+            while (j < other.cardinality) {
+                merged[n++] = other.values[j++];
+            }
+            return new ArrayContainer(merged, n);
+        }
+        
+        // Keeps the members that are (keep = true) or are not (keep = false) in the other container
+        ArrayContainer filter(Container other, boolean keep) {
+            char[] kept = new char[Math.max(cardinality, 1)];
+            int n = 0;
+            for (int k = 0; k < cardinality; k++) {
+                if (other.contains(values[k]) == keep) {
+                    kept[n++] = values[k];
+                }
+            }
+            return new ArrayContainer(kept, n);
+        }
+    }
+    
+    /**
+     * Plain 65536-bit bitmap for chunks with more than 4096 members
+     */
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+        
+        static BitmapContainer from(Container container) {
+            if (container instanceof BitmapContainer) {
+                BitmapContainer bitmap = (BitmapContainer) container;
+                return new BitmapContainer(bitmap.words.clone(), bitmap.cardinality);
+            }
+            BitmapContainer bitmap = new BitmapContainer(new long[WORDS], 0);
+            ArrayContainer array = (ArrayContainer) container;
+            for (int k = 0; k < array.cardinality; k++) {
+                bitmap.add(array.values[k]);
+            }
+            return bitmap;
+        }
+        
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+        
+        @Override
+        Container remove(char low) {
+            clear(low);
+            // Switch back with some slack so a set hovering at the limit does not flip every call
+            return cardinality < ARRAY_LIMIT / 2 ? shrink() : this;
+        }
+        
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+        
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+        
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+        
+        @Override
+        long sizeInBytes() {
+            return 16 + WORDS * 8L;
+        }
+        
+        void clear(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                words[low >>> 6] &= ~bit;
+                cardinality--;
+            }
+        }
+        
+        void recount() {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            cardinality = count;
+        }
+        
+        // Returns an array container when the members fit in one
+        Container shrink() {
+            if (cardinality > ARRAY_LIMIT) {
+                return this;
+            }
+            char[] values = new char[Math.max(cardinality, 1)];
+            int[] n = new int[1];
+            forEach(0, id -> values[n[0]++] = (char) id);
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package group;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import command.DeviceCommand;
+import core.SmartHomeController;
+import devices.Device;
+
+/**
+ * Named device groups of one home.
+ *
+ * Groups may overlap and cut across rooms. Their membership is kept as compressed bitmaps
+ * of dense device ids, so unions, intersections and differences for ad-hoc targeting are
+ * cheap even with thousands of groups over hundreds of thousands of devices. Broadcasts
+ * walk the set bits of the target and send one batch of commands.
+ */
+public class GroupRegistry {
+    private final SmartHomeController home;
+    private final Map<String, DeviceGroup> groups;
+    
+    /**
+     * Creates an empty registry
+     * @param home the home whose devices are grouped
+     */
+    public GroupRegistry(SmartHomeController home) {
+        this.home = home;
+        this.groups = new LinkedHashMap<>();
+    }
+    
+    /**
+     * Creates a group
+     * @param name the group name
+     * @return the new, empty group
+     * @throws IllegalArgumentException if a group with this name exists
+     */
+    public synchronized DeviceGroup createGroup(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Group name must not be empty");
+        }
+        if (groups.containsKey(name)) {
+            throw new IllegalArgumentException("Group already exists: " + name);
+        }
+        DeviceGroup group = new DeviceGroup(this, name);
+        groups.put(name, group);
+        return group;
+    }
+    
+    /**
+     * Gets a group, creating it if needed
+     * @param name the group name
+     * @return the group
+     */
+    public synchronized DeviceGroup getOrCreateGroup(String name) {
+        DeviceGroup group = groups.get(name);
+        return group != null ? group : createGroup(name);
+    }
+    
+    /**
+     * Gets a group by name
+     * @param name the group name
+     * @return the group or null if not found
+     */
+    public synchronized DeviceGroup getGroup(String name) {
+        return groups.get(name);
+    }
+    
+    /**
+     * Deletes a group; its devices are not affected
+     * @param name the group name
+     * @return true if the group existed
+     */
+    public synchronized boolean removeGroup(String name) {
+        return groups.remove(name) != null;
+    }
+    
+    public synchronized List<String> getGroupNames() {
+        return new ArrayList<>(groups.keySet());
+    }
+    
+    /**
+     * Gets the groups a device belongs to
+     * @param device the device
+     * @return the groups, in creation order
+     */
+    public synchronized List<DeviceGroup> getGroupsOf(Device device) {
+        List<DeviceGroup> result = new ArrayList<>();
+        for (DeviceGroup group : groups.values()) {
+            if (group.members().contains(device.getId())) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the devices in any of the named groups
+     * @param names the group names
+     * @return a new set
+     * @throws IllegalArgumentException if a group does not exist
+     */
+    public synchronized DeviceSet union(String... names) {
+        DeviceSet result = new DeviceSet();
+        for (String name : names) {
+            result = result.or(members(name));
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the devices in all of the named groups
+     * @param names the group names; at least one
+     * @return a new set
+     * @throws IllegalArgumentException if a group does not exist
+     */
+    public synchronized DeviceSet intersect(String... names) {
+        if (names.length == 0) {
+            throw new IllegalArgumentException("At least one group is needed");
+        }
+        DeviceSet result = members(names[0]).copy();
+        for (int i = 1; i < names.length && !result.isEmpty(); i++) {
+            result = result.and(members(names[i]));
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the devices in one group but not in another
+     * @param name the group to start from
+     * @param excluded the group whose devices are left out
+     * @return a new set
+     * @throws IllegalArgumentException if a group does not exist
+     */
+    public synchronized DeviceSet difference(String name, String excluded) {
+        return members(name).andNot(members(excluded));
+    }
+    
+    /**
+     * Builds one command for every device in a set
+     * @param target the device ids
+     * @param action the action for each device
+     * @param value the action's value, if it takes one
+     * @return the commands, in device id order
+     */
+    public List<DeviceCommand> commandsFor(DeviceSet target, DeviceCommand.Action action, double value) {
+        List<DeviceCommand> commands = new ArrayList<>(target.cardinality());
+        target.forEach(id -> {
+            Device device = home.getDeviceById(id);
+            if (device != null) {
+                commands.add(new DeviceCommand(device, action, value));
+            }
+        });
+        return commands;
+    }
+    
+    /**
+     * Sends one action to every device in a set as a single batch
+     * @param target the device ids, e.g. from union or difference
+     * @param action the action for each device
+     * @param value the action's value, if it takes one
+     * @return the commands that failed (empty if all succeeded)
+     */
+    public List<DeviceCommand> broadcast(DeviceSet target, DeviceCommand.Action action, double value) {
+        return home.dispatch(commandsFor(target, action, value));
+    }
+    
+    /**
+     * Sends one action to every device of a group
+     * @param name the group name
+     * @param action the action for each device
+     * @param value the action's value, if it takes one
+     * @return the commands that failed (empty if all succeeded)
+     * @throws IllegalArgumentException if the group does not exist
+     */
+    public List<DeviceCommand> broadcast(String name, DeviceCommand.Action action, double value) {
+        return broadcast(union(name), action, value);
+    }
+    
+    void checkDevice(Device device) {
+        if (device.getRoom() == null || device.getController() != home || device.getId() < 0) {
+            throw new IllegalArgumentException(device.getName() + " is not a device of home " + home.getHomeId());
+        }
+    }
+    
+    private DeviceSet members(String name) {
+        DeviceGroup group = groups.get(name);
+        if (group == null) {
+            throw new IllegalArgumentException("No such group: " + name);
+        }
+        return group.members();
+    }
+}
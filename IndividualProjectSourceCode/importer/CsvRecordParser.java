@@ -0,0 +1,104 @@
+package importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses CSV inventory lines. Columns are mapped by the header row:
+ * room,type,name[,decorators,on,brightness,temperature,locked,recording]
+ * Fields may be double-quoted; a doubled quote inside a quoted field is a literal quote.
+ */
+public class CsvRecordParser implements RecordParser {
+    private static final String[] COLUMNS = {
+        "room", "type", "name", "decorators", "on", "brightness", "temperature", "locked", "recording"
+    };
+    
+    // Position of each known column in the file, or -1 if absent
+    private final int[] positions;
+    
+    /**
+     * Creates a parser from the header line
+     * @param header the CSV header row
+     * @throws IllegalArgumentException if a required column is missing or a column is unknown
+     */
+    public CsvRecordParser(String header) {
+        positions = new int[COLUMNS.length];
+        java.util.Arrays.fill(positions, -1);
+        List<String> names = split(header);
+        for (int i = 0; i < names.size(); i++) {
+            String column = names.get(i).trim().toLowerCase();
+            int index = indexOfColumn(column);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown CSV column: " + column);
+            }
+            positions[index] = i;
+        }
+        for (int i = 0; i < 3; i++) {
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException("CSV header is missing column: " + COLUMNS[i]);
+            }
+        }
+    }
+    
+    @Override
+    public InventoryRecord parse(String line) {
+        if (line.trim().isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        List<String> fields = split(line);
+        return FieldValues.toRecord(
+            field(fields, 0), field(fields, 1), field(fields, 2), field(fields, 3),
+            field(fields, 4), field(fields, 5), field(fields, 6), field(fields, 7), field(fields, 8)
+        );
+    }
+    
+    private String field(List<String> fields, int column) {
+        int position = positions[column];
+        return position >= 0 && position < fields.size() ? fields.get(position) : null;
+    }
+    
+    private static int indexOfColumn(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Splits a CSV line into fields, honouring double quotes
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(COLUMNS.length);
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
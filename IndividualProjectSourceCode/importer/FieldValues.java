@@ -0,0 +1,114 @@
+package importer;
+
+import core.DeviceType;
+
+/**
+ * Converts raw inventory field text into a validated record
+ */
+class FieldValues {
+    static final String[] NO_DECORATORS = new String[0];
+    
+    private FieldValues() {
+    }
+    
+    /**
+     * Builds a record from raw field values; any optional value may be null or empty
+     */
+    static InventoryRecord toRecord(String room, String type, String name, String decorators,
+                                    String on, String brightness, String temperature,
+                                    String locked, String recording) {
+        if (isEmpty(room)) {
+            throw new IllegalArgumentException("Missing room");
+        }
+        if (isEmpty(name)) {
+            throw new IllegalArgumentException("Missing device name");
+        }
+        Integer level = isEmpty(brightness) ? null : parseInt("brightness", brightness);
+        if (level != null && (level < 0 || level > 100)) {
+            throw new IllegalArgumentException("Brightness must be between 0 and 100: " + level);
+        }
+        return new InventoryRecord(
+            room.trim(),
+            parseType(type),
+            name.trim(),
+            parseDecorators(decorators),
+            parseBoolean("on", on),
+            level,
+            isEmpty(temperature) ? null : parseFloat("temperature", temperature),
+            parseBoolean("locked", locked),
+            parseBoolean("recording", recording)
+        );
+    }
+    
+    static DeviceType parseType(String text) {
+        if (isEmpty(text)) {
+            throw new IllegalArgumentException("Missing device type");
+        }
+        String name = text.trim().toUpperCase().replace(' ', '_');
+        if (name.equals("CAMERA")) {
+            return DeviceType.SECURITY_CAMERA;
+        }
+        try {
+            return DeviceType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown device type: " + text);
+        }
+    }
+    
+    /**
+     * Parses a decorator list such as "motion|timer" (also accepts ';' or ',' as separator)
+     */
+    static String[] parseDecorators(String text) {
+        if (isEmpty(text)) {
+            return NO_DECORATORS;
+        }
+        String[] parts = text.split("[|;,]");
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = parts[i].trim().toLowerCase();
+            if (!parts[i].equals("motion") && !parts[i].equals("timer")) {
+                throw new IllegalArgumentException("Unknown decorator: " + parts[i]);
+            }
+        }
+        return parts;
+    }
+    
+    static Boolean parseBoolean(String field, String text) {
+        if (isEmpty(text)) {
+            return null;
+        }
+        switch (text.trim().toLowerCase()) {
+            case "true":
+            case "yes":
+            case "on":
+            case "1":
+                return Boolean.TRUE;
+            case "false":
+            case "no":
+            case "off":
+            case "0":
+                return Boolean.FALSE;
+            default:
+                throw new IllegalArgumentException("Invalid " + field + " value: " + text);
+        }
+    }
+    
+    private static int parseInt(String field, String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + " value: " + text);
+        }
+    }
+    
+    private static float parseFloat(String field, String text) {
+        try {
+            return Float.parseFloat(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + " value: " + text);
+        }
+    }
+    
+    static boolean isEmpty(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+}
@@ -0,0 +1,85 @@
+package importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Running statistics for an inventory import
+ */
+public class ImportResult {
+    private static final int MAX_RETAINED_ERRORS = 1000;
+    
+    private long linesRead;
+    private long devicesImported;
+    private long roomsCreated;
+    private long errorCount;
+    private final List<String> errors;
+    private final long startNanos;
+    
+    ImportResult() {
+        errors = new ArrayList<>();
+        startNanos = System.nanoTime();
+    }
+    
+    void addLines(long count) {
+        linesRead += count;
+    }
+    
+    void addImported(long count) {
+        devicesImported += count;
+    }
+    
+    void addRoomCreated() {
+        roomsCreated++;
+    }
+    
+    /**
+     * Records an error; only the first errors are kept, but all are counted
+     */
+    void addError(long lineNumber, String message) {
+        errorCount++;
+        if (errors.size() < MAX_RETAINED_ERRORS) {
+            errors.add("line " + lineNumber + ": " + message);
+        }
+    }
+    
+    public long getLinesRead() {
+        return linesRead;
+    }
+    
+    public long getDevicesImported() {
+        return devicesImported;
+    }
+    
+    public long getRoomsCreated() {
+        return roomsCreated;
+    }
+    
+    public long getErrorCount() {
+        return errorCount;
+    }
+    
+    /**
+     * Gets the retained error messages (at most the first 1000)
+     * @return list of error messages with line numbers
+     */
+    public List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+    
+    /**
+     * Gets the elapsed time since the import started
+     * @return elapsed seconds
+     */
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+    
+    @Override
+    public String toString() {
+        double seconds = getElapsedSeconds();
+        return String.format("%d lines, %d devices imported, %d rooms created, %d errors in %.1f s (%.0f devices/s)",
+                linesRead, devicesImported, roomsCreated, errorCount, seconds,
+                seconds > 0 ? devicesImported / seconds : 0.0);
+    }
+}
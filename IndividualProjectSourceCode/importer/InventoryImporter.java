@@ -0,0 +1,346 @@
+package importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import capability.MotionSensorCapability;
+import capability.TimerCapability;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.Door;
+import devices.Light;
+import devices.SecurityCamera;
+import devices.Thermostat;
+import factory.DeviceFactory;
+
+/**
+ * Streams large device inventories (CSV or line-delimited JSON) into the controller.
+ * The file is read in fixed-size chunks; each chunk is parsed and its devices are built
+ * through the DeviceFactory in parallel, then inserted in one bulk update so observers
+ * receive a single summary notification per chunk instead of two events per device.
+ */
+public class InventoryImporter {
+    /**
+     * Supported inventory formats
+     */
+    public enum Format {
+        CSV,
+        JSON_LINES;
+        
+        /**
+         * Guesses the format from a file name (.csv, otherwise JSON lines)
+         * @param fileName the file name
+         * @return the guessed format
+         */
+        public static Format fromFileName(String fileName) {
+            return fileName.toLowerCase().endsWith(".csv") ? CSV : JSON_LINES;
+        }
+    }
+    
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+    
+    private final SmartHomeController controller;
+    private final DeviceFactory factory;
+    private final int threads;
+    private final int chunkSize;
+    private Consumer<ImportResult> progressListener;
+    
+    /**
+     * Creates an importer using the controller's factory and one thread per core
+     * @param controller the controller to import into
+     */
+    public InventoryImporter(SmartHomeController controller) {
+        this(controller, controller.getDeviceFactory(), Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Creates an importer
+     * @param controller the controller to import into
+     * @param factory the factory used to build devices
+     * @param threads the number of worker threads for parsing and building
+     * @param chunkSize the number of lines processed per chunk
+     */
+    public InventoryImporter(SmartHomeController controller, DeviceFactory factory, int threads, int chunkSize) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize must be positive");
+        }
+        this.controller = controller;
+        this.factory = factory;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * Sets a listener that receives the running statistics after every chunk
+     * @param listener the progress listener
+     */
+    public void setProgressListener(Consumer<ImportResult> listener) {
+        this.progressListener = listener;
+    }
+    
+    /**
+     * Imports an inventory file
+     * @param path the file to import
+     * @param format the file format
+     * @return the import statistics
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult importFile(Path path, Format format) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return importFrom(reader, format);
+        }
+    }
+    
+    /**
+     * Imports an inventory from a reader
+     * @param reader the inventory source
+     * @param format the inventory format
+     * @return the import statistics
+     * @throws IOException if reading fails
+     */
+    public ImportResult importFrom(BufferedReader reader, Format format) throws IOException {
+        ImportResult result = new ImportResult();
+        long lineNumber = 0;
+        
+        RecordParser parser;
+        if (format == Format.CSV) {
+            String header = reader.readLine();
+            if (header == null) {
+                return result;
+            }
+            lineNumber++;
+            result.addLines(1);
+            parser = new CsvRecordParser(header);
+        } else {
+            parser = new JsonLineRecordParser();
+        }
+        
+        ExecutorService workers = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            String[] lines = new String[chunkSize];
+            while (true) {
+                int size = 0;
+                String line;
+                while (size < chunkSize && (line = reader.readLine()) != null) {
+                    lines[size++] = line;
+                }
+                if (size == 0) {
+                    break;
+                }
+                importChunk(parser, lines, size, lineNumber + 1, result, workers);
+                lineNumber += size;
+                if (progressListener != null) {
+                    progressListener.accept(result);
+                }
+                if (size < chunkSize) {
+                    break;
+                }
+            }
+        } finally {
+            if (workers != null) {
+                workers.shutdown();
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Parses, builds and inserts one chunk of lines
+     */
+    private void importChunk(RecordParser parser, String[] lines, int size, long firstLine,
+                             ImportResult result, ExecutorService workers) {
+        result.addLines(size);
+        InventoryRecord[] records = new InventoryRecord[size];
+        String[] failures = new String[size];
+        
+        // Stage 1 (parallel): parse lines
+        forEachIndex(size, workers, i -> {
+            try {
+                records[i] = parser.parse(lines[i]);
+            } catch (RuntimeException e) {
+                failures[i] = e.getMessage();
+            }
+        });
+        
+        // Stage 2 (sequential): resolve rooms and reject duplicate names
+        Room[] rooms = new Room[size];
+        Set<String> namesInChunk = new HashSet<>();
+        controller.beginBulkUpdate();
+        try {
+            for (int i = 0; i < size; i++) {
+                InventoryRecord record = records[i];
+                if (record == null) {
+                    continue;
+                }
+                Room room = controller.getRoom(record.getRoom());
+                if (room == null) {
+                    room = controller.addRoom(record.getRoom());
+                    result.addRoomCreated();
+                }
+                if (room.getDevice(record.getName()) != null
+                        || !namesInChunk.add(record.getRoom() + '\u0000' + record.getName())) {
+                    failures[i] = "Duplicate device " + record.getRoom() + "/" + record.getName();
+                    records[i] = null;
+                    continue;
+                }
+                rooms[i] = room;
+            }
+            
+            // Stage 3 (parallel): build devices through the factory
+            Device[] devices = new Device[size];
+            forEachIndex(size, workers, i -> {
+                if (records[i] == null) {
+                    return;
+                }
+                try {
+                    devices[i] = factory.createDevice(records[i].getType(), records[i].getName(), rooms[i]);
+                } catch (RuntimeException e) {
+                    failures[i] = e.getMessage();
+                }
+            });
+            
+            // Stage 4 (sequential): insert, then apply initial state. The device is registered
+            // first so that its state changes carry its id and follow its DEVICE_ADDED event.
+            long imported = 0;
+            for (int i = 0; i < size; i++) {
+                if (failures[i] != null) {
+                    result.addError(firstLine + i, failures[i]);
+                    continue;
+                }
+                if (devices[i] == null) {
+                    continue;
+                }
+                rooms[i].addDevice(devices[i]);
+                applyInitialState(devices[i], records[i]);
+                attachCapabilities(devices[i], records[i].getDecorators());
+                imported++;
+            }
+            result.addImported(imported);
+        } finally {
+            controller.endBulkUpdate("Imported inventory lines " + firstLine + "-" + (firstLine + size - 1));
+        }
+    }
+    
+    private static void applyInitialState(Device device, InventoryRecord record) {
+        if (Boolean.TRUE.equals(record.getOn())) {
+            device.turnOn();
+        }
+        if (record.getBrightness() != null && device instanceof Light) {
+            ((Light) device).setBrightness(record.getBrightness());
+        }
+        if (record.getTemperature() != null && device instanceof Thermostat) {
+            ((Thermostat) device).setTemperature(record.getTemperature());
+        }
+        if (record.getLocked() != null && device instanceof Door) {
+            if (record.getLocked()) {
+                ((Door) device).lock();
+            } else {
+                ((Door) device).unlock();
+            }
+        }
+        if (Boolean.TRUE.equals(record.getRecording()) && device instanceof SecurityCamera) {
+            ((SecurityCamera) device).startRecording();
+        }
+    }
+    
+    /**
+     * Attaches the capabilities listed in the record's decorators column
+     */
+    private static void attachCapabilities(Device device, String[] decorators) {
+        for (String decorator : decorators) {
+            if (decorator.equals("motion")) {
+                MotionSensorCapability.attachTo(device);
+            } else if (decorator.equals("timer")) {
+                TimerCapability.attachTo(device);
+            }
+        }
+    }
+    
+    /**
+     * Runs the action for every index, split across the workers when there are any
+     */
+    private void forEachIndex(int size, ExecutorService workers, IntConsumer action) {
+        if (workers == null || size < threads * 64) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        int slice = (size + threads - 1) / threads;
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int start = 0; start < size; start += slice) {
+            int from = start;
+            int to = Math.min(size, start + slice);
+            futures.add(workers.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import worker failed", e.getCause());
+        }
+    }
+    
+    /**
+     * Main method to import an inventory file into a fresh controller and report statistics
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: InventoryImporter <file> [--format=csv|jsonl] [--threads=N] [--chunk=N]");
+            System.exit(2);
+        }
+        Format format = Format.fromFileName(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunk = DEFAULT_CHUNK_SIZE;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].endsWith("csv") ? Format.CSV : Format.JSON_LINES;
+            } else if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].startsWith("--chunk=")) {
+                chunk = Integer.parseInt(args[i].substring("--chunk=".length()));
+            }
+        }
+        
+        SmartHomeController controller = SmartHomeController.getInstance();
+        InventoryImporter importer = new InventoryImporter(controller, controller.getDeviceFactory(), threads, chunk);
+        long[] lastReport = {System.nanoTime()};
+        importer.setProgressListener(progress -> {
+            long now = System.nanoTime();
+            if (now - lastReport[0] >= 1_000_000_000L) {
+                System.err.println("Progress: " + progress);
+                lastReport[0] = now;
+            }
+        });
+        
+        ImportResult result = importer.importFile(Paths.get(args[0]), format);
+        System.out.println("Import finished: " + result);
+        for (String error : result.getErrors()) {
+            System.out.println("  " + error);
+        }
+        System.exit(result.getErrorCount() == 0 ? 0 : 3);
+    }
+}
@@ -0,0 +1,71 @@
+package importer;
+
+import core.DeviceType;
+
+/**
+ * One parsed row of a device inventory
+ */
+public class InventoryRecord {
+    private final String room;
+    private final DeviceType type;
+    private final String name;
+    private final String[] decorators;
+    private final Boolean on;
+    private final Integer brightness;
+    private final Float temperature;
+    private final Boolean locked;
+    private final Boolean recording;
+    
+    /**
+     * Creates an inventory record; state fields are null when not given
+     */
+    public InventoryRecord(String room, DeviceType type, String name, String[] decorators,
+                           Boolean on, Integer brightness, Float temperature,
+                           Boolean locked, Boolean recording) {
+        this.room = room;
+        this.type = type;
+        this.name = name;
+        this.decorators = decorators;
+        this.on = on;
+        this.brightness = brightness;
+        this.temperature = temperature;
+        this.locked = locked;
+        this.recording = recording;
+    }
+    
+    public String getRoom() {
+        return room;
+    }
+    
+    public DeviceType getType() {
+        return type;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String[] getDecorators() {
+        return decorators;
+    }
+    
+    public Boolean getOn() {
+        return on;
+    }
+    
+    public Integer getBrightness() {
+        return brightness;
+    }
+    
+    public Float getTemperature() {
+        return temperature;
+    }
+    
+    public Boolean getLocked() {
+        return locked;
+    }
+    
+    public Boolean getRecording() {
+        return recording;
+    }
+}
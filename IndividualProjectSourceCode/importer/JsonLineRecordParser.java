@@ -0,0 +1,173 @@
+package importer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses line-delimited JSON inventories, one flat object per line, e.g.
+ * {"room":"Lobby","type":"light","name":"Lamp 1","decorators":["motion"],"on":true,"brightness":70}
+ * Values may be strings, numbers, booleans, null, or arrays of strings (for decorators).
+ */
+public class JsonLineRecordParser implements RecordParser {
+    
+    @Override
+    public InventoryRecord parse(String line) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, String> fields = new Cursor(line).readObject();
+        return FieldValues.toRecord(
+            fields.get("room"), fields.get("type"), fields.get("name"), fields.get("decorators"),
+            fields.get("on"), fields.get("brightness"), fields.get("temperature"),
+            fields.get("locked"), fields.get("recording")
+        );
+    }
+    
+    /**
+     * Minimal recursive-descent reader over a single line
+     */
+    private static class Cursor {
+        private final String text;
+        private int position;
+        
+        Cursor(String text) {
+            this.text = text;
+        }
+        
+        Map<String, String> readObject() {
+            Map<String, String> fields = new HashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return fields;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                fields.put(key, readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected trailing content");
+            }
+            return fields;
+        }
+        
+        /**
+         * Reads a scalar or string array; arrays are joined with '|'
+         */
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '[') {
+                position++;
+                StringBuilder joined = new StringBuilder();
+                skipWhitespace();
+                if (peek() == ']') {
+                    position++;
+                    return "";
+                }
+                while (true) {
+                    skipWhitespace();
+                    if (joined.length() > 0) {
+                        joined.append('|');
+                    }
+                    joined.append(readString());
+                    skipWhitespace();
+                    char separator = next();
+                    if (separator == ']') {
+                        return joined.toString();
+                    }
+                    if (separator != ',') {
+                        throw error("Expected ',' or ']'");
+                    }
+                }
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) {
+                throw error("Expected a value");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+        
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\') {
+                    char escaped = next();
+                    switch (escaped) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'u':
+                            if (position + 4 > text.length()) {
+                                throw error("Bad unicode escape");
+                            }
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            position += 4;
+                            break;
+                        default:
+                            value.append(escaped);
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+        
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+        
+        private char peek() {
+            if (position >= text.length()) {
+                throw error("Unexpected end of line");
+            }
+            return text.charAt(position);
+        }
+        
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+        
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+        
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package importer;
+
+/**
+ * Parses one inventory line into a record
+ */
+public interface RecordParser {
+    /**
+     * Parses a single line
+     * @param line the raw line
+     * @return the parsed record, or null if the line should be skipped (blank or comment)
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    InventoryRecord parse(String line);
+}
@@ -1,9 +1,9 @@
 package main;
 
+import capability.MotionSensorCapability;
+import capability.TimerCapability;
 import core.DeviceType;
 import core.SmartHomeController;
-import decorator.MotionSensorDecorator;
-import decorator.TimerDecorator;
 import devices.Device;
 import devices.Door;
 import devices.Light;
@@ -67,21 +67,20 @@ public class Main {
         controller.getRoom("Bedroom").turnAllDevicesOn();
         controller.getRoom("Bedroom").turnAllDevicesOff();
         
-        // Demonstrate decorators
-        System.out.println("\n----- Decorator Pattern Demo -----");
+        // Demonstrate capabilities (runtime features attached to devices)
+        System.out.println("\n----- Device Capabilities Demo -----");
         
         // Add motion sensor to living room light
-        Device motionLight = new MotionSensorDecorator(livingRoomLight);
-        ((MotionSensorDecorator)motionLight).detectMotion();
+        MotionSensorCapability.attachTo(livingRoomLight).detectMotion();
         
         // Add timer to kitchen light
-        Device timerLight = new TimerDecorator(kitchenLight);
-        ((TimerDecorator)timerLight).setTimer(2); // Turn off after 2 minutes
+        TimerCapability.attachTo(kitchenLight).setTimer(2); // Turn off after 2 minutes
         
-        // Combine decorators - a motion-sensing light with a timer
-        Device smartLight = new TimerDecorator(new MotionSensorDecorator(bedroomLight));
-        ((MotionSensorDecorator)((TimerDecorator)smartLight).getWrappedDevice()).detectMotion();
-        ((TimerDecorator)smartLight).setTimer(5); // Turn off after 5 minutes
+        // Combine capabilities - a motion-sensing light with a timer
+        MotionSensorCapability.attachTo(bedroomLight);
+        TimerCapability.attachTo(bedroomLight);
+        bedroomLight.getCapability(MotionSensorCapability.KEY).detectMotion();
+        bedroomLight.getCapability(TimerCapability.KEY).setTimer(5); // Turn off after 5 minutes
         
         // Demonstrate automation modes (Strategy pattern)
         System.out.println("\n----- Automation Modes (Strategy Pattern) -----");
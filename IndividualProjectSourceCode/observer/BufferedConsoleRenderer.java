@@ -0,0 +1,331 @@
+package observer;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import core.DeviceProperty;
+import core.SmartHomeController;
+import devices.Device;
+
+/**
+ * Console output for busy homes (Observer Pattern).
+ *
+ * Lines are handed to a daemon thread through a bounded queue, so the thread changing a
+ * device never waits for the terminal: when the queue is full the line is dropped and
+ * counted. The renderer thread collects lines in a large buffer and writes it when it is
+ * full or has waited flushMillis. Within each summary interval only the first
+ * maxLinesPerSummary lines are printed; if more arrive, the interval ends with summaries
+ * built from the home's state changes, such as "312 lights turned OFF in 48 rooms".
+ * State changes are not queued: device threads count them in lock-free per-type counters
+ * and room bitmaps, so a flood of changes can neither crowd out lines nor be undercounted.
+ */
+public class BufferedConsoleRenderer implements DeviceStateObserver {
+    private static final String SUMMARY_PREFIX = "[SUMMARY] ";
+    private static final DeviceProperty[] PROPERTIES = DeviceProperty.values();
+    
+    private final SmartHomeController home;
+    private final WritableByteChannel out;
+    private final ConsoleSettings settings;
+    private final BlockingQueue<String> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    // Per type name: one counter per property and value (off/on for switches)
+    private final ConcurrentHashMap<String, Change[]> changes = new ConcurrentHashMap<>();
+    private final ByteBuffer buffer;
+    private final Thread renderer;
+    private volatile boolean running;
+    
+    // Renderer thread only
+    private long windowStart;
+    private int windowLines;
+    private long suppressed;
+    private long reportedDropped;
+    private long bufferedSince;
+    
+    /**
+     * Creates a renderer writing to standard output; call start() to begin
+     * @param home the home whose state changes are summarised
+     * @param settings buffer, flush and rate-limit settings
+     */
+    public BufferedConsoleRenderer(SmartHomeController home, ConsoleSettings settings) {
+        this(home, Channels.newChannel(new FileOutputStream(FileDescriptor.out)), settings);
+    }
+    
+    /**
+     * Creates a renderer; call start() to begin
+     * @param home the home whose state changes are summarised
+     * @param out where the output is written
+     * @param settings buffer, flush and rate-limit settings
+     */
+    public BufferedConsoleRenderer(SmartHomeController home, WritableByteChannel out, ConsoleSettings settings) {
+        this.home = home;
+        this.out = out;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.buffer = ByteBuffer.allocateDirect(settings.getBufferBytes());
+        this.renderer = new Thread(this::run, "console-renderer");
+        this.renderer.setDaemon(true);
+    }
+    
+    /**
+     * Starts the renderer thread and the summaries of the home's state changes
+     */
+    public void start() {
+        running = true;
+        home.addStateObserver(this);
+        renderer.start();
+    }
+    
+    /**
+     * Stops summarising, writes everything still queued and stops the renderer thread
+     * @throws InterruptedException if interrupted while waiting for the output
+     */
+    public void close() throws InterruptedException {
+        home.removeStateObserver(this);
+        running = false;
+        renderer.join();
+    }
+    
+    /**
+     * Queues a line for the console without waiting
+     * @param line the line, without a line break
+     * @return false if the queue was full and the line was dropped
+     */
+    public boolean print(String line) {
+        if (queue.offer(line)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+    
+    /**
+     * Gets the number of lines dropped because the console could not keep up
+     * @return the number of lines dropped
+     */
+    public long getDroppedLines() {
+        return dropped.get();
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        String typeName = device.getTypeName();
+        Change[] kinds = changes.get(typeName);
+        if (kinds == null) {
+            kinds = changes.computeIfAbsent(typeName, BufferedConsoleRenderer::newKinds);
+        }
+        int slot = property.ordinal() * 2 + (isSwitch(property) && newValue > 0 ? 1 : 0);
+        kinds[slot].add(device.getRoom() == null ? -1 : device.getRoom().getId());
+    }
+    
+    private static Change[] newKinds(String typeName) {
+        Change[] kinds = new Change[PROPERTIES.length * 2];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = new Change(typeName, PROPERTIES[i / 2], i % 2 == 1);
+        }
+        return kinds;
+    }
+    
+    private void run() {
+        List<String> batch = new ArrayList<>();
+        windowStart = System.currentTimeMillis();
+        try {
+            while (running || !queue.isEmpty()) {
+                String first = queue.poll(settings.getFlushMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    for (String line : batch) {
+                        render(line);
+                    }
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (now - windowStart >= settings.getSummaryMillis()) {
+                    endWindow(now);
+                }
+                if (buffer.position() > 0 && now - bufferedSince >= settings.getFlushMillis()) {
+                    flush();
+                }
+            }
+            endWindow(System.currentTimeMillis());
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The console is gone; nothing left to write to
+            running = false;
+        }
+    }
+    
+    private void render(String line) throws IOException {
+        if (windowLines < settings.getMaxLinesPerSummary()) {
+            windowLines++;
+            write(line);
+        } else {
+            suppressed++;
+        }
+    }
+    
+    private void endWindow(long now) throws IOException {
+        long lost = dropped.get() - reportedDropped;
+        reportedDropped += lost;
+        boolean flooded = suppressed > 0 || lost > 0;
+        // Counters are reset every interval, but only reported for one that overflowed
+        List<String> typeNames = new ArrayList<>(changes.keySet());
+        Collections.sort(typeNames);
+        for (String typeName : typeNames) {
+            for (Change change : changes.get(typeName)) {
+                long count = change.count.sumThenReset();
+                int rooms = change.takeRooms();
+                if (flooded && count > 0) {
+                    write(SUMMARY_PREFIX + change.describe(count, rooms));
+                }
+            }
+        }
+        if (flooded) {
+            StringBuilder tally = new StringBuilder(SUMMARY_PREFIX);
+            tally.append(suppressed).append(" events not shown");
+            if (lost > 0) {
+                tally.append(", ").append(lost).append(" dropped while the console was busy");
+            }
+            write(tally.toString());
+        }
+        windowLines = 0;
+        suppressed = 0;
+        windowStart = now;
+    }
+    
+    private void write(String line) throws IOException {
+        byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            flush();
+        }
+        if (buffer.position() == 0) {
+            bufferedSince = System.currentTimeMillis();
+        }
+        if (bytes.length > buffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes));
+        } else {
+            buffer.put(bytes);
+        }
+    }
+    
+    private void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+    
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        // Keep ordering with anything printed through System.out meanwhile
+        System.out.flush();
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+    
+    private static boolean isSwitch(DeviceProperty property) {
+        return property == DeviceProperty.POWER || property == DeviceProperty.LOCK
+            || property == DeviceProperty.RECORDING;
+    }
+    
+    /**
+     * The count of one kind of change in the current interval, updated by device threads
+     */
+    private static final class Change {
+        private static final LongBinaryOperator OR = (a, b) -> a | b;
+        
+        final String typeName;
+        final DeviceProperty property;
+        final boolean on;
+        final LongAdder count = new LongAdder();
+        final AtomicReference<AtomicLongArray> rooms = new AtomicReference<>(new AtomicLongArray(4));
+        
+        Change(String typeName, DeviceProperty property, boolean on) {
+            this.typeName = typeName;
+            this.property = property;
+            this.on = on;
+        }
+        
+        void add(int roomId) {
+            count.increment();
+            if (roomId < 0) {
+                return;
+            }
+            int word = roomId >>> 6;
+            while (true) {
+                AtomicLongArray bits = rooms.get();
+                if (word >= bits.length()) {
+                    AtomicLongArray larger = new AtomicLongArray(Math.max(word + 1, bits.length() * 2));
+                    for (int i = 0; i < bits.length(); i++) {
+                        larger.set(i, bits.get(i));
+                    }
+                    rooms.compareAndSet(bits, larger);
+                    continue;
+                }
+                bits.accumulateAndGet(word, 1L << roomId, OR);
+                // If the bitmap was replaced meanwhile, the bit may have missed it
+                if (rooms.get() == bits) {
+                    return;
+                }
+            }
+        }
+        
+        /**
+         * Counts the rooms seen since the last call and starts a new bitmap
+         */
+        int takeRooms() {
+            AtomicLongArray bits = rooms.get();
+            rooms.set(new AtomicLongArray(bits.length()));
+            int count = 0;
+            for (int i = 0; i < bits.length(); i++) {
+                count += Long.bitCount(bits.get(i));
+            }
+            return count;
+        }
+        
+        String describe(long count, int roomCount) {
+            String noun = typeName.toLowerCase(Locale.ROOT).replace('_', ' ');
+            return count + " " + noun + (count == 1 ? "" : "s") + " " + verb()
+                + " in " + roomCount + (roomCount == 1 ? " room" : " rooms");
+        }
+        
+        private String verb() {
+            switch (property) {
+                case POWER:
+                    return on ? "turned ON" : "turned OFF";
+                case LOCK:
+                    return on ? "locked" : "unlocked";
+                case RECORDING:
+                    return on ? "started recording" : "stopped recording";
+                case BRIGHTNESS:
+                    return "changed brightness";
+                case TEMPERATURE:
+                    return "changed temperature";
+                default:
+                    return "changed " + property.name().toLowerCase(Locale.ROOT);
+            }
+        }
+    }
+}
@@ -4,9 +4,30 @@ package observer;
  * Displays system events to the console (Observer Pattern)
  */
 public class ConsoleDisplayObserver implements SystemObserver {
+    private final BufferedConsoleRenderer renderer;
+    
+    /**
+     * Creates a display that prints each event at once
+     */
+    public ConsoleDisplayObserver() {
+        this(null);
+    }
+    
+    /**
+     * Creates a display that prints through a renderer, which buffers and rate-limits
+     * the output so a slow terminal does not hold up device operations
+     * @param renderer the started renderer, or null to print directly
+     */
+    public ConsoleDisplayObserver(BufferedConsoleRenderer renderer) {
+        this.renderer = renderer;
+    }
     
     @Override
     public void update(String event) {
-        System.out.println("[DISPLAY] " + event);
+        if (renderer != null) {
+            renderer.print("[DISPLAY] " + event);
+        } else {
+            System.out.println("[DISPLAY] " + event);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package observer;
+
+/**
+ * Tuning settings for BufferedConsoleRenderer
+ */
+public class ConsoleSettings {
+    private int bufferBytes = 256 * 1024;
+    private long flushMillis = 50;
+    private int queueCapacity = 64 * 1024;
+    private long summaryMillis = 1000;
+    private int maxLinesPerSummary = 100;
+    
+    /**
+     * Sets how many bytes of output are collected before they are written
+     */
+    public ConsoleSettings withBufferBytes(int bufferBytes) {
+        if (bufferBytes < 1024) {
+            throw new IllegalArgumentException("Buffer must hold at least 1024 bytes: " + bufferBytes);
+        }
+        this.bufferBytes = bufferBytes;
+        return this;
+    }
+    
+    /**
+     * Sets how long output may wait in the buffer before it is written
+     */
+    public ConsoleSettings withFlushMillis(long flushMillis) {
+        this.flushMillis = flushMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how many lines may wait for the renderer; further lines are dropped and counted
+     */
+    public ConsoleSettings withQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+    
+    /**
+     * Sets the length of the interval whose extra lines are collapsed into one summary
+     */
+    public ConsoleSettings withSummaryMillis(long summaryMillis) {
+        this.summaryMillis = summaryMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how many lines are printed per summary interval before the rest are summarised
+     */
+    public ConsoleSettings withMaxLinesPerSummary(int maxLinesPerSummary) {
+        this.maxLinesPerSummary = maxLinesPerSummary;
+        return this;
+    }
+    
+    public int getBufferBytes() {
+        return bufferBytes;
+    }
+    
+    public long getFlushMillis() {
+        return flushMillis;
+    }
+    
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    public long getSummaryMillis() {
+        return summaryMillis;
+    }
+    
+    public int getMaxLinesPerSummary() {
+        return maxLinesPerSummary;
+    }
+}
@@ -0,0 +1,38 @@
+package observer;
+
+import core.DeviceProperty;
+import core.Room;
+import devices.Device;
+
+/**
+ * Observer interface for structured device state changes (Observer Pattern).
+ * Unlike SystemObserver it receives the changed value itself, so history and
+ * analytics can be kept without parsing event text.
+ */
+public interface DeviceStateObserver {
+    /**
+     * Called after a device property was set
+     * @param device the device
+     * @param property the property that was set
+     * @param oldValue the previous value
+     * @param newValue the new value
+     * @param timestamp when the change happened, in epoch milliseconds
+     */
+    void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp);
+    
+    /**
+     * Called after a room was added to the home
+     * @param room the new room
+     * @param timestamp when it was added, in epoch milliseconds
+     */
+    default void roomAdded(Room room, long timestamp) {
+    }
+    
+    /**
+     * Called after a device was added to a room and given its id
+     * @param device the new device
+     * @param timestamp when it was added, in epoch milliseconds
+     */
+    default void deviceAdded(Device device, long timestamp) {
+    }
+}
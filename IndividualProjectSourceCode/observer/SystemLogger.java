@@ -11,32 +11,46 @@ import java.util.List;
 public class SystemLogger implements SystemObserver {
     private List<String> logs;
     private DateTimeFormatter formatter;
+    private BufferedConsoleRenderer console;
     
     public SystemLogger() {
         logs = new ArrayList<>();
         formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     }
     
+    /**
+     * Creates a logger that echoes entries through a buffered, rate-limited renderer
+     * @param console the started renderer
+     */
+    public SystemLogger(BufferedConsoleRenderer console) {
+        this();
+        this.console = console;
+    }
+    
     @Override
-    public void update(String event) {
+    public synchronized void update(String event) {
         String timestamp = LocalDateTime.now().format(formatter);
         String logEntry = timestamp + " - " + event;
         logs.add(logEntry);
-        System.out.println("[LOG] " + logEntry);
+        if (console != null) {
+            console.print("[LOG] " + logEntry);
+        } else {
+            System.out.println("[LOG] " + logEntry);
+        }
     }
     
     /**
      * Gets all logs in the system
      * @return list of all log entries
      */
-    public List<String> getAllLogs() {
+    public synchronized List<String> getAllLogs() {
         return new ArrayList<>(logs);
     }
     
     /**
      * Clears all logs
      */
-    public void clearLogs() {
+    public synchronized void clearLogs() {
         logs.clear();
     }
 }
@@ -0,0 +1,162 @@
+package plugin;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import command.DeviceCommand;
+import core.DeviceProperty;
+import core.DeviceType;
+import core.Room;
+import devices.Device;
+import devices.Door;
+import devices.Light;
+import devices.SecurityCamera;
+import devices.Thermostat;
+
+/**
+ * The device types that ship with the controller. A batch is applied without the
+ * per-device text events and reported in one summary event instead.
+ */
+final class BuiltInDeviceType implements DeviceTypePlugin {
+    private static final DeviceCommand.Action[] ACTIONS = DeviceCommand.Action.values();
+    
+    private final DeviceType type;
+    private final Class<? extends Device> deviceClass;
+    private final Set<DeviceProperty> properties;
+    private final Set<DeviceCommand.Action> actions;
+    
+    private BuiltInDeviceType(DeviceType type, Class<? extends Device> deviceClass, DeviceProperty property,
+                              DeviceCommand.Action... actions) {
+        this.type = type;
+        this.deviceClass = deviceClass;
+        Set<DeviceProperty> reported = EnumSet.of(DeviceProperty.POWER);
+        if (property != null) {
+            reported.add(property);
+        }
+        Set<DeviceCommand.Action> accepted = EnumSet.of(
+            DeviceCommand.Action.TURN_ON, DeviceCommand.Action.TURN_OFF, DeviceCommand.Action.TOGGLE);
+        Collections.addAll(accepted, actions);
+        this.properties = Collections.unmodifiableSet(reported);
+        this.actions = Collections.unmodifiableSet(accepted);
+    }
+    
+    /**
+     * Creates the plugins for all built-in types
+     * @return one plugin per type
+     */
+    static List<DeviceTypePlugin> all() {
+        return List.of(
+            new BuiltInDeviceType(DeviceType.LIGHT, Light.class, DeviceProperty.BRIGHTNESS,
+                DeviceCommand.Action.SET_BRIGHTNESS),
+            new BuiltInDeviceType(DeviceType.THERMOSTAT, Thermostat.class, DeviceProperty.TEMPERATURE,
+                DeviceCommand.Action.SET_TEMPERATURE),
+            new BuiltInDeviceType(DeviceType.DOOR, Door.class, DeviceProperty.LOCK,
+                DeviceCommand.Action.LOCK, DeviceCommand.Action.UNLOCK),
+            new BuiltInDeviceType(DeviceType.SECURITY_CAMERA, SecurityCamera.class, DeviceProperty.RECORDING,
+                DeviceCommand.Action.START_RECORDING, DeviceCommand.Action.STOP_RECORDING)
+        );
+    }
+    
+    @Override
+    public String getTypeName() {
+        return type.name();
+    }
+    
+    @Override
+    public DeviceType getType() {
+        return type;
+    }
+    
+    @Override
+    public Class<? extends Device> getDeviceClass() {
+        return deviceClass;
+    }
+    
+    @Override
+    public Device createDevice(String name, Room room) {
+        switch (type) {
+            case LIGHT:
+                return new Light(name, room);
+            case THERMOSTAT:
+                return new Thermostat(name, room);
+            case DOOR:
+                return new Door(name, room);
+            case SECURITY_CAMERA:
+                return new SecurityCamera(name, room);
+            default:
+                throw new IllegalArgumentException("Unknown device type: " + type);
+        }
+    }
+    
+    @Override
+    public Set<DeviceProperty> getProperties() {
+        return properties;
+    }
+    
+    @Override
+    public Set<DeviceCommand.Action> getActions() {
+        return actions;
+    }
+    
+    @Override
+    public void apply(DeviceCommand command) {
+        command.apply();
+    }
+    
+    @Override
+    public void applyAll(List<DeviceCommand> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        int[] counts = new int[ACTIONS.length];
+        for (DeviceCommand command : commands) {
+            applyQuietly(command);
+            counts[command.getAction().ordinal()]++;
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append(commands.size()).append(' ').append(type).append(" commands applied:");
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                summary.append(' ').append(ACTIONS[i]).append(" x").append(counts[i]);
+            }
+        }
+        commands.get(0).getDevice().getController().notifyObservers(summary.toString());
+    }
+    
+    private static void applyQuietly(DeviceCommand command) {
+        Device device = command.getDevice();
+        switch (command.getAction()) {
+            case TURN_ON:
+                device.setPower(true, false);
+                break;
+            case TURN_OFF:
+                device.setPower(false, false);
+                break;
+            case TOGGLE:
+                device.setPower(!device.isOn(), false);
+                break;
+            case SET_BRIGHTNESS:
+                ((Light) device).setBrightness((int) command.getValue(), false);
+                break;
+            case SET_TEMPERATURE:
+                ((Thermostat) device).setTemperature((float) command.getValue(), false);
+                break;
+            case LOCK:
+                ((Door) device).setLocked(true, false);
+                break;
+            case UNLOCK:
+                ((Door) device).setLocked(false, false);
+                break;
+            case START_RECORDING:
+                ((SecurityCamera) device).setRecording(true, false);
+                break;
+            case STOP_RECORDING:
+                ((SecurityCamera) device).setRecording(false, false);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown action: " + command.getAction());
+        }
+    }
+}
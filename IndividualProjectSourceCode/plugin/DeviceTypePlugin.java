@@ -0,0 +1,78 @@
+package plugin;
+
+import java.util.List;
+import java.util.Set;
+
+import command.DeviceCommand;
+import core.DeviceProperty;
+import core.DeviceType;
+import core.Room;
+import devices.Device;
+
+/**
+ * Service interface for a device type (Plugin Pattern).
+ *
+ * A device type supplies its factory, its state schema (the properties it reports and the
+ * actions it accepts) and how commands are applied to it. New types such as blinds or
+ * plugs are added without touching the rest of the code: implement this interface, list
+ * the class in META-INF/services/plugin.DeviceTypePlugin and put the jar on the class path.
+ * Their devices report DeviceType.OTHER and tell themselves apart by Device.getTypeName().
+ */
+public interface DeviceTypePlugin {
+    /**
+     * Gets the type name used in commands and inventories
+     * @return the name, upper case, e.g. "BLIND"
+     */
+    String getTypeName();
+    
+    /**
+     * Gets the built-in type this plugin provides
+     * @return the built-in type, or DeviceType.OTHER for a new type
+     */
+    DeviceType getType();
+    
+    /**
+     * Gets the class of the devices this plugin creates; commands for devices of
+     * another class (e.g. wrapped by a decorator) are applied one at a time
+     * @return the device class
+     */
+    Class<? extends Device> getDeviceClass();
+    
+    /**
+     * Creates a device of this type; the caller adds it to the room
+     * @param name the device name
+     * @param room the room where the device will be located
+     * @return the new device
+     */
+    Device createDevice(String name, Room room);
+    
+    /**
+     * Gets the properties devices of this type report to state observers
+     * @return the properties
+     */
+    Set<DeviceProperty> getProperties();
+    
+    /**
+     * Gets the actions devices of this type accept
+     * @return the actions
+     */
+    Set<DeviceCommand.Action> getActions();
+    
+    /**
+     * Applies one validated command to a device of this type
+     * @param command the command
+     */
+    void apply(DeviceCommand command);
+    
+    /**
+     * Applies a batch of validated commands to devices of this type, at most one per device.
+     * Override this to handle the batch in one go, e.g. one summary event instead of one
+     * per device or one message to a hub; by default each command is applied in turn.
+     * @param commands the commands
+     */
+    default void applyAll(List<DeviceCommand> commands) {
+        for (DeviceCommand command : commands) {
+            apply(command);
+        }
+    }
+}
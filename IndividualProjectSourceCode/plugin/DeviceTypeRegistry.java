@@ -0,0 +1,246 @@
+package plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import command.DeviceCommand;
+import core.DeviceType;
+import core.Room;
+import devices.Device;
+
+/**
+ * Registry of the known device types (Plugin Pattern).
+ *
+ * Holds the built-in types plus every DeviceTypePlugin found by ServiceLoader. A plugin
+ * whose type name matches a built-in type replaces it. Lookups by built-in type are an
+ * array read; plugin types are looked up by name. Registration is rare, so it copies the
+ * tables and lookups never lock.
+ */
+public class DeviceTypeRegistry {
+    private static volatile DeviceTypeRegistry defaultRegistry;
+    
+    private volatile Map<String, DeviceTypePlugin> byName;
+    private volatile DeviceTypePlugin[] byType;
+    private final List<String> loadErrors;
+    
+    /**
+     * Creates a registry holding only the built-in types
+     */
+    public DeviceTypeRegistry() {
+        this.byName = new LinkedHashMap<>();
+        this.byType = new DeviceTypePlugin[DeviceType.values().length];
+        this.loadErrors = Collections.synchronizedList(new ArrayList<>());
+        for (DeviceTypePlugin plugin : BuiltInDeviceType.all()) {
+            put(plugin);
+        }
+    }
+    
+    /**
+     * Gets the registry used by the controller's device factory and by command dispatch,
+     * loading the plugins on the class path the first time
+     * @return the default registry
+     */
+    public static DeviceTypeRegistry getDefault() {
+        DeviceTypeRegistry registry = defaultRegistry;
+        if (registry == null) {
+            synchronized (DeviceTypeRegistry.class) {
+                registry = defaultRegistry;
+                if (registry == null) {
+                    registry = new DeviceTypeRegistry();
+                    registry.loadPlugins(DeviceTypeRegistry.class.getClassLoader());
+                    defaultRegistry = registry;
+                }
+            }
+        }
+        return registry;
+    }
+    
+    /**
+     * Registers the plugins a class loader provides. A plugin that cannot be loaded is
+     * skipped and reported by getLoadErrors().
+     * @param classLoader the class loader to search
+     * @return the number of plugins registered
+     */
+    public int loadPlugins(ClassLoader classLoader) {
+        int count = 0;
+        Iterator<DeviceTypePlugin> plugins = ServiceLoader.load(DeviceTypePlugin.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!plugins.hasNext()) {
+                    return count;
+                }
+                register(plugins.next());
+                count++;
+            } catch (ServiceConfigurationError | IllegalArgumentException e) {
+                loadErrors.add(e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Registers a device type, replacing any type with the same name
+     * @param plugin the device type
+     * @throws IllegalArgumentException if a plugin for a new type does not report DeviceType.OTHER
+     */
+    public synchronized void register(DeviceTypePlugin plugin) {
+        put(plugin);
+    }
+    
+    private void put(DeviceTypePlugin plugin) {
+        String name = plugin.getTypeName().toUpperCase();
+        DeviceType type = plugin.getType();
+        boolean builtIn = type != DeviceType.OTHER;
+        if (builtIn != name.equals(type.name())) {
+            throw new IllegalArgumentException("Device type " + name + " must report "
+                + (builtIn ? "DeviceType.OTHER" : "its built-in type") + ", not " + type);
+        }
+        Map<String, DeviceTypePlugin> names = new LinkedHashMap<>(byName);
+        names.put(name, plugin);
+        if (builtIn) {
+            DeviceTypePlugin[] types = byType.clone();
+            types[type.ordinal()] = plugin;
+            byType = types;
+        }
+        byName = names;
+    }
+    
+    /**
+     * Gets a device type by name
+     * @param typeName the type name, in any case
+     * @return the plugin, or null if unknown
+     */
+    public DeviceTypePlugin getPlugin(String typeName) {
+        return byName.get(typeName.toUpperCase());
+    }
+    
+    /**
+     * Gets a built-in device type
+     * @param type the type, not OTHER
+     * @return the plugin, or null for OTHER
+     */
+    public DeviceTypePlugin getPlugin(DeviceType type) {
+        return byType[type.ordinal()];
+    }
+    
+    /**
+     * Gets the type of a device
+     * @param device the device
+     * @return the plugin, or null if the device's type is not registered
+     */
+    public DeviceTypePlugin getPlugin(Device device) {
+        DeviceType type = device.getType();
+        return type != DeviceType.OTHER ? byType[type.ordinal()] : byName.get(device.getTypeName());
+    }
+    
+    /**
+     * Gets the names of all registered types, built-in types first
+     * @return the type names
+     */
+    public List<String> getTypeNames() {
+        return new ArrayList<>(byName.keySet());
+    }
+    
+    /**
+     * Gets the problems met while loading plugins
+     * @return one message per plugin that was skipped
+     */
+    public List<String> getLoadErrors() {
+        synchronized (loadErrors) {
+            return new ArrayList<>(loadErrors);
+        }
+    }
+    
+    /**
+     * Creates a device of a registered type; the caller adds it to the room
+     * @param typeName the type name, in any case
+     * @param name the device name
+     * @param room the room where the device will be located
+     * @return the new device
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public Device createDevice(String typeName, String name, Room room) {
+        DeviceTypePlugin plugin = getPlugin(typeName);
+        if (plugin == null) {
+            throw new IllegalArgumentException("Unknown device type: " + typeName);
+        }
+        return plugin.createDevice(name, room);
+    }
+    
+    /**
+     * Splits a batch of commands into per-type batches that can each be handed to one
+     * DeviceTypePlugin.applyAll call. A device's n-th command goes into round n, so applying
+     * the batches in order keeps every device's commands in their original order; only
+     * commands for different devices are reordered. Commands for a device that is not of
+     * its plugin's device class, or of an unregistered type, get a batch without a plugin
+     * and are applied one at a time.
+     * @param commands the commands, already validated
+     * @return the batches, in the order to apply them
+     */
+    public List<TypeBatch> plan(List<DeviceCommand> commands) {
+        Map<Device, Integer> rounds = new IdentityHashMap<>();
+        List<Map<DeviceTypePlugin, TypeBatch>> byRound = new ArrayList<>();
+        List<TypeBatch> single = new ArrayList<>();
+        for (DeviceCommand command : commands) {
+            Device device = command.getDevice();
+            Integer previous = rounds.get(device);
+            int round = previous == null ? 0 : previous + 1;
+            rounds.put(device, round);
+            while (byRound.size() <= round) {
+                byRound.add(new LinkedHashMap<>());
+                single.add(new TypeBatch(null));
+            }
+            DeviceTypePlugin plugin = getPlugin(device);
+            TypeBatch batch;
+            if (plugin == null || !plugin.getDeviceClass().isInstance(device)) {
+                batch = single.get(round);
+            } else {
+                batch = byRound.get(round).get(plugin);
+                if (batch == null) {
+                    batch = new TypeBatch(plugin);
+                    byRound.get(round).put(plugin, batch);
+                }
+            }
+            batch.commands.add(command);
+        }
+        List<TypeBatch> plan = new ArrayList<>();
+        for (int round = 0; round < byRound.size(); round++) {
+            plan.addAll(byRound.get(round).values());
+            if (!single.get(round).commands.isEmpty()) {
+                plan.add(single.get(round));
+            }
+        }
+        return plan;
+    }
+    
+    /**
+     * Commands of one device type, at most one per device
+     */
+    public static final class TypeBatch {
+        private final DeviceTypePlugin plugin;
+        private final List<DeviceCommand> commands;
+        
+        TypeBatch(DeviceTypePlugin plugin) {
+            this.plugin = plugin;
+            this.commands = new ArrayList<>();
+        }
+        
+        /**
+         * Gets the type the commands are for
+         * @return the plugin, or null if the commands must be applied one at a time
+         */
+        public DeviceTypePlugin getPlugin() {
+            return plugin;
+        }
+        
+        public List<DeviceCommand> getCommands() {
+            return commands;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import core.DeviceProperty;
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.DeviceState;
+import observer.DeviceStateObserver;
+import topology.TopologyNode;
+
+/**
+ * Secondary indexes over the devices of one home (Observer Pattern).
+ *
+ * Boolean state (on, locked, recording), device type and room are kept as bitmaps of
+ * device ids; brightness and temperature are kept in sorted bucket indexes for range
+ * queries. The indexes follow every device setter through the state observer callbacks,
+ * so a query combines a few bitmaps instead of scanning the devices.
+ */
+public class DeviceIndex implements DeviceStateObserver {
+    private final SmartHomeController home;
+    private final ReentrantReadWriteLock lock;
+    private final BitSet all;
+    private final BitSet on;
+    private final BitSet locked;
+    private final BitSet recording;
+    private final Map<DeviceType, BitSet> byType;
+    private final List<BitSet> byRoom;
+    private final NumericIndex brightness;
+    private final NumericIndex temperature;
+    
+    /**
+     * Creates an index; call start() to fill it and keep it current
+     * @param home the home whose devices are indexed
+     */
+    public DeviceIndex(SmartHomeController home) {
+        this.home = home;
+        this.lock = new ReentrantReadWriteLock();
+        this.all = new BitSet();
+        this.on = new BitSet();
+        this.locked = new BitSet();
+        this.recording = new BitSet();
+        this.byType = new EnumMap<>(DeviceType.class);
+        this.byRoom = new ArrayList<>();
+        this.brightness = new NumericIndex(1);
+        this.temperature = new NumericIndex(0.5);
+    }
+    
+    /**
+     * Indexes the home's current devices and starts following changes
+     */
+    public void start() {
+        // Observe first so no device added during the scan is missed; indexing twice is harmless
+        home.addStateObserver(this);
+        for (Room room : home.getAllRooms()) {
+            for (Device device : room.getAllDevices()) {
+                index(device);
+            }
+        }
+    }
+    
+    /**
+     * Stops following changes
+     */
+    public void stop() {
+        home.removeStateObserver(this);
+    }
+    
+    /**
+     * Gets the home this index covers
+     * @return the home's controller
+     */
+    public SmartHomeController getHome() {
+        return home;
+    }
+    
+    @Override
+    public void deviceAdded(Device device, long timestamp) {
+        index(device);
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        int id = device.getId();
+        if (id < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            switch (property) {
+                case POWER:
+                    on.set(id, newValue != 0);
+                    break;
+                case LOCK:
+                    locked.set(id, newValue != 0);
+                    break;
+                case RECORDING:
+                    recording.set(id, newValue != 0);
+                    break;
+                case BRIGHTNESS:
+                    brightness.put(id, newValue);
+                    break;
+                case TEMPERATURE:
+                    temperature.put(id, (float) newValue);
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void index(Device device) {
+        int id = device.getId();
+        if (id < 0) {
+            return;
+        }
+        DeviceState state = DeviceState.of(device);
+        int roomId = device.getRoom() == null ? -1 : device.getRoom().getId();
+        lock.writeLock().lock();
+        try {
+            all.set(id);
+            byType.computeIfAbsent(device.getType(), type -> new BitSet()).set(id);
+            while (byRoom.size() <= roomId) {
+                byRoom.add(new BitSet());
+            }
+            if (roomId >= 0) {
+                byRoom.get(roomId).set(id);
+            }
+            on.set(id, state.isOn());
+            locked.set(id, state.isLocked());
+            recording.set(id, state.isRecording());
+            if (state.getBrightness() >= 0) {
+                brightness.put(id, state.getBrightness());
+            }
+            if (!Float.isNaN(state.getTemperature())) {
+                temperature.put(id, state.getTemperature());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Finds the devices matching a predicate, e.g. "type = LIGHT and on and brightness > 70"
+     * @param predicate the predicate text (see DeviceQuery)
+     * @return the matching devices, ordered by id
+     * @throws IllegalArgumentException if the predicate is malformed
+     */
+    public List<Device> find(String predicate) {
+        return find(DeviceQuery.parse(predicate));
+    }
+    
+    /**
+     * Finds the devices matching a parsed query
+     * @param query the query
+     * @return the matching devices, ordered by id
+     */
+    public List<Device> find(DeviceQuery query) {
+        BitSet ids = select(query);
+        List<Device> devices = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            Device device = home.getDeviceById(id);
+            if (device != null) {
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+    
+    /**
+     * Finds the devices of one type, e.g. to build one batch of commands per type
+     * @param type the type
+     * @return the devices, ordered by id
+     */
+    public List<Device> findByType(DeviceType type) {
+        BitSet ids = home.readConsistent(() -> {
+            lock.readLock().lock();
+            try {
+                return ofType(type);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+        List<Device> devices = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            Device device = home.getDeviceById(id);
+            if (device != null) {
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+    
+    /**
+     * Counts the devices matching a predicate without resolving them
+     * @param predicate the predicate text
+     * @return the number of matching devices
+     */
+    public int count(String predicate) {
+        return select(DeviceQuery.parse(predicate)).cardinality();
+    }
+    
+    /**
+     * Gets the ids of the devices matching a query. The home's shared state lock is held,
+     * so a transaction being committed is seen either entirely or not at all.
+     * @param query the query
+     * @return a new bitmap of device ids
+     */
+    public BitSet select(DeviceQuery query) {
+        return home.readConsistent(() -> {
+            lock.readLock().lock();
+            try {
+                return query.evaluate(this);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+    
+    // Accessors used by DeviceQuery while the read lock is held; each returns a new bitmap
+    
+    BitSet allDevices() {
+        return (BitSet) all.clone();
+    }
+    
+    BitSet withFlag(DeviceProperty property) {
+        switch (property) {
+            case POWER:
+                return (BitSet) on.clone();
+            case LOCK:
+                return (BitSet) locked.clone();
+            case RECORDING:
+                return (BitSet) recording.clone();
+            default:
+                throw new IllegalArgumentException(property + " is not a flag");
+        }
+    }
+    
+    BitSet ofType(DeviceType type) {
+        BitSet ids = byType.get(type);
+        return ids == null ? new BitSet() : (BitSet) ids.clone();
+    }
+    
+    BitSet inRoom(String roomName) {
+        Room room = home.getRoom(roomName);
+        if (room == null || room.getId() >= byRoom.size()) {
+            return new BitSet();
+        }
+        return (BitSet) byRoom.get(room.getId()).clone();
+    }
+    
+    BitSet inArea(String path) {
+        TopologyNode node = home.getTopology().find(path);
+        BitSet ids = new BitSet();
+        if (node != null) {
+            for (Room room : node.getAllRooms()) {
+                if (room.getId() < byRoom.size()) {
+                    ids.or(byRoom.get(room.getId()));
+                }
+            }
+        }
+        return ids;
+    }
+    
+    BitSet withValue(DeviceProperty property) {
+        return numeric(property).present();
+    }
+    
+    BitSet inRange(DeviceProperty property, double low, boolean lowInclusive, double high, boolean highInclusive) {
+        if (property == DeviceProperty.TEMPERATURE) {
+            // Thermostats keep a float; compare at that precision so "= 22.1" finds 22.1f
+            low = (float) low;
+            high = (float) high;
+        }
+        return numeric(property).range(low, lowInclusive, high, highInclusive);
+    }
+    
+    private NumericIndex numeric(DeviceProperty property) {
+        if (property == DeviceProperty.BRIGHTNESS) {
+            return brightness;
+        }
+        if (property == DeviceProperty.TEMPERATURE) {
+            return temperature;
+        }
+        throw new IllegalArgumentException(property + " is not numeric");
+    }
+}
@@ -0,0 +1,381 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+import core.DeviceProperty;
+import core.DeviceType;
+
+/**
+ * Parsed device predicate, evaluated against a DeviceIndex.
+ *
+ * Grammar (keywords are case-insensitive):
+ *   query     := term { "or" term }
+ *   term      := factor { "and" factor }
+ *   factor    := "not" factor | "(" query ")" | condition
+ *   condition := "on" | "off" | "locked" | "unlocked" | "recording" | "all"
+ *              | ("on" | "locked" | "recording") ("=" | "!=") ("true" | "false")
+ *              | "type" ("=" | "!=") TYPE | "type" "in" "(" TYPE { "," TYPE } ")"
+ *              | "room" ("=" | "!=") NAME | "room" "in" "(" NAME { "," NAME } ")"
+ *              | "area" ("=" | "!=") PATH | "area" "in" "(" PATH { "," PATH } ")"
+ *              | ("brightness" | "temperature") ("=" | "!=" | "<" | "<=" | ">" | ">=") NUMBER
+ *              | ("brightness" | "temperature") "between" NUMBER "and" NUMBER
+ *
+ * An area is a topology path such as "Building B/Floor 2" and covers every room below it.
+ * Room names and paths with spaces are written in double quotes. Numeric conditions only match
+ * devices that have the property, so "brightness != 50" never matches a door.
+ * Example: type = LIGHT and on and room in ("Living Room", Kitchen) and brightness > 70
+ */
+public class DeviceQuery {
+    private final String text;
+    private final Node root;
+    
+    private DeviceQuery(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+    
+    /**
+     * Parses a predicate
+     * @param text the predicate text
+     * @return the parsed query
+     * @throws IllegalArgumentException if the text is not a valid predicate
+     */
+    public static DeviceQuery parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        Parser parser = new Parser(text);
+        Node root = parser.query();
+        if (!parser.atEnd()) {
+            throw parser.error("Unexpected '" + parser.peek().text + "'");
+        }
+        return new DeviceQuery(text.trim(), root);
+    }
+    
+    /**
+     * Evaluates the query; the caller holds the index's read lock
+     * @param index the index to read
+     * @return a new bitmap of the matching device ids
+     */
+    BitSet evaluate(DeviceIndex index) {
+        return root.evaluate(index);
+    }
+    
+    @Override
+    public String toString() {
+        return text;
+    }
+    
+    private interface Node {
+        BitSet evaluate(DeviceIndex index);
+    }
+    
+    private static Node not(Node inner) {
+        return index -> {
+            BitSet ids = index.allDevices();
+            ids.andNot(inner.evaluate(index));
+            return ids;
+        };
+    }
+    
+    private enum Kind {
+        WORD, NUMBER, STRING, SYMBOL, END
+    }
+    
+    private static class Token {
+        private final Kind kind;
+        private final String text;
+        private final int position;
+        
+        Token(Kind kind, String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+        
+        boolean is(String word) {
+            return (kind == Kind.WORD || kind == Kind.SYMBOL) && text.equalsIgnoreCase(word);
+        }
+    }
+    
+    /**
+     * Recursive-descent parser over the token list
+     */
+    private static class Parser {
+        private final List<Token> tokens;
+        private int next;
+        
+        Parser(String text) {
+            this.tokens = tokenize(text);
+        }
+        
+        private static List<Token> tokenize(String text) {
+            List<Token> tokens = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '"') {
+                    int end = text.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated string at position " + i);
+                    }
+                    tokens.add(new Token(Kind.STRING, text.substring(i + 1, end), i));
+                    i = end + 1;
+                } else if (c == '(' || c == ')' || c == ',' || c == '=') {
+                    tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), i));
+                    i++;
+                } else if (c == '!' || c == '<' || c == '>') {
+                    boolean withEquals = i + 1 < text.length() && text.charAt(i + 1) == '=';
+                    if (c == '!' && !withEquals) {
+                        throw new IllegalArgumentException("Expected '!=' at position " + i);
+                    }
+                    tokens.add(new Token(Kind.SYMBOL, withEquals ? c + "=" : String.valueOf(c), i));
+                    i += withEquals ? 2 : 1;
+                } else if (c == '-' || c == '.' || Character.isDigit(c)) {
+                    int start = i++;
+                    while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                        i++;
+                    }
+                    tokens.add(new Token(Kind.NUMBER, text.substring(start, i), start));
+                } else if (Character.isLetter(c) || c == '_') {
+                    int start = i;
+                    while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+                        i++;
+                    }
+                    tokens.add(new Token(Kind.WORD, text.substring(start, i), start));
+                } else {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' at position " + i);
+                }
+            }
+            tokens.add(new Token(Kind.END, "end of query", text.length()));
+            return tokens;
+        }
+        
+        Token peek() {
+            return tokens.get(next);
+        }
+        
+        boolean atEnd() {
+            return peek().kind == Kind.END;
+        }
+        
+        private Token take() {
+            Token token = peek();
+            if (token.kind != Kind.END) {
+                next++;
+            }
+            return token;
+        }
+        
+        private boolean accept(String word) {
+            if (peek().is(word)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+        
+        private void expect(String word) {
+            if (!accept(word)) {
+                throw error("Expected '" + word + "' but found '" + peek().text + "'");
+            }
+        }
+        
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + peek().position);
+        }
+        
+        Node query() {
+            Node left = term();
+            while (accept("or")) {
+                Node a = left;
+                Node b = term();
+                left = index -> {
+                    BitSet ids = a.evaluate(index);
+                    ids.or(b.evaluate(index));
+                    return ids;
+                };
+            }
+            return left;
+        }
+        
+        private Node term() {
+            Node left = factor();
+            while (accept("and")) {
+                Node a = left;
+                Node b = factor();
+                left = index -> {
+                    BitSet ids = a.evaluate(index);
+                    ids.and(b.evaluate(index));
+                    return ids;
+                };
+            }
+            return left;
+        }
+        
+        private Node factor() {
+            if (accept("not")) {
+                return not(factor());
+            }
+            if (accept("(")) {
+                Node inner = query();
+                expect(")");
+                return inner;
+            }
+            return condition();
+        }
+        
+        private Node condition() {
+            Token field = take();
+            if (field.kind != Kind.WORD) {
+                throw new IllegalArgumentException("Expected a condition but found '" + field.text
+                        + "' at position " + field.position);
+            }
+            switch (field.text.toLowerCase()) {
+                case "all":
+                    return DeviceIndex::allDevices;
+                case "on":
+                    return flag(DeviceProperty.POWER);
+                case "off":
+                    return not(index -> index.withFlag(DeviceProperty.POWER));
+                case "locked":
+                    return flag(DeviceProperty.LOCK);
+                case "unlocked":
+                    return not(index -> index.withFlag(DeviceProperty.LOCK));
+                case "recording":
+                    return flag(DeviceProperty.RECORDING);
+                case "type":
+                    return membership(this::deviceType);
+                case "room":
+                    return membership(this::room);
+                case "area":
+                    return membership(this::area);
+                case "brightness":
+                    return numeric(DeviceProperty.BRIGHTNESS);
+                case "temperature":
+                    return numeric(DeviceProperty.TEMPERATURE);
+                default:
+                    throw new IllegalArgumentException("Unknown field '" + field.text + "' at position "
+                            + field.position);
+            }
+        }
+        
+        // A bare flag, or the flag compared with true/false
+        private Node flag(DeviceProperty property) {
+            boolean wanted = true;
+            if (peek().is("=") || peek().is("!=")) {
+                boolean equals = take().is("=");
+                Token value = take();
+                if (!value.is("true") && !value.is("false")) {
+                    throw new IllegalArgumentException("Expected true or false at position " + value.position);
+                }
+                wanted = equals == value.is("true");
+            }
+            Node set = index -> index.withFlag(property);
+            return wanted ? set : not(set);
+        }
+        
+        private Node membership(Function<Token, Node> value) {
+            if (accept("in")) {
+                expect("(");
+                Node union = value.apply(take());
+                while (accept(",")) {
+                    Node a = union;
+                    Node b = value.apply(take());
+                    union = index -> {
+                        BitSet ids = a.evaluate(index);
+                        ids.or(b.evaluate(index));
+                        return ids;
+                    };
+                }
+                expect(")");
+                return union;
+            }
+            if (accept("=")) {
+                return value.apply(take());
+            }
+            if (accept("!=")) {
+                return not(value.apply(take()));
+            }
+            throw error("Expected '=', '!=' or 'in'");
+        }
+        
+        private Node deviceType(Token token) {
+            String name = token.text.toUpperCase();
+            try {
+                DeviceType type = DeviceType.valueOf(name.equals("CAMERA") ? "SECURITY_CAMERA" : name);
+                return index -> index.ofType(type);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown device type '" + token.text + "' at position "
+                        + token.position);
+            }
+        }
+        
+        private Node room(Token token) {
+            if (token.kind != Kind.WORD && token.kind != Kind.STRING && token.kind != Kind.NUMBER) {
+                throw new IllegalArgumentException("Expected a room name at position " + token.position);
+            }
+            String name = token.text;
+            return index -> index.inRoom(name);
+        }
+        
+        private Node area(Token token) {
+            if (token.kind != Kind.WORD && token.kind != Kind.STRING) {
+                throw new IllegalArgumentException("Expected an area path at position " + token.position);
+            }
+            String path = token.text;
+            return index -> index.inArea(path);
+        }
+        
+        private Node numeric(DeviceProperty property) {
+            if (accept("between")) {
+                double low = number();
+                expect("and");
+                double high = number();
+                return index -> index.inRange(property, low, true, high, true);
+            }
+            Token op = take();
+            if (op.kind != Kind.SYMBOL || op.is("(") || op.is(")") || op.is(",")) {
+                throw new IllegalArgumentException("Expected a comparison but found '" + op.text
+                        + "' at position " + op.position);
+            }
+            double value = number();
+            switch (op.text) {
+                case "=":
+                    return index -> index.inRange(property, value, true, value, true);
+                case "!=":
+                    return index -> {
+                        BitSet ids = index.withValue(property);
+                        ids.andNot(index.inRange(property, value, true, value, true));
+                        return ids;
+                    };
+                case "<":
+                    return index -> index.inRange(property, Double.NEGATIVE_INFINITY, true, value, false);
+                case "<=":
+                    return index -> index.inRange(property, Double.NEGATIVE_INFINITY, true, value, true);
+                case ">":
+                    return index -> index.inRange(property, value, false, Double.POSITIVE_INFINITY, true);
+                default: // ">="
+                    return index -> index.inRange(property, value, true, Double.POSITIVE_INFINITY, true);
+            }
+        }
+        
+        private double number() {
+            Token token = take();
+            if (token.kind != Kind.NUMBER) {
+                throw new IllegalArgumentException("Expected a number but found '" + token.text
+                        + "' at position " + token.position);
+            }
+            try {
+                return Double.parseDouble(token.text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number '" + token.text + "' at position " + token.position);
+            }
+        }
+    }
+}
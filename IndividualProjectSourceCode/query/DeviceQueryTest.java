@@ -0,0 +1,167 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import core.DeviceType;
+import core.SmartHomeController;
+import devices.Device;
+import devices.Door;
+import devices.Light;
+import devices.SecurityCamera;
+import devices.Thermostat;
+import topology.Topology;
+import topology.TopologyLevel;
+
+/**
+ * Checks DeviceQuery parsing and evaluation against a brute-force scan of the devices.
+ * Run with: java query.DeviceQueryTest (exits with an AssertionError on the first failure)
+ */
+public class DeviceQueryTest {
+    private static final String[] ROOMS = {"Living Room", "Kitchen", "Hall", "Garage"};
+    private static int checks;
+    
+    /**
+     * Runs every check
+     */
+    public static void main(String[] args) {
+        SmartHomeController home = new SmartHomeController("query-test");
+        List<Device> devices = buildHome(home, new Random(7));
+        Topology topology = home.getTopology();
+        topology.addNode(TopologyLevel.BUILDING, "Building A");
+        topology.addNode(TopologyLevel.FLOOR, "Building A/Floor 1");
+        topology.assignRoom(home.getRoom("Living Room"), topology.find("Building A/Floor 1"));
+        topology.assignRoom(home.getRoom("Kitchen"), topology.find("Building A"));
+        DeviceIndex index = home.getDeviceIndex();
+        
+        matchesScan(index, devices);
+        // The index follows later changes
+        Random random = new Random(8);
+        for (int i = 0; i < 200; i++) {
+            change(devices.get(random.nextInt(devices.size())), random);
+        }
+        matchesScan(index, devices);
+        
+        parseErrors();
+        System.out.println("DeviceQueryTest: " + checks + " checks passed");
+    }
+    
+    private static List<Device> buildHome(SmartHomeController home, Random random) {
+        DeviceType[] types = {DeviceType.LIGHT, DeviceType.THERMOSTAT, DeviceType.DOOR, DeviceType.SECURITY_CAMERA};
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Device device = home.createDevice(ROOMS[random.nextInt(ROOMS.length)],
+                    types[random.nextInt(types.length)], "Device " + i);
+            change(device, random);
+            devices.add(device);
+        }
+        return devices;
+    }
+    
+    private static void change(Device device, Random random) {
+        device.setPower(random.nextBoolean(), false);
+        if (device instanceof Light) {
+            ((Light) device).setBrightness(random.nextInt(101), false);
+        } else if (device instanceof Thermostat) {
+            ((Thermostat) device).setTemperature(15 + random.nextInt(100) / 10.0f, false);
+        } else if (device instanceof Door) {
+            ((Door) device).setLocked(random.nextBoolean(), false);
+        } else if (device instanceof SecurityCamera) {
+            ((SecurityCamera) device).setRecording(random.nextBoolean(), false);
+        }
+    }
+    
+    /**
+     * Every query must return exactly the devices its reference predicate accepts,
+     * and so must the query re-parsed from its own text
+     */
+    private static void matchesScan(DeviceIndex index, List<Device> devices) {
+        expect(index, devices, "all", device -> true);
+        expect(index, devices, "on", Device::isOn);
+        expect(index, devices, "OFF", device -> !device.isOn());
+        expect(index, devices, "on = false", device -> !device.isOn());
+        expect(index, devices, "locked", device -> device instanceof Door && ((Door) device).isLocked());
+        // Flags are plain booleans: "unlocked" is "not locked", so it includes devices without a lock
+        expect(index, devices, "unlocked", device -> !(device instanceof Door && ((Door) device).isLocked()));
+        expect(index, devices, "locked = false", device -> !(device instanceof Door && ((Door) device).isLocked()));
+        expect(index, devices, "recording != true",
+                device -> !(device instanceof SecurityCamera && ((SecurityCamera) device).isRecording()));
+        expect(index, devices, "type = LIGHT", device -> device instanceof Light);
+        expect(index, devices, "type != light", device -> !(device instanceof Light));
+        expect(index, devices, "type in (DOOR, SECURITY_CAMERA)",
+                device -> device instanceof Door || device instanceof SecurityCamera);
+        expect(index, devices, "room = \"Living Room\"", inRoom("Living Room"));
+        expect(index, devices, "room != Kitchen", inRoom("Kitchen").negate());
+        expect(index, devices, "room in (Hall, Garage)", inRoom("Hall").or(inRoom("Garage")));
+        expect(index, devices, "area = \"Building A\"", inRoom("Living Room").or(inRoom("Kitchen")));
+        expect(index, devices, "area = \"Building A/Floor 1\"", inRoom("Living Room"));
+        expect(index, devices, "brightness > 70", brightness(value -> value > 70));
+        expect(index, devices, "brightness <= 30", brightness(value -> value <= 30));
+        expect(index, devices, "brightness != 50", brightness(value -> value != 50));
+        expect(index, devices, "brightness between 20 and 40", brightness(value -> value >= 20 && value <= 40));
+        expect(index, devices, "temperature >= 20.5", temperature(value -> value >= 20.5));
+        expect(index, devices, "temperature < 17", temperature(value -> value < 17));
+        expect(index, devices, "type = LIGHT and on and brightness > 70",
+                device -> device instanceof Light && device.isOn() && ((Light) device).getBrightness() > 70);
+        expect(index, devices, "on or locked",
+                device -> device.isOn() || device instanceof Door && ((Door) device).isLocked());
+        expect(index, devices, "not (on or room = Hall) and type = THERMOSTAT",
+                device -> !(device.isOn() || inRoom("Hall").test(device)) && device instanceof Thermostat);
+        expect(index, devices, "not not on and not type = DOOR",
+                device -> device.isOn() && !(device instanceof Door));
+        // "and" binds tighter than "or"
+        expect(index, devices, "room = Hall or room = Garage and on",
+                device -> inRoom("Hall").test(device) || inRoom("Garage").test(device) && device.isOn());
+    }
+    
+    private static void expect(DeviceIndex index, List<Device> devices, String text, Predicate<Device> reference) {
+        Set<Device> expected = new HashSet<>();
+        for (Device device : devices) {
+            if (reference.test(device)) {
+                expected.add(device);
+            }
+        }
+        DeviceQuery query = DeviceQuery.parse(text);
+        check(new HashSet<>(index.find(query)).equals(expected), "\"" + text + "\" matches the scan");
+        check(new HashSet<>(index.find(DeviceQuery.parse(query.toString()))).equals(expected),
+                "\"" + text + "\" re-parsed from toString");
+        check(index.count(text) == expected.size(), "\"" + text + "\" count");
+    }
+    
+    private static void parseErrors() {
+        String[] invalid = {"", "   ", "on and", "(on", "on)", "type = TOASTER", "brightness > bright",
+            "brightness between 10", "room in (Hall", "locked = maybe", "or on", "temperature"};
+        for (String text : invalid) {
+            boolean rejected = false;
+            try {
+                DeviceQuery.parse(text);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            check(rejected, "\"" + text + "\" is rejected");
+        }
+    }
+    
+    private static Predicate<Device> inRoom(String name) {
+        return device -> device.getRoom().getName().equals(name);
+    }
+    
+    private static Predicate<Device> brightness(Predicate<Integer> test) {
+        return device -> device instanceof Light && test.test(((Light) device).getBrightness());
+    }
+    
+    private static Predicate<Device> temperature(Predicate<Float> test) {
+        return device -> device instanceof Thermostat && test.test(((Thermostat) device).getTemperature());
+    }
+    
+    private static void check(boolean condition, String what) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
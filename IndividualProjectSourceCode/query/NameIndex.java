@@ -0,0 +1,598 @@
+package query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import core.DeviceProperty;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import observer.DeviceStateObserver;
+
+/**
+ * Name index over the rooms and devices of one home for type-ahead search (Observer Pattern).
+ *
+ * Every word of a name is stored in a trie of lower-case characters whose nodes count the
+ * names below them. A search walks the trie to the node of its most selective term and
+ * ranks only the names under it: the whole name first, then names starting with the query,
+ * then names with a word starting with every term; shorter names win ties. Terms may have
+ * one or two typing errors as long as one term is typed right; when none is, the words close
+ * to the longest term are walked instead. The index follows addRoom and createDevice through
+ * the state observer callbacks.
+ */
+public class NameIndex implements DeviceStateObserver {
+    // Names looked at before a search that already has enough matches stops; a query that
+    // matches more names ranks those with the shortest words and names
+    private static final int MAX_SCANNED = 256;
+    // Names looked at before any search stops, so a rare mistyped query stays fast too
+    private static final int MAX_SCANNED_TOTAL = 2048;
+    
+    private final SmartHomeController home;
+    private final ReentrantReadWriteLock lock;
+    private final Node roomWords;
+    private final Node deviceWords;
+    private final List<Room> rooms;
+    private final List<String> roomNames;
+    private final List<Device> devices;
+    private final List<String> deviceNames;
+    
+    /**
+     * Creates an index; call start() to fill it and keep it current
+     * @param home the home whose names are indexed
+     */
+    public NameIndex(SmartHomeController home) {
+        this.home = home;
+        this.lock = new ReentrantReadWriteLock();
+        this.roomWords = new Node();
+        this.deviceWords = new Node();
+        this.rooms = new ArrayList<>();
+        this.roomNames = new ArrayList<>();
+        this.devices = new ArrayList<>();
+        this.deviceNames = new ArrayList<>();
+    }
+    
+    /**
+     * Indexes the home's current rooms and devices and starts following new ones
+     */
+    public void start() {
+        // Observe first so nothing added during the scan is missed; indexing twice is harmless
+        home.addStateObserver(this);
+        for (Room room : home.getAllRooms()) {
+            indexRoom(room);
+            for (Device device : room.getAllDevices()) {
+                indexDevice(device);
+            }
+        }
+    }
+    
+    /**
+     * Stops following changes
+     */
+    public void stop() {
+        home.removeStateObserver(this);
+    }
+    
+    @Override
+    public void roomAdded(Room room, long timestamp) {
+        indexRoom(room);
+    }
+    
+    @Override
+    public void deviceAdded(Device device, long timestamp) {
+        indexDevice(device);
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        // Names do not change with device state
+    }
+    
+    private void indexRoom(Room room) {
+        int id = room.getId();
+        if (id < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (put(rooms, roomNames, id, room)) {
+                insertWords(roomWords, roomNames.get(id), id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void indexDevice(Device device) {
+        int id = device.getId();
+        if (id < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (put(devices, deviceNames, id, device)) {
+                insertWords(deviceWords, deviceNames.get(id), id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Stores an item under its id; false if it was indexed already
+    private static <T> boolean put(List<T> items, List<String> names, int id, T item) {
+        while (items.size() <= id) {
+            items.add(null);
+            names.add(null);
+        }
+        if (items.get(id) != null) {
+            return false;
+        }
+        String name = item instanceof Room ? ((Room) item).getName() : ((Device) item).getName();
+        items.set(id, item);
+        names.set(id, normalize(name));
+        return true;
+    }
+    
+    private static void insertWords(Node root, String name, int id) {
+        String[] words = words(name);
+        for (int w = 0; w < words.length; w++) {
+            boolean repeated = false;
+            for (int v = 0; v < w && !repeated; v++) {
+                repeated = words[v].equals(words[w]);
+            }
+            if (repeated) {
+                continue;
+            }
+            Node node = root;
+            node.total++;
+            for (int i = 0; i < words[w].length(); i++) {
+                node = node.childOrCreate(words[w].charAt(i));
+                node.total++;
+            }
+            node.addEntry(id, name.length());
+        }
+    }
+    
+    /**
+     * Finds rooms by name
+     * @param query the text typed so far, e.g. "liv" or "guest bed"
+     * @param limit the most rooms to return
+     * @return the best matches, best first
+     */
+    public List<Room> searchRooms(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Room> result = new ArrayList<>();
+            for (int id : search(query, limit, roomWords, null)) {
+                result.add(rooms.get(id));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Finds devices by name anywhere in the home
+     * @param query the text typed so far
+     * @param limit the most devices to return
+     * @return the best matches, best first
+     */
+    public List<Device> searchDevices(String query, int limit) {
+        return searchDevices(null, query, limit);
+    }
+    
+    /**
+     * Finds devices by name within one room
+     * @param room the room, or null for the whole home
+     * @param query the text typed so far
+     * @param limit the most devices to return
+     * @return the best matches, best first
+     */
+    public List<Device> searchDevices(Room room, String query, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Device> result = new ArrayList<>();
+            for (int id : search(query, limit, deviceWords, room)) {
+                result.add(devices.get(id));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Called with the read lock held; returns the ids of the best rooms or devices
+    private int[] search(String query, int limit, Node root, Room room) {
+        String text = normalize(query == null ? "" : query);
+        String[] terms = words(text);
+        if (terms.length == 0 || limit <= 0) {
+            return new int[0];
+        }
+        Search search = new Search(root, text, terms, room, limit);
+        List<Device> own = room == null ? null : room.getAllDevices();
+        if (own != null && own.size() <= MAX_SCANNED) {
+            // A room's own devices are few enough to rank them all
+            for (Device device : own) {
+                if (device.getId() >= 0) {
+                    consider(search, device.getId(), 0);
+                }
+            }
+            return search.ranking.ids();
+        }
+        // Exact words: start from the term whose subtree holds the fewest names; the other
+        // terms may still be mistyped
+        Node start = null;
+        String mistyped = null;
+        for (String term : terms) {
+            Node node = find(root, term);
+            if (node == null) {
+                mistyped = mistyped == null || term.length() > mistyped.length() ? term : mistyped;
+            } else if (start == null || node.total < start.total) {
+                start = node;
+            }
+        }
+        if (start != null) {
+            collect(search, start);
+        }
+        // Typing errors everywhere: walk the words close to the longest term not found, or
+        // to the longest term if each was found but no name has them all
+        if (search.ranking.size == 0) {
+            String target = mistyped;
+            if (target == null) {
+                target = terms[0];
+                for (String term : terms) {
+                    target = term.length() > target.length() ? term : target;
+                }
+            }
+            int maxEdits = maxEdits(target);
+            if (maxEdits > 0) {
+                int[] row = new int[target.length() + 1];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = i;
+                }
+                fuzzy(search, root, target, row, maxEdits);
+            }
+        }
+        return search.ranking.ids();
+    }
+    
+    private static Node find(Node root, String word) {
+        Node node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.child(word.charAt(i));
+        }
+        return node;
+    }
+    
+    // Ranks the names under a node: nearest words first, shortest names first within a word
+    private void collect(Search search, Node start) {
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (int e = 0; e < node.entryCount; e++) {
+                if (search.isDone()) {
+                    return;
+                }
+                consider(search, node.entries[e], 1);
+            }
+            for (int c = 0; c < node.childCount; c++) {
+                queue.add(node.children[c]);
+            }
+        }
+    }
+    
+    private void consider(Search search, int id, int cost) {
+        search.scanned += cost;
+        String name;
+        if (search.root == roomWords) {
+            Room candidate = rooms.get(id);
+            // A room replaced by a later addRoom with the same name is no longer reachable
+            if (home.getRoom(candidate.getName()) != candidate) {
+                return;
+            }
+            name = roomNames.get(id);
+        } else {
+            if (search.room != null && devices.get(id).getRoom() != search.room) {
+                return;
+            }
+            name = deviceNames.get(id);
+        }
+        int rank;
+        if (name.equals(search.text)) {
+            rank = 0;
+        } else if (name.startsWith(search.text)) {
+            rank = 1;
+        } else {
+            int edits = 0;
+            for (String term : search.terms) {
+                int distance = wordDistance(name, term);
+                if (distance > maxEdits(term)) {
+                    return;
+                }
+                edits += distance;
+            }
+            rank = 2 + edits;
+        }
+        search.ranking.offer(id, rank, name);
+    }
+    
+    // Walks the trie with one row of the edit distance table between the term and the path
+    private void fuzzy(Search search, Node node, String term, int[] row, int maxEdits) {
+        if (search.isDone()) {
+            return;
+        }
+        if (row[term.length()] <= maxEdits && node != search.root) {
+            // The path is a close match of the whole term, so every word below it matches
+            collect(search, node);
+            return;
+        }
+        int min = Integer.MAX_VALUE;
+        for (int value : row) {
+            min = Math.min(min, value);
+        }
+        if (min > maxEdits) {
+            return;
+        }
+        for (int c = 0; c < node.childCount; c++) {
+            char key = node.keys[c];
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            for (int i = 1; i < row.length; i++) {
+                int substitute = row[i - 1] + (term.charAt(i - 1) == key ? 0 : 1);
+                next[i] = Math.min(substitute, Math.min(row[i], next[i - 1]) + 1);
+            }
+            fuzzy(search, node.children[c], term, next, maxEdits);
+        }
+    }
+    
+    /**
+     * Gets the number of rooms and devices indexed
+     * @return the count
+     */
+    public int getNameCount() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (Room room : rooms) {
+                count += room != null ? 1 : 0;
+            }
+            for (Device device : devices) {
+                count += device != null ? 1 : 0;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Fewest edits turning the term into the start of one of the name's words
+    private static int wordDistance(String name, String term) {
+        int best = Integer.MAX_VALUE;
+        for (int start = 0; start < name.length(); start++) {
+            if (!isWordStart(name, start)) {
+                continue;
+            }
+            if (name.startsWith(term, start)) {
+                return 0;
+            }
+            int end = start;
+            while (end < name.length() && Character.isLetterOrDigit(name.charAt(end))) {
+                end++;
+            }
+            best = Math.min(best, prefixDistance(term, name, start, end));
+        }
+        return best;
+    }
+    
+    private static boolean isWordStart(String name, int i) {
+        return Character.isLetterOrDigit(name.charAt(i))
+                && (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)));
+    }
+    
+    // Edit distance between the term and the closest prefix of word[start, end)
+    private static int prefixDistance(String term, String word, int start, int end) {
+        int[] row = new int[term.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        int best = row[term.length()];
+        for (int j = start; j < end; j++) {
+            int diagonal = row[0];
+            row[0]++;
+            for (int i = 1; i < row.length; i++) {
+                int above = row[i];
+                row[i] = Math.min(diagonal + (term.charAt(i - 1) == word.charAt(j) ? 0 : 1),
+                        Math.min(above, row[i - 1]) + 1);
+                diagonal = above;
+            }
+            best = Math.min(best, row[term.length()]);
+        }
+        return best;
+    }
+    
+    private static int maxEdits(String term) {
+        return term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+    }
+    
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static String[] words(String name) {
+        List<String> words = new ArrayList<>(2);
+        int start = -1;
+        for (int i = 0; i <= name.length(); i++) {
+            boolean inWord = i < name.length() && Character.isLetterOrDigit(name.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(name.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+    
+    /**
+     * Trie node with its children in sorted arrays
+     */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final int[] NO_ENTRIES = new int[0];
+        
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        // Ids of the names with this word, shortest names first
+        private int[] entries = NO_ENTRIES;
+        private int[] lengths = NO_ENTRIES;
+        private int entryCount;
+        // Entries at or below this node
+        private int total;
+        
+        Node child(char key) {
+            int i = Arrays.binarySearch(keys, 0, childCount, key);
+            return i >= 0 ? children[i] : null;
+        }
+        
+        Node childOrCreate(char key) {
+            int i = Arrays.binarySearch(keys, 0, childCount, key);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, at, keys, at + 1, childCount - at);
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            Node node = new Node();
+            keys[at] = key;
+            children[at] = node;
+            childCount++;
+            return node;
+        }
+        
+        void addEntry(int id, int length) {
+            if (entryCount == entries.length) {
+                int capacity = Math.max(2, entryCount * 2);
+                entries = Arrays.copyOf(entries, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            // After the last name of the same length, so equal names keep insertion order
+            int low = 0;
+            int high = entryCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lengths[mid] <= length) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            System.arraycopy(entries, low, entries, low + 1, entryCount - low);
+            System.arraycopy(lengths, low, lengths, low + 1, entryCount - low);
+            entries[low] = id;
+            lengths[low] = length;
+            entryCount++;
+        }
+    }
+    
+    /**
+     * One search in progress
+     */
+    private static final class Search {
+        private final Node root;
+        private final String text;
+        private final String[] terms;
+        private final Room room;
+        private final Ranking ranking;
+        private int scanned;
+        
+        Search(Node root, String text, String[] terms, Room room, int limit) {
+            this.root = root;
+            this.text = text;
+            this.terms = terms;
+            this.room = room;
+            this.ranking = new Ranking(limit);
+        }
+        
+        boolean isDone() {
+            return scanned >= MAX_SCANNED && ranking.size >= ranking.limit || scanned >= MAX_SCANNED_TOTAL;
+        }
+    }
+    
+    /**
+     * The best matches so far, kept sorted by rank, name length and name
+     */
+    private static final class Ranking {
+        private final int limit;
+        private final int[] ids;
+        private final int[] ranks;
+        private final String[] names;
+        private int size;
+        
+        Ranking(int limit) {
+            this.limit = limit;
+            this.ids = new int[limit];
+            this.ranks = new int[limit];
+            this.names = new String[limit];
+        }
+        
+        void offer(int id, int rank, String name) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    if (compare(rank, name, id, i) >= 0) {
+                        return;
+                    }
+                    remove(i);
+                    break;
+                }
+            }
+            if (size == limit && compare(rank, name, id, size - 1) >= 0) {
+                return;
+            }
+            int at = size < limit ? size : size - 1;
+            while (at > 0 && compare(rank, name, id, at - 1) < 0) {
+                ids[at] = ids[at - 1];
+                ranks[at] = ranks[at - 1];
+                names[at] = names[at - 1];
+                at--;
+            }
+            ids[at] = id;
+            ranks[at] = rank;
+            names[at] = name;
+            size = Math.min(limit, size + 1);
+        }
+        
+        private int compare(int rank, String name, int id, int i) {
+            if (rank != ranks[i]) {
+                return Integer.compare(rank, ranks[i]);
+            }
+            if (name.length() != names[i].length()) {
+                return Integer.compare(name.length(), names[i].length());
+            }
+            int byName = name.compareTo(names[i]);
+            return byName != 0 ? byName : Integer.compare(id, ids[i]);
+        }
+        
+        private void remove(int i) {
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(ranks, i + 1, ranks, i, size - i - 1);
+            System.arraycopy(names, i + 1, names, i, size - i - 1);
+            size--;
+        }
+        
+        int[] ids() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
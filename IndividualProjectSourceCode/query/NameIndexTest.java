@@ -0,0 +1,156 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+
+/**
+ * Checks NameIndex prefix search: ranking, typing errors, room scoping, and that a prefix
+ * finds exactly the names a brute-force scan finds.
+ * Run with: java query.NameIndexTest (exits with an AssertionError on the first failure)
+ */
+public class NameIndexTest {
+    private static final String[] WORDS = {"lamp", "ceiling", "light", "desk", "reading", "strip", "spot",
+        "lantern", "led", "floor", "porch", "pendant"};
+    private static int checks;
+    
+    /**
+     * Runs every check
+     */
+    public static void main(String[] args) {
+        SmartHomeController home = new SmartHomeController("name-test");
+        for (String room : new String[] {"Living Room", "Guest Bedroom", "Master Bedroom", "Kitchen", "Kids Room"}) {
+            home.addRoom(room);
+        }
+        NameIndex index = home.getNameIndex();
+        
+        rooms(index);
+        List<Device> devices = addDevices(home, new Random(3));
+        prefixesMatchScan(index, devices);
+        scopedToRoom(home, index);
+        System.out.println("NameIndexTest: " + checks + " checks passed");
+    }
+    
+    private static void rooms(NameIndex index) {
+        check(names(index.searchRooms("kitchen", 5)).equals(List.of("Kitchen")), "whole name");
+        check(names(index.searchRooms("KITCH", 5)).equals(List.of("Kitchen")), "prefix, any case");
+        check(names(index.searchRooms("liv", 5)).equals(List.of("Living Room")), "first word prefix");
+        check(names(index.searchRooms("bed", 5)).equals(List.of("Guest Bedroom", "Master Bedroom")),
+                "word prefix, shorter name first");
+        check(names(index.searchRooms("guest bed", 5)).equals(List.of("Guest Bedroom")), "every term must match");
+        check(names(index.searchRooms("room", 5)).equals(List.of("Kids Room", "Living Room")), "later word");
+        check(names(index.searchRooms("room", 1)).equals(List.of("Kids Room")), "limit");
+        check(names(index.searchRooms("kitchn", 5)).equals(List.of("Kitchen")), "one typing error");
+        check(names(index.searchRooms("bedrom", 5)).equals(List.of("Guest Bedroom", "Master Bedroom")),
+                "typing error in a later word");
+        check(names(index.searchRooms("mastr bedroom", 5)).equals(List.of("Master Bedroom")),
+                "typing error next to a correct term");
+        check(index.searchRooms("zzz", 5).isEmpty(), "no match");
+        check(index.searchRooms("  ", 5).isEmpty(), "blank query");
+        check(index.searchRooms(null, 5).isEmpty(), "null query");
+        check(index.searchRooms("kitchen", 0).isEmpty(), "zero limit");
+    }
+    
+    /**
+     * Devices created after the index exists, with names built from a small vocabulary
+     */
+    private static List<Device> addDevices(SmartHomeController home, Random random) {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String name = capitalize(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextBoolean()) {
+                name += " " + capitalize(WORDS[random.nextInt(WORDS.length)]);
+            }
+            name += " " + i;
+            String room = random.nextBoolean() ? "Kitchen" : "Living Room";
+            devices.add(home.createDevice(room, DeviceType.LIGHT, name));
+        }
+        return devices;
+    }
+    
+    /**
+     * A correctly typed prefix finds every device with a word starting with it, best first
+     */
+    private static void prefixesMatchScan(NameIndex index, List<Device> devices) {
+        Set<String> prefixes = new HashSet<>();
+        for (String word : WORDS) {
+            for (int length = 1; length <= word.length(); length++) {
+                prefixes.add(word.substring(0, length));
+            }
+        }
+        prefixes.add("1");
+        prefixes.add("59");
+        prefixes.add("599");
+        for (String prefix : prefixes) {
+            Set<Device> expected = new HashSet<>();
+            for (Device device : devices) {
+                if (hasWordStarting(device.getName().toLowerCase(Locale.ROOT), prefix)) {
+                    expected.add(device);
+                }
+            }
+            List<Device> found = index.searchDevices(prefix, devices.size());
+            check(new HashSet<>(found).equals(expected), "\"" + prefix + "\" finds " + found.size()
+                    + " of " + expected.size());
+            for (int i = 1; i < found.size(); i++) {
+                check(!startsBetter(found.get(i).getName(), found.get(i - 1).getName(), prefix),
+                        "\"" + prefix + "\" ranks " + found.get(i - 1).getName() + " before " + found.get(i).getName());
+            }
+        }
+        for (int i = 0; i < devices.size(); i += 37) {
+            Device device = devices.get(i);
+            List<Device> exact = index.searchDevices(device.getName().toUpperCase(Locale.ROOT), 3);
+            check(!exact.isEmpty() && exact.get(0) == device, device.getName() + " finds itself first");
+        }
+    }
+    
+    private static void scopedToRoom(SmartHomeController home, NameIndex index) {
+        Room kitchen = home.getRoom("Kitchen");
+        List<Device> found = index.searchDevices(kitchen, "lamp", 1000);
+        check(!found.isEmpty(), "devices in the room");
+        for (Device device : found) {
+            check(device.getRoom() == kitchen, device.getName() + " is in the kitchen");
+        }
+        check(index.searchDevices(home.getRoom("Kids Room"), "lamp", 10).isEmpty(), "empty room");
+    }
+    
+    // Names that start with the whole query rank before names that only have a word starting with it
+    private static boolean startsBetter(String name, String than, String prefix) {
+        return name.toLowerCase(Locale.ROOT).startsWith(prefix) && !than.toLowerCase(Locale.ROOT).startsWith(prefix);
+    }
+    
+    private static boolean hasWordStarting(String name, String prefix) {
+        for (String word : name.split(" ")) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+    
+    private static List<String> names(List<Room> rooms) {
+        List<String> names = new ArrayList<>();
+        for (Room room : rooms) {
+            names.add(room.getName());
+        }
+        return names;
+    }
+    
+    private static void check(boolean condition, String what) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package query;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Range index over one numeric device property.
+ * Device ids are grouped into fixed-width value buckets kept in a sorted map; a range
+ * query ORs the bitmaps of the buckets fully inside the range and checks the exact
+ * values only for the two boundary buckets.
+ */
+class NumericIndex {
+    private final double bucketWidth;
+    private final TreeMap<Long, BitSet> buckets;
+    private final BitSet present;
+    private double[] values;
+    
+    /**
+     * Creates an index
+     * @param bucketWidth the value range covered by one bucket
+     */
+    NumericIndex(double bucketWidth) {
+        this.bucketWidth = bucketWidth;
+        this.buckets = new TreeMap<>();
+        this.present = new BitSet();
+        this.values = new double[0];
+    }
+    
+    /**
+     * Sets the value of a device, replacing any previous one
+     */
+    void put(int id, double value) {
+        if (Double.isNaN(value)) {
+            remove(id);
+            return;
+        }
+        if (id >= values.length) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(values, oldLength, values.length, Double.NaN);
+        } else if (present.get(id)) {
+            if (values[id] == value) {
+                return;
+            }
+            removeFromBucket(id, values[id]);
+        }
+        values[id] = value;
+        present.set(id);
+        buckets.computeIfAbsent(key(value), k -> new BitSet()).set(id);
+    }
+    
+    void remove(int id) {
+        if (present.get(id)) {
+            removeFromBucket(id, values[id]);
+            values[id] = Double.NaN;
+            present.clear(id);
+        }
+    }
+    
+    private void removeFromBucket(int id, double value) {
+        long key = key(value);
+        BitSet bucket = buckets.get(key);
+        bucket.clear(id);
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+    }
+    
+    private long key(double value) {
+        return (long) Math.floor(value / bucketWidth);
+    }
+    
+    /**
+     * Gets the devices with a value in a range
+     * @return a new bitmap of device ids
+     */
+    BitSet range(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        BitSet result = new BitSet();
+        if (low > high) {
+            return result;
+        }
+        long lowKey = key(low);
+        long highKey = key(high);
+        for (Map.Entry<Long, BitSet> entry : buckets.subMap(lowKey, true, highKey, true).entrySet()) {
+            long key = entry.getKey();
+            if (key > lowKey && key < highKey) {
+                result.or(entry.getValue());
+                continue;
+            }
+            BitSet bucket = entry.getValue();
+            for (int id = bucket.nextSetBit(0); id >= 0; id = bucket.nextSetBit(id + 1)) {
+                double value = values[id];
+                boolean aboveLow = lowInclusive ? value >= low : value > low;
+                boolean belowHigh = highInclusive ? value <= high : value < high;
+                if (aboveLow && belowHigh) {
+                    result.set(id);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets every device that has a value
+     * @return a new bitmap of device ids
+     */
+    BitSet present() {
+        return (BitSet) present.clone();
+    }
+    
+    int getBucketCount() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,222 @@
+package recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledFuture;
+
+import capability.MotionSensorCapability;
+import devices.SecurityCamera;
+
+/**
+ * Capture and recording state of one camera.
+ *
+ * While the camera is on, every tick captures a frame into the off-heap pre-roll ring.
+ * When the camera starts recording, the frames still in the ring are written first, then
+ * live frames follow in batches; both go from the ring slots to the segment file through
+ * gathering writes. Motion reported by the camera's motion sensor starts a recording that
+ * ends once no motion has been seen for the post-roll time.
+ */
+public class CameraRecorder {
+    private final RecordingService service;
+    private final SecurityCamera camera;
+    private final FrameSource source;
+    private final PreRollBuffer ring;
+    private final SegmentWriter writer;
+    private final int writeBatch;
+    private final long postRollMillis;
+    private final ByteBuffer[] gather;
+    private final Runnable motionListener;
+    
+    // Set by other threads: the camera's recording state and the end of a motion recording
+    private volatile boolean cameraRecording;
+    private volatile boolean motionRecording;
+    private volatile long motionUntil;
+    
+    // Capture state, guarded by this recorder's lock
+    private boolean writing;
+    private long nextToWrite;
+    private volatile boolean failed;
+    private volatile long framesWritten;
+    private volatile long recordings;
+    private ScheduledFuture<?> task;
+    
+    CameraRecorder(RecordingService service, SecurityCamera camera, FrameSource source, Path directory,
+                   RecordingSettings settings) {
+        this.service = service;
+        this.camera = camera;
+        this.source = source;
+        this.writeBatch = Math.max(1, settings.getWriteBatchFrames());
+        this.postRollMillis = settings.getPostRollMillis();
+        // The ring holds the pre-roll plus one batch of live frames waiting to be written
+        int preRollFrames = (int) Math.max(1, settings.getPreRollMillis() * settings.getFrameRate() / 1000);
+        this.ring = new PreRollBuffer(preRollFrames + writeBatch, settings.getMaxFrameBytes());
+        this.writer = new SegmentWriter(directory, settings.getSegmentBytes(), settings.getSegmentMillis());
+        this.gather = new ByteBuffer[ring.getCapacity()];
+        this.motionListener = this::motionDetected;
+        this.cameraRecording = camera.isRecording();
+    }
+    
+    public SecurityCamera getCamera() {
+        return camera;
+    }
+    
+    /**
+     * Starts recording on every motion reported by the camera's motion sensor, e.g. one
+     * added with MotionSensorDecorator. Called by RecordingService for cameras that already
+     * have a sensor; call it again after adding a sensor later.
+     */
+    public void followMotion() {
+        MotionSensorCapability sensor = camera.getCapability(MotionSensorCapability.KEY);
+        if (sensor != null) {
+            sensor.removeMotionListener(motionListener);
+            sensor.addMotionListener(motionListener);
+        }
+    }
+    
+    void unfollowMotion() {
+        MotionSensorCapability sensor = camera.getCapability(MotionSensorCapability.KEY);
+        if (sensor != null) {
+            sensor.removeMotionListener(motionListener);
+        }
+    }
+    
+    private void motionDetected() {
+        motionUntil = System.currentTimeMillis() + postRollMillis;
+        if (!camera.isRecording()) {
+            motionRecording = true;
+            camera.startRecording();
+        }
+    }
+    
+    void recordingChanged(boolean recording) {
+        cameraRecording = recording;
+        if (!recording) {
+            motionRecording = false;
+        }
+    }
+    
+    void setTask(ScheduledFuture<?> task) {
+        this.task = task;
+    }
+    
+    ScheduledFuture<?> getTask() {
+        return task;
+    }
+    
+    /**
+     * Captures one frame and writes what is due; run by the service at the frame rate
+     */
+    synchronized void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            if (motionRecording && now >= motionUntil) {
+                // Reports back through recordingChanged on this thread
+                camera.stopRecording();
+            }
+            boolean capturing = camera.isOn();
+            if (capturing) {
+                ring.capture(source, now);
+            }
+            boolean active = capturing && cameraRecording && !failed;
+            if (active && !writing) {
+                writing = true;
+                recordings++;
+                nextToWrite = ring.getOldestSequence();
+            }
+            if (writing) {
+                long pending = ring.getCapturedCount() - nextToWrite;
+                if (!active || pending >= writeBatch) {
+                    flush(now);
+                }
+                if (!active) {
+                    writing = false;
+                    writer.closeSegment();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+    
+    private void flush(long now) throws IOException {
+        int count = (int) (ring.getCapturedCount() - nextToWrite);
+        for (int i = 0; i < count; i++) {
+            gather[i] = ring.frame(nextToWrite + i);
+        }
+        writer.write(gather, count, now);
+        nextToWrite += count;
+        framesWritten += count;
+    }
+    
+    private void fail(Exception e) {
+        // Capture keeps running for the pre-roll; writing stays off until reset()
+        failed = true;
+        writing = false;
+        try {
+            writer.closeSegment();
+        } catch (IOException ignored) {
+            // already failing
+        }
+        service.recordingFailed(this, e);
+    }
+    
+    /**
+     * Re-enables writing after a failure, e.g. once disk space was freed
+     */
+    public void reset() {
+        failed = false;
+    }
+    
+    /**
+     * Writes any frames still pending and closes the segment. Waits for a running tick;
+     * the capture task must be cancelled first.
+     * @throws IOException if the frames cannot be written
+     */
+    synchronized void close() throws IOException {
+        try {
+            if (writing && !failed) {
+                flush(System.currentTimeMillis());
+            }
+        } finally {
+            writing = false;
+            writer.close();
+        }
+    }
+    
+    public boolean isFailed() {
+        return failed;
+    }
+    
+    public long getFramesCaptured() {
+        return ring.getCapturedCount();
+    }
+    
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+    
+    public long getBytesWritten() {
+        return writer.getBytesWritten();
+    }
+    
+    /**
+     * Gets the number of recordings started, each beginning with the pre-roll
+     * @return the count
+     */
+    public long getRecordingCount() {
+        return recordings;
+    }
+    
+    public int getSegmentCount() {
+        return writer.getSegmentCount();
+    }
+    
+    /**
+     * Gets the off-heap memory held by the pre-roll ring
+     * @return the size in bytes
+     */
+    public long getBufferBytes() {
+        return ring.getMemoryBytes();
+    }
+}
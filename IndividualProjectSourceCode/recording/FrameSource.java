@@ -0,0 +1,16 @@
+package recording;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Produces the frames of one camera. Implementations write straight into the buffer
+ * they are given, which is a slot of the camera's off-heap pre-roll ring.
+ */
+public interface FrameSource {
+    /**
+     * Writes the next frame
+     * @param target the buffer to fill, from its position up to its limit
+     * @return the number of bytes written
+     */
+    int nextFrame(ByteBuffer target);
+}
@@ -0,0 +1,82 @@
+package recording;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size ring of frames in one off-heap buffer.
+ * Each slot holds a frame record: a 20-byte header (payload length, frame sequence and
+ * capture time) followed by the payload. Every slot has a view created once up front, so
+ * capturing a frame and handing it to a gathering write allocates and copies nothing.
+ * Used by one capture thread at a time.
+ */
+class PreRollBuffer {
+    static final int HEADER_BYTES = 20;
+    
+    private final ByteBuffer memory;
+    private final ByteBuffer[] slots;
+    private long captured;
+    
+    /**
+     * Allocates the ring
+     * @param frames the number of slots
+     * @param maxFrameBytes the largest payload a slot takes
+     */
+    PreRollBuffer(int frames, int maxFrameBytes) {
+        int slotBytes = HEADER_BYTES + maxFrameBytes;
+        this.memory = ByteBuffer.allocateDirect(Math.multiplyExact(frames, slotBytes));
+        this.slots = new ByteBuffer[frames];
+        for (int i = 0; i < frames; i++) {
+            memory.limit((i + 1) * slotBytes).position(i * slotBytes);
+            slots[i] = memory.slice();
+        }
+        memory.clear();
+    }
+    
+    /**
+     * Captures the next frame into the oldest slot
+     * @param source the frame source
+     * @param timestamp the capture time in epoch milliseconds
+     * @return the frame's sequence number
+     */
+    long capture(FrameSource source, long timestamp) {
+        long sequence = captured;
+        ByteBuffer slot = slots[(int) (sequence % slots.length)];
+        slot.clear().position(HEADER_BYTES);
+        int length = source.nextFrame(slot);
+        slot.putInt(0, length).putLong(4, sequence).putLong(12, timestamp);
+        slot.limit(HEADER_BYTES + length).position(0);
+        captured++;
+        return sequence;
+    }
+    
+    /**
+     * Gets a captured frame record, ready to be written
+     * @param sequence a sequence no older than getOldestSequence()
+     * @return the slot's view, positioned at the header
+     */
+    ByteBuffer frame(long sequence) {
+        ByteBuffer slot = slots[(int) (sequence % slots.length)];
+        slot.position(0);
+        return slot;
+    }
+    
+    /**
+     * Gets the oldest frame still held
+     * @return its sequence; equal to getCapturedCount() if the ring is empty
+     */
+    long getOldestSequence() {
+        return Math.max(0, captured - slots.length);
+    }
+    
+    long getCapturedCount() {
+        return captured;
+    }
+    
+    int getCapacity() {
+        return slots.length;
+    }
+    
+    long getMemoryBytes() {
+        return memory.capacity();
+    }
+}
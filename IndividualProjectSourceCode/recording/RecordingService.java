@@ -0,0 +1,184 @@
+package recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import core.DeviceProperty;
+import core.SmartHomeController;
+import devices.Device;
+import devices.SecurityCamera;
+import observer.DeviceStateObserver;
+
+/**
+ * Records the security cameras of one home to disk (Observer Pattern).
+ *
+ * Every camera gets a CameraRecorder with a fixed-size off-heap pre-roll ring, ticked at
+ * the frame rate by a small shared thread pool. The service follows the cameras'
+ * RECORDING state, so SecurityCamera.startRecording and stopRecording, as well as
+ * motion from a camera's motion sensor, start and stop the writes. The rings of all
+ * cameras together stay within the configured buffer budget, so memory is bounded no
+ * matter how many cameras record at once.
+ */
+public class RecordingService implements DeviceStateObserver {
+    private final SmartHomeController home;
+    private final Path directory;
+    private final RecordingSettings settings;
+    private final ScheduledExecutorService capture;
+    private final Map<Device, CameraRecorder> recorders;
+    private long bufferBytes;
+    
+    /**
+     * Creates a service; call start() before adding cameras
+     * @param home the home whose cameras are recorded
+     * @param directory where each camera's segments go, in a sub-directory per camera
+     * @param settings frame rate, pre-roll, segment and memory settings
+     */
+    public RecordingService(SmartHomeController home, Path directory, RecordingSettings settings) {
+        this.home = home;
+        this.directory = directory;
+        this.settings = settings;
+        this.capture = Executors.newScheduledThreadPool(Math.max(1, settings.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "camera-capture");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.recorders = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Starts following the cameras' recording state
+     */
+    public void start() {
+        home.addStateObserver(this);
+    }
+    
+    /**
+     * Adds a camera fed by a synthetic frame source
+     * @param camera a camera of the home
+     * @return the camera's recorder
+     * @throws IllegalStateException if the camera's pre-roll would exceed the buffer budget
+     */
+    public CameraRecorder addCamera(SecurityCamera camera) {
+        return addCamera(camera, new SyntheticFrameSource(settings.getMaxFrameBytes(), camera.getId()));
+    }
+    
+    /**
+     * Adds a camera and starts capturing its frames
+     * @param camera a camera of the home
+     * @param source the camera's frames
+     * @return the camera's recorder
+     * @throws IllegalArgumentException if the camera was already added
+     * @throws IllegalStateException if the camera's pre-roll would exceed the buffer budget
+     */
+    public CameraRecorder addCamera(SecurityCamera camera, FrameSource source) {
+        CameraRecorder recorder;
+        synchronized (this) {
+            if (recorders.containsKey(camera)) {
+                throw new IllegalArgumentException(camera.getName() + " is already recorded");
+            }
+            long needed = (Math.max(1, settings.getPreRollMillis() * settings.getFrameRate() / 1000)
+                    + Math.max(1, settings.getWriteBatchFrames()))
+                    * (PreRollBuffer.HEADER_BYTES + settings.getMaxFrameBytes());
+            if (bufferBytes + needed > settings.getMaxBufferBytes()) {
+                throw new IllegalStateException("Recording buffer budget of " + settings.getMaxBufferBytes()
+                        + " bytes is used up; cannot add " + camera.getName());
+            }
+            recorder = new CameraRecorder(this, camera, source,
+                    directory.resolve("camera-" + camera.getId()), settings);
+            bufferBytes += recorder.getBufferBytes();
+            recorders.put(camera, recorder);
+        }
+        recorder.followMotion();
+        long periodMicros = 1_000_000L / Math.max(1, settings.getFrameRate());
+        recorder.setTask(capture.scheduleAtFixedRate(recorder::tick, 0, periodMicros, TimeUnit.MICROSECONDS));
+        return recorder;
+    }
+    
+    /**
+     * Stops capturing a camera and closes its segment
+     * @param camera the camera
+     * @throws IOException if the last frames cannot be written
+     */
+    public void removeCamera(SecurityCamera camera) throws IOException {
+        CameraRecorder recorder;
+        synchronized (this) {
+            recorder = recorders.remove(camera);
+            if (recorder == null) {
+                return;
+            }
+            bufferBytes -= recorder.getBufferBytes();
+        }
+        recorder.unfollowMotion();
+        recorder.getTask().cancel(false);
+        recorder.close();
+    }
+    
+    /**
+     * Gets a camera's recorder
+     * @param camera the camera
+     * @return the recorder or null if the camera was not added
+     */
+    public CameraRecorder getRecorder(SecurityCamera camera) {
+        return recorders.get(camera);
+    }
+    
+    public List<CameraRecorder> getRecorders() {
+        return new ArrayList<>(recorders.values());
+    }
+    
+    /**
+     * Gets the off-heap memory held by all pre-roll rings
+     * @return the size in bytes, at most the configured budget
+     */
+    public synchronized long getBufferBytes() {
+        return bufferBytes;
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        if (property != DeviceProperty.RECORDING) {
+            return;
+        }
+        CameraRecorder recorder = recorders.get(device);
+        if (recorder != null) {
+            recorder.recordingChanged(newValue != 0);
+        }
+    }
+    
+    void recordingFailed(CameraRecorder recorder, Exception e) {
+        home.notifyObservers("Recording failed for " + recorder.getCamera().getDescription() + ": " + e.getMessage());
+    }
+    
+    /**
+     * Stops all capture, writes the frames still pending and closes every segment
+     * @throws IOException if a camera's last frames cannot be written
+     */
+    public void shutdown() throws IOException {
+        home.removeStateObserver(this);
+        capture.shutdown();
+        try {
+            capture.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = null;
+        for (CameraRecorder recorder : getRecorders()) {
+            recorder.unfollowMotion();
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package recording;
+
+/**
+ * Tuning settings for RecordingService
+ */
+public class RecordingSettings {
+    private int frameRate = 10;
+    private int maxFrameBytes = 64 * 1024;
+    private long preRollMillis = 5000;
+    private long postRollMillis = 30_000;
+    private long segmentBytes = 64L * 1024 * 1024;
+    private long segmentMillis = 60_000;
+    private int writeBatchFrames = 8;
+    private long maxBufferBytes = 512L * 1024 * 1024;
+    private int threads = 2;
+    
+    /**
+     * Sets the frames captured per second by every camera
+     */
+    public RecordingSettings withFrameRate(int frameRate) {
+        this.frameRate = frameRate;
+        return this;
+    }
+    
+    /**
+     * Sets the largest frame a camera may produce; it sizes the pre-roll slots
+     */
+    public RecordingSettings withMaxFrameBytes(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+        return this;
+    }
+    
+    /**
+     * Sets how much video from before the start of a recording is kept and saved
+     */
+    public RecordingSettings withPreRollMillis(long preRollMillis) {
+        this.preRollMillis = preRollMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how long a motion-triggered recording continues after the last motion
+     */
+    public RecordingSettings withPostRollMillis(long postRollMillis) {
+        this.postRollMillis = postRollMillis;
+        return this;
+    }
+    
+    /**
+     * Sets when a segment file is closed and the next one started, by size or age
+     */
+    public RecordingSettings withSegmentLimits(long segmentBytes, long segmentMillis) {
+        this.segmentBytes = segmentBytes;
+        this.segmentMillis = segmentMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how many live frames are collected before one gathering write
+     */
+    public RecordingSettings withWriteBatchFrames(int writeBatchFrames) {
+        this.writeBatchFrames = writeBatchFrames;
+        return this;
+    }
+    
+    /**
+     * Sets the off-heap memory all pre-roll rings together may use
+     */
+    public RecordingSettings withMaxBufferBytes(long maxBufferBytes) {
+        this.maxBufferBytes = maxBufferBytes;
+        return this;
+    }
+    
+    /**
+     * Sets the number of capture threads shared by all cameras
+     */
+    public RecordingSettings withThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+    
+    public int getFrameRate() {
+        return frameRate;
+    }
+    
+    public int getMaxFrameBytes() {
+        return maxFrameBytes;
+    }
+    
+    public long getPreRollMillis() {
+        return preRollMillis;
+    }
+    
+    public long getPostRollMillis() {
+        return postRollMillis;
+    }
+    
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+    
+    public long getSegmentMillis() {
+        return segmentMillis;
+    }
+    
+    public int getWriteBatchFrames() {
+        return writeBatchFrames;
+    }
+    
+    public long getMaxBufferBytes() {
+        return maxBufferBytes;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+}
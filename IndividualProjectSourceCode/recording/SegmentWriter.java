@@ -0,0 +1,103 @@
+package recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes frame records to rolling segment files of one camera.
+ * A segment is the plain concatenation of frame records (see PreRollBuffer); records are
+ * never split across segments. A new segment starts when the current one reaches the size
+ * or age limit, and after every recording stops. Used by one capture thread at a time.
+ */
+class SegmentWriter implements Closeable {
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    
+    private FileChannel channel;
+    private Path currentPath;
+    private long segmentBytes;
+    private long segmentStart;
+    private volatile int segmentCount;
+    private volatile long bytesWritten;
+    
+    SegmentWriter(Path directory, long maxSegmentBytes, long maxSegmentMillis) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentMillis = maxSegmentMillis;
+    }
+    
+    /**
+     * Writes frame records with gathering writes straight from their buffers
+     * @param frames the records, each positioned at its start
+     * @param count the number of records to write from the start of the array
+     * @param now the current time in epoch milliseconds
+     * @throws IOException if the segment cannot be created or written
+     */
+    void write(ByteBuffer[] frames, int count, long now) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (channel != null && (segmentBytes >= maxSegmentBytes || now - segmentStart >= maxSegmentMillis)) {
+            closeSegment();
+        }
+        if (channel == null) {
+            openSegment(now);
+        }
+        long expected = 0;
+        for (int i = 0; i < count; i++) {
+            expected += frames[i].remaining();
+        }
+        long written = 0;
+        while (written < expected) {
+            // Finished buffers are skipped, so repeating the call resumes a partial write
+            written += channel.write(frames, 0, count);
+        }
+        segmentBytes += written;
+        bytesWritten += written;
+    }
+    
+    private void openSegment(long now) throws IOException {
+        Files.createDirectories(directory);
+        currentPath = directory.resolve(String.format("segment-%013d-%04d.seg", now, segmentCount % 10_000));
+        channel = FileChannel.open(currentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segmentStart = now;
+        segmentBytes = 0;
+        segmentCount++;
+    }
+    
+    /**
+     * Closes the current segment; the next write starts a new one
+     * @throws IOException if the file cannot be closed
+     */
+    void closeSegment() throws IOException {
+        if (channel != null) {
+            FileChannel closing = channel;
+            channel = null;
+            closing.close();
+        }
+    }
+    
+    Path getCurrentPath() {
+        return channel == null ? null : currentPath;
+    }
+    
+    int getSegmentCount() {
+        return segmentCount;
+    }
+    
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+}
@@ -0,0 +1,43 @@
+package recording;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stand-in for camera hardware: frames of a fixed size filled with a cheap pattern that
+ * changes from frame to frame, so segments have realistic sizes without an encoder
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private final int frameBytes;
+    private final long seed;
+    private long frame;
+    
+    /**
+     * Creates a source
+     * @param frameBytes the size of every frame
+     * @param seed distinguishes the patterns of different cameras
+     */
+    public SyntheticFrameSource(int frameBytes, long seed) {
+        if (frameBytes < 8) {
+            throw new IllegalArgumentException("Frames must be at least 8 bytes");
+        }
+        this.frameBytes = frameBytes;
+        this.seed = seed;
+    }
+    
+    @Override
+    public int nextFrame(ByteBuffer target) {
+        int length = Math.min(frameBytes, target.remaining());
+        long value = seed * 0x9E3779B97F4A7C15L + frame++;
+        int end = target.position() + length;
+        int p = target.position();
+        for (; p + 8 <= end; p += 8) {
+            target.putLong(p, value);
+            value += 0x632BE59BD9B4E019L;
+        }
+        for (; p < end; p++) {
+            target.put(p, (byte) value);
+        }
+        target.position(end);
+        return length;
+    }
+}
@@ -0,0 +1,373 @@
+package replication;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import changefeed.ChangeBatch;
+import changefeed.ChangeFeed;
+import changefeed.HomeSnapshot;
+import core.DeviceProperty;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import observer.DeviceStateObserver;
+
+/**
+ * Primary side of hot-standby replication (Observer Pattern).
+ *
+ * Streams the home's change feed to one standby over a local TCP or Unix-domain socket.
+ * A standby says which sequence it has; the primary replays everything after it from the
+ * feed, or sends a snapshot if the feed no longer holds that far back, then follows new
+ * changes in batches as they happen. The standby acknowledges every batch, and at most
+ * maxUnacknowledged changes are in flight. While idle the primary sends heartbeats, which
+ * the standby uses to detect a failed primary. A standby that reconnects picks up where it
+ * left off without a resync; one that last followed another primary process gets a
+ * snapshot first. A newer standby connection replaces the old one.
+ */
+public class ReplicationPrimary implements DeviceStateObserver {
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    
+    private final SmartHomeController home;
+    private final ChangeFeed feed;
+    private final SocketAddress address;
+    private final ReplicationSettings settings;
+    private final Object acknowledgements;
+    // Tells this process's sequences apart from those of an earlier primary
+    private final long epoch;
+    
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private volatile Thread acceptor;
+    private volatile Session session;
+    private volatile long acknowledgedSequence;
+    
+    private volatile long recordsSent;
+    private volatile long batchesSent;
+    private volatile long snapshotsSent;
+    private volatile long bytesSent;
+    private volatile long sessions;
+    
+    /**
+     * Creates a primary; call start() to accept a standby
+     * @param home the home to replicate
+     * @param feed the home's change feed, already started
+     * @param address a TCP (InetSocketAddress) or Unix-domain (UnixDomainSocketAddress) address
+     * @param settings batching, acknowledgement and heartbeat settings
+     */
+    public ReplicationPrimary(SmartHomeController home, ChangeFeed feed, SocketAddress address,
+                              ReplicationSettings settings) {
+        this.home = home;
+        this.feed = feed;
+        this.address = address;
+        this.settings = settings;
+        this.acknowledgements = new Object();
+        this.epoch = ThreadLocalRandom.current().nextLong();
+    }
+    
+    /**
+     * Binds the replication socket and starts accepting a standby
+     * @throws IOException if the address cannot be bound
+     */
+    public void start() throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            serverChannel = ServerSocketChannel.open();
+        }
+        serverChannel.bind(address);
+        running = true;
+        home.addStateObserver(this);
+        Thread thread = new Thread(this::acceptLoop, "replication-accept");
+        thread.setDaemon(true);
+        acceptor = thread;
+        thread.start();
+    }
+    
+    /**
+     * Gets the address the standby connects to
+     * @return the local address
+     * @throws IOException if the channel is closed
+     */
+    public SocketAddress getLocalAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                Session previous = session;
+                if (previous != null) {
+                    previous.close();
+                }
+                Session next = new Session(channel);
+                session = next;
+                sessions++;
+                next.start();
+            } catch (IOException e) {
+                if (running) {
+                    home.notifyObservers("Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // Wakes the sender when the feed has something new
+    private void signal() {
+        Session current = session;
+        if (current != null) {
+            LockSupport.unpark(current.sender);
+        }
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        signal();
+    }
+    
+    @Override
+    public void roomAdded(Room room, long timestamp) {
+        signal();
+    }
+    
+    @Override
+    public void deviceAdded(Device device, long timestamp) {
+        signal();
+    }
+    
+    /**
+     * Waits until the standby has applied a change, e.g. to make a critical command durable
+     * @param sequence the change's sequence in the feed
+     * @param timeoutMillis how long to wait
+     * @return true if the standby has it, false on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitReplicated(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (acknowledgements) {
+            while (acknowledgedSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                acknowledgements.wait(remaining);
+            }
+            return true;
+        }
+    }
+    
+    public boolean isStandbyConnected() {
+        Session current = session;
+        return current != null && current.channel.isOpen();
+    }
+    
+    /**
+     * Gets the last change the standby has applied
+     * @return the sequence, or 0 if none
+     */
+    public long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+    
+    /**
+     * Gets how far the standby is behind
+     * @return the number of changes not yet acknowledged
+     */
+    public long getLag() {
+        return Math.max(0, feed.getLastSequence() - acknowledgedSequence);
+    }
+    
+    public long getRecordsSent() {
+        return recordsSent;
+    }
+    
+    public long getBatchesSent() {
+        return batchesSent;
+    }
+    
+    public long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+    
+    public long getBytesSent() {
+        return bytesSent;
+    }
+    
+    public long getSessionCount() {
+        return sessions;
+    }
+    
+    /**
+     * Stops replicating and closes the socket
+     * @throws IOException if the socket cannot be closed
+     */
+    public void stop() throws IOException {
+        running = false;
+        home.removeStateObserver(this);
+        Session current = session;
+        if (current != null) {
+            current.close();
+        }
+        serverChannel.close();
+        Thread thread = acceptor;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+    
+    /**
+     * One standby connection: a sender thread and a thread reading acknowledgements
+     */
+    private final class Session {
+        private final SocketChannel channel;
+        private final Thread sender;
+        private final Thread receiver;
+        private final ReplicationProtocol.Frame output;
+        private volatile long sentSequence;
+        private volatile long sessionAcknowledged;
+        
+        Session(SocketChannel channel) {
+            this.channel = channel;
+            this.output = new ReplicationProtocol.Frame();
+            this.sender = new Thread(this::send, "replication-send");
+            this.sender.setDaemon(true);
+            this.receiver = new Thread(this::receive, "replication-ack");
+            this.receiver.setDaemon(true);
+        }
+        
+        void start() {
+            sender.start();
+        }
+        
+        private void send() {
+            try {
+                ReplicationProtocol.Frame input = new ReplicationProtocol.Frame();
+                input.readFrom(channel);
+                if (input.getType() != ReplicationProtocol.HELLO) {
+                    throw new IOException("Expected HELLO from standby");
+                }
+                String homeId = input.getString();
+                long standbyEpoch = input.getLong();
+                long cursor = input.getVarLong();
+                if (!homeId.equals(home.getHomeId())) {
+                    output.begin(ReplicationProtocol.ERROR);
+                    output.putString("Primary serves home " + home.getHomeId() + ", not " + homeId);
+                    output.writeTo(channel);
+                    close();
+                    return;
+                }
+                receiver.start();
+                if (standbyEpoch == epoch) {
+                    sentSequence = cursor;
+                    sessionAcknowledged = cursor;
+                    home.notifyObservers("Standby connected for home " + homeId + " at sequence " + cursor);
+                } else {
+                    home.notifyObservers("Standby connected for home " + homeId + "; sending a snapshot");
+                    sendSnapshot(feed.snapshot());
+                }
+                streamChanges();
+            } catch (IOException e) {
+                if (running && channel.isOpen()) {
+                    home.notifyObservers("Replication to standby stopped: " + e.getMessage());
+                }
+                close();
+            }
+        }
+        
+        private void streamChanges() throws IOException {
+            long lastSent = System.nanoTime();
+            long heartbeat = TimeUnit.MILLISECONDS.toNanos(settings.getHeartbeatMillis());
+            while (running && channel.isOpen()) {
+                long inFlight = sentSequence - sessionAcknowledged;
+                long available = feed.getLastSequence() - sentSequence;
+                int room = (int) Math.min(settings.getBatchRecords(), settings.getMaxUnacknowledged() - inFlight);
+                if (available > 0 && room > 0) {
+                    if (available < room && settings.getLingerMillis() > 0 && inFlight > 0) {
+                        // The standby is still busy with the last batch, so give this one time to fill
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(settings.getLingerMillis()));
+                    }
+                    sendBatch(feed.readSince(sentSequence, room));
+                    lastSent = System.nanoTime();
+                    continue;
+                }
+                long idle = System.nanoTime() - lastSent;
+                if (idle >= heartbeat) {
+                    output.begin(ReplicationProtocol.HEARTBEAT);
+                    output.putVarLong(feed.getLastSequence());
+                    bytesSent += output.writeTo(channel);
+                    lastSent = System.nanoTime();
+                    continue;
+                }
+                // Woken early by a change or an acknowledgement
+                LockSupport.parkNanos(Math.min(heartbeat - idle, IDLE_POLL_NANOS));
+            }
+        }
+        
+        private void sendBatch(ChangeBatch batch) throws IOException {
+            if (batch.isSnapshot()) {
+                // The standby fell further behind than the feed keeps
+                sendSnapshot(batch.getSnapshot());
+                return;
+            }
+            if (batch.getRecords().isEmpty()) {
+                return;
+            }
+            ReplicationProtocol.encodeChanges(output, batch.getRecords());
+            bytesSent += output.writeTo(channel);
+            recordsSent += batch.getRecords().size();
+            batchesSent++;
+            sentSequence = batch.getNextSequence();
+        }
+        
+        private void sendSnapshot(HomeSnapshot snapshot) throws IOException {
+            ReplicationProtocol.encodeSnapshot(output, snapshot, epoch);
+            bytesSent += output.writeTo(channel);
+            snapshotsSent++;
+            sentSequence = snapshot.getResumeSequence();
+            sessionAcknowledged = Math.min(sessionAcknowledged, sentSequence);
+        }
+        
+        private void receive() {
+            ReplicationProtocol.Frame input = new ReplicationProtocol.Frame();
+            try {
+                while (channel.isOpen()) {
+                    input.readFrom(channel);
+                    if (input.getType() == ReplicationProtocol.ACK) {
+                        long sequence = input.getVarLong();
+                        sessionAcknowledged = sequence;
+                        synchronized (acknowledgements) {
+                            if (sequence > acknowledgedSequence) {
+                                acknowledgedSequence = sequence;
+                            }
+                            acknowledgements.notifyAll();
+                        }
+                        LockSupport.unpark(sender);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+        
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+            LockSupport.unpark(sender);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package replication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import changefeed.ChangeRecord;
+import changefeed.ChangeType;
+import changefeed.HomeSnapshot;
+import core.DeviceProperty;
+import core.DeviceType;
+import devices.DeviceState;
+
+/**
+ * Wire format shared by the primary and the standby.
+ *
+ * Every frame is a 4-byte length, a type byte and a payload of variable-length integers.
+ * A batch of changes carries its first sequence and timestamp once; each change then takes
+ * a tag byte (change type, property and on/off value), the timestamp delta and, for state
+ * changes, the device id as a delta from the previous change plus the new value if it is
+ * not a flag. A typical device change fits in three to five bytes. An added device carries
+ * its full state, written the same way as in a snapshot. Values are absolute,
+ * so replaying a change the standby already has leaves the same state. Sequences are only
+ * comparable within one epoch, a random number chosen by every primary process; a standby
+ * from another epoch always starts with a snapshot.
+ */
+final class ReplicationProtocol {
+    // Standby to primary: home id, the primary epoch and the last sequence the standby has
+    static final byte HELLO = 1;
+    // Primary to standby: the whole home, for a standby too far behind to replay
+    static final byte SNAPSHOT = 2;
+    // Primary to standby: consecutive changes
+    static final byte CHANGES = 3;
+    // Primary to standby: the primary's last sequence while there is nothing to send
+    static final byte HEARTBEAT = 4;
+    // Standby to primary: the last sequence applied
+    static final byte ACK = 5;
+    // Primary to standby: the session was refused
+    static final byte ERROR = 6;
+    
+    static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+    
+    private static final DeviceType[] DEVICE_TYPES = DeviceType.values();
+    private static final DeviceProperty[] PROPERTIES = DeviceProperty.values();
+    private static final ChangeType[] CHANGE_TYPES = ChangeType.values();
+    
+    private ReplicationProtocol() {
+    }
+    
+    /**
+     * Receives decoded changes; ids are the primary's
+     */
+    interface ChangeSink {
+        /**
+         * Called before the rooms and devices of a snapshot; the mirror must start empty
+         */
+        void snapshotStarted(long epoch);
+        
+        void roomAdded(int roomId, String name);
+        
+        /**
+         * Called for an added device
+         * @param state the device's state when it was added, or null if not recorded
+         */
+        void deviceAdded(int deviceId, int roomId, DeviceType type, String name, DeviceState state);
+        
+        void stateChanged(int deviceId, DeviceProperty property, double value);
+    }
+    
+    /**
+     * Writes a batch of consecutive changes
+     * @param frame the frame to fill
+     * @param records the changes, in sequence order without gaps
+     */
+    static void encodeChanges(Frame frame, List<ChangeRecord> records) {
+        frame.begin(CHANGES);
+        ChangeRecord first = records.get(0);
+        frame.putVarLong(records.size());
+        frame.putVarLong(first.getSequence());
+        frame.putVarLong(first.getTimestamp());
+        long timestamp = first.getTimestamp();
+        int deviceId = 0;
+        for (ChangeRecord record : records) {
+            int tag = record.getType().ordinal();
+            if (record.getType() == ChangeType.STATE_CHANGED) {
+                tag |= (record.getProperty().ordinal() + 1) << 2;
+                if (isFlag(record.getProperty())) {
+                    tag |= record.getNewValue() != 0 ? 0x80 : 0;
+                }
+            }
+            frame.putByte(tag);
+            frame.putZigZag(record.getTimestamp() - timestamp);
+            timestamp = record.getTimestamp();
+            switch (record.getType()) {
+                case ROOM_ADDED:
+                    frame.putVarLong(record.getRoomId());
+                    frame.putString(record.getName());
+                    break;
+                case DEVICE_ADDED:
+                    frame.putVarLong(record.getDeviceId());
+                    frame.putVarLong(record.getRoomId());
+                    frame.putByte(record.getDeviceType().ordinal());
+                    frame.putString(record.getName());
+                    putState(frame, record.getState());
+                    break;
+                default:
+                    frame.putZigZag(record.getDeviceId() - deviceId);
+                    deviceId = record.getDeviceId();
+                    if (record.getProperty() == DeviceProperty.TEMPERATURE) {
+                        frame.putFloat((float) record.getNewValue());
+                    } else if (record.getProperty() == DeviceProperty.BRIGHTNESS) {
+                        frame.putZigZag((long) record.getNewValue());
+                    }
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Applies a batch written by encodeChanges
+     * @param frame the received frame, positioned after the type
+     * @param sink receives every change
+     * @return the sequence of the last change
+     */
+    static long decodeChanges(Frame frame, ChangeSink sink) {
+        int count = (int) frame.getVarLong();
+        long sequence = frame.getVarLong();
+        frame.getVarLong();
+        int deviceId = 0;
+        for (int i = 0; i < count; i++) {
+            int tag = frame.getByte() & 0xff;
+            frame.getZigZag();
+            switch (CHANGE_TYPES[tag & 0x3]) {
+                case ROOM_ADDED:
+                    sink.roomAdded((int) frame.getVarLong(), frame.getString());
+                    break;
+                case DEVICE_ADDED:
+                    int id = (int) frame.getVarLong();
+                    int roomId = (int) frame.getVarLong();
+                    DeviceType type = DEVICE_TYPES[frame.getByte()];
+                    String name = frame.getString();
+                    sink.deviceAdded(id, roomId, type, name, getState(frame));
+                    break;
+                default:
+                    deviceId += (int) frame.getZigZag();
+                    DeviceProperty property = PROPERTIES[((tag >> 2) & 0x1f) - 1];
+                    double value;
+                    if (property == DeviceProperty.TEMPERATURE) {
+                        value = frame.getFloat();
+                    } else if (property == DeviceProperty.BRIGHTNESS) {
+                        value = frame.getZigZag();
+                    } else {
+                        value = (tag & 0x80) != 0 ? 1 : 0;
+                    }
+                    sink.stateChanged(deviceId, property, value);
+                    break;
+            }
+        }
+        return sequence + count - 1;
+    }
+    
+    /**
+     * Writes a whole home
+     * @param frame the frame to fill
+     * @param snapshot the home
+     * @param epoch the primary's epoch
+     */
+    static void encodeSnapshot(Frame frame, HomeSnapshot snapshot, long epoch) {
+        frame.begin(SNAPSHOT);
+        frame.putLong(epoch);
+        frame.putVarLong(snapshot.getResumeSequence());
+        frame.putVarLong(snapshot.getRooms().size());
+        for (HomeSnapshot.RoomEntry room : snapshot.getRooms()) {
+            frame.putVarLong(room.getId());
+            frame.putString(room.getName());
+        }
+        frame.putVarLong(snapshot.getDevices().size());
+        for (HomeSnapshot.DeviceEntry device : snapshot.getDevices()) {
+            frame.putVarLong(device.getId());
+            frame.putVarLong(device.getRoomId());
+            frame.putByte(device.getType().ordinal());
+            frame.putString(device.getName());
+            putState(frame, device.getState());
+        }
+    }
+    
+    /**
+     * Applies a home written by encodeSnapshot to an empty mirror
+     * @param frame the received frame, positioned after the type
+     * @param sink receives the rooms, devices and their state
+     * @return the sequence to continue after
+     */
+    static long decodeSnapshot(Frame frame, ChangeSink sink) {
+        sink.snapshotStarted(frame.getLong());
+        long resume = frame.getVarLong();
+        int rooms = (int) frame.getVarLong();
+        for (int i = 0; i < rooms; i++) {
+            sink.roomAdded((int) frame.getVarLong(), frame.getString());
+        }
+        int devices = (int) frame.getVarLong();
+        for (int i = 0; i < devices; i++) {
+            int id = (int) frame.getVarLong();
+            int roomId = (int) frame.getVarLong();
+            DeviceType type = DEVICE_TYPES[frame.getByte()];
+            String name = frame.getString();
+            sink.deviceAdded(id, roomId, type, name, getState(frame));
+        }
+        return resume;
+    }
+    
+    /**
+     * Writes a device state: a flags byte (on, locked, recording; -1 for no state),
+     * then the brightness and the temperature
+     */
+    private static void putState(Frame frame, DeviceState state) {
+        if (state == null) {
+            frame.putByte(-1);
+            return;
+        }
+        frame.putByte((state.isOn() ? 1 : 0) | (state.isLocked() ? 2 : 0) | (state.isRecording() ? 4 : 0));
+        frame.putZigZag(state.getBrightness());
+        frame.putFloat(state.getTemperature());
+    }
+    
+    private static DeviceState getState(Frame frame) {
+        byte flags = frame.getByte();
+        if (flags < 0) {
+            return null;
+        }
+        int brightness = (int) frame.getZigZag();
+        float temperature = frame.getFloat();
+        return new DeviceState((flags & 1) != 0, brightness, temperature, (flags & 2) != 0, (flags & 4) != 0);
+    }
+    
+    private static boolean isFlag(DeviceProperty property) {
+        return property == DeviceProperty.POWER || property == DeviceProperty.LOCK
+                || property == DeviceProperty.RECORDING;
+    }
+    
+    /**
+     * A reusable frame buffer that grows as needed
+     */
+    static final class Frame {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private byte type;
+        
+        /**
+         * Starts a new outgoing frame
+         * @param frameType the frame type
+         */
+        void begin(byte frameType) {
+            buffer.clear();
+            buffer.putInt(0);
+            buffer.put(frameType);
+            type = frameType;
+        }
+        
+        byte getType() {
+            return type;
+        }
+        
+        /**
+         * Writes the frame
+         * @param channel the connection
+         * @return the bytes written
+         * @throws IOException if the connection fails
+         */
+        int writeTo(WritableByteChannel channel) throws IOException {
+            buffer.putInt(0, buffer.position() - 4);
+            buffer.flip();
+            int size = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return size;
+        }
+        
+        /**
+         * Reads the next frame, positioned after its type
+         * @param channel the connection
+         * @return the bytes read
+         * @throws IOException if the connection fails, ends or sends a malformed frame
+         */
+        int readFrom(ReadableByteChannel channel) throws IOException {
+            buffer.clear().limit(4);
+            readFully(channel);
+            int length = buffer.getInt(0);
+            if (length < 1 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Bad replication frame length " + length);
+            }
+            if (length > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            }
+            buffer.clear().limit(length);
+            readFully(channel);
+            buffer.flip();
+            type = buffer.get();
+            return length + 4;
+        }
+        
+        private void readFully(ReadableByteChannel channel) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Replication connection closed");
+                }
+            }
+        }
+        
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        
+        void putByte(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+        
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+        
+        void putZigZag(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+        
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+        
+        void putFloat(float value) {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+        
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+        
+        byte getByte() {
+            return buffer.get();
+        }
+        
+        long getVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = buffer.get();
+                value |= (long) (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            return value;
+        }
+        
+        long getZigZag() {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+        
+        long getLong() {
+            return buffer.getLong();
+        }
+        
+        float getFloat() {
+            return buffer.getFloat();
+        }
+        
+        String getString() {
+            int length = (int) getVarLong();
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package replication;
+
+/**
+ * Tuning settings for ReplicationPrimary and ReplicationStandby
+ */
+public class ReplicationSettings {
+    private int batchRecords = 4096;
+    private long lingerMillis = 1;
+    private int maxUnacknowledged = 64 * 1024;
+    private long heartbeatMillis = 100;
+    private long failoverMillis = 750;
+    private long reconnectMillis = 50;
+    
+    /**
+     * Sets the most changes sent to the standby in one batch
+     */
+    public ReplicationSettings withBatchRecords(int batchRecords) {
+        this.batchRecords = batchRecords;
+        return this;
+    }
+    
+    /**
+     * Sets how long a partial batch may wait for more changes before it is sent
+     */
+    public ReplicationSettings withLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how many changes may be sent before the standby acknowledges them
+     */
+    public ReplicationSettings withMaxUnacknowledged(int maxUnacknowledged) {
+        this.maxUnacknowledged = maxUnacknowledged;
+        return this;
+    }
+    
+    /**
+     * Sets how often an idle primary tells the standby it is alive
+     */
+    public ReplicationSettings withHeartbeatMillis(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how long the standby waits without hearing from the primary before taking over
+     */
+    public ReplicationSettings withFailoverMillis(long failoverMillis) {
+        this.failoverMillis = failoverMillis;
+        return this;
+    }
+    
+    /**
+     * Sets the delay between the standby's attempts to reach the primary again
+     */
+    public ReplicationSettings withReconnectMillis(long reconnectMillis) {
+        this.reconnectMillis = reconnectMillis;
+        return this;
+    }
+    
+    public int getBatchRecords() {
+        return batchRecords;
+    }
+    
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+    
+    public int getMaxUnacknowledged() {
+        return maxUnacknowledged;
+    }
+    
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+    
+    public long getFailoverMillis() {
+        return failoverMillis;
+    }
+    
+    public long getReconnectMillis() {
+        return reconnectMillis;
+    }
+}
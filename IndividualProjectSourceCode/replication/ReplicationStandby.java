@@ -0,0 +1,499 @@
+package replication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import changefeed.ChangeFeed;
+import core.DeviceProperty;
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.DeviceState;
+import devices.Door;
+import devices.Light;
+import devices.SecurityCamera;
+import devices.Thermostat;
+import observer.BufferedConsoleRenderer;
+import observer.ConsoleDisplayObserver;
+import observer.ConsoleSettings;
+import server.CommandServer;
+import ui.CommandLineInterface;
+
+/**
+ * Standby side of hot-standby replication.
+ *
+ * Keeps a live mirror of the primary's home in its own SmartHomeController by applying the
+ * change batches the primary streams, and acknowledges each batch. After a lost connection
+ * it reconnects and continues from the last sequence it applied. When nothing has been
+ * heard from the primary for the failover time, the standby promotes itself: the mirror
+ * becomes the live home and the promotion listeners are told, e.g. to start serving
+ * commands. Device ids in the mirror are the standby's own; they equal the primary's
+ * unless the primary replaced a room by adding another with the same name. Devices of
+ * plugin types (DeviceType.OTHER) are not mirrored.
+ */
+public class ReplicationStandby {
+    private final String homeId;
+    private final SocketAddress primary;
+    private final ReplicationSettings settings;
+    private final List<Consumer<SmartHomeController>> promotionListeners;
+    private final Mirror applier;
+    
+    private volatile SmartHomeController mirror;
+    private volatile SocketChannel channel;
+    private volatile boolean running;
+    private volatile boolean promoted;
+    private volatile long lastHeardNanos;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private Thread worker;
+    private Thread watchdog;
+    // Set by the first snapshot; 0 until the standby has a copy of the home
+    private long epoch;
+    
+    private volatile long recordsApplied;
+    private volatile long snapshotsApplied;
+    private volatile long bytesReceived;
+    private volatile long connections;
+    
+    /**
+     * Creates a standby with an empty mirror; call start() to follow the primary
+     * @param homeId the id of the replicated home
+     * @param primary the primary's replication address
+     * @param settings heartbeat, failover and reconnect settings
+     */
+    public ReplicationStandby(String homeId, SocketAddress primary, ReplicationSettings settings) {
+        this.homeId = homeId;
+        this.primary = primary;
+        this.settings = settings;
+        this.promotionListeners = new CopyOnWriteArrayList<>();
+        this.applier = new Mirror();
+        this.mirror = new SmartHomeController(homeId);
+    }
+    
+    /**
+     * Starts following the primary
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastHeardNanos = System.nanoTime();
+        worker = new Thread(this::follow, "replication-standby");
+        worker.setDaemon(true);
+        worker.start();
+        watchdog = new Thread(this::watch, "replication-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+    
+    /**
+     * Registers a listener called once with the mirror when the standby takes over
+     * @param listener receives the now live home
+     */
+    public void addPromotionListener(Consumer<SmartHomeController> listener) {
+        promotionListeners.add(listener);
+    }
+    
+    /**
+     * Gets the mirror of the primary's home. A standby that had to resync from a snapshot
+     * starts over with a new controller, so fetch the mirror again rather than keep it.
+     * @return the mirror; the live home after promotion
+     */
+    public SmartHomeController getMirror() {
+        return mirror;
+    }
+    
+    private void follow() {
+        ReplicationProtocol.Frame frame = new ReplicationProtocol.Frame();
+        while (running && !promoted) {
+            try (SocketChannel connection = SocketChannel.open(primary)) {
+                channel = connection;
+                connections++;
+                lastHeardNanos = System.nanoTime();
+                frame.begin(ReplicationProtocol.HELLO);
+                frame.putString(homeId);
+                frame.putLong(epoch);
+                frame.putVarLong(appliedSequence);
+                frame.writeTo(connection);
+                while (running && !promoted) {
+                    bytesReceived += frame.readFrom(connection);
+                    lastHeardNanos = System.nanoTime();
+                    if (!handle(frame, connection)) {
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Lost the primary, or a change did not fit the mirror; a fresh snapshot repairs the latter
+                if (e instanceof RuntimeException) {
+                    epoch = 0;
+                    mirror.notifyObservers("Standby mirror out of step, resyncing: " + e.getMessage());
+                }
+            } finally {
+                channel = null;
+            }
+            if (!running || promoted) {
+                return;
+            }
+            long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastHeardNanos);
+            if (epoch != 0 && silent >= settings.getFailoverMillis()) {
+                takeOver("primary silent for " + silent + " ms");
+                return;
+            }
+            try {
+                Thread.sleep(settings.getReconnectMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    
+    // Applies one frame from the primary; false if the primary refused the standby
+    private boolean handle(ReplicationProtocol.Frame frame, SocketChannel connection) throws IOException {
+        switch (frame.getType()) {
+            case ReplicationProtocol.SNAPSHOT:
+                appliedSequence = applyBatch(frame, true);
+                snapshotsApplied++;
+                acknowledge(frame, connection);
+                return true;
+            case ReplicationProtocol.CHANGES:
+                appliedSequence = applyBatch(frame, false);
+                acknowledge(frame, connection);
+                return true;
+            case ReplicationProtocol.HEARTBEAT:
+                primarySequence = frame.getVarLong();
+                return true;
+            case ReplicationProtocol.ERROR:
+                mirror.notifyObservers("Primary refused standby: " + frame.getString());
+                running = false;
+                return false;
+            default:
+                throw new IOException("Unexpected replication frame " + frame.getType());
+        }
+    }
+    
+    private long applyBatch(ReplicationProtocol.Frame frame, boolean snapshot) {
+        SmartHomeController target = mirror;
+        target.beginBulkUpdate();
+        long sequence;
+        try {
+            sequence = snapshot ? ReplicationProtocol.decodeSnapshot(frame, applier)
+                    : ReplicationProtocol.decodeChanges(frame, applier);
+        } finally {
+            // A snapshot may have replaced the mirror; the old one still ends its bulk update
+            target.endBulkUpdate("Replicated changes up to " + appliedSequence);
+        }
+        primarySequence = Math.max(primarySequence, sequence);
+        return sequence;
+    }
+    
+    private void acknowledge(ReplicationProtocol.Frame frame, SocketChannel connection) throws IOException {
+        frame.begin(ReplicationProtocol.ACK);
+        frame.putVarLong(appliedSequence);
+        frame.writeTo(connection);
+    }
+    
+    // Closes a connection that went silent, so the reader notices and failover starts
+    private void watch() {
+        long period = Math.max(1, settings.getHeartbeatMillis() / 2);
+        while (running && !promoted) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+            SocketChannel current = channel;
+            long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastHeardNanos);
+            if (current != null && silent >= settings.getFailoverMillis()) {
+                try {
+                    current.close();
+                } catch (IOException ignored) {
+                    // the reader sees the closed channel either way
+                }
+            }
+        }
+    }
+    
+    /**
+     * Takes over at once, e.g. for a planned switchover after the primary was stopped
+     */
+    public void promote() {
+        takeOver("promoted by request");
+    }
+    
+    private synchronized void takeOver(String reason) {
+        if (promoted) {
+            return;
+        }
+        promoted = true;
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // closing only stops replication
+            }
+        }
+        SmartHomeController home = mirror;
+        home.notifyObservers("Standby took over home " + homeId + " at sequence " + appliedSequence
+                + " (" + reason + ")");
+        for (Consumer<SmartHomeController> listener : promotionListeners) {
+            listener.accept(home);
+        }
+    }
+    
+    public boolean isPromoted() {
+        return promoted;
+    }
+    
+    public boolean isConnected() {
+        return channel != null;
+    }
+    
+    /**
+     * Gets the last change applied to the mirror
+     * @return the primary's sequence
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+    
+    /**
+     * Gets how far the mirror is behind the primary, as far as the standby knows
+     * @return the number of changes not yet applied
+     */
+    public long getLag() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+    
+    public long getRecordsApplied() {
+        return recordsApplied;
+    }
+    
+    public long getSnapshotsApplied() {
+        return snapshotsApplied;
+    }
+    
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+    
+    public long getConnectionCount() {
+        return connections;
+    }
+    
+    /**
+     * Stops following the primary without taking over
+     */
+    public void stop() {
+        running = false;
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // closing only stops replication
+            }
+        }
+        if (watchdog != null) {
+            watchdog.interrupt();
+        }
+    }
+    
+    /**
+     * Applies decoded changes to the mirror, mapping the primary's room and device ids
+     */
+    private final class Mirror implements ReplicationProtocol.ChangeSink {
+        private final List<Room> rooms = new ArrayList<>();
+        private final List<Device> devices = new ArrayList<>();
+        // Plugin devices: the feed does not say which plugin type they are, so they are not mirrored
+        private final BitSet skipped = new BitSet();
+        
+        @Override
+        public void snapshotStarted(long snapshotEpoch) {
+            if (!rooms.isEmpty() || mirror.getRoomCount() > 0) {
+                mirror = new SmartHomeController(homeId);
+                rooms.clear();
+                devices.clear();
+                skipped.clear();
+            }
+            epoch = snapshotEpoch;
+        }
+        
+        @Override
+        public void roomAdded(int roomId, String name) {
+            if (get(rooms, roomId) == null) {
+                set(rooms, roomId, mirror.addRoom(name));
+            }
+            recordsApplied++;
+        }
+        
+        @Override
+        public void deviceAdded(int deviceId, int roomId, DeviceType type, String name, DeviceState state) {
+            if (type == DeviceType.OTHER) {
+                skipped.set(deviceId);
+            } else if (get(devices, deviceId) == null) {
+                Room room = get(rooms, roomId);
+                if (room == null) {
+                    throw new IllegalStateException("Device " + deviceId + " is in unknown room " + roomId);
+                }
+                Device device = mirror.getDeviceFactory().createDevice(type, name, room);
+                // Registered before its state is applied, so the mirror's own observers see it added first
+                room.addDevice(device);
+                set(devices, deviceId, device);
+                if (state != null) {
+                    apply(device, DeviceProperty.POWER, state.isOn() ? 1 : 0);
+                    apply(device, DeviceProperty.LOCK, state.isLocked() ? 1 : 0);
+                    apply(device, DeviceProperty.RECORDING, state.isRecording() ? 1 : 0);
+                    if (state.getBrightness() >= 0) {
+                        apply(device, DeviceProperty.BRIGHTNESS, state.getBrightness());
+                    }
+                    if (!Float.isNaN(state.getTemperature())) {
+                        apply(device, DeviceProperty.TEMPERATURE, state.getTemperature());
+                    }
+                }
+            }
+            recordsApplied++;
+        }
+        
+        @Override
+        public void stateChanged(int deviceId, DeviceProperty property, double value) {
+            if (deviceId < 0) {
+                // Changes of unregistered devices have no id on the primary; nothing to mirror
+                return;
+            }
+            Device device = get(devices, deviceId);
+            if (device == null && skipped.get(deviceId)) {
+                return;
+            }
+            if (device == null) {
+                throw new IllegalStateException("Change for unknown device " + deviceId);
+            }
+            apply(device, property, value);
+            recordsApplied++;
+        }
+        
+        private void apply(Device device, DeviceProperty property, double value) {
+            boolean flag = value != 0;
+            switch (property) {
+                case POWER:
+                    if (flag) {
+                        device.turnOn();
+                    } else {
+                        device.turnOff();
+                    }
+                    break;
+                case BRIGHTNESS:
+                    if (device instanceof Light) {
+                        ((Light) device).setBrightness((int) value, false);
+                    }
+                    break;
+                case TEMPERATURE:
+                    if (device instanceof Thermostat) {
+                        ((Thermostat) device).setTemperature((float) value, false);
+                    }
+                    break;
+                case LOCK:
+                    if (device instanceof Door) {
+                        if (flag) {
+                            ((Door) device).lock();
+                        } else {
+                            ((Door) device).unlock();
+                        }
+                    }
+                    break;
+                case RECORDING:
+                    if (device instanceof SecurityCamera) {
+                        if (flag) {
+                            ((SecurityCamera) device).startRecording();
+                        } else {
+                            ((SecurityCamera) device).stopRecording();
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        private <T> T get(List<T> items, int id) {
+            return id >= 0 && id < items.size() ? items.get(id) : null;
+        }
+        
+        private <T> void set(List<T> items, int id, T item) {
+            while (items.size() <= id) {
+                items.add(null);
+            }
+            items.set(id, item);
+        }
+    }
+    
+    /**
+     * Main method to run a standby that serves commands once it takes over.
+     * Options: --home=ID (default "default"), --primary-port=N (default 7071) or
+     * --primary-unix=PATH, --port=N (command server after takeover, default 7070)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String homeId = "default";
+        SocketAddress primaryAddress = new InetSocketAddress("127.0.0.1", 7071);
+        int port = 7070;
+        for (String arg : args) {
+            if (arg.startsWith("--home=")) {
+                homeId = arg.substring("--home=".length());
+            } else if (arg.startsWith("--primary-port=")) {
+                primaryAddress = new InetSocketAddress("127.0.0.1",
+                        Integer.parseInt(arg.substring("--primary-port=".length())));
+            } else if (arg.startsWith("--primary-unix=")) {
+                primaryAddress = UnixDomainSocketAddress.of(Paths.get(arg.substring("--primary-unix=".length())));
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else {
+                System.err.println("Usage: ReplicationStandby [--home=ID] [--primary-port=N | --primary-unix=PATH]"
+                        + " [--port=N]");
+                System.exit(2);
+            }
+        }
+        
+        ReplicationStandby standby = new ReplicationStandby(homeId, primaryAddress, new ReplicationSettings());
+        InetSocketAddress serveAddress = new InetSocketAddress("127.0.0.1", port);
+        Object promotedSignal = new Object();
+        standby.addPromotionListener(home -> {
+            synchronized (promotedSignal) {
+                promotedSignal.notifyAll();
+            }
+        });
+        standby.start();
+        System.out.println("Standby for home " + homeId + " following " + primaryAddress);
+        synchronized (promotedSignal) {
+            while (!standby.isPromoted()) {
+                promotedSignal.wait(1000);
+            }
+        }
+        
+        SmartHomeController home = standby.getMirror();
+        BufferedConsoleRenderer renderer = new BufferedConsoleRenderer(home, new ConsoleSettings());
+        renderer.start();
+        home.addObserver(new ConsoleDisplayObserver(renderer));
+        System.out.println("Took over home " + homeId + " at sequence " + standby.getAppliedSequence() + " with "
+                + home.getDeviceCount() + " devices");
+        ChangeFeed changeFeed = new ChangeFeed(home, 64 * 1024);
+        changeFeed.start();
+        CommandLineInterface.registerAutomationModes(home);
+        CommandServer server = new CommandServer(home, serveAddress);
+        server.setChangeFeed(changeFeed);
+        server.bind();
+        System.out.println("Smart home command server listening on " + server.getLocalAddress());
+        server.run();
+    }
+}
@@ -0,0 +1,206 @@
+package scheduler;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A five-field cron expression: minute, hour, day of month, month and day of week.
+ *
+ * Each field accepts *, single values, ranges (1-5), lists (1,3,5) and steps (*&#47;15, 8-18/2).
+ * Months and days of week also accept names (JAN, MON). Day of week runs 0-7 with both
+ * 0 and 7 meaning Sunday. As in classic cron, when both day fields are restricted a day
+ * matches if either one does. The shortcuts @yearly, @monthly, @weekly, @daily and
+ * @hourly are accepted too.
+ */
+public class CronExpression {
+    private static final String[] MONTH_NAMES = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+    
+    // Give up after this many years without a match, e.g. "0 0 30 2 *"
+    private static final int MAX_YEARS = 8;
+    
+    private final String expression;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+    
+    /**
+     * Parses a cron expression
+     * @param expression the expression, e.g. "30 6 * * MON-FRI"
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    public CronExpression(String expression) {
+        this.expression = expression.trim();
+        String[] fields = expandShortcut(this.expression).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields: " + expression);
+        }
+        this.minutes = parseField(fields[0], 0, 59, null);
+        this.hours = parseField(fields[1], 0, 23, null);
+        this.daysOfMonth = parseField(fields[2], 1, 31, null);
+        this.months = parseField(fields[3], 1, 12, MONTH_NAMES);
+        long dow = parseField(fields[4], 0, 7, DAY_NAMES);
+        // 7 is another name for Sunday
+        if ((dow & (1L << 7)) != 0) {
+            dow |= 1L;
+        }
+        this.daysOfWeek = dow;
+        this.dayOfMonthRestricted = !fields[2].startsWith("*");
+        this.dayOfWeekRestricted = !fields[4].startsWith("*");
+    }
+    
+    private static String expandShortcut(String expression) {
+        switch (expression.toLowerCase()) {
+            case "@yearly":
+            case "@annually":
+                return "0 0 1 1 *";
+            case "@monthly":
+                return "0 0 1 * *";
+            case "@weekly":
+                return "0 0 * * 0";
+            case "@daily":
+            case "@midnight":
+                return "0 0 * * *";
+            case "@hourly":
+                return "0 * * * *";
+            default:
+                return expression;
+        }
+    }
+    
+    private static long parseField(String field, int min, int max, String[] names) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, null, field);
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                if (dash > 0) {
+                    from = parseNumber(part.substring(0, dash), min, max, names, field);
+                    to = parseNumber(part.substring(dash + 1), min, max, names, field);
+                } else {
+                    from = parseNumber(part, min, max, names, field);
+                    // "5/15" means every 15 starting at 5
+                    to = slash >= 0 ? max : from;
+                }
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid range in cron field: " + field);
+            }
+            for (int value = from; value <= to; value += step) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+    
+    private static int parseNumber(String text, int min, int max, String[] names, String field) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(text)) {
+                    // Month names start at 1, day names at 0
+                    return i + min;
+                }
+            }
+        }
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value in cron field: " + field);
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Value out of range in cron field: " + field);
+        }
+        return value;
+    }
+    
+    /**
+     * Finds the next time the expression matches, strictly after the given time.
+     * Local times skipped by a daylight-saving change are moved forward to the first valid instant.
+     * @param after the time to search from, in the home's time zone
+     * @return the next matching time, or null if there is none within eight years
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int limitYear = after.getYear() + MAX_YEARS;
+        
+        while (time.getYear() <= limitYear) {
+            if (!isSet(months, time.getMonthValue())) {
+                time = time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+                continue;
+            }
+            if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                continue;
+            }
+            int hour = nextSet(hours, time.getHour());
+            if (hour < 0) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                continue;
+            }
+            if (hour != time.getHour()) {
+                // On a daylight-saving day a skipped hour resolves to the next valid one
+                time = time.truncatedTo(ChronoUnit.DAYS).withHour(hour);
+            }
+            int minute = nextSet(minutes, time.getMinute());
+            if (minute < 0) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                continue;
+            }
+            return time.withMinute(minute);
+        }
+        return null;
+    }
+    
+    private boolean dayMatches(ZonedDateTime time) {
+        boolean domMatch = isSet(daysOfMonth, time.getDayOfMonth());
+        // DayOfWeek runs MONDAY=1 to SUNDAY=7, cron runs SUN=0 to SAT=6
+        boolean dowMatch = isSet(daysOfWeek, time.getDayOfWeek().getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return domMatch || dowMatch;
+        }
+        return domMatch && dowMatch;
+    }
+    
+    private static boolean isSet(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+    
+    /**
+     * Gets the smallest set value at or above from
+     * @return the value, or -1 if there is none
+     */
+    private static int nextSet(long bits, int from) {
+        long remaining = bits & (-1L << from);
+        return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+    
+    /**
+     * Gets the expression text
+     * @return the expression as given
+     */
+    public String getExpression() {
+        return expression;
+    }
+    
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
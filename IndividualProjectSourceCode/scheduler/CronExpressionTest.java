@@ -0,0 +1,133 @@
+package scheduler;
+
+import java.time.DayOfWeek;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Checks CronExpression next-fire times against a minute-by-minute scan, plus shortcuts,
+ * day-of-month/day-of-week semantics, daylight-saving days and malformed expressions.
+ * Run with: java scheduler.CronExpressionTest (exits with an AssertionError on the first failure)
+ */
+public class CronExpressionTest {
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+    private static int checks;
+    
+    /**
+     * Runs every check
+     */
+    public static void main(String[] args) {
+        matchesScan();
+        fixedDates();
+        daylightSaving();
+        malformed();
+        System.out.println("CronExpressionTest: " + checks + " checks passed");
+    }
+    
+    /**
+     * From random start times, next() must return the first minute the reference accepts
+     */
+    private static void matchesScan() {
+        Random random = new Random(11);
+        ZonedDateTime base = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        for (int i = 0; i < 40; i++) {
+            ZonedDateTime after = base.plusMinutes(random.nextInt(2 * 366 * 24 * 60)).plusSeconds(random.nextInt(60));
+            expectScan("*/15 * * * *", after, time -> time.getMinute() % 15 == 0);
+            expectScan("30 6 * * MON-FRI", after, time -> time.getHour() == 6 && time.getMinute() == 30
+                    && time.getDayOfWeek().getValue() <= 5);
+            expectScan("0 8-18/2 * * *", after, time -> time.getMinute() == 0
+                    && time.getHour() >= 8 && time.getHour() <= 18 && time.getHour() % 2 == 0);
+            expectScan("5,35 22 1,15 * *", after, time -> (time.getMinute() == 5 || time.getMinute() == 35)
+                    && time.getHour() == 22 && (time.getDayOfMonth() == 1 || time.getDayOfMonth() == 15));
+            expectScan("0 12 * JAN,jul *", after, time -> time.getMinute() == 0 && time.getHour() == 12
+                    && (time.getMonthValue() == 1 || time.getMonthValue() == 7));
+            // Both day fields restricted: either may match
+            expectScan("0 0 13 * FRI", after, time -> time.getMinute() == 0 && time.getHour() == 0
+                    && (time.getDayOfMonth() == 13 || time.getDayOfWeek() == DayOfWeek.FRIDAY));
+            // 0 and 7 are both Sunday
+            expectScan("0 9 * * 7", after, time -> time.getMinute() == 0 && time.getHour() == 9
+                    && time.getDayOfWeek() == DayOfWeek.SUNDAY);
+            expectScan("0 9 * * 0", after, time -> time.getMinute() == 0 && time.getHour() == 9
+                    && time.getDayOfWeek() == DayOfWeek.SUNDAY);
+            expectScan("@hourly", after, time -> time.getMinute() == 0);
+            expectScan("@daily", after, time -> time.getMinute() == 0 && time.getHour() == 0);
+            expectScan("@weekly", after, time -> time.getMinute() == 0 && time.getHour() == 0
+                    && time.getDayOfWeek() == DayOfWeek.SUNDAY);
+            expectScan("@monthly", after, time -> time.getMinute() == 0 && time.getHour() == 0
+                    && time.getDayOfMonth() == 1);
+        }
+    }
+    
+    private static void expectScan(String expression, ZonedDateTime after, Predicate<ZonedDateTime> reference) {
+        ZonedDateTime expected = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        while (!reference.test(expected)) {
+            expected = expected.plusMinutes(1);
+        }
+        ZonedDateTime actual = new CronExpression(expression).next(after);
+        check(expected.equals(actual), expression + " after " + after + ": expected " + expected + ", got " + actual);
+    }
+    
+    private static void fixedDates() {
+        ZonedDateTime after = ZonedDateTime.of(2023, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        check(utc(2024, 2, 29, 0, 0).equals(new CronExpression("0 0 29 2 *").next(after)), "next leap day");
+        check(new CronExpression("0 0 30 2 *").next(after) == null, "a date that never comes");
+        check(utc(2024, 1, 1, 0, 0).equals(new CronExpression("@yearly").next(after)), "@yearly");
+        ZonedDateTime exact = utc(2024, 5, 6, 7, 30);
+        check(utc(2024, 5, 6, 7, 31).equals(new CronExpression("* * * * *").next(exact)), "strictly after");
+        check(utc(2024, 5, 7, 7, 30).equals(new CronExpression("30 7 * * *").next(exact)), "not the time itself");
+        check(utc(2024, 5, 6, 7, 31).equals(new CronExpression("* * * * *").next(exact.plusSeconds(59))),
+                "seconds are ignored");
+        check(utc(2025, 1, 1, 0, 0).equals(new CronExpression("0 0 1 1 *").next(utc(2024, 12, 31, 23, 59))),
+                "year boundary");
+        check("30 6 * * MON-FRI".equals(new CronExpression("  30 6 * * MON-FRI ").toString()), "trimmed text");
+    }
+    
+    /**
+     * Europe/London skips 01:00-02:00 on 31 March 2024 and repeats it on 27 October 2024
+     */
+    private static void daylightSaving() {
+        ZonedDateTime spring = new CronExpression("30 1 * * *").next(ZonedDateTime.of(2024, 3, 30, 12, 0, 0, 0, LONDON));
+        check(spring.toLocalDate().toString().equals("2024-03-31") && spring.getHour() == 2,
+                "a skipped time moves forward on the same day: " + spring);
+        ZonedDateTime springNext = new CronExpression("30 1 * * *").next(spring);
+        check(springNext.toLocalDate().toString().equals("2024-04-01") && springNext.getHour() == 1,
+                "the next day is back to normal: " + springNext);
+        
+        ZonedDateTime autumn = new CronExpression("30 1 * * *").next(ZonedDateTime.of(2024, 10, 26, 12, 0, 0, 0, LONDON));
+        check(autumn.toLocalDate().toString().equals("2024-10-27") && autumn.getHour() == 1
+                && autumn.getOffset().equals(ZoneOffset.ofHours(1)), "a repeated time fires first in summer time: "
+                + autumn);
+        ZonedDateTime hourly = new CronExpression("0 * * * *").next(ZonedDateTime.of(2024, 3, 31, 0, 30, 0, 0, LONDON));
+        check(hourly.toInstant().equals(ZonedDateTime.of(2024, 3, 31, 1, 0, 0, 0, ZoneOffset.UTC).toInstant()),
+                "hourly across the gap: " + hourly);
+    }
+    
+    private static void malformed() {
+        String[] invalid = {"", "* * * *", "* * * * * *", "60 * * * *", "* 24 * * *", "* * 0 * *", "* * * 13 *",
+            "* * * * 8", "*/0 * * * *", "5-1 * * * *", "* * * FOO *", "@sometimes", "a b c d e", "1,,2 * * * *"};
+        for (String expression : invalid) {
+            boolean rejected = false;
+            try {
+                new CronExpression(expression);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            check(rejected, "\"" + expression + "\" is rejected");
+        }
+    }
+    
+    private static ZonedDateTime utc(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, ZoneOffset.UTC);
+    }
+    
+    private static void check(boolean condition, String what) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package scheduler;
+
+/**
+ * Enum representing what a schedule does with runs that came due while the scheduler
+ * was down or stalled: SKIP drops them, FIRE_ONCE runs the mode once to catch up and
+ * FIRE_ALL runs it once per missed run (up to a limit).
+ */
+public enum MissedFirePolicy {
+    SKIP,
+    FIRE_ONCE,
+    FIRE_ALL
+}
@@ -0,0 +1,107 @@
+package scheduler;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * When an automation mode should run: a cron expression, an optional date range
+ * (e.g. the days of a holiday for Vacation Mode) and a missed-fire policy.
+ */
+public class ModeSchedule {
+    private final String modeName;
+    private final CronExpression cron;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private MissedFirePolicy missedFirePolicy = MissedFirePolicy.FIRE_ONCE;
+    
+    /**
+     * Creates a schedule
+     * @param modeName the registered automation mode to run
+     * @param cron when to run it, e.g. "0 22 * * *"
+     */
+    public ModeSchedule(String modeName, String cron) {
+        this(modeName, new CronExpression(cron));
+    }
+    
+    /**
+     * Creates a schedule
+     * @param modeName the registered automation mode to run
+     * @param cron when to run it
+     */
+    public ModeSchedule(String modeName, CronExpression cron) {
+        this.modeName = modeName;
+        this.cron = cron;
+    }
+    
+    /**
+     * Limits the schedule to a range of days
+     * @param startDate the first day, or null for no lower bound
+     * @param endDate the last day (inclusive), or null for no upper bound
+     */
+    public ModeSchedule withDateRange(LocalDate startDate, LocalDate endDate) {
+        if (startDate != null && endDate != null && endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate is before startDate");
+        }
+        this.startDate = startDate;
+        this.endDate = endDate;
+        return this;
+    }
+    
+    /**
+     * Sets what happens to runs missed during downtime (default FIRE_ONCE)
+     */
+    public ModeSchedule withMissedFirePolicy(MissedFirePolicy missedFirePolicy) {
+        this.missedFirePolicy = missedFirePolicy;
+        return this;
+    }
+    
+    /**
+     * Finds the next run strictly after a time
+     * @param after the time to search from
+     * @param zone the home's time zone
+     * @return the next run, or null if the schedule has ended
+     */
+    public ZonedDateTime nextRun(ZonedDateTime after, ZoneId zone) {
+        ZonedDateTime from = after.withZoneSameInstant(zone);
+        if (startDate != null) {
+            // One minute before midnight, so a run at 00:00 on the first day still counts
+            ZonedDateTime beforeStart = startDate.atStartOfDay(zone).minusMinutes(1);
+            if (from.isBefore(beforeStart)) {
+                from = beforeStart;
+            }
+        }
+        ZonedDateTime next = cron.next(from);
+        if (next != null && endDate != null && next.toLocalDate().isAfter(endDate)) {
+            return null;
+        }
+        return next;
+    }
+    
+    public String getModeName() {
+        return modeName;
+    }
+    
+    public CronExpression getCron() {
+        return cron;
+    }
+    
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+    
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+    
+    public MissedFirePolicy getMissedFirePolicy() {
+        return missedFirePolicy;
+    }
+    
+    @Override
+    public String toString() {
+        String range = startDate == null && endDate == null ? ""
+                : " from " + (startDate == null ? "-" : startDate) + " to " + (endDate == null ? "-" : endDate);
+        return modeName + " at '" + cron + "'" + range;
+    }
+}
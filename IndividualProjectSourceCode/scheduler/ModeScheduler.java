@@ -0,0 +1,454 @@
+package scheduler;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import core.HomeRegistry;
+import core.SmartHomeController;
+
+/**
+ * Calendar scheduler for automation modes.
+ *
+ * Every scheduled mode is one entry in a priority queue ordered by its next run, so
+ * finding the next due run and re-queueing it after it fires are O(log n) however many
+ * homes and schedules there are. One thread waits for the head of the queue; modes run
+ * on the home's HomeRegistry shard when a registry is given, otherwise on a single worker.
+ * Run times are computed in each home's own time zone (SmartHomeController.getZoneId()).
+ *
+ * Each run is applied as one transaction (executeCurrentModeAtomically), so an unattended
+ * mode is never left half-applied.
+ *
+ * A run that fires more than the misfire threshold late, e.g. after downtime or a clock
+ * jump, is treated as missed and handled by its schedule's MissedFirePolicy.
+ */
+public class ModeScheduler {
+    // Caps FIRE_ALL catch-up, e.g. an every-minute schedule after a week offline
+    private static final int MAX_CATCH_UP_RUNS = 100;
+    // Re-check the clock at least this often so wall-clock jumps are noticed
+    private static final long MAX_WAIT_MILLIS = 1000;
+    
+    private final HomeRegistry registry;
+    private final Clock clock;
+    private final ExecutorService worker;
+    private final PriorityQueue<ScheduledMode> queue;
+    private final ReentrantLock lock;
+    private final Condition changed;
+    private Thread thread;
+    private boolean running;
+    private long misfireThresholdMillis;
+    private long sequence;
+    
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong missedRuns = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    
+    /**
+     * Creates a scheduler for homes that are not hosted in a registry
+     */
+    public ModeScheduler() {
+        this(null, Clock.systemUTC());
+    }
+    
+    /**
+     * Creates a scheduler that runs each home's modes on its registry shard
+     * @param registry the registry hosting the scheduled homes
+     */
+    public ModeScheduler(HomeRegistry registry) {
+        this(registry, Clock.systemUTC());
+    }
+    
+    /**
+     * Creates a scheduler; its thread starts with the first schedule
+     * @param registry the registry hosting the scheduled homes, or null
+     * @param clock the clock run times are measured against
+     */
+    public ModeScheduler(HomeRegistry registry, Clock clock) {
+        this.registry = registry;
+        this.clock = clock;
+        this.worker = registry != null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread workerThread = new Thread(runnable, "mode-scheduler-worker");
+            workerThread.setDaemon(true);
+            return workerThread;
+        });
+        this.queue = new PriorityQueue<>();
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+        this.running = true;
+        this.misfireThresholdMillis = 60_000;
+    }
+    
+    /**
+     * Sets how late a run may fire before it counts as missed (default one minute)
+     * @param misfireThresholdMillis the allowed lateness
+     */
+    public void setMisfireThreshold(long misfireThresholdMillis) {
+        this.misfireThresholdMillis = misfireThresholdMillis;
+    }
+    
+    /**
+     * Schedules a mode, starting from now
+     * @param home the home whose mode runs
+     * @param schedule when it runs
+     * @return the handle of the scheduled mode, or null if the schedule never runs
+     */
+    public ScheduledMode schedule(SmartHomeController home, ModeSchedule schedule) {
+        return schedule(home, schedule, null);
+    }
+    
+    /**
+     * Schedules a mode, resuming from the last time it ran. Runs that came due since
+     * then are handled by the schedule's missed-fire policy.
+     * @param home the home whose mode runs
+     * @param schedule when it runs
+     * @param lastRun when it last ran before a restart, or null to start from now
+     * @return the handle of the scheduled mode, or null if the schedule never runs
+     * @throws IllegalArgumentException if the mode is not registered with the home
+     */
+    public ScheduledMode schedule(SmartHomeController home, ModeSchedule schedule, Instant lastRun) {
+        if (!home.hasAutomationMode(schedule.getModeName())) {
+            throw new IllegalArgumentException("Unknown automation mode: " + schedule.getModeName());
+        }
+        if (registry != null && registry.getHome(home.getHomeId()) != home) {
+            throw new IllegalArgumentException("Home is not hosted in this registry: " + home.getHomeId());
+        }
+        ScheduledMode scheduled = new ScheduledMode(home, schedule, lastRun);
+        Instant from = lastRun != null ? lastRun : clock.instant();
+        ZonedDateTime next = schedule.nextRun(from.atZone(home.getZoneId()), home.getZoneId());
+        if (next == null) {
+            return null;
+        }
+        scheduled.nextRun = next.toInstant().toEpochMilli();
+        
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Scheduler is shut down");
+            }
+            scheduled.sequence = sequence++;
+            queue.add(scheduled);
+            ensureStarted();
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        home.notifyObservers("Scheduled " + schedule + ", next run " + next);
+        return scheduled;
+    }
+    
+    /**
+     * Stops a scheduled mode
+     * @param scheduled the handle returned by schedule
+     * @return true if it was still scheduled
+     */
+    public boolean cancel(ScheduledMode scheduled) {
+        lock.lock();
+        try {
+            scheduled.cancelled = true;
+            return queue.remove(scheduled);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Stops every scheduled mode of a home, e.g. when the home is removed
+     * @param home the home
+     * @return the number of schedules stopped
+     */
+    public int cancelAll(SmartHomeController home) {
+        return rebuild(home, false);
+    }
+    
+    /**
+     * Recomputes a home's run times; call after changing the home's time zone
+     * @param home the home
+     * @return the number of schedules recomputed
+     */
+    public int rescheduleHome(SmartHomeController home) {
+        return rebuild(home, true);
+    }
+    
+    private int rebuild(SmartHomeController home, boolean requeue) {
+        lock.lock();
+        try {
+            List<ScheduledMode> affected = new ArrayList<>();
+            for (ScheduledMode scheduled : queue) {
+                if (scheduled.home == home) {
+                    affected.add(scheduled);
+                }
+            }
+            queue.removeAll(affected);
+            long now = clock.millis();
+            for (ScheduledMode scheduled : affected) {
+                if (!requeue) {
+                    scheduled.cancelled = true;
+                    continue;
+                }
+                ZonedDateTime next = scheduled.schedule.nextRun(
+                        Instant.ofEpochMilli(now).atZone(home.getZoneId()), home.getZoneId());
+                if (next != null) {
+                    scheduled.nextRun = next.toInstant().toEpochMilli();
+                    queue.add(scheduled);
+                }
+            }
+            changed.signal();
+            return affected.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gets all scheduled modes, soonest first
+     * @return list of scheduled modes
+     */
+    public List<ScheduledMode> getScheduled() {
+        List<ScheduledMode> result;
+        lock.lock();
+        try {
+            result = new ArrayList<>(queue);
+        } finally {
+            lock.unlock();
+        }
+        result.sort(null);
+        return result;
+    }
+    
+    /**
+     * Gets the number of scheduled modes
+     * @return the schedule count
+     */
+    public int getScheduledCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getRunCount() {
+        return runs.get();
+    }
+    
+    public long getMissedRunCount() {
+        return missedRuns.get();
+    }
+    
+    public long getFailedRunCount() {
+        return failedRuns.get();
+    }
+    
+    /**
+     * Stops the scheduler thread; modes already handed to a worker still run
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            queue.clear();
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (worker != null) {
+            worker.shutdown();
+        }
+    }
+    
+    private void ensureStarted() {
+        if (thread == null) {
+            thread = new Thread(this::loop, "mode-scheduler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    
+    private void loop() {
+        while (true) {
+            ScheduledMode due;
+            lock.lock();
+            try {
+                while (true) {
+                    if (!running) {
+                        return;
+                    }
+                    ScheduledMode head = queue.peek();
+                    long wait = head == null ? MAX_WAIT_MILLIS : head.nextRun - clock.millis();
+                    if (head != null && wait <= 0) {
+                        due = queue.poll();
+                        break;
+                    }
+                    try {
+                        changed.await(Math.min(wait, MAX_WAIT_MILLIS), TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            fire(due);
+        }
+    }
+    
+    /**
+     * Runs a due mode, applying the missed-fire policy if it is late, and re-queues it
+     */
+    private void fire(ScheduledMode scheduled) {
+        SmartHomeController home = scheduled.home;
+        ModeSchedule schedule = scheduled.schedule;
+        long now = clock.millis();
+        ZonedDateTime dueAt = Instant.ofEpochMilli(scheduled.nextRun).atZone(home.getZoneId());
+        ZonedDateTime next = schedule.nextRun(dueAt, home.getZoneId());
+        
+        int times = 1;
+        if (now - scheduled.nextRun > misfireThresholdMillis) {
+            int missed = 1;
+            while (next != null && next.toInstant().toEpochMilli() <= now && missed < MAX_CATCH_UP_RUNS) {
+                missed++;
+                next = schedule.nextRun(next, home.getZoneId());
+            }
+            if (next != null && next.toInstant().toEpochMilli() <= now) {
+                next = schedule.nextRun(Instant.ofEpochMilli(now).atZone(home.getZoneId()), home.getZoneId());
+            }
+            missedRuns.addAndGet(missed);
+            switch (schedule.getMissedFirePolicy()) {
+                case SKIP:
+                    times = 0;
+                    break;
+                case FIRE_ALL:
+                    times = missed;
+                    break;
+                default:
+                    times = 1;
+                    break;
+            }
+            home.notifyObservers("Missed " + missed + " scheduled run(s) of " + schedule.getModeName()
+                    + ", " + (times == 0 ? "skipping" : "running " + times));
+        }
+        
+        if (times > 0) {
+            scheduled.lastRun = Instant.ofEpochMilli(now);
+            if (!runMode(scheduled, times)) {
+                // The home has left the registry
+                scheduled.cancelled = true;
+                return;
+            }
+        }
+        
+        if (next == null) {
+            scheduled.cancelled = true;
+            home.notifyObservers("Schedule ended: " + schedule);
+            return;
+        }
+        lock.lock();
+        try {
+            if (running && !scheduled.cancelled) {
+                scheduled.nextRun = next.toInstant().toEpochMilli();
+                queue.add(scheduled);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private boolean runMode(ScheduledMode scheduled, int times) {
+        String modeName = scheduled.schedule.getModeName();
+        Consumer<SmartHomeController> action = home -> {
+            if (!home.hasAutomationMode(modeName)) {
+                failedRuns.incrementAndGet();
+                home.notifyObservers("Scheduled mode is no longer registered: " + modeName);
+                return;
+            }
+            for (int i = 0; i < times; i++) {
+                try {
+                    home.executeModeAtomically(modeName);
+                    runs.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failedRuns.incrementAndGet();
+                    home.notifyObservers("Scheduled mode " + modeName + " failed: " + e.getMessage());
+                }
+            }
+        };
+        
+        SmartHomeController home = scheduled.home;
+        if (registry == null) {
+            worker.execute(() -> action.accept(home));
+            return true;
+        }
+        if (registry.getHome(home.getHomeId()) != home) {
+            return false;
+        }
+        registry.execute(home.getHomeId(), action);
+        return true;
+    }
+    
+    /**
+     * One scheduled mode of one home, ordered by its next run
+     */
+    public static class ScheduledMode implements Comparable<ScheduledMode> {
+        private final SmartHomeController home;
+        private final ModeSchedule schedule;
+        private volatile long nextRun;
+        private volatile Instant lastRun;
+        private volatile boolean cancelled;
+        private long sequence;
+        
+        ScheduledMode(SmartHomeController home, ModeSchedule schedule, Instant lastRun) {
+            this.home = home;
+            this.schedule = schedule;
+            this.lastRun = lastRun;
+        }
+        
+        public SmartHomeController getHome() {
+            return home;
+        }
+        
+        public ModeSchedule getSchedule() {
+            return schedule;
+        }
+        
+        /**
+         * Gets the next run
+         * @return the next run time, or null once cancelled or ended
+         */
+        public Instant getNextRun() {
+            return cancelled ? null : Instant.ofEpochMilli(nextRun);
+        }
+        
+        /**
+         * Gets the last run, e.g. to persist and pass back to schedule after a restart
+         * @return the last run time, or null if it has not run yet
+         */
+        public Instant getLastRun() {
+            return lastRun;
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        @Override
+        public int compareTo(ScheduledMode other) {
+            int byTime = Long.compare(nextRun, other.nextRun);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+        
+        @Override
+        public String toString() {
+            return home.getHomeId() + ": " + schedule + (cancelled ? " (ended)" : ", next run " + getNextRun());
+        }
+    }
+}
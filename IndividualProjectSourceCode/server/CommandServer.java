@@ -0,0 +1,652 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import changefeed.ChangeBatch;
+import changefeed.ChangeFeed;
+import changefeed.ChangeRecord;
+import changefeed.ChangeSpill;
+import changefeed.HomeSnapshot;
+import command.CommandProcessor;
+import core.SmartHomeController;
+import observer.BufferedConsoleRenderer;
+import observer.ConsoleDisplayObserver;
+import observer.ConsoleSettings;
+import observer.SystemObserver;
+import replication.ReplicationPrimary;
+import replication.ReplicationSettings;
+import ui.CommandLineInterface;
+
+/**
+ * Local command server built on non-blocking NIO.
+ *
+ * Protocol: one UTF-8 command per line (the batch-mode syntax of CommandProcessor) and one
+ * response line per command, in order: "OK ...", or "ERR message". A command may be prefixed
+ * with "@tag " to have the response echo the tag, which lets clients pipeline many commands
+ * without waiting; a tagged line always gets a reply, "ERR Empty command" if it has no command.
+ * Every command found in one read is executed before the responses are written back in a
+ * single batch. A client whose unsent output passes MAX_PENDING_OUTPUT is not read from
+ * until it is back under the limit.
+ *
+ * Server commands: PING, SUBSCRIBE (stream controller events as "EVENT ..." lines),
+ * UNSUBSCRIBE, QUIT and, when a change feed is set, CHANGES since [max]. CHANGES answers
+ * with "CHANGE ..." lines followed by "OK next=N more=true|false", or, for a client that
+ * fell too far behind, "ROOM ..." and "DEVICE ..." snapshot lines followed by
+ * "OK next=N snapshot".
+ *
+ * Commands run on the selector thread, except the slow ones (import and mode), which run on
+ * a worker pool so that other clients are not held up; their response is handed back to the
+ * selector thread. Until then the client's later commands wait, so responses stay in order.
+ */
+public class CommandServer implements SystemObserver {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_OUTPUT = 8 * 1024 * 1024;
+    private static final int MAX_CHANGES_PER_READ = 1000;
+    private static final int WORKER_THREADS = 2;
+    
+    private final SmartHomeController controller;
+    private final CommandProcessor processor;
+    private final SocketAddress address;
+    private final ConcurrentLinkedQueue<String> pendingEvents;
+    private final ExecutorService workers;
+    // Responses of slow commands, waiting for the selector thread
+    private final ConcurrentLinkedQueue<Completion> completions;
+    private final List<Connection> subscribers;
+    private final StringBuilder response;
+    
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private volatile Thread selectorThread;
+    private volatile int subscriberCount;
+    private ChangeFeed changeFeed;
+    private long commandsExecuted;
+    
+    /**
+     * Creates a command server
+     * @param controller the controller to execute commands against
+     * @param address a TCP (InetSocketAddress) or Unix-domain (UnixDomainSocketAddress) address
+     */
+    public CommandServer(SmartHomeController controller, SocketAddress address) {
+        this.controller = controller;
+        this.processor = new CommandProcessor(controller);
+        this.address = address;
+        this.pendingEvents = new ConcurrentLinkedQueue<>();
+        this.workers = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "command-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.completions = new ConcurrentLinkedQueue<>();
+        this.subscribers = new ArrayList<>();
+        this.response = new StringBuilder(256);
+    }
+    
+    /**
+     * Binds the server socket; call before run()
+     * @throws IOException if the address cannot be bound
+     */
+    public void bind() throws IOException {
+        selector = Selector.open();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            serverChannel = ServerSocketChannel.open();
+        }
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        controller.addObserver(this);
+    }
+    
+    /**
+     * Sets the change feed served by the CHANGES command
+     * @param changeFeed the feed, or null to disable CHANGES
+     */
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+    
+    /**
+     * Gets the address the server is bound to
+     * @return the local address
+     * @throws IOException if the channel is closed
+     */
+    public SocketAddress getLocalAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+    
+    /**
+     * Runs the selector loop until stop() is called
+     * @throws IOException if the selector fails
+     */
+    public void run() throws IOException {
+        if (selector == null) {
+            bind();
+        }
+        running = true;
+        selectorThread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                read(connection);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(connection);
+                            }
+                        }
+                    } catch (IOException e) {
+                        Object attachment = key.attachment();
+                        if (attachment instanceof Connection) {
+                            close((Connection) attachment);
+                        }
+                    }
+                }
+                completeSlowCommands();
+                deliverEvents();
+            }
+        } finally {
+            controller.removeObserver(this);
+            workers.shutdown();
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+    
+    /**
+     * Stops the selector loop; safe to call from any thread
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+    
+    public long getCommandsExecuted() {
+        return commandsExecuted;
+    }
+    
+    /**
+     * Queues a controller event for subscribers. Events may come from any thread
+     * (for example decorator timers), so they are handed to the selector thread.
+     */
+    @Override
+    public void update(String event) {
+        if (subscriberCount == 0) {
+            return;
+        }
+        pendingEvents.add(event);
+        if (Thread.currentThread() != selectorThread && selector != null) {
+            selector.wakeup();
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        if (!(address instanceof UnixDomainSocketAddress)) {
+            channel.socket().setTcpNoDelay(true);
+        }
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+    
+    /**
+     * Reads what is available, executes every complete line, and queues the batched responses
+     */
+    private void read(Connection connection) throws IOException {
+        int count = connection.channel.read(connection.input);
+        if (count < 0) {
+            close(connection);
+            return;
+        }
+        processInput(connection);
+        
+        // Deliver events raised by these commands in the same batch as the responses
+        deliverEvents();
+        flush(connection);
+    }
+    
+    /**
+     * Executes the complete lines in the input buffer. Stops early, keeping the remaining
+     * lines, while a slow command is running or once the output is over its limit.
+     */
+    private void processInput(Connection connection) {
+        ByteBuffer in = connection.input;
+        byte[] bytes = in.array();
+        int lineStart = 0;
+        int end = in.position();
+        connection.held = false;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] == '\n') {
+                if (connection.busy || connection.closing) {
+                    break;
+                }
+                if (connection.output.position() > MAX_PENDING_OUTPUT) {
+                    connection.held = true;
+                    break;
+                }
+                int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                handleLine(connection, new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+        
+        // Keep the unexecuted lines and the partial trailing line for later
+        if (lineStart > 0) {
+            System.arraycopy(bytes, lineStart, bytes, 0, end - lineStart);
+            in.position(end - lineStart);
+        }
+        if (!in.hasRemaining() && lineStart == 0 && !connection.busy && !connection.held) {
+            connection.queue("ERR Line too long\n");
+            connection.closing = true;
+        }
+    }
+    
+    private void handleLine(Connection connection, String line) {
+        String tag = null;
+        if (line.startsWith("@")) {
+            int space = line.indexOf(' ');
+            tag = space < 0 ? line : line.substring(0, space);
+            line = space < 0 ? "" : line.substring(space + 1);
+        }
+        
+        response.setLength(0);
+        if (tag != null) {
+            response.append(tag).append(' ');
+        }
+        String trimmed = line.trim();
+        if (isSlow(trimmed)) {
+            executeOnWorker(connection, tag, line);
+            return;
+        }
+        if (trimmed.equalsIgnoreCase("PING")) {
+            response.append("OK PONG");
+        } else if (trimmed.equalsIgnoreCase("SUBSCRIBE")) {
+            if (!connection.subscribed) {
+                connection.subscribed = true;
+                subscribers.add(connection);
+                subscriberCount = subscribers.size();
+            }
+            response.append("OK");
+        } else if (trimmed.equalsIgnoreCase("UNSUBSCRIBE")) {
+            connection.subscribed = false;
+            subscribers.remove(connection);
+            subscriberCount = subscribers.size();
+            response.append("OK");
+        } else if (trimmed.equalsIgnoreCase("QUIT")) {
+            response.append("OK BYE");
+            connection.closing = true;
+        } else if (trimmed.regionMatches(true, 0, "CHANGES", 0, 7)
+                && (trimmed.length() == 7 || trimmed.charAt(7) == ' ')) {
+            readChanges(trimmed.substring(7).trim(), tag);
+        } else {
+            try {
+                String result = processor.execute(line);
+                if (result == null) {
+                    if (tag == null) {
+                        return; // blank line or comment
+                    }
+                    // A tagged client waits for the tag, so it must get an answer
+                    result = "ERR Empty command";
+                } else {
+                    commandsExecuted++;
+                }
+                response.append(result);
+            } catch (RuntimeException e) {
+                response.append("ERR ").append(e.getMessage());
+            }
+        }
+        response.append('\n');
+        connection.queue(response);
+    }
+    
+    /**
+     * Checks whether a command is slow enough to run on a worker (import and mode)
+     */
+    private static boolean isSlow(String command) {
+        int space = command.indexOf(' ');
+        String verb = space < 0 ? command : command.substring(0, space);
+        return verb.equalsIgnoreCase("import") || verb.equalsIgnoreCase("mode");
+    }
+    
+    /**
+     * Runs a slow command on a worker; the connection reads no further commands until
+     * its response has been posted back
+     */
+    private void executeOnWorker(Connection connection, String tag, String line) {
+        connection.busy = true;
+        workers.execute(() -> {
+            StringBuilder text = new StringBuilder(64);
+            if (tag != null) {
+                text.append(tag).append(' ');
+            }
+            boolean executed = false;
+            try {
+                // CommandProcessor keeps parsing state, so each worker command gets its own
+                text.append(new CommandProcessor(controller).execute(line));
+                executed = true;
+            } catch (RuntimeException e) {
+                text.append("ERR ").append(e.getMessage());
+            }
+            text.append('\n');
+            completions.add(new Completion(connection, text.toString(), executed));
+            selector.wakeup();
+        });
+    }
+    
+    /**
+     * Queues the responses of finished slow commands and resumes their connections
+     */
+    private void completeSlowCommands() {
+        Completion done;
+        while ((done = completions.poll()) != null) {
+            Connection connection = done.connection;
+            if (!connection.key.isValid()) {
+                continue;
+            }
+            if (done.executed) {
+                commandsExecuted++;
+            }
+            connection.busy = false;
+            connection.queue(done.response);
+            processInput(connection);
+            try {
+                flush(connection);
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+    }
+    
+    /**
+     * Appends the answer to CHANGES since [max] to the response
+     */
+    private void readChanges(String arguments, String tag) {
+        if (changeFeed == null) {
+            response.append("ERR No change feed");
+            return;
+        }
+        String[] parts = arguments.isEmpty() ? new String[0] : arguments.split("\\s+");
+        long since;
+        int max = MAX_CHANGES_PER_READ;
+        try {
+            since = parts.length > 0 ? Long.parseLong(parts[0]) : 0;
+            if (parts.length > 1) {
+                max = Math.max(1, Math.min(MAX_CHANGES_PER_READ, Integer.parseInt(parts[1])));
+            }
+        } catch (NumberFormatException e) {
+            response.append("ERR Usage: CHANGES since [max]");
+            return;
+        }
+        
+        ChangeBatch batch = changeFeed.readSince(since, max);
+        // Data lines go before the tag so the tagged line still ends the answer
+        response.setLength(0);
+        if (batch.isSnapshot()) {
+            HomeSnapshot snapshot = batch.getSnapshot();
+            for (HomeSnapshot.RoomEntry room : snapshot.getRooms()) {
+                response.append("ROOM ").append(room).append('\n');
+            }
+            for (HomeSnapshot.DeviceEntry device : snapshot.getDevices()) {
+                response.append("DEVICE ").append(device).append('\n');
+            }
+        } else {
+            for (ChangeRecord record : batch.getRecords()) {
+                response.append("CHANGE ").append(record).append('\n');
+            }
+        }
+        if (tag != null) {
+            response.append(tag).append(' ');
+        }
+        response.append("OK next=").append(batch.getNextSequence());
+        response.append(batch.isSnapshot() ? " snapshot" : " more=" + batch.hasMore());
+    }
+    
+    /**
+     * Moves queued controller events into the output of every subscriber
+     */
+    private void deliverEvents() {
+        String event;
+        while ((event = pendingEvents.poll()) != null) {
+            for (Connection subscriber : subscribers) {
+                subscriber.queueEvent(event);
+            }
+        }
+        for (Connection subscriber : new ArrayList<>(subscribers)) {
+            try {
+                flush(subscriber);
+            } catch (IOException e) {
+                close(subscriber);
+            }
+        }
+    }
+    
+    private void flush(Connection connection) throws IOException {
+        if (connection.output.position() > 0) {
+            write(connection);
+        } else if (connection.closing && !connection.busy) {
+            close(connection);
+        } else {
+            updateInterest(connection);
+        }
+    }
+    
+    private void write(Connection connection) throws IOException {
+        ByteBuffer out = connection.output;
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        
+        if (out.position() == 0 && connection.closing && !connection.busy) {
+            close(connection);
+            return;
+        }
+        // Lines held back while the output was over its limit can run now
+        if (connection.held && out.position() <= MAX_PENDING_OUTPUT) {
+            processInput(connection);
+        }
+        updateInterest(connection);
+    }
+    
+    /**
+     * Writes while output is pending, and reads only while the client is not waiting for a
+     * slow command and has taken its output down to the limit (backpressure)
+     */
+    private static void updateInterest(Connection connection) {
+        int ops = connection.output.position() > 0 ? SelectionKey.OP_WRITE : 0;
+        if (!connection.busy && !connection.closing && connection.output.position() <= MAX_PENDING_OUTPUT) {
+            ops |= SelectionKey.OP_READ;
+        }
+        connection.key.interestOps(ops);
+    }
+    
+    private void close(Connection connection) {
+        if (subscribers.remove(connection)) {
+            subscriberCount = subscribers.size();
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Already closed by the peer
+        }
+    }
+    
+    /**
+     * Per-client buffers and subscription state
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final ByteBuffer input;
+        ByteBuffer output;
+        SelectionKey key;
+        boolean subscribed;
+        boolean closing;
+        // A slow command is running on a worker
+        boolean busy;
+        // Complete lines are waiting for the output to drain
+        boolean held;
+        long droppedEvents;
+        
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            this.output = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+        
+        void queue(CharSequence text) {
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(bytes.length);
+            output.put(bytes);
+        }
+        
+        /**
+         * Queues an event, dropping it if this subscriber is too far behind
+         */
+        void queueEvent(String event) {
+            if (output.position() > MAX_PENDING_OUTPUT) {
+                droppedEvents++;
+                return;
+            }
+            if (droppedEvents > 0) {
+                queue("EVENT dropped " + droppedEvents + " events\n");
+                droppedEvents = 0;
+            }
+            queue("EVENT " + event + "\n");
+        }
+        
+        private void ensureCapacity(int extra) {
+            if (output.remaining() < extra) {
+                int capacity = Math.max(output.capacity() * 2, output.position() + extra);
+                ByteBuffer larger = ByteBuffer.allocate(capacity);
+                output.flip();
+                larger.put(output);
+                output = larger;
+            }
+        }
+    }
+    
+    /**
+     * The response of a slow command, posted back to the selector thread
+     */
+    private static class Completion {
+        final Connection connection;
+        final String response;
+        final boolean executed;
+        
+        Completion(Connection connection, String response, boolean executed) {
+            this.connection = connection;
+            this.response = response;
+            this.executed = executed;
+        }
+    }
+    
+    /**
+     * Main method to start the server.
+     * Options: --port=N (TCP on 127.0.0.1, default 7070), --unix=PATH, --with-defaults,
+     * --spill=DIR (keep change-feed records beyond the in-memory ring on disk),
+     * --replicate=N or --replicate-unix=PATH (stream changes to a ReplicationStandby),
+     * --console (show events on the server's console, buffered and summarised when busy)
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = new InetSocketAddress("127.0.0.1", 7070);
+        boolean withDefaults = false;
+        Path spillDirectory = null;
+        SocketAddress replicationAddress = null;
+        boolean console = false;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                address = new InetSocketAddress("127.0.0.1", Integer.parseInt(arg.substring("--port=".length())));
+            } else if (arg.startsWith("--unix=")) {
+                Path path = Paths.get(arg.substring("--unix=".length()));
+                address = UnixDomainSocketAddress.of(path);
+            } else if (arg.equals("--with-defaults")) {
+                withDefaults = true;
+            } else if (arg.startsWith("--spill=")) {
+                spillDirectory = Paths.get(arg.substring("--spill=".length()));
+            } else if (arg.startsWith("--replicate=")) {
+                replicationAddress = new InetSocketAddress("127.0.0.1",
+                        Integer.parseInt(arg.substring("--replicate=".length())));
+            } else if (arg.startsWith("--replicate-unix=")) {
+                replicationAddress = UnixDomainSocketAddress.of(Paths.get(arg.substring("--replicate-unix=".length())));
+            } else if (arg.equals("--console")) {
+                console = true;
+            } else {
+                System.err.println("Usage: CommandServer [--port=N | --unix=PATH] [--with-defaults] [--spill=DIR]"
+                        + " [--replicate=N | --replicate-unix=PATH] [--console]");
+                System.exit(2);
+            }
+        }
+        
+        SmartHomeController controller = SmartHomeController.getInstance();
+        ChangeFeed changeFeed = new ChangeFeed(controller, 64 * 1024);
+        if (spillDirectory != null) {
+            changeFeed.setSpill(new ChangeSpill(spillDirectory, 64 * 1024, 16));
+        }
+        changeFeed.start();
+        if (console) {
+            BufferedConsoleRenderer renderer = new BufferedConsoleRenderer(controller, new ConsoleSettings());
+            renderer.start();
+            controller.addObserver(new ConsoleDisplayObserver(renderer));
+        }
+        if (withDefaults) {
+            CommandLineInterface.addDefaultDevices(controller);
+        }
+        CommandLineInterface.registerAutomationModes(controller);
+        if (replicationAddress != null) {
+            ReplicationPrimary replication = new ReplicationPrimary(controller, changeFeed, replicationAddress,
+                    new ReplicationSettings());
+            replication.start();
+            System.out.println("Replicating to a standby on " + replication.getLocalAddress());
+        }
+        
+        CommandServer server = new CommandServer(controller, address);
+        server.setChangeFeed(changeFeed);
+        server.bind();
+        System.out.println("Smart home command server listening on " + server.getLocalAddress());
+        server.run();
+    }
+}
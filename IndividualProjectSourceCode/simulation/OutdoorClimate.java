@@ -0,0 +1,50 @@
+package simulation;
+
+/**
+ * Outdoor temperature over a year: an annual sine with its minimum in mid-January plus
+ * a daily sine with its minimum before dawn. Good enough to compare HVAC strategies;
+ * not a weather forecast.
+ */
+public class OutdoorClimate {
+    public static final double SECONDS_PER_DAY = 86_400;
+    public static final double SECONDS_PER_YEAR = 365 * SECONDS_PER_DAY;
+    
+    // Coldest moments, in seconds after the start of the year and of the day
+    private static final double COLDEST_DAY = 15 * SECONDS_PER_DAY;
+    private static final double COLDEST_HOUR = 5 * 3600;
+    
+    private final double meanCelsius;
+    private final double annualSwing;
+    private final double dailySwing;
+    
+    /**
+     * Creates a climate
+     * @param meanCelsius the yearly mean temperature
+     * @param annualSwing the difference between the mean and the warmest day
+     * @param dailySwing the difference between the daily mean and the afternoon peak
+     */
+    public OutdoorClimate(double meanCelsius, double annualSwing, double dailySwing) {
+        this.meanCelsius = meanCelsius;
+        this.annualSwing = annualSwing;
+        this.dailySwing = dailySwing;
+    }
+    
+    /**
+     * Gets a temperate climate: 10 °C mean, -2 °C to 22 °C over the year, ±4 °C over a day
+     * @return the climate
+     */
+    public static OutdoorClimate temperate() {
+        return new OutdoorClimate(10, 12, 4);
+    }
+    
+    /**
+     * Gets the outdoor temperature
+     * @param secondOfYear seconds since 1 January 00:00; wraps around after a year
+     * @return the temperature in °C
+     */
+    public double temperatureAt(double secondOfYear) {
+        double year = 2 * Math.PI * (secondOfYear - COLDEST_DAY) / SECONDS_PER_YEAR;
+        double day = 2 * Math.PI * (secondOfYear - COLDEST_HOUR) / SECONDS_PER_DAY;
+        return meanCelsius - annualSwing * Math.cos(year) - dailySwing * Math.cos(day);
+    }
+}
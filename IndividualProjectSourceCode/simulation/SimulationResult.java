@@ -0,0 +1,86 @@
+package simulation;
+
+import java.util.Locale;
+
+/**
+ * Totals of one ThermalSimulation run over all rooms
+ */
+public class SimulationResult {
+    private final int rooms;
+    private final int steps;
+    private final double simulatedSeconds;
+    private final double heatingKwh;
+    private final double coolingKwh;
+    private final double meanDeviation;
+    private final double meanFinalTemperature;
+    private final long elapsedMillis;
+    
+    SimulationResult(int rooms, int steps, double simulatedSeconds, double heatingKwh, double coolingKwh,
+                     double meanDeviation, double meanFinalTemperature, long elapsedMillis) {
+        this.rooms = rooms;
+        this.steps = steps;
+        this.simulatedSeconds = simulatedSeconds;
+        this.heatingKwh = heatingKwh;
+        this.coolingKwh = coolingKwh;
+        this.meanDeviation = meanDeviation;
+        this.meanFinalTemperature = meanFinalTemperature;
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    public int getRoomCount() {
+        return rooms;
+    }
+    
+    public int getSteps() {
+        return steps;
+    }
+    
+    public double getSimulatedSeconds() {
+        return simulatedSeconds;
+    }
+    
+    /**
+     * Gets the heat delivered to all rooms
+     * @return the heating energy in kWh
+     */
+    public double getHeatingKwh() {
+        return heatingKwh;
+    }
+    
+    /**
+     * Gets the heat removed from all rooms
+     * @return the cooling energy in kWh
+     */
+    public double getCoolingKwh() {
+        return coolingKwh;
+    }
+    
+    /**
+     * Gets how far rooms were from their setpoints on average while their HVAC was on,
+     * a simple comfort measure
+     * @return the mean deviation in kelvin
+     */
+    public double getMeanDeviation() {
+        return meanDeviation;
+    }
+    
+    public double getMeanFinalTemperature() {
+        return meanFinalTemperature;
+    }
+    
+    /**
+     * Gets the wall-clock time the run took
+     * @return the time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "%d rooms, %.1f days in %d steps: heating %.1f kWh, cooling %.1f kWh, mean deviation %.2f K (%d ms)",
+            rooms, simulatedSeconds / OutdoorClimate.SECONDS_PER_DAY, steps, heatingKwh, coolingKwh,
+            meanDeviation, elapsedMillis);
+    }
+}
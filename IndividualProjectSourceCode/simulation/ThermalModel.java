@@ -0,0 +1,54 @@
+package simulation;
+
+/**
+ * Physical parameters of one simulated room: a single thermal mass that loses heat to
+ * the outside and is held at its setpoint by an HVAC unit of limited power.
+ * The defaults describe a mid-sized, reasonably insulated room.
+ */
+public class ThermalModel {
+    private double heatLossWattsPerKelvin = 60;
+    private double heatCapacityJoulesPerKelvin = 4.0e6;
+    private double heatingWatts = 2000;
+    private double coolingWatts = 1500;
+    
+    /**
+     * Sets the heat lost to the outside per degree of difference (the room's UA value)
+     */
+    public ThermalModel withHeatLoss(double wattsPerKelvin) {
+        this.heatLossWattsPerKelvin = wattsPerKelvin;
+        return this;
+    }
+    
+    /**
+     * Sets the energy needed to warm the room's air, walls and furniture by one degree
+     */
+    public ThermalModel withHeatCapacity(double joulesPerKelvin) {
+        this.heatCapacityJoulesPerKelvin = joulesPerKelvin;
+        return this;
+    }
+    
+    /**
+     * Sets the largest heating and cooling output of the HVAC unit
+     */
+    public ThermalModel withHvacPower(double heatingWatts, double coolingWatts) {
+        this.heatingWatts = heatingWatts;
+        this.coolingWatts = coolingWatts;
+        return this;
+    }
+    
+    public double getHeatLoss() {
+        return heatLossWattsPerKelvin;
+    }
+    
+    public double getHeatCapacity() {
+        return heatCapacityJoulesPerKelvin;
+    }
+    
+    public double getHeatingWatts() {
+        return heatingWatts;
+    }
+    
+    public double getCoolingWatts() {
+        return coolingWatts;
+    }
+}
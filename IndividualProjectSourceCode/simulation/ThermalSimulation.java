@@ -0,0 +1,318 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.Thermostat;
+
+/**
+ * Steps the temperature of many rooms through time to estimate HVAC energy and comfort
+ * for a set of thermostat setpoints.
+ *
+ * Each room is one thermal mass that loses heat to the outdoor air. Its HVAC unit adds or
+ * removes just the heat that brings the room to the setpoint, within the unit's power
+ * limits, so a room only drifts from its setpoint when the unit is too small or off.
+ * Room state lives in parallel primitive arrays and every step is one branch-free loop
+ * over them, which the JIT can compile to SIMD instructions. Rooms are independent, so
+ * blocks of rooms are simulated for the whole period on separate cores while their
+ * arrays stay in cache.
+ */
+public class ThermalSimulation {
+    // Rooms per block; the arrays of one block fit in a core's L2 cache
+    private static final int BLOCK = 1024;
+    private static final double JOULES_PER_KWH = 3.6e6;
+    
+    private int size;
+    private final List<String> names;
+    private final List<List<Thermostat>> thermostats;
+    
+    private double[] temperature;
+    private double[] setpoint;
+    private double[] hvacEnabled;
+    private double[] heatLoss;
+    private double[] heatCapacity;
+    private double[] heatingLimit;
+    private double[] coolingLimit;
+    
+    // Results of the last run, per room
+    private double[] heatingJoules;
+    private double[] coolingJoules;
+    private double[] discomfortKelvinSeconds;
+    
+    /**
+     * Creates an empty simulation
+     */
+    public ThermalSimulation() {
+        this.names = new ArrayList<>();
+        this.thermostats = new ArrayList<>();
+        allocate(16);
+    }
+    
+    /**
+     * Adds a room with a fixed setpoint
+     * @param name the room name used in results
+     * @param model the room's physical parameters
+     * @param setpoint the target temperature in °C
+     * @param initialTemperature the temperature at the start in °C
+     * @return the room's index
+     */
+    public synchronized int addRoom(String name, ThermalModel model, double setpoint, double initialTemperature) {
+        if (size == temperature.length) {
+            allocate(size * 2);
+        }
+        int i = size++;
+        names.add(name);
+        thermostats.add(new ArrayList<>());
+        temperature[i] = initialTemperature;
+        this.setpoint[i] = setpoint;
+        hvacEnabled[i] = 1;
+        heatLoss[i] = model.getHeatLoss();
+        heatCapacity[i] = model.getHeatCapacity();
+        heatingLimit[i] = model.getHeatingWatts();
+        coolingLimit[i] = model.getCoolingWatts();
+        return i;
+    }
+    
+    /**
+     * Adds a room of a home; its setpoint follows the room's thermostats (see refreshSetpoints)
+     * @param room the room
+     * @param model the room's physical parameters
+     * @return the room's index
+     */
+    public synchronized int addRoom(Room room, ThermalModel model) {
+        int i = addRoom(room.getName(), model, 0, 0);
+        for (Device device : room.getAllDevices()) {
+            if (device instanceof Thermostat) {
+                thermostats.get(i).add((Thermostat) device);
+            }
+        }
+        refreshSetpoint(i);
+        temperature[i] = hvacEnabled[i] != 0 ? setpoint[i] : 20;
+        return i;
+    }
+    
+    /**
+     * Adds every room of a home that has at least one thermostat
+     * @param home the home
+     * @param model the physical parameters used for all its rooms
+     * @return the number of rooms added
+     */
+    public synchronized int addHome(SmartHomeController home, ThermalModel model) {
+        int added = 0;
+        for (Room room : home.getAllRooms()) {
+            for (Device device : room.getAllDevices()) {
+                if (device instanceof Thermostat) {
+                    addRoom(room, model);
+                    added++;
+                    break;
+                }
+            }
+        }
+        return added;
+    }
+    
+    /**
+     * Reads the current thermostat setpoints, e.g. after running an automation mode.
+     * A room's setpoint is the mean of its switched-on thermostats; a room whose
+     * thermostats are all off gets no heating or cooling.
+     */
+    public synchronized void refreshSetpoints() {
+        for (int i = 0; i < size; i++) {
+            if (!thermostats.get(i).isEmpty()) {
+                refreshSetpoint(i);
+            }
+        }
+    }
+    
+    private void refreshSetpoint(int i) {
+        double sum = 0;
+        int on = 0;
+        for (Thermostat thermostat : thermostats.get(i)) {
+            if (thermostat.isOn()) {
+                sum += thermostat.getTemperature();
+                on++;
+            }
+        }
+        hvacEnabled[i] = on > 0 ? 1 : 0;
+        setpoint[i] = on > 0 ? sum / on : setpoint[i];
+    }
+    
+    /**
+     * Sets a room's setpoint directly
+     * @param room the room's index
+     * @param celsius the target temperature
+     * @param enabled false to switch the room's HVAC off
+     */
+    public synchronized void setSetpoint(int room, double celsius, boolean enabled) {
+        checkIndex(room);
+        setpoint[room] = celsius;
+        hvacEnabled[room] = enabled ? 1 : 0;
+    }
+    
+    /**
+     * Simulates all rooms over a period. Temperatures carry over to the next run; energy
+     * and comfort figures are for this run only.
+     * @param climate the outdoor temperature
+     * @param startSecondOfYear where in the year the period starts
+     * @param durationSeconds the length of the period
+     * @param stepSeconds the time step; 60 to 900 seconds suit typical rooms
+     * @return the totals over all rooms
+     * @throws IllegalArgumentException if the step is too long for a room to stay stable
+     */
+    public synchronized SimulationResult run(OutdoorClimate climate, double startSecondOfYear,
+                                             double durationSeconds, double stepSeconds) {
+        if (stepSeconds <= 0 || durationSeconds < 0) {
+            throw new IllegalArgumentException("Step and duration must be positive");
+        }
+        long started = System.nanoTime();
+        int steps = (int) Math.ceil(durationSeconds / stepSeconds);
+        double[] outdoor = new double[steps];
+        for (int s = 0; s < steps; s++) {
+            outdoor[s] = climate.temperatureAt(startSecondOfYear + s * stepSeconds);
+        }
+        
+        // Per-run coefficients, folded so the inner loop has no division: only multiplies,
+        // adds and conditional clamps. A room with its HVAC off gets zero limits
+        double[] stepOverCapacity = new double[size];
+        double[] capacityOverStep = new double[size];
+        double[] heatMax = new double[size];
+        double[] coolMax = new double[size];
+        for (int i = 0; i < size; i++) {
+            stepOverCapacity[i] = stepSeconds / heatCapacity[i];
+            capacityOverStep[i] = heatCapacity[i] / stepSeconds;
+            heatMax[i] = heatingLimit[i] * hvacEnabled[i];
+            coolMax[i] = -coolingLimit[i] * hvacEnabled[i];
+            // Explicit Euler only converges when a step moves a free-running room less than the full gap
+            if (stepOverCapacity[i] * heatLoss[i] >= 1) {
+                throw new IllegalArgumentException("Step of " + stepSeconds + " s is too long for room "
+                        + names.get(i));
+            }
+        }
+        heatingJoules = new double[size];
+        coolingJoules = new double[size];
+        discomfortKelvinSeconds = new double[size];
+        
+        int blocks = (size + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> simulateBlock(
+                block * BLOCK, Math.min(size, (block + 1) * BLOCK), outdoor, stepOverCapacity, capacityOverStep,
+                heatMax, coolMax));
+        
+        double heating = 0;
+        double cooling = 0;
+        double discomfort = 0;
+        double finalTemperature = 0;
+        for (int i = 0; i < size; i++) {
+            heatingJoules[i] *= stepSeconds;
+            coolingJoules[i] *= stepSeconds;
+            discomfortKelvinSeconds[i] *= stepSeconds;
+            heating += heatingJoules[i];
+            cooling += coolingJoules[i];
+            discomfort += discomfortKelvinSeconds[i];
+            finalTemperature += temperature[i];
+        }
+        double simulated = steps * stepSeconds;
+        return new SimulationResult(size, steps, simulated, heating / JOULES_PER_KWH, cooling / JOULES_PER_KWH,
+                size == 0 || simulated == 0 ? 0 : discomfort / size / simulated,
+                size == 0 ? Double.NaN : finalTemperature / size,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+    
+    // Runs every step for rooms [from, to); accumulates watts and kelvins per step
+    private void simulateBlock(int from, int to, double[] outdoor, double[] stepOverCapacity,
+                               double[] capacityOverStep, double[] heatMax, double[] coolMax) {
+        double[] t = temperature;
+        double[] target = setpoint;
+        double[] enabled = hvacEnabled;
+        double[] loss = heatLoss;
+        double[] heating = heatingJoules;
+        double[] cooling = coolingJoules;
+        double[] discomfort = discomfortKelvinSeconds;
+        // Scalar loop, one room at a time. Clamps are written as conditionals rather than
+        // Math.min/max, which must order NaN and -0.0 and ran several times slower here
+        for (double outside : outdoor) {
+            for (int i = from; i < to; i++) {
+                double now = t[i];
+                double leak = loss[i] * (outside - now);
+                // The output that would reach the setpoint in this step, within the unit's limits
+                double wanted = capacityOverStep[i] * (target[i] - now) - leak;
+                double hvac = wanted > heatMax[i] ? heatMax[i] : wanted;
+                hvac = hvac < coolMax[i] ? coolMax[i] : hvac;
+                double next = now + stepOverCapacity[i] * (leak + hvac);
+                t[i] = next;
+                double gap = target[i] - next;
+                heating[i] += hvac > 0 ? hvac : 0;
+                cooling[i] -= hvac < 0 ? hvac : 0;
+                discomfort[i] += (gap < 0 ? -gap : gap) * enabled[i];
+            }
+        }
+    }
+    
+    public synchronized int getRoomCount() {
+        return size;
+    }
+    
+    public synchronized String getName(int room) {
+        checkIndex(room);
+        return names.get(room);
+    }
+    
+    /**
+     * Gets a room's simulated temperature
+     * @param room the room's index
+     * @return the temperature in °C at the end of the last run
+     */
+    public synchronized double getTemperature(int room) {
+        checkIndex(room);
+        return temperature[room];
+    }
+    
+    public synchronized double getSetpoint(int room) {
+        checkIndex(room);
+        return setpoint[room];
+    }
+    
+    /**
+     * Gets a room's heating energy
+     * @param room the room's index
+     * @return the heat delivered during the last run in kWh
+     */
+    public synchronized double getHeatingKwh(int room) {
+        checkIndex(room);
+        return heatingJoules == null || room >= heatingJoules.length ? 0 : heatingJoules[room] / JOULES_PER_KWH;
+    }
+    
+    /**
+     * Gets a room's cooling energy
+     * @param room the room's index
+     * @return the heat removed during the last run in kWh
+     */
+    public synchronized double getCoolingKwh(int room) {
+        checkIndex(room);
+        return coolingJoules == null || room >= coolingJoules.length ? 0 : coolingJoules[room] / JOULES_PER_KWH;
+    }
+    
+    private void checkIndex(int room) {
+        if (room < 0 || room >= size) {
+            throw new IndexOutOfBoundsException("No room " + room);
+        }
+    }
+    
+    private void allocate(int capacity) {
+        temperature = grow(temperature, capacity);
+        setpoint = grow(setpoint, capacity);
+        hvacEnabled = grow(hvacEnabled, capacity);
+        heatLoss = grow(heatLoss, capacity);
+        heatCapacity = grow(heatCapacity, capacity);
+        heatingLimit = grow(heatingLimit, capacity);
+        coolingLimit = grow(coolingLimit, capacity);
+    }
+    
+    private static double[] grow(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
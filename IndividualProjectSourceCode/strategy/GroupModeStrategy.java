@@ -0,0 +1,82 @@
+package strategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import command.DeviceCommand;
+import core.SmartHomeController;
+import group.GroupRegistry;
+
+/**
+ * Automation mode defined by actions on device groups (Strategy Pattern).
+ * Each step targets a group from the home's GroupRegistry, e.g. lock "Exterior Doors"
+ * and set "North Thermostats" to 21 °C, instead of matching device names.
+ * All steps are sent as one batch.
+ */
+public class GroupModeStrategy implements AutomationStrategy {
+    private final String name;
+    private final List<Step> steps;
+    
+    /**
+     * Creates a mode without steps
+     * @param name the mode name
+     */
+    public GroupModeStrategy(String name) {
+        this.name = name;
+        this.steps = new ArrayList<>();
+    }
+    
+    /**
+     * Adds a step without a value
+     * @param group the target group
+     * @param action the action for each device of the group
+     * @return this mode, for chaining
+     */
+    public GroupModeStrategy then(String group, DeviceCommand.Action action) {
+        return then(group, action, 0);
+    }
+    
+    /**
+     * Adds a step
+     * @param group the target group
+     * @param action the action for each device of the group
+     * @param value the action's value
+     * @return this mode, for chaining
+     */
+    public GroupModeStrategy then(String group, DeviceCommand.Action action, double value) {
+        steps.add(new Step(group, action, value));
+        return this;
+    }
+    
+    @Override
+    public void execute(SmartHomeController controller) {
+        GroupRegistry groups = controller.getGroups();
+        List<DeviceCommand> commands = new ArrayList<>();
+        for (Step step : steps) {
+            if (groups.getGroup(step.group) == null) {
+                // A group that was never set up is not an error; the step has nothing to target
+                controller.notifyObservers(name + ": no group " + step.group);
+                continue;
+            }
+            commands.addAll(groups.commandsFor(groups.union(step.group), step.action, step.value));
+        }
+        controller.dispatch(commands);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    private static class Step {
+        private final String group;
+        private final DeviceCommand.Action action;
+        private final double value;
+        
+        Step(String group, DeviceCommand.Action action, double value) {
+            this.group = group;
+            this.action = action;
+            this.value = value;
+        }
+    }
+}
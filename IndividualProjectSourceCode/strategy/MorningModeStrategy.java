@@ -1,38 +1,99 @@
 package strategy;
 
-import core.Room;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import command.DeviceCommand;
+import core.DeviceType;
 import core.SmartHomeController;
 import devices.Device;
-import devices.Door;
 import devices.Light;
-import devices.Thermostat;
+import group.DeviceGroup;
+import query.DeviceIndex;
+import transition.Easing;
+import transition.TransitionEngine;
 
 /**
  * Morning mode automation strategy (Strategy Pattern)
  */
 public class MorningModeStrategy implements AutomationStrategy {
+    private static final int MORNING_BRIGHTNESS = 50;
+    
+    // Doors unlocked in the morning; homes without this group unlock doors named "Front"
+    public static final String MAIN_DOORS_GROUP = "Main Doors";
+    
+    private final TransitionEngine transitions;
+    private final long sunriseMillis;
+    
+    /**
+     * Creates a morning mode that sets the lights at once
+     */
+    public MorningModeStrategy() {
+        this(null, 0);
+    }
+    
+    /**
+     * Creates a morning mode that fades the lights up like a sunrise
+     * @param transitions the engine that runs the fades
+     * @param sunriseMillis how long the fade takes
+     */
+    public MorningModeStrategy(TransitionEngine transitions, long sunriseMillis) {
+        this.transitions = transitions;
+        this.sunriseMillis = sunriseMillis;
+    }
     
     @Override
     public void execute(SmartHomeController controller) {
-        // Wake up mode
-        for (Room room : controller.getAllRooms()) {
-            for (Device device : room.getAllDevices()) {
-                // Turn on lights at a low brightness
+        List<DeviceCommand> commands = new ArrayList<>();
+        List<Light> lights = new ArrayList<>();
+        boolean fade = transitions != null && sunriseMillis > 0;
+        DeviceGroup mainDoors = controller.getGroups().getGroup(MAIN_DOORS_GROUP);
+        DeviceIndex devices = controller.getDeviceIndex();
+        
+        // Wake up mode, one batch per device type
+        // Turn on lights at a low brightness
+        List<Device> allLights = devices.findByType(DeviceType.LIGHT);
+        commands.addAll(DeviceCommand.forAll(allLights, DeviceCommand.Action.TURN_ON, 0));
+        if (fade) {
+            // Start barely on; the fade brings it up to the morning level
+            commands.addAll(DeviceCommand.forAll(allLights, DeviceCommand.Action.SET_BRIGHTNESS, 1));
+            for (Device device : allLights) {
                 if (device instanceof Light) {
-                    device.turnOn();
-                    ((Light) device).setBrightness(50); // Dim light for morning
-                }
-                
-                // Set thermostats to comfortable temperature
-                if (device instanceof Thermostat) {
-                    ((Thermostat) device).setTemperature(22.0f); // Comfortable temperature
-                }
-                
-                // Unlock main doors
-                if (device instanceof Door && device.getName().contains("Front")) {
-                    ((Door) device).unlock();
+                    lights.add((Light) device);
                 }
             }
+        } else {
+            commands.addAll(DeviceCommand.forAll(allLights, DeviceCommand.Action.SET_BRIGHTNESS, MORNING_BRIGHTNESS)); // Dim light for morning
+        }
+        
+        // Set thermostats to comfortable temperature
+        commands.addAll(DeviceCommand.forAll(devices.findByType(DeviceType.THERMOSTAT),
+            DeviceCommand.Action.SET_TEMPERATURE, 22.0f)); // Comfortable temperature
+        
+        // Unlock main doors
+        for (Device device : devices.findByType(DeviceType.DOOR)) {
+            if (mainDoors != null ? mainDoors.contains(device) : device.getName().contains("Front")) {
+                commands.add(new DeviceCommand(device, DeviceCommand.Action.UNLOCK));
+            }
+        }
+        
+        List<DeviceCommand> failed = controller.dispatch(commands);
+        
+        if (fade) {
+            Set<Device> unreachable = new HashSet<>();
+            for (DeviceCommand command : failed) {
+                unreachable.add(command.getDevice());
+            }
+            // When run as a transaction, fade only once the starting brightness is committed
+            controller.runAfterCommit(() -> {
+                for (Light light : lights) {
+                    if (!unreachable.contains(light)) {
+                        transitions.fadeBrightness(light, MORNING_BRIGHTNESS, sunriseMillis, Easing.EASE_IN);
+                    }
+                }
+            });
         }
     }
     
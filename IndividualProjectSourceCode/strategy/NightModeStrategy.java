@@ -1,11 +1,12 @@
 package strategy;
 
-import core.Room;
+import java.util.ArrayList;
+import java.util.List;
+
+import command.DeviceCommand;
+import core.DeviceType;
 import core.SmartHomeController;
-import devices.Device;
-import devices.Door;
-import devices.Light;
-import devices.Thermostat;
+import query.DeviceIndex;
 
 
 /**
@@ -15,24 +16,21 @@ public class NightModeStrategy implements AutomationStrategy {
     
     @Override
     public void execute(SmartHomeController controller) {
+        List<DeviceCommand> commands = new ArrayList<>();
+        DeviceIndex devices = controller.getDeviceIndex();
+        
         // Turn off all lights
-        for (Room room : controller.getAllRooms()) {
-            for (Device device : room.getAllDevices()) {
-                if (device instanceof Light) {
-                    device.turnOff();
-                }
-                
-                // Set thermostats to night temperature
-                if (device instanceof Thermostat) {
-                    ((Thermostat) device).setTemperature(19.0f); // Lower temperature for night
-                }
-                
-                // Lock all doors
-                if (device instanceof Door) {
-                    ((Door) device).lock();
-                }
-            }
-        }
+        commands.addAll(DeviceCommand.forAll(devices.findByType(DeviceType.LIGHT), DeviceCommand.Action.TURN_OFF, 0));
+        
+        // Set thermostats to night temperature
+        commands.addAll(DeviceCommand.forAll(devices.findByType(DeviceType.THERMOSTAT),
+            DeviceCommand.Action.SET_TEMPERATURE, 19.0f)); // Lower temperature for night
+        
+        // Lock all doors
+        commands.addAll(DeviceCommand.forAll(devices.findByType(DeviceType.DOOR), DeviceCommand.Action.LOCK, 0));
+        
+        // Send everything at once so remote devices are updated concurrently and each type is applied as one batch
+        controller.dispatch(commands);
     }
     
     @Override
@@ -40,4 +38,3 @@ public class NightModeStrategy implements AutomationStrategy {
         return "Night Mode";
     }
 }
-
@@ -1,10 +1,12 @@
 package strategy;
 
-import core.Room;
+import java.util.ArrayList;
+import java.util.List;
+
+import command.DeviceCommand;
+import core.DeviceType;
 import core.SmartHomeController;
-import devices.Device;
-import devices.Door;
-import devices.Thermostat;
+import query.DeviceIndex;
 
 /**
  * Vacation mode automation strategy (Strategy Pattern)
@@ -13,22 +15,20 @@ public class VacationModeStrategy implements AutomationStrategy {
     
     @Override
     public void execute(SmartHomeController controller) {
+        List<DeviceCommand> commands = new ArrayList<>();
+        DeviceIndex devices = controller.getDeviceIndex();
+        
         // Security-focused mode for when nobody is home
-        for (Room room : controller.getAllRooms()) {
-            for (Device device : room.getAllDevices()) {
-                // Turn lights on and off randomly (not implemented)
-                
-                // Set thermostats to energy-saving mode
-                if (device instanceof Thermostat) {
-                    ((Thermostat) device).setTemperature(17.0f); // Lower temperature to save energy
-                }
-                
-                // Ensure all doors are locked
-                if (device instanceof Door) {
-                    ((Door) device).lock();
-                }
-            }
-        }
+        // Turn lights on and off randomly (not implemented)
+        
+        // Set thermostats to energy-saving mode
+        commands.addAll(DeviceCommand.forAll(devices.findByType(DeviceType.THERMOSTAT),
+            DeviceCommand.Action.SET_TEMPERATURE, 17.0f)); // Lower temperature to save energy
+        
+        // Ensure all doors are locked
+        commands.addAll(DeviceCommand.forAll(devices.findByType(DeviceType.DOOR), DeviceCommand.Action.LOCK, 0));
+        
+        controller.dispatch(commands);
     }
     
     @Override
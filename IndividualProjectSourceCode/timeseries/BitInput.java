@@ -0,0 +1,37 @@
+package timeseries;
+
+/**
+ * Reads a bit stream written by BitOutput
+ */
+final class BitInput {
+    private final long[] words;
+    private int position;
+    
+    BitInput(long[] words) {
+        this.words = words;
+    }
+    
+    /**
+     * Reads bits as an unsigned value
+     * @param count the number of bits to read (1 to 64)
+     */
+    long readBits(int count) {
+        int index = position >>> 6;
+        int offset = position & 63;
+        int available = 64 - offset;
+        long result;
+        if (count <= available) {
+            result = (words[index] << offset) >>> (64 - count);
+        } else {
+            int spill = count - available;
+            long high = (words[index] << offset) >>> offset;
+            result = (high << spill) | (words[index + 1] >>> (64 - spill));
+        }
+        position += count;
+        return result;
+    }
+    
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+}
@@ -0,0 +1,57 @@
+package timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Append-only bit stream backed by a long array, most significant bit first
+ */
+final class BitOutput {
+    private long[] words;
+    private int bitLength;
+    
+    BitOutput() {
+        this.words = new long[8];
+    }
+    
+    /**
+     * Appends the low bits of a value
+     * @param value the value to write
+     * @param count the number of low bits to write (1 to 64)
+     */
+    void writeBits(long value, int count) {
+        if (count < 64) {
+            value &= (1L << count) - 1;
+        }
+        int index = bitLength >>> 6;
+        if (index + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        int free = 64 - (bitLength & 63);
+        if (count <= free) {
+            words[index] |= value << (free - count);
+        } else {
+            int spill = count - free;
+            words[index] |= value >>> spill;
+            words[index + 1] |= value << (64 - spill);
+        }
+        bitLength += count;
+    }
+    
+    int bitLength() {
+        return bitLength;
+    }
+    
+    /**
+     * Gets the backing words; only the first bitLength bits are meaningful
+     */
+    long[] words() {
+        return words;
+    }
+    
+    /**
+     * Copies the written bits into an array of exactly the needed length
+     */
+    long[] toWords() {
+        return Arrays.copyOf(words, (bitLength + 63) >>> 6);
+    }
+}
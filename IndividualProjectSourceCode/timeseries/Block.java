@@ -0,0 +1,34 @@
+package timeseries;
+
+/**
+ * An immutable, fully encoded block of samples with its time range
+ */
+final class Block {
+    final long firstTime;
+    final long lastTime;
+    final int count;
+    private final int columns;
+    private final long unitMillis;
+    private final long[] words;
+    
+    Block(long firstTime, long lastTime, int count, int columns, long unitMillis, long[] words) {
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+        this.count = count;
+        this.columns = columns;
+        this.unitMillis = unitMillis;
+        this.words = words;
+    }
+    
+    boolean overlaps(long from, long to) {
+        return firstTime <= to && lastTime >= from;
+    }
+    
+    void scan(long from, long to, RowConsumer consumer) {
+        BlockEncoder.decode(words, count, columns, unitMillis, from, to, consumer);
+    }
+    
+    int encodedBytes() {
+        return words.length * Long.BYTES;
+    }
+}
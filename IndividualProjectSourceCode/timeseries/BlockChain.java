@@ -0,0 +1,96 @@
+package timeseries;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sealed blocks plus the open block being appended to
+ */
+final class BlockChain {
+    static final int BLOCK_SAMPLES = 1024;
+    
+    private final int columns;
+    private final long unitMillis;
+    private final List<Block> sealed;
+    private BlockEncoder open;
+    private long sealedBytes;
+    private long sealedSamples;
+    
+    /**
+     * Creates a chain
+     * @param columns the number of values per sample
+     * @param unitMillis the timestamp unit; appended timestamps must be multiples of it
+     */
+    BlockChain(int columns, long unitMillis) {
+        this.columns = columns;
+        this.unitMillis = unitMillis;
+        this.sealed = new ArrayList<>();
+    }
+    
+    void append(long timestamp, double[] values) {
+        if (open == null) {
+            open = new BlockEncoder(columns, unitMillis);
+        }
+        open.append(timestamp, values);
+        if (open.count() == BLOCK_SAMPLES) {
+            Block block = open.seal();
+            sealed.add(block);
+            sealedBytes += block.encodedBytes();
+            sealedSamples += block.count;
+            open = null;
+        }
+    }
+    
+    /**
+     * Decodes the rows within [from, to], touching only the blocks that overlap it
+     */
+    void scan(long from, long to, RowConsumer consumer) {
+        // Blocks are in time order: binary search for the first one that can overlap
+        int low = 0;
+        int high = sealed.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sealed.get(mid).lastTime < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < sealed.size(); i++) {
+            Block block = sealed.get(i);
+            if (!block.overlaps(from, to)) {
+                // It ends after from, so it starts after to, like every later block
+                return;
+            }
+            block.scan(from, to, consumer);
+        }
+        if (open != null && open.firstTime() <= to && open.lastTime() >= from) {
+            open.scan(from, to, consumer);
+        }
+    }
+    
+    /**
+     * Drops sealed blocks that end before the given time
+     */
+    void dropBefore(long time) {
+        Iterator<Block> iterator = sealed.iterator();
+        while (iterator.hasNext()) {
+            Block block = iterator.next();
+            if (block.lastTime >= time) {
+                break;
+            }
+            sealedBytes -= block.encodedBytes();
+            sealedSamples -= block.count;
+            iterator.remove();
+        }
+    }
+    
+    long sampleCount() {
+        return sealedSamples + (open == null ? 0 : open.count());
+    }
+    
+    long encodedBytes() {
+        return sealedBytes + (open == null ? 0 : open.encodedBytes());
+    }
+}
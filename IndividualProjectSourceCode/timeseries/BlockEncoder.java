@@ -0,0 +1,207 @@
+package timeseries;
+
+/**
+ * Gorilla-style encoder for one block of samples.
+ * Timestamps are stored as delta-of-delta in variable-width buckets (a regular series
+ * costs one bit per timestamp), counted in units of unitMillis after the first one, so
+ * second-precision times need far fewer bits than milliseconds. Each value column is
+ * XORed with its previous value and only the meaningful bits are stored (an unchanged
+ * value costs one bit).
+ */
+final class BlockEncoder {
+    private final int columns;
+    private final long unitMillis;
+    private final BitOutput out;
+    private final long[] previousBits;
+    private final int[] previousLeading;
+    private final int[] previousTrailing;
+    private int count;
+    private long firstTime;
+    private long lastTime;
+    private long lastDelta;
+    
+    /**
+     * Creates an encoder
+     * @param columns the number of values per sample
+     * @param unitMillis the timestamp unit; all timestamps must be multiples of it
+     */
+    BlockEncoder(int columns, long unitMillis) {
+        this.columns = columns;
+        this.unitMillis = unitMillis;
+        this.out = new BitOutput();
+        this.previousBits = new long[columns];
+        this.previousLeading = new int[columns];
+        this.previousTrailing = new int[columns];
+    }
+    
+    /**
+     * Appends a sample; timestamps must not decrease
+     * @param timestamp the sample time in epoch milliseconds
+     * @param values one value per column
+     */
+    void append(long timestamp, double[] values) {
+        if (count == 0) {
+            firstTime = timestamp;
+            out.writeBits(timestamp, 64);
+            for (int c = 0; c < columns; c++) {
+                long bits = Double.doubleToRawLongBits(values[c]);
+                out.writeBits(bits, 64);
+                previousBits[c] = bits;
+                previousLeading[c] = -1;
+            }
+        } else {
+            long delta = (timestamp - lastTime) / unitMillis;
+            writeDeltaOfDelta(delta - lastDelta);
+            lastDelta = delta;
+            for (int c = 0; c < columns; c++) {
+                writeXor(c, Double.doubleToRawLongBits(values[c]));
+            }
+        }
+        lastTime = timestamp;
+        count++;
+    }
+    
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            out.writeBits(0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            out.writeBits(0b10, 2);
+            out.writeBits(dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            out.writeBits(0b110, 3);
+            out.writeBits(dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(dod + 2047, 12);
+        } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+            // Irregular gaps, e.g. setter-driven samples minutes apart
+            out.writeBits(0b11110, 5);
+            out.writeBits(dod, 32);
+        } else {
+            out.writeBits(0b11111, 5);
+            out.writeBits(dod, 64);
+        }
+    }
+    
+    private void writeXor(int column, long bits) {
+        long xor = bits ^ previousBits[column];
+        previousBits[column] = bits;
+        if (xor == 0) {
+            out.writeBits(0, 1);
+            return;
+        }
+        out.writeBits(1, 1);
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading[column] >= 0 && leading >= previousLeading[column]
+                && trailing >= previousTrailing[column]) {
+            // The changed bits fit in the previous window: reuse it
+            out.writeBits(0, 1);
+            out.writeBits(xor >>> previousTrailing[column], 64 - previousLeading[column] - previousTrailing[column]);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            out.writeBits(1, 1);
+            out.writeBits(leading, 5);
+            out.writeBits(meaningful - 1, 6);
+            out.writeBits(xor >>> trailing, meaningful);
+            previousLeading[column] = leading;
+            previousTrailing[column] = trailing;
+        }
+    }
+    
+    int count() {
+        return count;
+    }
+    
+    long firstTime() {
+        return firstTime;
+    }
+    
+    long lastTime() {
+        return lastTime;
+    }
+    
+    int encodedBytes() {
+        return (out.bitLength() + 7) >>> 3;
+    }
+    
+    /**
+     * Decodes the samples written so far that fall within [from, to]
+     */
+    void scan(long from, long to, RowConsumer consumer) {
+        if (count > 0) {
+            decode(out.words(), count, columns, unitMillis, from, to, consumer);
+        }
+    }
+    
+    /**
+     * Finishes the block
+     * @return the immutable encoded block
+     */
+    Block seal() {
+        return new Block(firstTime, lastTime, count, columns, unitMillis, out.toWords());
+    }
+    
+    /**
+     * Decodes an encoded block, stopping after the last sample at or before to
+     */
+    static void decode(long[] words, int count, int columns, long unitMillis, long from, long to,
+                       RowConsumer consumer) {
+        BitInput in = new BitInput(words);
+        double[] values = new double[columns];
+        long[] bits = new long[columns];
+        int[] leading = new int[columns];
+        int[] trailing = new int[columns];
+        
+        long timestamp = in.readBits(64);
+        for (int c = 0; c < columns; c++) {
+            bits[c] = in.readBits(64);
+        }
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                delta += readDeltaOfDelta(in);
+                timestamp += delta * unitMillis;
+                for (int c = 0; c < columns; c++) {
+                    if (in.readBit()) {
+                        if (in.readBit()) {
+                            leading[c] = (int) in.readBits(5);
+                            int meaningful = (int) in.readBits(6) + 1;
+                            trailing[c] = 64 - leading[c] - meaningful;
+                        }
+                        int meaningful = 64 - leading[c] - trailing[c];
+                        bits[c] ^= in.readBits(meaningful) << trailing[c];
+                    }
+                }
+            }
+            if (timestamp > to) {
+                return;
+            }
+            if (timestamp >= from) {
+                for (int c = 0; c < columns; c++) {
+                    values[c] = Double.longBitsToDouble(bits[c]);
+                }
+                consumer.accept(timestamp, values);
+            }
+        }
+    }
+    
+    private static long readDeltaOfDelta(BitInput in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        if (!in.readBit()) {
+            return in.readBits(7) - 63;
+        }
+        if (!in.readBit()) {
+            return in.readBits(9) - 255;
+        }
+        if (!in.readBit()) {
+            return in.readBits(12) - 2047;
+        }
+        if (!in.readBit()) {
+            return (int) in.readBits(32);
+        }
+        return in.readBits(64);
+    }
+}
@@ -0,0 +1,178 @@
+package timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Round-trip checks for BitOutput/BitInput and BlockEncoder.
+ * Run with: java timeseries.BlockEncoderTest (exits with an AssertionError on the first failure)
+ */
+public class BlockEncoderTest {
+    private static int checks;
+    
+    /**
+     * Runs every check
+     */
+    public static void main(String[] args) {
+        bitsRoundTrip();
+        regularSeries();
+        irregularGaps();
+        specialValues();
+        rangeScans();
+        System.out.println("BlockEncoderTest: " + checks + " checks passed");
+    }
+    
+    /**
+     * Every width from 1 to 64 bits, across word boundaries
+     */
+    private static void bitsRoundTrip() {
+        Random random = new Random(1);
+        BitOutput out = new BitOutput();
+        int[] widths = new int[2000];
+        long[] values = new long[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = 1 + random.nextInt(64);
+            values[i] = widths[i] == 64 ? random.nextLong() : random.nextLong() & ((1L << widths[i]) - 1);
+            out.writeBits(values[i], widths[i]);
+        }
+        BitInput in = new BitInput(out.toWords());
+        for (int i = 0; i < widths.length; i++) {
+            check(in.readBits(widths[i]) == values[i], "bits " + i + " (" + widths[i] + " wide)");
+        }
+    }
+    
+    /**
+     * One sample per second, slowly drifting values: the common case
+     */
+    private static void regularSeries() {
+        List<Sample> samples = new ArrayList<>();
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < 500; i++) {
+            samples.add(new Sample(time + i * 1000L, 21.5 + (i / 50) * 0.5, i % 7 == 0 ? 1 : 0));
+        }
+        roundTrip("regular", samples, 1000);
+    }
+    
+    /**
+     * Gaps that need every delta-of-delta bucket, including the 64-bit one
+     */
+    private static void irregularGaps() {
+        long[] gaps = {1, 1, 60, 1, 300, 2, 2000, 1, 100_000, 1, 5_000_000_000L, 1, 3, 1};
+        List<Sample> samples = new ArrayList<>();
+        long time = 0;
+        for (int i = 0; i < gaps.length; i++) {
+            time += gaps[i] * 1000L;
+            samples.add(new Sample(time, i, -i));
+        }
+        roundTrip("irregular", samples, 1000);
+        
+        // Millisecond units with random jitter
+        Random random = new Random(2);
+        samples.clear();
+        time = 1_000;
+        for (int i = 0; i < 1000; i++) {
+            time += random.nextInt(5000);
+            samples.add(new Sample(time, random.nextGaussian(), random.nextDouble() * 1e6));
+        }
+        roundTrip("jitter", samples, 1);
+    }
+    
+    /**
+     * Values whose bits must come back exactly
+     */
+    private static void specialValues() {
+        double[] specials = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, -Double.MAX_VALUE, 1e-300, 0.1, 0.1, 0.2, Long.MAX_VALUE, 0.0};
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < specials.length; i++) {
+            samples.add(new Sample(i * 60_000L, specials[i], specials[specials.length - 1 - i]));
+        }
+        roundTrip("special", samples, 1000);
+        
+        List<Sample> single = new ArrayList<>();
+        single.add(new Sample(42_000, Math.PI, -Math.E));
+        roundTrip("single", single, 1000);
+    }
+    
+    /**
+     * Scans of part of a block return exactly the samples inside the range
+     */
+    private static void rangeScans() {
+        BlockEncoder encoder = new BlockEncoder(1, 1000);
+        for (int i = 0; i < 100; i++) {
+            encoder.append(i * 1000L, new double[] {i});
+        }
+        Block block = encoder.seal();
+        check(block.overlaps(10_000, 20_000), "overlaps inside");
+        check(block.overlaps(-5_000, 0), "overlaps at the first sample");
+        check(!block.overlaps(100_000, 200_000), "no overlap after the last sample");
+        
+        long[][] ranges = {{10_000, 19_999}, {0, 0}, {99_000, 500_000}, {-1_000, -1}, {50_500, 50_999}};
+        for (long[] range : ranges) {
+            List<Long> times = new ArrayList<>();
+            block.scan(range[0], range[1], (timestamp, values) -> {
+                check(values[0] == timestamp / 1000, "value at " + timestamp);
+                times.add(timestamp);
+            });
+            long expected = 0;
+            for (long t = 0; t < 100_000; t += 1000) {
+                if (t >= range[0] && t <= range[1]) {
+                    expected++;
+                }
+            }
+            check(times.size() == expected, "range " + range[0] + ".." + range[1] + " returned " + times.size());
+        }
+    }
+    
+    /**
+     * Encodes the samples and checks that both the open encoder and the sealed block
+     * decode them bit for bit
+     */
+    private static void roundTrip(String name, List<Sample> samples, long unitMillis) {
+        BlockEncoder encoder = new BlockEncoder(2, unitMillis);
+        for (Sample sample : samples) {
+            encoder.append(sample.time, new double[] {sample.first, sample.second});
+        }
+        check(encoder.count() == samples.size(), name + ": count");
+        check(encoder.firstTime() == samples.get(0).time, name + ": first time");
+        check(encoder.lastTime() == samples.get(samples.size() - 1).time, name + ": last time");
+        
+        List<Sample> open = new ArrayList<>();
+        encoder.scan(Long.MIN_VALUE, Long.MAX_VALUE,
+                (timestamp, values) -> open.add(new Sample(timestamp, values[0], values[1])));
+        List<Sample> sealed = new ArrayList<>();
+        encoder.seal().scan(Long.MIN_VALUE, Long.MAX_VALUE,
+                (timestamp, values) -> sealed.add(new Sample(timestamp, values[0], values[1])));
+        check(open.size() == samples.size() && sealed.size() == samples.size(), name + ": decoded count");
+        for (int i = 0; i < samples.size(); i++) {
+            check(samples.get(i).sameBits(open.get(i)), name + ": open sample " + i);
+            check(samples.get(i).sameBits(sealed.get(i)), name + ": sealed sample " + i);
+        }
+    }
+    
+    private static void check(boolean condition, String what) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+    
+    private static final class Sample {
+        final long time;
+        final double first;
+        final double second;
+        
+        Sample(long time, double first, double second) {
+            this.time = time;
+            this.first = first;
+            this.second = second;
+        }
+        
+        boolean sameBits(Sample other) {
+            return time == other.time
+                    && Double.doubleToRawLongBits(first) == Double.doubleToRawLongBits(other.first)
+                    && Double.doubleToRawLongBits(second) == Double.doubleToRawLongBits(other.second);
+        }
+    }
+}
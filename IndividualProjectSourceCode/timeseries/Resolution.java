@@ -0,0 +1,23 @@
+package timeseries;
+
+/**
+ * Rollup resolutions maintained for every series
+ */
+public enum Resolution {
+    MINUTE(60_000L),
+    HOUR(3_600_000L);
+    
+    private final long millis;
+    
+    Resolution(long millis) {
+        this.millis = millis;
+    }
+    
+    /**
+     * Gets the bucket width
+     * @return the width in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+}
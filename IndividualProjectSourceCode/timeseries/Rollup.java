@@ -0,0 +1,71 @@
+package timeseries;
+
+/**
+ * Downsampled buckets of one series at one resolution.
+ * The current bucket is accumulated in primitives; completed buckets are encoded
+ * as rows of (min, max, mean, last, count) in their own block chain.
+ */
+final class Rollup {
+    private final long width;
+    private final BlockChain chain;
+    private final double[] row;
+    private long bucketStart;
+    private double min;
+    private double max;
+    private double sum;
+    private double last;
+    private long count;
+    
+    Rollup(Resolution resolution) {
+        this.width = resolution.getMillis();
+        this.chain = new BlockChain(5, width);
+        this.row = new double[5];
+    }
+    
+    void add(long timestamp, double value) {
+        long start = timestamp - Math.floorMod(timestamp, width);
+        if (count > 0 && start != bucketStart) {
+            flush();
+        }
+        if (count == 0) {
+            bucketStart = start;
+            min = value;
+            max = value;
+            sum = 0;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        last = value;
+        count++;
+    }
+    
+    private void flush() {
+        row[0] = min;
+        row[1] = max;
+        row[2] = sum / count;
+        row[3] = last;
+        row[4] = count;
+        chain.append(bucketStart, row);
+        count = 0;
+    }
+    
+    /**
+     * Reports the buckets overlapping [from, to], including the one still accumulating
+     */
+    void scan(long from, long to, RollupConsumer consumer) {
+        chain.scan(from - width + 1, to, (start, values) ->
+            consumer.accept(start, values[0], values[1], values[2], values[3], (long) values[4]));
+        if (count > 0 && bucketStart <= to && bucketStart + width > from) {
+            consumer.accept(bucketStart, min, max, sum / count, last, count);
+        }
+    }
+    
+    void dropBefore(long time) {
+        chain.dropBefore(time);
+    }
+    
+    long encodedBytes() {
+        return chain.encodedBytes();
+    }
+}
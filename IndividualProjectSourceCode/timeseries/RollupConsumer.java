@@ -0,0 +1,17 @@
+package timeseries;
+
+/**
+ * Receives rollup buckets from a range query
+ */
+@FunctionalInterface
+public interface RollupConsumer {
+    /**
+     * @param bucketStart the start of the bucket in epoch milliseconds
+     * @param min the smallest sample in the bucket
+     * @param max the largest sample in the bucket
+     * @param mean the mean of the samples in the bucket
+     * @param last the last sample in the bucket
+     * @param count the number of samples in the bucket
+     */
+    void accept(long bucketStart, double min, double max, double mean, double last, long count);
+}
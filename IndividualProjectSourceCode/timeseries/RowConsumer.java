@@ -0,0 +1,8 @@
+package timeseries;
+
+/**
+ * Receives decoded rows of a multi-column block
+ */
+interface RowConsumer {
+    void accept(long timestamp, double[] values);
+}
@@ -0,0 +1,13 @@
+package timeseries;
+
+/**
+ * Receives raw samples from a range query
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+    /**
+     * @param timestamp the sample time in epoch milliseconds
+     * @param value the sample value
+     */
+    void accept(long timestamp, double value);
+}
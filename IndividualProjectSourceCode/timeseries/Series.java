@@ -0,0 +1,74 @@
+package timeseries;
+
+/**
+ * History of one device property: raw samples plus minute and hour rollups
+ */
+final class Series {
+    private final BlockChain raw;
+    private final Rollup[] rollups;
+    private final double[] row;
+    private final long precisionMillis;
+    private long lastTime;
+    
+    /**
+     * Creates a series
+     * @param precisionMillis raw sample times are rounded down to a multiple of this
+     */
+    Series(long precisionMillis) {
+        this.precisionMillis = precisionMillis;
+        this.raw = new BlockChain(1, precisionMillis);
+        Resolution[] resolutions = Resolution.values();
+        this.rollups = new Rollup[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            rollups[i] = new Rollup(resolutions[i]);
+        }
+        this.row = new double[1];
+        this.lastTime = Long.MIN_VALUE;
+    }
+    
+    synchronized void append(long timestamp, double value) {
+        // Clock steps backwards are folded into the latest time so blocks stay ordered
+        if (timestamp < lastTime) {
+            timestamp = lastTime;
+        }
+        lastTime = timestamp;
+        for (Rollup rollup : rollups) {
+            rollup.add(timestamp, value);
+        }
+        // Rollups see the exact time; raw samples keep it to the store's precision
+        row[0] = value;
+        raw.append(Math.floorDiv(timestamp, precisionMillis) * precisionMillis, row);
+    }
+    
+    synchronized void scan(long from, long to, SampleConsumer consumer) {
+        raw.scan(from, to, (timestamp, values) -> consumer.accept(timestamp, values[0]));
+    }
+    
+    synchronized void scanRollup(Resolution resolution, long from, long to, RollupConsumer consumer) {
+        rollups[resolution.ordinal()].scan(from, to, consumer);
+    }
+    
+    synchronized void dropRawBefore(long time) {
+        raw.dropBefore(time);
+    }
+    
+    synchronized void dropRollupsBefore(Resolution resolution, long time) {
+        rollups[resolution.ordinal()].dropBefore(time);
+    }
+    
+    synchronized long sampleCount() {
+        return raw.sampleCount();
+    }
+    
+    synchronized long rawBytes() {
+        return raw.encodedBytes();
+    }
+    
+    synchronized long rollupBytes() {
+        long bytes = 0;
+        for (Rollup rollup : rollups) {
+            bytes += rollup.encodedBytes();
+        }
+        return bytes;
+    }
+}
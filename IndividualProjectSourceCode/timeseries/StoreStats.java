@@ -0,0 +1,58 @@
+package timeseries;
+
+import java.util.Locale;
+
+/**
+ * Size counters of a TimeSeriesStore
+ */
+public class StoreStats {
+    private final int seriesCount;
+    private final long samples;
+    private final long rawBytes;
+    private final long rollupBytes;
+    
+    StoreStats(int seriesCount, long samples, long rawBytes, long rollupBytes) {
+        this.seriesCount = seriesCount;
+        this.samples = samples;
+        this.rawBytes = rawBytes;
+        this.rollupBytes = rollupBytes;
+    }
+    
+    public int getSeriesCount() {
+        return seriesCount;
+    }
+    
+    /**
+     * Gets the number of raw samples currently retained
+     */
+    public long getSamples() {
+        return samples;
+    }
+    
+    /**
+     * Gets the encoded size of the raw samples
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+    
+    /**
+     * Gets the encoded size of the minute and hour rollups
+     */
+    public long getRollupBytes() {
+        return rollupBytes;
+    }
+    
+    /**
+     * Gets the average encoded size of a raw sample
+     */
+    public double getBytesPerSample() {
+        return samples == 0 ? 0 : rawBytes / (double) samples;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d series, %d samples, %d raw bytes (%.2f bytes/sample), %d rollup bytes",
+                seriesCount, samples, rawBytes, getBytesPerSample(), rollupBytes);
+    }
+}
@@ -0,0 +1,212 @@
+package timeseries;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import core.DeviceProperty;
+import devices.Device;
+import observer.DeviceStateObserver;
+
+/**
+ * Compressed history of device properties (Observer Pattern).
+ * Register it with SmartHomeController.addStateObserver and every recorded property change
+ * becomes a sample. Samples are Gorilla-encoded in blocks of 1024 (delta-of-delta timestamps,
+ * XOR-compressed values) and rolled up into minute and hour buckets as they arrive. Range
+ * queries decode only the blocks that overlap the requested range.
+ *
+ * Raw sample times are kept to the second by default: setter-driven samples arrive at
+ * irregular intervals, and millisecond deltas between them cost several bytes each.
+ * Rollups always use the exact times.
+ */
+public class TimeSeriesStore implements DeviceStateObserver {
+    private static final int PROPERTY_COUNT = DeviceProperty.values().length;
+    private static final long DEFAULT_PRECISION_MILLIS = 1000;
+    
+    private final Set<DeviceProperty> recorded;
+    private final long precisionMillis;
+    private final ConcurrentHashMap<Device, Series[]> series;
+    private long rawRetentionMillis;
+    private final long[] rollupRetentionMillis;
+    
+    /**
+     * Creates a store that records brightness and temperature
+     */
+    public TimeSeriesStore() {
+        this(EnumSet.of(DeviceProperty.BRIGHTNESS, DeviceProperty.TEMPERATURE));
+    }
+    
+    /**
+     * Creates a store
+     * @param recorded the properties to keep history for
+     */
+    public TimeSeriesStore(Set<DeviceProperty> recorded) {
+        this(recorded, DEFAULT_PRECISION_MILLIS);
+    }
+    
+    /**
+     * Creates a store
+     * @param recorded the properties to keep history for
+     * @param precisionMillis raw sample times are rounded down to a multiple of this,
+     *                        e.g. 1 to keep milliseconds
+     */
+    public TimeSeriesStore(Set<DeviceProperty> recorded, long precisionMillis) {
+        if (precisionMillis < 1) {
+            throw new IllegalArgumentException("Precision must be at least 1 ms: " + precisionMillis);
+        }
+        this.recorded = EnumSet.copyOf(recorded);
+        this.precisionMillis = precisionMillis;
+        this.series = new ConcurrentHashMap<>();
+        this.rawRetentionMillis = Long.MAX_VALUE;
+        this.rollupRetentionMillis = new long[Resolution.values().length];
+        Arrays.fill(rollupRetentionMillis, Long.MAX_VALUE);
+    }
+    
+    @Override
+    public void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue, long timestamp) {
+        if (recorded.contains(property)) {
+            record(device, property, timestamp, newValue);
+        }
+    }
+    
+    /**
+     * Records a sample
+     * @param device the device
+     * @param property the property
+     * @param timestamp the sample time in epoch milliseconds
+     * @param value the sample value
+     */
+    public void record(Device device, DeviceProperty property, long timestamp, double value) {
+        Series[] properties = series.computeIfAbsent(device, d -> new Series[PROPERTY_COUNT]);
+        Series target = properties[property.ordinal()];
+        if (target == null) {
+            synchronized (properties) {
+                target = properties[property.ordinal()];
+                if (target == null) {
+                    target = new Series(precisionMillis);
+                    properties[property.ordinal()] = target;
+                }
+            }
+        }
+        target.append(timestamp, value);
+    }
+    
+    /**
+     * Reads the raw samples of a property within a time range
+     * @param device the device
+     * @param property the property
+     * @param from the range start in epoch milliseconds (inclusive)
+     * @param to the range end in epoch milliseconds (inclusive)
+     * @param consumer receives the samples in time order
+     */
+    public void query(Device device, DeviceProperty property, long from, long to, SampleConsumer consumer) {
+        Series target = find(device, property);
+        if (target != null) {
+            target.scan(from, to, consumer);
+        }
+    }
+    
+    /**
+     * Reads the rollup buckets of a property that overlap a time range
+     * @param device the device
+     * @param property the property
+     * @param resolution the bucket width
+     * @param from the range start in epoch milliseconds (inclusive)
+     * @param to the range end in epoch milliseconds (inclusive)
+     * @param consumer receives the buckets in time order
+     */
+    public void queryRollup(Device device, DeviceProperty property, Resolution resolution,
+                            long from, long to, RollupConsumer consumer) {
+        Series target = find(device, property);
+        if (target != null) {
+            target.scanRollup(resolution, from, to, consumer);
+        }
+    }
+    
+    private Series find(Device device, DeviceProperty property) {
+        Series[] properties = series.get(device);
+        if (properties == null) {
+            return null;
+        }
+        synchronized (properties) {
+            return properties[property.ordinal()];
+        }
+    }
+    
+    /**
+     * Sets how long raw samples are kept; rollups are kept separately
+     * @param millis the retention in milliseconds
+     */
+    public synchronized void setRawRetention(long millis) {
+        this.rawRetentionMillis = millis;
+    }
+    
+    /**
+     * Sets how long rollup buckets of one resolution are kept
+     * @param resolution the resolution
+     * @param millis the retention in milliseconds
+     */
+    public synchronized void setRollupRetention(Resolution resolution, long millis) {
+        rollupRetentionMillis[resolution.ordinal()] = millis;
+    }
+    
+    /**
+     * Drops whole blocks older than the retention settings; call periodically
+     * @param now the current time in epoch milliseconds
+     */
+    public void applyRetention(long now) {
+        long rawRetention;
+        long[] rollupRetention;
+        synchronized (this) {
+            rawRetention = rawRetentionMillis;
+            rollupRetention = rollupRetentionMillis.clone();
+        }
+        Resolution[] resolutions = Resolution.values();
+        for (Series[] properties : series.values()) {
+            for (int p = 0; p < PROPERTY_COUNT; p++) {
+                Series target;
+                synchronized (properties) {
+                    target = properties[p];
+                }
+                if (target == null) {
+                    continue;
+                }
+                if (rawRetention != Long.MAX_VALUE) {
+                    target.dropRawBefore(now - rawRetention);
+                }
+                for (Resolution resolution : resolutions) {
+                    if (rollupRetention[resolution.ordinal()] != Long.MAX_VALUE) {
+                        target.dropRollupsBefore(resolution, now - rollupRetention[resolution.ordinal()]);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the size counters
+     * @return a snapshot of the counters
+     */
+    public StoreStats getStats() {
+        int count = 0;
+        long samples = 0;
+        long rawBytes = 0;
+        long rollupBytes = 0;
+        for (Series[] properties : series.values()) {
+            for (int p = 0; p < PROPERTY_COUNT; p++) {
+                Series target;
+                synchronized (properties) {
+                    target = properties[p];
+                }
+                if (target != null) {
+                    count++;
+                    samples += target.sampleCount();
+                    rawBytes += target.rawBytes();
+                    rollupBytes += target.rollupBytes();
+                }
+            }
+        }
+        return new StoreStats(count, samples, rawBytes, rollupBytes);
+    }
+}
@@ -0,0 +1,105 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of nanosecond latencies.
+ * Values are bucketed with 32 sub-buckets per power of two (about 3% error),
+ * so recording is allocation-free and the footprint stays constant.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+    
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+    
+    /**
+     * Records a single latency value
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[indexOf(nanos)]++;
+        totalCount++;
+        sum += nanos;
+        if (nanos < min) {
+            min = nanos;
+        }
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+    
+    /**
+     * Clears all recorded values (used after warm-up)
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+    }
+    
+    /**
+     * Gets the value at the given percentile
+     * @param percentile a value between 0 and 100
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(totalCount * percentile / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(Math.max(valueOf(i), min), max);
+            }
+        }
+        return max;
+    }
+    
+    public long getCount() {
+        return totalCount;
+    }
+    
+    public long getMax() {
+        return totalCount == 0 ? 0 : max;
+    }
+    
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+    
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int subBucket = (int) ((value >>> shift) & (SUB_COUNT - 1));
+        return ((shift + 1) << SUB_BITS) + subBucket;
+    }
+    
+    private static long valueOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        long subBucket = index & (SUB_COUNT - 1);
+        // Upper edge of the bucket, so percentiles never under-report
+        return ((SUB_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
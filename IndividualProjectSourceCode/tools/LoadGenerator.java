@@ -0,0 +1,367 @@
+package tools;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import capability.MotionSensorCapability;
+import capability.TimerCapability;
+import core.DeviceType;
+import core.SmartHomeController;
+import devices.Device;
+import devices.Door;
+import devices.Light;
+import devices.SecurityCamera;
+import devices.Thermostat;
+import observer.SystemObserver;
+
+/**
+ * Synthetic workload generator for sizing the controller.
+ * Builds a seeded random home through SmartHomeController.createDevice, then drives
+ * paced command and motion-event streams and reports throughput, latency and heap usage.
+ *
+ * Example:
+ *   java tools.LoadGenerator --rooms=10000 --devices=1000000 --command-rate=200000 --duration=30
+ */
+public class LoadGenerator {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    
+    private final WorkloadConfig config;
+    private final SmartHomeController controller;
+    private final Random random;
+    private final MemoryMXBean memory;
+    
+    private final List<Device> devices;
+    private final List<MotionSensorCapability> motionDevices;
+    private final LatencyHistogram commandLatency;
+    private final LatencyHistogram motionLatency;
+    private final List<CountingObserver> counters;
+    
+    private double buildSeconds;
+    private long heapAfterBuild;
+    private long peakHeap;
+    private double runSeconds;
+    
+    /**
+     * Creates a load generator for the given workload
+     * @param config the workload settings
+     * @param controller the controller to drive
+     */
+    public LoadGenerator(WorkloadConfig config, SmartHomeController controller) {
+        this.config = config;
+        this.controller = controller;
+        this.random = new Random(config.getSeed());
+        this.memory = ManagementFactory.getMemoryMXBean();
+        this.devices = new ArrayList<>(config.getDeviceCount());
+        this.motionDevices = new ArrayList<>();
+        this.commandLatency = new LatencyHistogram();
+        this.motionLatency = new LatencyHistogram();
+        this.counters = new ArrayList<>();
+    }
+    
+    /**
+     * Builds the synthetic home: rooms, devices by type mix, and decorators by ratio
+     */
+    public void buildHome() {
+        // Distinct instances, so each one is a separate observer the controller notifies
+        for (int i = 0; i < config.getObserverCount(); i++) {
+            CountingObserver counter = new CountingObserver();
+            counters.add(counter);
+            controller.addObserver(counter);
+        }
+        
+        long start = System.nanoTime();
+        String[] roomNames = new String[config.getRoomCount()];
+        for (int i = 0; i < roomNames.length; i++) {
+            roomNames[i] = String.format("Room-%05d", i + 1);
+            controller.addRoom(roomNames[i]);
+        }
+        
+        DeviceType[] types = DeviceType.values();
+        int[] cumulativeWeights = new int[types.length];
+        int totalWeight = 0;
+        for (int i = 0; i < types.length; i++) {
+            totalWeight += config.getTypeMix().getOrDefault(types[i], 0);
+            cumulativeWeights[i] = totalWeight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Device type mix must contain a positive weight");
+        }
+        
+        for (int i = 0; i < config.getDeviceCount(); i++) {
+            int pick = random.nextInt(totalWeight);
+            int typeIndex = 0;
+            while (pick >= cumulativeWeights[typeIndex]) {
+                typeIndex++;
+            }
+            DeviceType type = types[typeIndex];
+            String roomName = roomNames[random.nextInt(roomNames.length)];
+            Device device = controller.createDevice(roomName, type, type + "-" + i);
+            
+            if (random.nextDouble() < config.getDecoratorRatio()) {
+                motionDevices.add(MotionSensorCapability.attachTo(device));
+                // Half of the decorated devices also get a timer
+                if (random.nextBoolean()) {
+                    TimerCapability.attachTo(device);
+                }
+            }
+            devices.add(device);
+        }
+        buildSeconds = (System.nanoTime() - start) / (double) NANOS_PER_SECOND;
+        heapAfterBuild = usedHeapAfterGc();
+        peakHeap = heapAfterBuild;
+    }
+    
+    /**
+     * Drives the command and motion streams for the warm-up and measured phases
+     */
+    public void run() {
+        if (devices.isEmpty()) {
+            throw new IllegalStateException("buildHome() must be called before run()");
+        }
+        if (config.getWarmupSeconds() > 0) {
+            drive(config.getWarmupSeconds());
+            commandLatency.reset();
+            motionLatency.reset();
+        }
+        long start = System.nanoTime();
+        drive(config.getDurationSeconds());
+        runSeconds = (System.nanoTime() - start) / (double) NANOS_PER_SECOND;
+    }
+    
+    /**
+     * Runs an open-loop paced stream for the given number of seconds.
+     * Latency is measured from each operation's intended start time, so a stalled
+     * controller shows up as queueing delay instead of silently lowering the rate.
+     */
+    private void drive(int seconds) {
+        int commandRate = Math.max(0, config.getCommandRate());
+        int motionRate = motionDevices.isEmpty() ? 0 : Math.max(0, config.getMotionRate());
+        long totalRate = (long) commandRate + motionRate;
+        if (totalRate == 0) {
+            return;
+        }
+        
+        double interval = NANOS_PER_SECOND / (double) totalRate;
+        long start = System.nanoTime();
+        long end = start + seconds * NANOS_PER_SECOND;
+        long nextHeapSample = start + NANOS_PER_SECOND;
+        long operation = 0;
+        
+        while (true) {
+            long intended = start + (long) (operation * interval);
+            if (intended >= end) {
+                break;
+            }
+            long now = System.nanoTime();
+            if (now < intended) {
+                long wait = intended - now;
+                if (wait > 50_000) {
+                    LockSupport.parkNanos(wait - 20_000);
+                }
+                while (System.nanoTime() < intended) {
+                    Thread.onSpinWait();
+                }
+            }
+            
+            if (random.nextInt((int) Math.min(totalRate, Integer.MAX_VALUE)) < commandRate) {
+                executeRandomCommand();
+                commandLatency.record(System.nanoTime() - intended);
+            } else {
+                motionDevices.get(random.nextInt(motionDevices.size())).detectMotion();
+                motionLatency.record(System.nanoTime() - intended);
+            }
+            operation++;
+            
+            if (intended >= nextHeapSample) {
+                peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+                nextHeapSample += NANOS_PER_SECOND;
+            }
+        }
+    }
+    
+    /**
+     * Sends one random type-appropriate command to a random device
+     */
+    private void executeRandomCommand() {
+        Device device = devices.get(random.nextInt(devices.size()));
+        int action = random.nextInt(4);
+        
+        if (action == 0) {
+            device.toggle();
+        } else if (device instanceof Light) {
+            if (action == 1) {
+                device.turnOn();
+            }
+            ((Light) device).setBrightness(random.nextInt(101));
+        } else if (device instanceof Thermostat) {
+            ((Thermostat) device).setTemperature(16.0f + random.nextInt(120) / 10.0f);
+        } else if (device instanceof Door) {
+            if (random.nextBoolean()) {
+                ((Door) device).lock();
+            } else {
+                ((Door) device).unlock();
+            }
+        } else if (device instanceof SecurityCamera) {
+            if (random.nextBoolean()) {
+                ((SecurityCamera) device).startRecording();
+            } else {
+                ((SecurityCamera) device).stopRecording();
+            }
+        }
+    }
+    
+    private long usedHeapAfterGc() {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+    
+    /**
+     * Prints a human-readable report to standard output
+     */
+    public void printReport() {
+        long operations = commandLatency.getCount() + motionLatency.getCount();
+        System.out.println("----- Load Generator Report -----");
+        System.out.printf(Locale.ROOT, "Built %d rooms, %d devices (%d motion-decorated) in %.2f s%n",
+                config.getRoomCount(), devices.size(), motionDevices.size(), buildSeconds);
+        System.out.printf(Locale.ROOT, "Heap after build: %.1f MB (%.0f bytes/device)%n",
+                heapAfterBuild / 1048576.0, heapAfterBuild / (double) devices.size());
+        System.out.printf(Locale.ROOT, "Target rate: %d ops/s, achieved: %.0f ops/s over %.2f s%n",
+                config.getCommandRate() + config.getMotionRate(), operations / runSeconds, runSeconds);
+        printLatency("Commands", commandLatency);
+        printLatency("Motion events", motionLatency);
+        System.out.printf(Locale.ROOT, "Peak heap during run: %.1f MB%n", peakHeap / 1048576.0);
+    }
+    
+    private static void printLatency(String label, LatencyHistogram histogram) {
+        System.out.printf(Locale.ROOT, "%s: %d ops, p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                label, histogram.getCount(),
+                histogram.getPercentile(50) / 1000.0, histogram.getPercentile(90) / 1000.0,
+                histogram.getPercentile(99) / 1000.0, histogram.getPercentile(99.9) / 1000.0,
+                histogram.getMax() / 1000.0);
+    }
+    
+    /**
+     * Builds the machine-readable JSON summary of the run
+     * @return the summary as a single-line JSON object
+     */
+    public String toJson() {
+        long operations = commandLatency.getCount() + motionLatency.getCount();
+        StringBuilder json = new StringBuilder(1024);
+        json.append('{');
+        json.append("\"config\":{");
+        json.append("\"seed\":").append(config.getSeed());
+        json.append(",\"rooms\":").append(config.getRoomCount());
+        json.append(",\"devices\":").append(config.getDeviceCount());
+        json.append(",\"typeMix\":{");
+        boolean first = true;
+        for (Map.Entry<DeviceType, Integer> entry : config.getTypeMix().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            first = false;
+        }
+        json.append('}');
+        json.append(",\"decoratorRatio\":").append(config.getDecoratorRatio());
+        json.append(",\"commandRate\":").append(config.getCommandRate());
+        json.append(",\"motionRate\":").append(config.getMotionRate());
+        json.append(",\"warmupSeconds\":").append(config.getWarmupSeconds());
+        json.append(",\"durationSeconds\":").append(config.getDurationSeconds());
+        json.append(",\"observers\":").append(config.getObserverCount());
+        json.append("},\"build\":{");
+        json.append("\"seconds\":").append(format(buildSeconds));
+        json.append(",\"motionDecorated\":").append(motionDevices.size());
+        json.append(",\"heapBytes\":").append(heapAfterBuild);
+        json.append(",\"bytesPerDevice\":").append(format(heapAfterBuild / (double) devices.size()));
+        json.append("},\"run\":{");
+        json.append("\"seconds\":").append(format(runSeconds));
+        json.append(",\"operations\":").append(operations);
+        json.append(",\"throughput\":").append(format(operations / runSeconds));
+        long notifications = 0;
+        for (CountingObserver counter : counters) {
+            notifications += counter.getCount();
+        }
+        json.append(",\"notifications\":").append(notifications);
+        json.append(",\"peakHeapBytes\":").append(peakHeap);
+        json.append(",\"latencyNanos\":{");
+        appendLatency(json, "command", commandLatency);
+        json.append(',');
+        appendLatency(json, "motion", motionLatency);
+        json.append("}}}");
+        return json.toString();
+    }
+    
+    private static void appendLatency(StringBuilder json, String name, LatencyHistogram histogram) {
+        json.append('"').append(name).append("\":{");
+        json.append("\"count\":").append(histogram.getCount());
+        json.append(",\"mean\":").append(format(histogram.getMean()));
+        json.append(",\"p50\":").append(histogram.getPercentile(50));
+        json.append(",\"p90\":").append(histogram.getPercentile(90));
+        json.append(",\"p99\":").append(histogram.getPercentile(99));
+        json.append(",\"p999\":").append(histogram.getPercentile(99.9));
+        json.append(",\"max\":").append(histogram.getMax());
+        json.append('}');
+    }
+    
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+    
+    /**
+     * Observer that only counts events, to measure notification fan-out cost
+     */
+    private static class CountingObserver implements SystemObserver {
+        private long count;
+        
+        @Override
+        public void update(String event) {
+            count++;
+        }
+        
+        long getCount() {
+            return count;
+        }
+    }
+    
+    /**
+     * Main method to run the load generator
+     */
+    public static void main(String[] args) {
+        WorkloadConfig config;
+        try {
+            config = WorkloadConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Options: --seed --rooms --devices --mix=light:50,door:20,... --decorator-ratio"
+                    + " --command-rate --motion-rate --warmup --duration --observers --output");
+            System.exit(2);
+            return;
+        }
+        
+        LoadGenerator generator = new LoadGenerator(config, SmartHomeController.getInstance());
+        generator.buildHome();
+        generator.run();
+        generator.printReport();
+        
+        String summary = generator.toJson();
+        System.out.println(summary);
+        if (config.getOutputFile() != null) {
+            try (Writer writer = new FileWriter(config.getOutputFile())) {
+                writer.write(summary);
+                writer.write(System.lineSeparator());
+            } catch (IOException e) {
+                System.err.println("Could not write summary: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+}
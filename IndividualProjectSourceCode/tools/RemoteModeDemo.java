@@ -0,0 +1,122 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import cache.CachingTransport;
+import command.DeviceCommand;
+import core.DeviceType;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import strategy.NightModeStrategy;
+import transport.GatewayTransport;
+import transport.SimulatedGateway;
+import transport.TransportSettings;
+
+/**
+ * Compares serial and fanned-out command delivery against simulated gateways.
+ *
+ * Example:
+ *   java tools.RemoteModeDemo --rooms=50 --devices-per-room=20 --gateways=10 --failure-rate=0.02
+ */
+public class RemoteModeDemo {
+    
+    public static void main(String[] args) {
+        int rooms = 50;
+        int devicesPerRoom = 20;
+        int gatewayCount = 10;
+        long minLatency = 5;
+        long maxLatency = 200;
+        double failureRate = 0.0;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--rooms=")) {
+                rooms = Integer.parseInt(value);
+            } else if (arg.startsWith("--devices-per-room=")) {
+                devicesPerRoom = Integer.parseInt(value);
+            } else if (arg.startsWith("--gateways=")) {
+                gatewayCount = Integer.parseInt(value);
+            } else if (arg.startsWith("--min-latency=")) {
+                minLatency = Long.parseLong(value);
+            } else if (arg.startsWith("--max-latency=")) {
+                maxLatency = Long.parseLong(value);
+            } else if (arg.startsWith("--failure-rate=")) {
+                failureRate = Double.parseDouble(value);
+            }
+        }
+        
+        SmartHomeController controller = SmartHomeController.getInstance();
+        DeviceType[] types = {DeviceType.LIGHT, DeviceType.THERMOSTAT, DeviceType.DOOR};
+        for (int r = 0; r < rooms; r++) {
+            for (int d = 0; d < devicesPerRoom; d++) {
+                controller.createDevice("Room " + r, types[d % types.length], "Device " + d);
+            }
+        }
+        
+        ScheduledExecutorService network = Executors.newScheduledThreadPool(2);
+        List<SimulatedGateway> gateways = new ArrayList<>();
+        for (int g = 0; g < gatewayCount; g++) {
+            SimulatedGateway gateway = new SimulatedGateway("gw-" + g, network, minLatency, maxLatency);
+            gateway.setFailureRate(failureRate);
+            gateways.add(gateway);
+        }
+        // Route by room, so every room sits behind one gateway
+        GatewayTransport transport = new GatewayTransport(
+            device -> gateways.get(Math.floorMod(device.getRoom().getName().hashCode(), gateways.size())),
+            new TransportSettings().withTimeoutMillis(maxLatency * 2 + 50)
+        );
+        CachingTransport caching = new CachingTransport(transport, 100_000, 30_000);
+        controller.setTransport(caching);
+        
+        // Serial: one round trip per command, as a naive strategy would do
+        List<DeviceCommand> serialCommands = new ArrayList<>();
+        for (Room room : controller.getAllRooms()) {
+            for (Device device : room.getAllDevices()) {
+                serialCommands.add(new DeviceCommand(device, DeviceCommand.Action.TURN_ON));
+            }
+        }
+        int sample = Math.min(serialCommands.size(), 50);
+        long start = System.nanoTime();
+        for (int i = 0; i < sample; i++) {
+            controller.dispatch(serialCommands.get(i));
+        }
+        double serialMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf(Locale.ROOT, "Serial: %d commands in %.0f ms (%.1f ms each, ~%.0f s for all %d devices)%n",
+                sample, serialMillis, serialMillis / sample,
+                serialMillis / sample * serialCommands.size() / 1000, serialCommands.size());
+        
+        // Fan-out: night mode sends every command at once
+        controller.registerAutomationMode("night", new NightModeStrategy());
+        controller.setAutomationMode("night");
+        start = System.nanoTime();
+        controller.executeCurrentMode();
+        double fanOutMillis = (System.nanoTime() - start) / 1e6;
+        long batches = 0;
+        for (SimulatedGateway gateway : gateways) {
+            batches += gateway.getBatchCount();
+        }
+        System.out.printf(Locale.ROOT, "Night mode: %d devices in %.0f ms, %d gateway batches, %d retries, %d failed%n",
+                serialCommands.size(), fanOutMillis, batches, transport.getRetryCount(), transport.getFailureCount());
+        
+        // Status reads: the first pass fetches concurrently, the second is served from the cache
+        caching.getCache().invalidateAll();
+        for (int pass = 1; pass <= 2; pass++) {
+            start = System.nanoTime();
+            List<java.util.concurrent.CompletableFuture<devices.DeviceState>> reads = new ArrayList<>();
+            for (DeviceCommand command : serialCommands) {
+                reads.add(caching.read(command.getDevice()));
+            }
+            reads.forEach(java.util.concurrent.CompletableFuture::join);
+            System.out.printf(Locale.ROOT, "Status read pass %d: %d devices in %.1f ms%n",
+                    pass, reads.size(), (System.nanoTime() - start) / 1e6);
+        }
+        System.out.println("Cache: " + caching.getCache().getStats());
+        
+        caching.close();
+        network.shutdownNow();
+    }
+}
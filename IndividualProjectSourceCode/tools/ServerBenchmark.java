@@ -0,0 +1,105 @@
+package tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback benchmark client for server.CommandServer.
+ * Each connection pipelines commands in windows and counts response lines.
+ *
+ * Example (server started with --with-defaults):
+ *   java tools.ServerBenchmark --port=7070 --connections=4 --commands=1000000
+ */
+public class ServerBenchmark {
+    private static final String COMMAND = "toggle \"Living Room\" \"Main Light\"\n";
+    
+    public static void main(String[] args) throws Exception {
+        int port = 7070;
+        int connections = 4;
+        int commands = 1_000_000;
+        int window = 1024;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(value);
+            } else if (arg.startsWith("--commands=")) {
+                commands = Integer.parseInt(value);
+            } else if (arg.startsWith("--window=")) {
+                window = Integer.parseInt(value);
+            }
+        }
+        
+        AtomicLong errors = new AtomicLong();
+        Thread[] clients = new Thread[connections];
+        int perConnection = commands / connections;
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int finalPort = port;
+            int finalWindow = window;
+            clients[c] = new Thread(() -> {
+                try {
+                    runClient(finalPort, perConnection, finalWindow, errors);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = (long) perConnection * connections;
+        System.out.printf(Locale.ROOT, "%d commands over %d connections in %.2f s: %.0f commands/s, %d errors%n",
+                total, connections, seconds, total / seconds, errors.get());
+    }
+    
+    /**
+     * Sends commands in windows of the given size, reading each window's responses before the next
+     */
+    private static void runClient(int port, int count, int window, AtomicLong errors) throws IOException {
+        byte[] line = COMMAND.getBytes(StandardCharsets.UTF_8);
+        byte[] batch = new byte[line.length * window];
+        for (int i = 0; i < window; i++) {
+            System.arraycopy(line, 0, batch, i * line.length, line.length);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            int sent = 0;
+            while (sent < count) {
+                int size = Math.min(window, count - sent);
+                out.write(batch, 0, size * line.length);
+                out.flush();
+                int pending = size;
+                boolean lineStart = true;
+                while (pending > 0) {
+                    int read = in.read(buffer);
+                    if (read < 0) {
+                        throw new IOException("Server closed the connection");
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (lineStart && buffer[i] == 'E') {
+                            errors.incrementAndGet();
+                        }
+                        lineStart = buffer[i] == '\n';
+                        if (lineStart) {
+                            pending--;
+                        }
+                    }
+                }
+                sent += size;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package tools;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import core.DeviceType;
+
+/**
+ * Settings for a synthetic workload run, parsed from --key=value arguments
+ */
+public class WorkloadConfig {
+    private long seed = 42L;
+    private int roomCount = 100;
+    private int deviceCount = 10_000;
+    private Map<DeviceType, Integer> typeMix;
+    private double decoratorRatio = 0.1;
+    private int commandRate = 10_000;
+    private int motionRate = 100;
+    private int warmupSeconds = 2;
+    private int durationSeconds = 10;
+    private int observerCount = 0;
+    private String outputFile;
+    
+    /**
+     * Creates a config with the default workload (mostly lights)
+     */
+    public WorkloadConfig() {
+        typeMix = new EnumMap<>(DeviceType.class);
+        typeMix.put(DeviceType.LIGHT, 50);
+        typeMix.put(DeviceType.THERMOSTAT, 20);
+        typeMix.put(DeviceType.DOOR, 20);
+        typeMix.put(DeviceType.SECURITY_CAMERA, 10);
+    }
+    
+    /**
+     * Parses command-line arguments into a config
+     * @param args arguments of the form --key=value
+     * @return the parsed config
+     * @throws IllegalArgumentException if an argument is unknown or malformed
+     */
+    public static WorkloadConfig fromArgs(String[] args) {
+        WorkloadConfig config = new WorkloadConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            
+            switch (key) {
+                case "seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                case "rooms":
+                    config.roomCount = parsePositive(key, value);
+                    break;
+                case "devices":
+                    config.deviceCount = parsePositive(key, value);
+                    break;
+                case "mix":
+                    config.typeMix = parseMix(value);
+                    break;
+                case "decorator-ratio":
+                    config.decoratorRatio = Double.parseDouble(value);
+                    if (config.decoratorRatio < 0 || config.decoratorRatio > 1) {
+                        throw new IllegalArgumentException("decorator-ratio must be between 0 and 1");
+                    }
+                    break;
+                case "command-rate":
+                    config.commandRate = Integer.parseInt(value);
+                    break;
+                case "motion-rate":
+                    config.motionRate = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    config.warmupSeconds = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    config.durationSeconds = parsePositive(key, value);
+                    break;
+                case "observers":
+                    config.observerCount = Integer.parseInt(value);
+                    break;
+                case "output":
+                    config.outputFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+        }
+        return config;
+    }
+    
+    /**
+     * Parses a type mix such as "light:50,door:20,thermostat:20,camera:10"
+     */
+    private static Map<DeviceType, Integer> parseMix(String value) {
+        Map<DeviceType, Integer> mix = new EnumMap<>(DeviceType.class);
+        for (String part : value.split(",")) {
+            String[] pair = part.split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            }
+            String name = pair[0].trim().toUpperCase();
+            DeviceType type = name.equals("CAMERA") ? DeviceType.SECURITY_CAMERA : DeviceType.valueOf(name);
+            mix.put(type, Integer.parseInt(pair[1].trim()));
+        }
+        return mix;
+    }
+    
+    private static int parsePositive(String key, String value) {
+        int parsed = Integer.parseInt(value);
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(key + " must be positive");
+        }
+        return parsed;
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    public int getRoomCount() {
+        return roomCount;
+    }
+    
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+    
+    public Map<DeviceType, Integer> getTypeMix() {
+        return typeMix;
+    }
+    
+    public double getDecoratorRatio() {
+        return decoratorRatio;
+    }
+    
+    public int getCommandRate() {
+        return commandRate;
+    }
+    
+    public int getMotionRate() {
+        return motionRate;
+    }
+    
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+    
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+    
+    public int getObserverCount() {
+        return observerCount;
+    }
+    
+    public String getOutputFile() {
+        return outputFile;
+    }
+}
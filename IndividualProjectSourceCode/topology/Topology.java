@@ -0,0 +1,351 @@
+package topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import command.DeviceCommand;
+import core.DeviceProperty;
+import core.Room;
+import core.SmartHomeController;
+import devices.Device;
+import devices.DeviceState;
+import observer.DeviceStateObserver;
+
+/**
+ * Site → building → floor → zone hierarchy over the rooms of one home (Observer Pattern).
+ *
+ * Rooms are assigned to nodes; every node keeps aggregate counters for the devices
+ * below it. A device state change updates its node and the node's ancestors, which is
+ * O(depth), so dashboards read the summary of any level in O(1). Bulk commands can
+ * address every device below a node.
+ */
+public final class Topology implements DeviceStateObserver {
+    private final SmartHomeController home;
+    private final TopologyNode site;
+    
+    // The node of each room, by room id
+    private final List<TopologyNode> roomNodes;
+    
+    // The state each counted device contributes, by device id, so repeated or
+    // racing notifications never count a change twice
+    private final BitSet counted;
+    private final BitSet on;
+    private final BitSet locked;
+    private final BitSet recording;
+    private double[] setpoints;
+    
+    /**
+     * Creates a topology whose site is named after the home; call start() to follow changes
+     * @param home the home whose rooms are organised
+     */
+    public Topology(SmartHomeController home) {
+        this.home = home;
+        this.site = new TopologyNode(this, home.getHomeId(), TopologyLevel.SITE, null);
+        this.roomNodes = new ArrayList<>();
+        this.counted = new BitSet();
+        this.on = new BitSet();
+        this.locked = new BitSet();
+        this.recording = new BitSet();
+        this.setpoints = new double[0];
+    }
+    
+    /**
+     * Gets the home whose rooms are organised
+     * @return the home's controller
+     */
+    public SmartHomeController getHome() {
+        return home;
+    }
+    
+    /**
+     * Starts following device changes
+     */
+    public void start() {
+        home.addStateObserver(this);
+    }
+    
+    /**
+     * Stops following device changes
+     */
+    public void stop() {
+        home.removeStateObserver(this);
+    }
+    
+    /**
+     * Gets the root of the hierarchy
+     * @return the site node
+     */
+    public TopologyNode getSite() {
+        return site;
+    }
+    
+    /**
+     * Adds a node below another one
+     * @param parent the enclosing node
+     * @param level the level of the new node; it must be further in than the parent's
+     * @param name the node name, unique among its siblings
+     * @return the new node
+     * @throws IllegalArgumentException if the level, name or parent is not valid
+     */
+    public synchronized TopologyNode addNode(TopologyNode parent, TopologyLevel level, String name) {
+        if (parent == null || !belongsHere(parent)) {
+            throw new IllegalArgumentException("Parent is not part of this topology");
+        }
+        if (!parent.getLevel().canContain(level)) {
+            throw new IllegalArgumentException("A " + parent.getLevel() + " cannot contain a " + level);
+        }
+        if (name == null || name.isEmpty() || name.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("Invalid node name: " + name);
+        }
+        if (parent.getChild(name) != null) {
+            throw new IllegalArgumentException(parent + " already contains " + name);
+        }
+        TopologyNode node = new TopologyNode(this, name, level, parent);
+        parent.addChild(node);
+        return node;
+    }
+    
+    /**
+     * Adds a node by path; the parent is everything before the last '/'
+     * @param level the level of the new node
+     * @param path the path of the new node, e.g. "Building B/Floor 2"
+     * @return the new node
+     * @throws IllegalArgumentException if the parent does not exist or the node is not valid
+     */
+    public synchronized TopologyNode addNode(TopologyLevel level, String path) {
+        int slash = path.lastIndexOf('/');
+        TopologyNode parent = slash < 0 ? site : find(path.substring(0, slash));
+        if (parent == null) {
+            throw new IllegalArgumentException("No such area: " + path.substring(0, slash));
+        }
+        return addNode(parent, level, path.substring(slash + 1));
+    }
+    
+    /**
+     * Finds a node by its path from the site
+     * @param path e.g. "Building B/Floor 2"; empty for the site
+     * @return the node or null if not found
+     */
+    public synchronized TopologyNode find(String path) {
+        TopologyNode node = site;
+        for (String part : path.split("/")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            node = node.getChild(part);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+    
+    /**
+     * Places a room below a node, moving it out of its previous node if it had one
+     * @param room a room added to this home
+     * @param node the node the room belongs to
+     * @throws IllegalArgumentException if the room or node belongs elsewhere
+     */
+    public synchronized void assignRoom(Room room, TopologyNode node) {
+        if (room.getController() != home || room.getId() < 0) {
+            throw new IllegalArgumentException("Room " + room.getName() + " is not part of this home");
+        }
+        if (node == null || !belongsHere(node)) {
+            throw new IllegalArgumentException("Node is not part of this topology");
+        }
+        TopologyNode previous = getNode(room);
+        if (previous == node) {
+            return;
+        }
+        List<Device> devices = room.getAllDevices();
+        if (previous != null) {
+            for (Device device : devices) {
+                withdraw(device, previous);
+            }
+            previous.removeRoom(room);
+            addRooms(previous, -1);
+        }
+        while (roomNodes.size() <= room.getId()) {
+            roomNodes.add(null);
+        }
+        roomNodes.set(room.getId(), node);
+        node.addRoom(room);
+        addRooms(node, 1);
+        for (Device device : devices) {
+            contribute(device, node);
+        }
+    }
+    
+    /**
+     * Gets the node a room was assigned to
+     * @param room the room
+     * @return the node, or null if the room is not assigned
+     */
+    public synchronized TopologyNode getNode(Room room) {
+        int id = room.getId();
+        return id >= 0 && id < roomNodes.size() ? roomNodes.get(id) : null;
+    }
+    
+    /**
+     * Builds one command for every device below a node
+     * @param node the addressed node
+     * @param action the action for each device
+     * @param value the action's value, if it takes one
+     * @return the commands
+     */
+    public List<DeviceCommand> commandsFor(TopologyNode node, DeviceCommand.Action action, double value) {
+        List<DeviceCommand> commands = new ArrayList<>();
+        for (Room room : node.getAllRooms()) {
+            for (Device device : room.getAllDevices()) {
+                commands.add(new DeviceCommand(device, action, value));
+            }
+        }
+        return commands;
+    }
+    
+    /**
+     * Sends one action to every device below a node as a single batch
+     * @param node the addressed node
+     * @param action the action for each device
+     * @param value the action's value, if it takes one
+     * @return the commands that failed (empty if all succeeded)
+     */
+    public List<DeviceCommand> dispatch(TopologyNode node, DeviceCommand.Action action, double value) {
+        return home.dispatch(commandsFor(node, action, value));
+    }
+    
+    @Override
+    public void deviceAdded(Device device, long timestamp) {
+        if (device.getRoom() == null) {
+            return;
+        }
+        synchronized (this) {
+            TopologyNode node = getNode(device.getRoom());
+            if (node != null) {
+                contribute(device, node);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void stateChanged(Device device, DeviceProperty property, double oldValue, double newValue,
+                                          long timestamp) {
+        int id = device.getId();
+        if (id < 0 || !counted.get(id)) {
+            return;
+        }
+        TopologyNode node = getNode(device.getRoom());
+        switch (property) {
+            case POWER:
+                applyFlag(on, id, newValue != 0, node, DeviceProperty.POWER);
+                break;
+            case LOCK:
+                applyFlag(locked, id, newValue != 0, node, DeviceProperty.LOCK);
+                break;
+            case RECORDING:
+                applyFlag(recording, id, newValue != 0, node, DeviceProperty.RECORDING);
+                break;
+            case TEMPERATURE:
+                double delta = newValue - setpoints[id];
+                if (!Double.isNaN(delta) && delta != 0) {
+                    setpoints[id] = newValue;
+                    for (TopologyNode n = node; n != null; n = n.getParent()) {
+                        n.setpointSum += delta;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private void applyFlag(BitSet flags, int id, boolean value, TopologyNode node, DeviceProperty property) {
+        if (flags.get(id) == value) {
+            return;
+        }
+        flags.set(id, value);
+        addFlag(node, property, value ? 1 : -1);
+    }
+    
+    // Adds a device's current state to a node and its ancestors
+    private void contribute(Device device, TopologyNode node) {
+        int id = device.getId();
+        if (id < 0 || counted.get(id)) {
+            return;
+        }
+        DeviceState state = DeviceState.of(device);
+        counted.set(id);
+        if (id >= setpoints.length) {
+            int oldLength = setpoints.length;
+            setpoints = Arrays.copyOf(setpoints, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(setpoints, oldLength, setpoints.length, Double.NaN);
+        }
+        setpoints[id] = state.getTemperature();
+        int type = device.getType().ordinal();
+        for (TopologyNode n = node; n != null; n = n.getParent()) {
+            n.deviceCount++;
+            n.devicesByType[type]++;
+            if (!Float.isNaN(state.getTemperature())) {
+                n.thermostatCount++;
+                n.setpointSum += state.getTemperature();
+            }
+        }
+        applyFlag(on, id, state.isOn(), node, DeviceProperty.POWER);
+        applyFlag(locked, id, state.isLocked(), node, DeviceProperty.LOCK);
+        applyFlag(recording, id, state.isRecording(), node, DeviceProperty.RECORDING);
+    }
+    
+    // Removes a device's contribution from a node and its ancestors
+    private void withdraw(Device device, TopologyNode node) {
+        int id = device.getId();
+        if (id < 0 || !counted.get(id)) {
+            return;
+        }
+        applyFlag(on, id, false, node, DeviceProperty.POWER);
+        applyFlag(locked, id, false, node, DeviceProperty.LOCK);
+        applyFlag(recording, id, false, node, DeviceProperty.RECORDING);
+        int type = device.getType().ordinal();
+        for (TopologyNode n = node; n != null; n = n.getParent()) {
+            n.deviceCount--;
+            n.devicesByType[type]--;
+            if (!Double.isNaN(setpoints[id])) {
+                n.thermostatCount--;
+                n.setpointSum -= setpoints[id];
+            }
+        }
+        setpoints[id] = Double.NaN;
+        counted.clear(id);
+    }
+    
+    private static void addFlag(TopologyNode node, DeviceProperty property, int delta) {
+        for (TopologyNode n = node; n != null; n = n.getParent()) {
+            switch (property) {
+                case POWER:
+                    n.onCount += delta;
+                    break;
+                case LOCK:
+                    n.lockedCount += delta;
+                    break;
+                default:
+                    n.recordingCount += delta;
+                    break;
+            }
+        }
+    }
+    
+    private static void addRooms(TopologyNode node, int delta) {
+        for (TopologyNode n = node; n != null; n = n.getParent()) {
+            n.roomCount += delta;
+        }
+    }
+    
+    private boolean belongsHere(TopologyNode node) {
+        TopologyNode n = node;
+        while (n.getParent() != null) {
+            n = n.getParent();
+        }
+        return n == site;
+    }
+}
@@ -0,0 +1,21 @@
+package topology;
+
+/**
+ * Levels of the building topology, outermost first. Rooms hang below any level,
+ * usually below a zone or a floor.
+ */
+public enum TopologyLevel {
+    SITE,
+    BUILDING,
+    FLOOR,
+    ZONE;
+    
+    /**
+     * Checks whether a node of this level may contain a node of another level
+     * @param child the level of the would-be child
+     * @return true if the child level is further in than this one
+     */
+    public boolean canContain(TopologyLevel child) {
+        return child.ordinal() > ordinal();
+    }
+}
@@ -0,0 +1,151 @@
+package topology;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.DeviceType;
+import core.Room;
+
+/**
+ * One site, building, floor or zone (Composite Pattern).
+ * Each node keeps running counters for all devices below it; Topology updates the
+ * counters of a device's node and its ancestors on every state change, so reading
+ * a summary never walks the devices.
+ */
+public class TopologyNode {
+    private final Topology topology;
+    private final String name;
+    private final TopologyLevel level;
+    private final TopologyNode parent;
+    private final Map<String, TopologyNode> children;
+    private final List<Room> rooms;
+    
+    // Aggregates over the whole subtree, guarded by the topology's lock
+    int roomCount;
+    int deviceCount;
+    final int[] devicesByType;
+    int onCount;
+    int lockedCount;
+    int recordingCount;
+    int thermostatCount;
+    double setpointSum;
+    
+    TopologyNode(Topology topology, String name, TopologyLevel level, TopologyNode parent) {
+        this.topology = topology;
+        this.name = name;
+        this.level = level;
+        this.parent = parent;
+        this.children = new LinkedHashMap<>();
+        this.rooms = new ArrayList<>();
+        this.devicesByType = new int[DeviceType.values().length];
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public TopologyLevel getLevel() {
+        return level;
+    }
+    
+    /**
+     * Gets the enclosing node
+     * @return the parent, or null for the site
+     */
+    public TopologyNode getParent() {
+        return parent;
+    }
+    
+    /**
+     * Gets the path from the site, e.g. "Building B/Floor 2"
+     * @return the path, empty for the site itself
+     */
+    public String getPath() {
+        if (parent == null) {
+            return "";
+        }
+        String parentPath = parent.getPath();
+        return parentPath.isEmpty() ? name : parentPath + "/" + name;
+    }
+    
+    /**
+     * Gets a child node by name
+     * @param childName the child's name
+     * @return the child or null if not found
+     */
+    public TopologyNode getChild(String childName) {
+        synchronized (topology) {
+            return children.get(childName);
+        }
+    }
+    
+    public List<TopologyNode> getChildren() {
+        synchronized (topology) {
+            return new ArrayList<>(children.values());
+        }
+    }
+    
+    /**
+     * Gets the rooms assigned directly to this node
+     * @return the rooms, without those of child nodes
+     */
+    public List<Room> getRooms() {
+        synchronized (topology) {
+            return new ArrayList<>(rooms);
+        }
+    }
+    
+    /**
+     * Gets the rooms of this node and of every node below it
+     * @return the rooms
+     */
+    public List<Room> getAllRooms() {
+        List<Room> all = new ArrayList<>();
+        synchronized (topology) {
+            collectRooms(all);
+        }
+        return all;
+    }
+    
+    private void collectRooms(List<Room> all) {
+        all.addAll(rooms);
+        for (TopologyNode child : children.values()) {
+            child.collectRooms(all);
+        }
+    }
+    
+    /**
+     * Reads the aggregates of the subtree in O(1), never counting half of a committing transaction
+     * @return the summary
+     */
+    public TopologySummary getSummary() {
+        return topology.getHome().readConsistent(() -> {
+            synchronized (topology) {
+                return new TopologySummary(getPath(), level, roomCount, devicesByType.clone(), deviceCount,
+                        onCount, lockedCount, recordingCount,
+                        thermostatCount == 0 ? Double.NaN : setpointSum / thermostatCount);
+            }
+        });
+    }
+    
+    // Structure changes, called by Topology while it holds its lock
+    
+    void addChild(TopologyNode child) {
+        children.put(child.name, child);
+    }
+    
+    void addRoom(Room room) {
+        rooms.add(room);
+    }
+    
+    void removeRoom(Room room) {
+        rooms.remove(room);
+    }
+    
+    @Override
+    public String toString() {
+        return level + " " + (parent == null ? name : getPath());
+    }
+}
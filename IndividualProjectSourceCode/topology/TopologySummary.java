@@ -0,0 +1,99 @@
+package topology;
+
+import java.util.Locale;
+
+import core.DeviceType;
+
+/**
+ * Aggregate state of every device below one topology node, captured at one moment
+ */
+public class TopologySummary {
+    private final String path;
+    private final TopologyLevel level;
+    private final int rooms;
+    private final int[] devicesByType;
+    private final int devices;
+    private final int on;
+    private final int locked;
+    private final int recording;
+    private final double averageSetpoint;
+    
+    TopologySummary(String path, TopologyLevel level, int rooms, int[] devicesByType, int devices,
+                    int on, int locked, int recording, double averageSetpoint) {
+        this.path = path;
+        this.level = level;
+        this.rooms = rooms;
+        this.devicesByType = devicesByType;
+        this.devices = devices;
+        this.on = on;
+        this.locked = locked;
+        this.recording = recording;
+        this.averageSetpoint = averageSetpoint;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public TopologyLevel getLevel() {
+        return level;
+    }
+    
+    /**
+     * Gets the number of rooms assigned directly to the node or to nodes below it
+     * @return the room count
+     */
+    public int getRoomCount() {
+        return rooms;
+    }
+    
+    public int getDeviceCount() {
+        return devices;
+    }
+    
+    /**
+     * Gets the number of devices of one type
+     * @param type the device type
+     * @return the count
+     */
+    public int getDeviceCount(DeviceType type) {
+        return devicesByType[type.ordinal()];
+    }
+    
+    public int getOnCount() {
+        return on;
+    }
+    
+    public int getLockedCount() {
+        return locked;
+    }
+    
+    public int getRecordingCount() {
+        return recording;
+    }
+    
+    /**
+     * Gets the mean thermostat setpoint
+     * @return the average in °C, or NaN if there are no thermostats
+     */
+    public double getAverageSetpoint() {
+        return averageSetpoint;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(level).append(" \"").append(path).append("\": ")
+            .append(rooms).append(" rooms, ").append(devices).append(" devices (");
+        DeviceType[] types = DeviceType.values();
+        for (int i = 0; i < types.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(types[i]).append('=').append(devicesByType[i]);
+        }
+        text.append("), ").append(on).append(" on, ").append(locked).append(" locked, ")
+            .append(recording).append(" recording");
+        if (!Double.isNaN(averageSetpoint)) {
+            text.append(String.format(Locale.ROOT, ", avg setpoint %.1f°C", averageSetpoint));
+        }
+        return text.toString();
+    }
+}
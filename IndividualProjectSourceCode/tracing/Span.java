@@ -0,0 +1,37 @@
+package tracing;
+
+/**
+ * A timed stage of a trace:
+ * <pre>
+ * Span span = Tracer.span("Light.setBrightness", device);
+ * try {
+ *     ...
+ * } finally {
+ *     span.close();
+ * }
+ * </pre>
+ * Spans are reused per thread and must be closed on the thread that opened them, in
+ * reverse order of opening. Outside a sampled trace every call returns the same no-op span.
+ */
+public final class Span implements AutoCloseable {
+    static final Span NOOP = new Span(null);
+    
+    private final SpanBuffer owner;
+    String name;
+    Object detail;
+    long startNanos;
+    // The trace that was current before this span started it or joined it; -1 if it did neither
+    long previousTrace;
+    boolean recorded;
+    
+    Span(SpanBuffer owner) {
+        this.owner = owner;
+    }
+    
+    @Override
+    public void close() {
+        if (owner != null) {
+            owner.end(this);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package tracing;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * One thread's tracing state: the current trace, the open spans and a ring of finished
+ * spans. Only the owning thread writes; readers copy the ring without locking and drop
+ * the slots the owner may have overwritten while they were copying.
+ */
+final class SpanBuffer {
+    // The current trace on this thread when it is inside a trace that was not sampled
+    static final long SUPPRESSED = -1;
+    // Span.previousTrace of a span that neither started nor joined a trace
+    static final long NO_SWITCH = Long.MIN_VALUE;
+    
+    private static final AtomicLongFieldUpdater<SpanBuffer> WRITTEN =
+        AtomicLongFieldUpdater.newUpdater(SpanBuffer.class, "written");
+    
+    private final WeakReference<Thread> owner;
+    private final long threadId;
+    private final String threadName;
+    private final int mask;
+    private final long[] traces;
+    private final long[] starts;
+    private final long[] durations;
+    private final int[] depths;
+    private final String[] names;
+    private final Object[] details;
+    private volatile long written;
+    private volatile long clearedAt;
+    
+    // Owner thread only
+    long trace;
+    private Span[] stack;
+    private int depth;
+    
+    SpanBuffer(Thread thread, int capacity) {
+        this.owner = new WeakReference<>(thread);
+        this.threadId = thread.threadId();
+        this.threadName = thread.getName();
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+        this.mask = size - 1;
+        this.traces = new long[size];
+        this.starts = new long[size];
+        this.durations = new long[size];
+        this.depths = new int[size];
+        this.names = new String[size];
+        this.details = new Object[size];
+        this.stack = new Span[16];
+    }
+    
+    /**
+     * Opens a span on the owner thread
+     * @param name the stage name
+     * @param detail what the stage works on
+     * @param previousTrace the trace to restore on close, or NO_SWITCH
+     * @param recorded false for the span that stands for a trace that was not sampled
+     * @return the span
+     */
+    Span begin(String name, Object detail, long previousTrace, boolean recorded) {
+        if (depth == stack.length) {
+            Span[] larger = new Span[depth * 2];
+            System.arraycopy(stack, 0, larger, 0, depth);
+            stack = larger;
+        }
+        Span span = stack[depth];
+        if (span == null) {
+            span = new Span(this);
+            stack[depth] = span;
+        }
+        depth++;
+        span.name = name;
+        span.detail = detail;
+        span.previousTrace = previousTrace;
+        span.recorded = recorded;
+        span.startNanos = recorded ? System.nanoTime() : 0;
+        return span;
+    }
+    
+    void end(Span span) {
+        if (depth == 0 || stack[depth - 1] != span) {
+            // Closed twice or out of order; ignore rather than corrupt the stack
+            return;
+        }
+        depth--;
+        if (span.recorded) {
+            long slot = written;
+            int index = (int) slot & mask;
+            traces[index] = trace;
+            starts[index] = span.startNanos;
+            durations[index] = System.nanoTime() - span.startNanos;
+            depths[index] = depth;
+            names[index] = span.name;
+            details[index] = span.detail;
+            WRITTEN.lazySet(this, slot + 1);
+        }
+        if (span.previousTrace != NO_SWITCH) {
+            if (trace > 0 && span.previousTrace <= 0) {
+                Tracer.traceLeft();
+            }
+            trace = span.previousTrace;
+        }
+        span.detail = null;
+    }
+    
+    boolean isOwnerFinished() {
+        Thread thread = owner.get();
+        return thread == null || !thread.isAlive();
+    }
+    
+    /**
+     * Forgets the spans recorded so far; safe from any thread
+     */
+    void clear() {
+        clearedAt = written;
+    }
+    
+    /**
+     * Copies the finished spans, oldest first
+     * @param out receives the spans
+     */
+    void read(List<SpanRecord> out) {
+        long end = written;
+        long begin = Math.max(clearedAt, end - (mask + 1));
+        List<SpanRecord> copied = new ArrayList<>((int) (end - begin));
+        for (long slot = begin; slot < end; slot++) {
+            int index = (int) slot & mask;
+            copied.add(new SpanRecord(traces[index], names[index], details[index], starts[index],
+                durations[index], depths[index], threadId, threadName));
+        }
+        // Slots below this may have been overwritten while they were copied
+        long firstIntact = written - (mask + 1);
+        int skip = (int) Math.max(0, Math.min(copied.size(), firstIntact - begin));
+        out.addAll(copied.subList(skip, copied.size()));
+    }
+}
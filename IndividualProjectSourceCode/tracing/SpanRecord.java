@@ -0,0 +1,27 @@
+package tracing;
+
+/**
+ * A finished span copied out of a SpanBuffer
+ */
+final class SpanRecord {
+    final long trace;
+    final String name;
+    final Object detail;
+    final long startNanos;
+    final long durationNanos;
+    final int depth;
+    final long threadId;
+    final String threadName;
+    
+    SpanRecord(long trace, String name, Object detail, long startNanos, long durationNanos, int depth,
+               long threadId, String threadName) {
+        this.trace = trace;
+        this.name = name;
+        this.detail = detail;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.depth = depth;
+        this.threadId = threadId;
+        this.threadName = threadName;
+    }
+}
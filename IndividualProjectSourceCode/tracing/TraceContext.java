@@ -0,0 +1,17 @@
+package tracing;
+
+/**
+ * A sampled trace captured on one thread, to continue it on another
+ * (see Tracer.currentContext and Tracer.continueTrace)
+ */
+public final class TraceContext {
+    private final long traceId;
+    
+    TraceContext(long traceId) {
+        this.traceId = traceId;
+    }
+    
+    public long getTraceId() {
+        return traceId;
+    }
+}
@@ -0,0 +1,138 @@
+package tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import devices.Device;
+
+/**
+ * Turns recorded spans into a Chrome trace file or a per-stage summary
+ */
+final class TraceExporter {
+    private TraceExporter() {
+    }
+    
+    /**
+     * Writes spans in the Chrome trace event format, one complete ("X") event per span
+     * @param spans the spans, grouped by thread
+     * @param file the file to write
+     * @return the number of spans written
+     * @throws IOException if the file cannot be written
+     */
+    static int writeChromeTrace(List<SpanRecord> spans, Path file) throws IOException {
+        long origin = Long.MAX_VALUE;
+        for (SpanRecord span : spans) {
+            origin = Math.min(origin, span.startNanos);
+        }
+        long pid = ProcessHandle.current().pid();
+        Set<Long> threads = new HashSet<>();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean first = true;
+            for (SpanRecord span : spans) {
+                if (!first) {
+                    out.write(",\n");
+                }
+                first = false;
+                if (threads.add(span.threadId)) {
+                    out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + span.threadId
+                        + ",\"args\":{\"name\":" + quote(span.threadName) + "}},\n");
+                }
+                out.write("{\"name\":" + quote(span.name) + ",\"cat\":\"smarthome\",\"ph\":\"X\",\"pid\":" + pid
+                    + ",\"tid\":" + span.threadId
+                    + ",\"ts\":" + micros(span.startNanos - origin)
+                    + ",\"dur\":" + micros(span.durationNanos)
+                    + ",\"args\":{\"trace\":" + span.trace + ",\"detail\":" + quote(describe(span.detail)) + "}}");
+            }
+            out.write("]}\n");
+        }
+        return spans.size();
+    }
+    
+    /**
+     * Sums spans per stage. A stage is a span name, split by component class when the
+     * detail is one (e.g. per observer). Self time excludes the stage's child spans.
+     * @param spans the spans, grouped by thread and in the order they finished
+     * @return one line per stage, largest self time first
+     */
+    static List<String> summarize(List<SpanRecord> spans) {
+        Map<String, long[]> stages = new LinkedHashMap<>();
+        Set<Long> traces = new HashSet<>();
+        long[] childTime = new long[16];
+        long thread = Long.MIN_VALUE;
+        for (SpanRecord span : spans) {
+            if (span.threadId != thread) {
+                thread = span.threadId;
+                Arrays.fill(childTime, 0);
+            }
+            if (span.depth + 2 > childTime.length) {
+                childTime = Arrays.copyOf(childTime, span.depth * 2 + 2);
+            }
+            long self = Math.max(0, span.durationNanos - childTime[span.depth + 1]);
+            childTime[span.depth + 1] = 0;
+            childTime[span.depth] += span.durationNanos;
+            traces.add(span.trace);
+            
+            String stage = span.detail instanceof Class ? span.name + " " + describe(span.detail) : span.name;
+            // count, total, self, max
+            long[] totals = stages.computeIfAbsent(stage, key -> new long[4]);
+            totals[0]++;
+            totals[1] += span.durationNanos;
+            totals[2] += self;
+            totals[3] = Math.max(totals[3], span.durationNanos);
+        }
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(stages.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[2], a.getValue()[2]));
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add(String.format(Locale.ROOT, "%d spans in %d traces", spans.size(), traces.size()));
+        for (Map.Entry<String, long[]> entry : entries) {
+            long[] totals = entry.getValue();
+            lines.add(String.format(Locale.ROOT, "%-40s %8d spans %10.3f ms self %10.3f ms total %8.3f ms max",
+                entry.getKey(), totals[0], totals[2] / 1e6, totals[1] / 1e6, totals[3] / 1e6));
+        }
+        return lines;
+    }
+    
+    private static String describe(Object detail) {
+        if (detail == null) {
+            return "";
+        }
+        if (detail instanceof Device) {
+            return ((Device) detail).getDescription();
+        }
+        if (detail instanceof Class) {
+            return ((Class<?>) detail).getSimpleName();
+        }
+        return detail.toString();
+    }
+    
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+    }
+    
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,206 @@
+package tracing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled tracing of commands and mode runs.
+ *
+ * A trace starts at an external command or a mode execution (startTrace) and is sampled
+ * at the configured rate. Inside a sampled trace every span (device setters, decorators,
+ * observer callbacks, batches) is timed and written to the current thread's ring buffer,
+ * without locks. Work handed to another thread carries the trace along with
+ * currentContext() and continueTrace(). The buffers are exported as a Chrome trace file
+ * (chrome://tracing, Perfetto) or summarised per stage.
+ *
+ * With sampling off and no trace running, span() is a volatile read and costs nothing more.
+ */
+public final class Tracer {
+    private static final ThreadLocal<SpanBuffer> BUFFERS = new ThreadLocal<>();
+    private static final ConcurrentLinkedQueue<SpanBuffer> ALL_BUFFERS = new ConcurrentLinkedQueue<>();
+    private static final AtomicLong NEXT_TRACE = new AtomicLong(1);
+    // Threads currently inside a sampled trace; while 0, span() returns at once
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    // Virtual threads are many and short-lived, so they get small buffers
+    private static final int VIRTUAL_THREAD_SPANS = 1024;
+    // Buffers kept before those of finished threads are dropped
+    private static final int MAX_BUFFERS = 1024;
+    
+    private static volatile double sampleRate;
+    private static volatile int bufferSpans = 64 * 1024;
+    
+    private Tracer() {
+    }
+    
+    /**
+     * Sets the share of traces that are recorded
+     * @param rate from 0 (off) to 1 (every trace)
+     * @throws IllegalArgumentException if the rate is outside 0..1
+     */
+    public static void setSampleRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + rate);
+        }
+        sampleRate = rate;
+    }
+    
+    public static double getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Sets how many finished spans each thread keeps; applies to threads that record their
+     * first span afterwards. Older spans are overwritten.
+     * @param spans the ring size per thread, rounded up to a power of two
+     */
+    public static void setBufferSpans(int spans) {
+        if (spans <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + spans);
+        }
+        bufferSpans = spans;
+    }
+    
+    /**
+     * Starts a trace, or a span if the thread is already in one. Whether the trace is
+     * recorded is decided here, once for everything it contains.
+     * @param name the stage name, e.g. "mode"
+     * @param detail what the trace is about, e.g. the command line
+     * @return the span to close when the command is done
+     */
+    public static Span startTrace(String name, Object detail) {
+        SpanBuffer buffer = BUFFERS.get();
+        if (buffer != null && buffer.trace != 0) {
+            return buffer.trace > 0 ? buffer.begin(name, detail, SpanBuffer.NO_SWITCH, true) : Span.NOOP;
+        }
+        double rate = sampleRate;
+        if (rate <= 0) {
+            return Span.NOOP;
+        }
+        if (buffer == null) {
+            buffer = buffer();
+        }
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            // Not sampled: keep nested startTrace calls from sampling a part of this trace
+            buffer.trace = SpanBuffer.SUPPRESSED;
+            return buffer.begin(name, detail, 0, false);
+        }
+        buffer.trace = NEXT_TRACE.getAndIncrement();
+        ACTIVE.incrementAndGet();
+        return buffer.begin(name, detail, 0, true);
+    }
+    
+    /**
+     * Starts a span in the current thread's trace
+     * @param name the stage name, e.g. "Light.setBrightness"
+     * @param detail a device, a component class (e.g. an observer's) or a label
+     * @return the span, a no-op outside a sampled trace
+     */
+    public static Span span(String name, Object detail) {
+        if (ACTIVE.get() == 0) {
+            return Span.NOOP;
+        }
+        SpanBuffer buffer = BUFFERS.get();
+        if (buffer == null || buffer.trace <= 0) {
+            return Span.NOOP;
+        }
+        return buffer.begin(name, detail, SpanBuffer.NO_SWITCH, true);
+    }
+    
+    /**
+     * Gets the current thread's trace, to carry it to work done on another thread
+     * @return the context, or null outside a sampled trace
+     */
+    public static TraceContext currentContext() {
+        if (ACTIVE.get() == 0) {
+            return null;
+        }
+        SpanBuffer buffer = BUFFERS.get();
+        return buffer == null || buffer.trace <= 0 ? null : new TraceContext(buffer.trace);
+    }
+    
+    /**
+     * Starts a span on this thread that belongs to a trace captured on another thread
+     * @param context the captured trace, or null
+     * @param name the stage name
+     * @param detail what the stage works on
+     * @return the span; the thread leaves the trace when it is closed
+     */
+    public static Span continueTrace(TraceContext context, String name, Object detail) {
+        if (context == null) {
+            return Span.NOOP;
+        }
+        SpanBuffer buffer = buffer();
+        long previous = buffer.trace;
+        if (previous == context.getTraceId()) {
+            return buffer.begin(name, detail, SpanBuffer.NO_SWITCH, true);
+        }
+        if (previous <= 0) {
+            ACTIVE.incrementAndGet();
+        }
+        buffer.trace = context.getTraceId();
+        return buffer.begin(name, detail, previous, true);
+    }
+    
+    static void traceLeft() {
+        ACTIVE.decrementAndGet();
+    }
+    
+    private static SpanBuffer buffer() {
+        SpanBuffer buffer = BUFFERS.get();
+        if (buffer == null) {
+            Thread thread = Thread.currentThread();
+            buffer = new SpanBuffer(thread, thread.isVirtual() ? Math.min(bufferSpans, VIRTUAL_THREAD_SPANS) : bufferSpans);
+            BUFFERS.set(buffer);
+            if (ALL_BUFFERS.size() >= MAX_BUFFERS) {
+                ALL_BUFFERS.removeIf(SpanBuffer::isOwnerFinished);
+            }
+            ALL_BUFFERS.add(buffer);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Copies the finished spans of all threads
+     * @return the spans, grouped by thread and oldest first within a thread
+     */
+    static List<SpanRecord> collect() {
+        List<SpanRecord> spans = new ArrayList<>();
+        for (SpanBuffer buffer : ALL_BUFFERS) {
+            buffer.read(spans);
+        }
+        return spans;
+    }
+    
+    /**
+     * Forgets all finished spans, e.g. before reproducing a slow run
+     */
+    public static void clear() {
+        for (SpanBuffer buffer : ALL_BUFFERS) {
+            buffer.clear();
+        }
+    }
+    
+    /**
+     * Writes the finished spans as a Chrome trace file
+     * @param file the file to write
+     * @return the number of spans written
+     * @throws IOException if the file cannot be written
+     */
+    public static int export(Path file) throws IOException {
+        return TraceExporter.writeChromeTrace(collect(), file);
+    }
+    
+    /**
+     * Sums the finished spans per stage
+     * @return one line per stage, slowest first
+     */
+    public static List<String> summarize() {
+        return TraceExporter.summarize(collect());
+    }
+}
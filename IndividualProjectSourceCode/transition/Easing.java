@@ -0,0 +1,29 @@
+package transition;
+
+/**
+ * Curves that map the elapsed fraction of a transition to the fraction of the change applied
+ */
+public enum Easing {
+    LINEAR,
+    EASE_IN,
+    EASE_OUT,
+    EASE_IN_OUT;
+    
+    /**
+     * Applies the curve
+     * @param t the elapsed fraction, from 0 to 1
+     * @return the applied fraction, from 0 to 1
+     */
+    public double apply(double t) {
+        switch (this) {
+            case EASE_IN:
+                return t * t;
+            case EASE_OUT:
+                return t * (2 - t);
+            case EASE_IN_OUT:
+                return t < 0.5 ? 2 * t * t : -1 + (4 - 2 * t) * t;
+            default:
+                return t;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package transition;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import core.Room;
+import devices.Device;
+import devices.Light;
+import devices.Thermostat;
+
+/**
+ * Runs brightness fades and thermostat setpoint ramps.
+ * All active transitions live in parallel primitive arrays and a single tick thread
+ * advances them in one pass, applying each step quietly (no text event per step).
+ * The tick is only scheduled while a transition is active.
+ * Progress events are rate limited per transition and globally. A transition is cancelled
+ * when its device is changed by anything else, e.g. a manual command or switching it off:
+ * the next tick finds the device's version moved past the one its last step left.
+ */
+public class TransitionEngine {
+    private static final byte BRIGHTNESS = 0;
+    private static final byte TEMPERATURE = 1;
+    private static final Easing[] EASINGS = Easing.values();
+    
+    private final long tickMillis;
+    private final ScheduledExecutorService ticker;
+    private ScheduledFuture<?> tickTask;
+    private final Map<Device, Integer> slotOf;
+    
+    // One entry per active transition, indexes 0 to size - 1
+    private Device[] devices;
+    private byte[] kind;
+    private byte[] easing;
+    private double[] from;
+    private double[] to;
+    private long[] startMillis;
+    private long[] durationMillis;
+    private double[] applied;
+    private long[] lastProgressEvent;
+    // The device's version after the engine's last step
+    private long[] version;
+    // A step was handed to the room's actor and has not been applied yet
+    private boolean[] pending;
+    private int size;
+    private volatile int activeCount;
+    
+    // Steps of the current tick, only touched by the tick thread
+    private Device[] stepDevice;
+    private byte[] stepKind;
+    private double[] stepValue;
+    private long[] stepVersion;
+    private long[] stepOrder;
+    
+    // Event rate limiting
+    private long progressIntervalMillis;
+    private int maxEventsPerSecond;
+    private long eventWindowStart;
+    private int eventsInWindow;
+    private long suppressedEvents;
+    private long completed;
+    private long cancelled;
+    
+    /**
+     * Creates an engine that ticks 20 times per second
+     */
+    public TransitionEngine() {
+        this(50);
+    }
+    
+    /**
+     * Creates an engine; its tick thread starts with the first transition
+     * @param tickMillis the time between ticks
+     */
+    public TransitionEngine(long tickMillis) {
+        this.tickMillis = tickMillis;
+        this.slotOf = new HashMap<>();
+        this.progressIntervalMillis = 1000;
+        this.maxEventsPerSecond = 100;
+        allocate(64);
+        allocateSteps(64);
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transition-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Sets how often a single transition may report progress
+     * @param millis the minimum time between progress events of one transition
+     */
+    public synchronized void setProgressInterval(long millis) {
+        this.progressIntervalMillis = millis;
+    }
+    
+    /**
+     * Sets the global cap on transition events; events over the cap are only counted
+     * @param maxEventsPerSecond the maximum events per second across all transitions
+     */
+    public synchronized void setMaxEventsPerSecond(int maxEventsPerSecond) {
+        this.maxEventsPerSecond = maxEventsPerSecond;
+    }
+    
+    /**
+     * Fades a light to a brightness, replacing any transition already running on it
+     * @param light the light
+     * @param target the final brightness from 0 to 100
+     * @param durationMillis how long the fade takes
+     * @param curve the easing curve
+     */
+    public void fadeBrightness(Light light, int target, long durationMillis, Easing curve) {
+        if (target < 0 || target > 100) {
+            throw new IllegalArgumentException("Brightness must be between 0 and 100: " + target);
+        }
+        start(light, BRIGHTNESS, light.getBrightness(), target, durationMillis, curve);
+    }
+    
+    /**
+     * Ramps a thermostat setpoint, replacing any transition already running on it
+     * @param thermostat the thermostat
+     * @param target the final temperature in °C
+     * @param durationMillis how long the ramp takes
+     * @param curve the easing curve
+     */
+    public void rampTemperature(Thermostat thermostat, float target, long durationMillis, Easing curve) {
+        start(thermostat, TEMPERATURE, thermostat.getTemperature(), target, durationMillis, curve);
+    }
+    
+    private synchronized void start(Device device, byte type, double startValue, double target, long duration,
+                                    Easing curve) {
+        Integer existing = slotOf.get(device);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else {
+            if (size == devices.length) {
+                allocate(size * 2);
+            }
+            slot = size++;
+            slotOf.put(device, slot);
+            devices[slot] = device;
+            pending[slot] = false;
+        }
+        kind[slot] = type;
+        easing[slot] = (byte) curve.ordinal();
+        from[slot] = startValue;
+        to[slot] = target;
+        startMillis[slot] = System.currentTimeMillis();
+        durationMillis[slot] = Math.max(1, duration);
+        applied[slot] = startValue;
+        lastProgressEvent[slot] = startMillis[slot];
+        if (!pending[slot]) {
+            // Otherwise the replaced transition's step records the version once applied
+            version[slot] = device.getVersion();
+        }
+        activeCount = size;
+        if (tickTask == null) {
+            tickTask = ticker.scheduleAtFixedRate(() -> tick(System.currentTimeMillis()),
+                    tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Stops the transition of a device where it is
+     * @param device the device
+     * @return true if a transition was running
+     */
+    public synchronized boolean cancel(Device device) {
+        Integer slot = slotOf.get(device);
+        if (slot == null) {
+            return false;
+        }
+        remove(slot);
+        cancelled++;
+        return true;
+    }
+    
+    /**
+     * Advances every active transition by one step
+     * @param now the current time in epoch milliseconds
+     */
+    void tick(long now) {
+        // Steps run outside the engine's lock, so starting or cancelling a transition never
+        // waits for a device change, which may wait for a committing transaction's room lock
+        int count = advance(now);
+        if (count == 0) {
+            return;
+        }
+        int queued = 0;
+        for (int i = 0; i < count; i++) {
+            Room room = stepDevice[i].getRoom();
+            if (room.getController().getActorRuntime() == null) {
+                stepVersion[i] = applyStep(stepDevice[i], stepKind[i], stepValue[i]);
+            } else {
+                stepOrder[queued++] = (long) room.getId() << 32 | i;
+            }
+        }
+        if (queued > 0) {
+            queueSteps(queued);
+        }
+        stepsApplied(stepDevice, stepVersion, count);
+        Arrays.fill(stepDevice, 0, count, null);
+    }
+    
+    /**
+     * Hands the queued steps to the room actors, one message per room with the room's
+     * steps copied out of the shared step arrays
+     * @param queued the number of entries in stepOrder
+     */
+    private void queueSteps(int queued) {
+        Arrays.sort(stepOrder, 0, queued);
+        int start = 0;
+        while (start < queued) {
+            Room room = stepDevice[(int) stepOrder[start]].getRoom();
+            int end = start + 1;
+            while (end < queued && stepDevice[(int) stepOrder[end]].getRoom() == room) {
+                end++;
+            }
+            int n = end - start;
+            Device[] roomDevices = new Device[n];
+            byte[] roomKinds = new byte[n];
+            double[] roomValues = new double[n];
+            for (int j = 0; j < n; j++) {
+                int i = (int) stepOrder[start + j];
+                roomDevices[j] = stepDevice[i];
+                roomKinds[j] = stepKind[i];
+                roomValues[j] = stepValue[i];
+                // Recorded by the room's message once applied
+                stepDevice[i] = null;
+            }
+            room.getController().runInRoom(room, () -> {
+                long[] roomVersions = new long[n];
+                for (int j = 0; j < n; j++) {
+                    roomVersions[j] = applyStep(roomDevices[j], roomKinds[j], roomValues[j]);
+                }
+                stepsApplied(roomDevices, roomVersions, n);
+            });
+            start = end;
+        }
+    }
+    
+    /**
+     * Computes the next value of every active transition into the step arrays, and cancels
+     * transitions whose device was changed by something else since their last step
+     * @param now the current time in epoch milliseconds
+     * @return the number of steps to apply
+     */
+    private synchronized int advance(long now) {
+        if (stepDevice.length < size) {
+            allocateSteps(devices.length);
+        }
+        int count = 0;
+        int i = 0;
+        while (i < size) {
+            Device device = devices[i];
+            if (pending[i]) {
+                // The room's actor has not caught up with the last step yet
+                i++;
+                continue;
+            }
+            if (device.getVersion() != version[i]) {
+                announce(device, device.getDescription() + " transition cancelled by manual change", now);
+                cancelled++;
+                remove(i);
+                continue;
+            }
+            
+            double progress = Math.min(1.0, (now - startMillis[i]) / (double) durationMillis[i]);
+            double value = from[i] + (to[i] - from[i]) * EASINGS[easing[i]].apply(progress);
+            value = kind[i] == BRIGHTNESS ? Math.round(value) : (float) (Math.round(value * 10) / 10.0);
+            if (progress >= 1.0) {
+                value = kind[i] == BRIGHTNESS ? Math.round(to[i]) : (float) to[i];
+            }
+            
+            if (value != applied[i]) {
+                applied[i] = value;
+                pending[i] = true;
+                stepDevice[count] = device;
+                stepKind[count] = kind[i];
+                stepValue[count] = value;
+                count++;
+            }
+            
+            if (progress >= 1.0) {
+                announce(device, device.getDescription() + " transition complete at " + describe(kind[i], value), now);
+                completed++;
+                remove(i);
+                continue;
+            }
+            if (now - lastProgressEvent[i] >= progressIntervalMillis) {
+                lastProgressEvent[i] = now;
+                announce(device, device.getDescription() + " transitioning to " + describe(kind[i], to[i])
+                        + " (" + Math.round(progress * 100) + "%)", now);
+            }
+            i++;
+        }
+        return count;
+    }
+    
+    /**
+     * Records the versions the engine's own steps left, so later ticks can tell them apart
+     * from other changes
+     * @param stepped the devices stepped; null entries are skipped
+     * @param versions each device's version right after its step
+     * @param count the number of entries
+     */
+    private synchronized void stepsApplied(Device[] stepped, long[] versions, int count) {
+        for (int i = 0; i < count; i++) {
+            if (stepped[i] == null) {
+                continue;
+            }
+            Integer slot = slotOf.get(stepped[i]);
+            if (slot != null) {
+                version[slot] = versions[i];
+                pending[slot] = false;
+            }
+        }
+    }
+    
+    /**
+     * Applies one step quietly
+     * @return the device's version right after the step
+     */
+    private static long applyStep(Device device, byte type, double value) {
+        if (type == BRIGHTNESS) {
+            ((Light) device).setBrightness((int) value, false);
+        } else {
+            ((Thermostat) device).setTemperature((float) value, false);
+        }
+        return device.getVersion();
+    }
+    
+    private static String describe(byte type, double value) {
+        return type == BRIGHTNESS ? Math.round(value) + "%" : (float) value + "°C";
+    }
+    
+    /**
+     * Sends an event unless the global budget for this second is used up
+     */
+    private void announce(Device device, String event, long now) {
+        if (now - eventWindowStart >= 1000) {
+            eventWindowStart = now;
+            eventsInWindow = 0;
+        }
+        if (eventsInWindow >= maxEventsPerSecond) {
+            suppressedEvents++;
+            return;
+        }
+        eventsInWindow++;
+        device.getController().notifyObservers(event);
+    }
+    
+    /**
+     * Removes a slot by moving the last active transition into it
+     */
+    private void remove(int slot) {
+        slotOf.remove(devices[slot]);
+        int last = --size;
+        if (slot != last) {
+            devices[slot] = devices[last];
+            kind[slot] = kind[last];
+            easing[slot] = easing[last];
+            from[slot] = from[last];
+            to[slot] = to[last];
+            startMillis[slot] = startMillis[last];
+            durationMillis[slot] = durationMillis[last];
+            applied[slot] = applied[last];
+            lastProgressEvent[slot] = lastProgressEvent[last];
+            version[slot] = version[last];
+            pending[slot] = pending[last];
+            slotOf.put(devices[slot], slot);
+        }
+        devices[last] = null;
+        activeCount = size;
+        if (size == 0 && tickTask != null) {
+            // Nothing to advance: stop ticking until the next transition starts
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+    }
+    
+    private void allocate(int capacity) {
+        devices = devices == null ? new Device[capacity] : Arrays.copyOf(devices, capacity);
+        kind = kind == null ? new byte[capacity] : Arrays.copyOf(kind, capacity);
+        easing = easing == null ? new byte[capacity] : Arrays.copyOf(easing, capacity);
+        from = from == null ? new double[capacity] : Arrays.copyOf(from, capacity);
+        to = to == null ? new double[capacity] : Arrays.copyOf(to, capacity);
+        startMillis = startMillis == null ? new long[capacity] : Arrays.copyOf(startMillis, capacity);
+        durationMillis = durationMillis == null ? new long[capacity] : Arrays.copyOf(durationMillis, capacity);
+        applied = applied == null ? new double[capacity] : Arrays.copyOf(applied, capacity);
+        lastProgressEvent = lastProgressEvent == null ? new long[capacity] : Arrays.copyOf(lastProgressEvent, capacity);
+        version = version == null ? new long[capacity] : Arrays.copyOf(version, capacity);
+        pending = pending == null ? new boolean[capacity] : Arrays.copyOf(pending, capacity);
+    }
+    
+    /**
+     * Sizes the step arrays; they are refilled every tick, so nothing is copied
+     */
+    private void allocateSteps(int capacity) {
+        stepDevice = new Device[capacity];
+        stepKind = new byte[capacity];
+        stepValue = new double[capacity];
+        stepVersion = new long[capacity];
+        stepOrder = new long[capacity];
+    }
+    
+    /**
+     * Gets the number of running transitions
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+    
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+    
+    public synchronized long getCancelledCount() {
+        return cancelled;
+    }
+    
+    /**
+     * Gets the number of events dropped by the global rate limit
+     * @return the suppressed event count
+     */
+    public synchronized long getSuppressedEventCount() {
+        return suppressedEvents;
+    }
+    
+    /**
+     * Gets the time between ticks
+     * @return the tick period in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+    
+    /**
+     * Stops the tick thread; running transitions stop where they are
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,79 @@
+package transport;
+
+/**
+ * Per-gateway circuit breaker. After a run of consecutive failures the circuit opens and
+ * requests fail fast; after the cool-down one probe request is let through (half-open),
+ * and its outcome closes or re-opens the circuit.
+ */
+public class CircuitBreaker {
+    /**
+     * Circuit states
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    
+    /**
+     * Creates a circuit breaker
+     * @param failureThreshold consecutive failures that open the circuit
+     * @param openMillis how long the circuit stays open before a probe is allowed
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.state = State.CLOSED;
+    }
+    
+    /**
+     * Checks whether a request may be sent now
+     * @return true if the request is allowed
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+    
+    /**
+     * Records a successful round trip
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        probeInFlight = false;
+    }
+    
+    /**
+     * Records a failed round trip
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probeInFlight = false;
+        }
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+}
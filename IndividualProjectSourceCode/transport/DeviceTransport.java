@@ -0,0 +1,38 @@
+package transport;
+
+import java.util.concurrent.CompletableFuture;
+
+import command.DeviceCommand;
+import devices.Device;
+import devices.DeviceState;
+
+/**
+ * Carries device commands to the hardware that executes them
+ */
+public interface DeviceTransport {
+    /**
+     * Sends a command to the device's gateway
+     * @param command the command to send
+     * @return a future that completes when the gateway acknowledges the command,
+     *         or completes exceptionally if it fails after all retries
+     */
+    CompletableFuture<Void> send(DeviceCommand command);
+    
+    /**
+     * Polls the device's gateway for its current state
+     * @param device the device to read
+     * @return a future with the state reported by the gateway
+     */
+    CompletableFuture<DeviceState> read(Device device);
+    
+    /**
+     * Registers a listener for state changes pushed by gateways
+     * @param listener the listener to add
+     */
+    void addPushListener(StatePushListener listener);
+    
+    /**
+     * Releases threads and other resources held by the transport
+     */
+    void close();
+}
@@ -0,0 +1,39 @@
+package transport;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import command.DeviceCommand;
+import devices.Device;
+import devices.DeviceState;
+
+/**
+ * A network gateway that executes batches of device commands
+ */
+public interface Gateway {
+    /**
+     * Executes a batch of commands in one round trip
+     * @param batch the commands, in order
+     * @return a future with one success flag per command
+     */
+    CompletableFuture<boolean[]> execute(List<DeviceCommand> batch);
+    
+    /**
+     * Polls the current state of one device
+     * @param device the device to read
+     * @return a future with the device state
+     */
+    CompletableFuture<DeviceState> poll(Device device);
+    
+    /**
+     * Sets the listener that receives state changes pushed by this gateway
+     * @param listener the listener, or null to stop pushing
+     */
+    void setPushListener(StatePushListener listener);
+    
+    /**
+     * Gets the gateway name
+     * @return the name used in errors and metrics
+     */
+    String getName();
+}
@@ -0,0 +1,273 @@
+package transport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import command.DeviceCommand;
+import devices.Device;
+import devices.DeviceState;
+
+/**
+ * Asynchronous transport that routes each device to its gateway.
+ * Commands for one gateway are queued and sent in batches; up to maxInFlight batches
+ * are pipelined per gateway. Each batch has a timeout, failed commands are retried with
+ * exponential back-off, and a per-gateway circuit breaker fails fast while a gateway is down.
+ */
+public class GatewayTransport implements DeviceTransport {
+    private final Function<Device, Gateway> routing;
+    private final TransportSettings settings;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Gateway, GatewayChannel> channels;
+    private final AtomicLong retries;
+    private final AtomicLong failures;
+    private final List<StatePushListener> pushListeners;
+    
+    /**
+     * Creates a gateway transport
+     * @param routing maps each device to the gateway it sits behind
+     * @param settings batching, pipelining, timeout and retry settings
+     */
+    public GatewayTransport(Function<Device, Gateway> routing, TransportSettings settings) {
+        this.routing = routing;
+        this.settings = settings;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gateway-transport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.channels = new ConcurrentHashMap<>();
+        this.retries = new AtomicLong();
+        this.failures = new AtomicLong();
+        this.pushListeners = new CopyOnWriteArrayList<>();
+    }
+    
+    @Override
+    public CompletableFuture<Void> send(DeviceCommand command) {
+        Gateway gateway = routing.apply(command.getDevice());
+        if (gateway == null) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new TransportException("No gateway for " + command.getDevice().getDescription()));
+            return failed;
+        }
+        return channels.computeIfAbsent(gateway, GatewayChannel::new).submit(command);
+    }
+    
+    /**
+     * Polls a device's gateway, subject to the same timeout and circuit breaker as commands
+     */
+    @Override
+    public CompletableFuture<DeviceState> read(Device device) {
+        Gateway gateway = routing.apply(device);
+        if (gateway == null) {
+            CompletableFuture<DeviceState> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new TransportException("No gateway for " + device.getDescription()));
+            return failed;
+        }
+        return channels.computeIfAbsent(gateway, GatewayChannel::new).poll(device);
+    }
+    
+    @Override
+    public void addPushListener(StatePushListener listener) {
+        pushListeners.add(listener);
+    }
+    
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+    
+    /**
+     * Gets the circuit state of a gateway
+     * @param gateway the gateway
+     * @return the circuit state (CLOSED if the gateway was never used)
+     */
+    public CircuitBreaker.State getCircuitState(Gateway gateway) {
+        GatewayChannel channel = channels.get(gateway);
+        return channel == null ? CircuitBreaker.State.CLOSED : channel.breaker.getState();
+    }
+    
+    public long getRetryCount() {
+        return retries.get();
+    }
+    
+    public long getFailureCount() {
+        return failures.get();
+    }
+    
+    /**
+     * A command waiting for delivery, with its retry count
+     */
+    private static class Pending {
+        final DeviceCommand command;
+        final CompletableFuture<Void> result;
+        int attempts;
+        
+        Pending(DeviceCommand command) {
+            this.command = command;
+            this.result = new CompletableFuture<>();
+        }
+    }
+    
+    /**
+     * Queue, pipeline window and circuit breaker for one gateway
+     */
+    private class GatewayChannel {
+        private final Gateway gateway;
+        private final CircuitBreaker breaker;
+        private final ArrayDeque<Pending> queue;
+        private int inFlight;
+        private boolean flushScheduled;
+        
+        GatewayChannel(Gateway gateway) {
+            this.gateway = gateway;
+            this.breaker = new CircuitBreaker(settings.getFailureThreshold(), settings.getCircuitOpenMillis());
+            this.queue = new ArrayDeque<>();
+            gateway.setPushListener((device, state) -> {
+                for (StatePushListener listener : pushListeners) {
+                    listener.statePushed(device, state);
+                }
+            });
+        }
+        
+        CompletableFuture<DeviceState> poll(Device device) {
+            if (!breaker.allowRequest()) {
+                CompletableFuture<DeviceState> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new TransportException("Circuit open for gateway " + gateway.getName()));
+                return failed;
+            }
+            return gateway.poll(device)
+                .orTimeout(settings.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((state, error) -> {
+                    if (error != null) {
+                        breaker.recordFailure();
+                    } else {
+                        breaker.recordSuccess();
+                    }
+                });
+        }
+        
+        CompletableFuture<Void> submit(DeviceCommand command) {
+            Pending pending = new Pending(command);
+            enqueue(pending);
+            return pending.result;
+        }
+        
+        private void enqueue(Pending pending) {
+            boolean sendNow;
+            synchronized (this) {
+                queue.add(pending);
+                sendNow = queue.size() >= settings.getBatchSize();
+                if (!sendNow && !flushScheduled) {
+                    flushScheduled = true;
+                    scheduler.schedule(this::lingerExpired, settings.getLingerMillis(), TimeUnit.MILLISECONDS);
+                }
+            }
+            if (sendNow) {
+                flush();
+            }
+        }
+        
+        private void lingerExpired() {
+            synchronized (this) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+        
+        /**
+         * Sends queued commands while the pipeline window has room
+         */
+        private void flush() {
+            while (true) {
+                List<Pending> batch;
+                synchronized (this) {
+                    if (queue.isEmpty() || inFlight >= settings.getMaxInFlight()) {
+                        return;
+                    }
+                    int size = Math.min(queue.size(), settings.getBatchSize());
+                    batch = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        batch.add(queue.poll());
+                    }
+                    inFlight++;
+                }
+                sendBatch(batch);
+            }
+        }
+        
+        private void sendBatch(List<Pending> batch) {
+            if (!breaker.allowRequest()) {
+                batchFinished();
+                for (Pending pending : batch) {
+                    fail(pending, new TransportException("Circuit open for gateway " + gateway.getName()));
+                }
+                return;
+            }
+            
+            List<DeviceCommand> commands = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                commands.add(pending.command);
+            }
+            CompletableFuture<boolean[]> response;
+            try {
+                response = gateway.execute(commands);
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            
+            response.orTimeout(settings.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((results, error) -> {
+                    if (error != null) {
+                        breaker.recordFailure();
+                    } else {
+                        breaker.recordSuccess();
+                    }
+                    batchFinished();
+                    for (int i = 0; i < batch.size(); i++) {
+                        Pending pending = batch.get(i);
+                        if (error == null && results[i]) {
+                            pending.result.complete(null);
+                        } else {
+                            retryOrFail(pending, error);
+                        }
+                    }
+                    flush();
+                });
+        }
+        
+        private void batchFinished() {
+            synchronized (this) {
+                inFlight--;
+            }
+        }
+        
+        private void retryOrFail(Pending pending, Throwable error) {
+            if (pending.attempts < settings.getMaxRetries()) {
+                pending.attempts++;
+                retries.incrementAndGet();
+                long delay = settings.getRetryBackoffMillis() << (pending.attempts - 1);
+                scheduler.schedule(() -> enqueue(pending), delay, TimeUnit.MILLISECONDS);
+            } else {
+                String reason = error == null ? "rejected by gateway" : String.valueOf(error);
+                fail(pending, new TransportException(pending.command + " failed after "
+                        + (pending.attempts + 1) + " attempts: " + reason, error));
+            }
+        }
+        
+        private void fail(Pending pending, TransportException error) {
+            failures.incrementAndGet();
+            pending.result.completeExceptionally(error);
+        }
+    }
+}
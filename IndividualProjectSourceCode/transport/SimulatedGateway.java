@@ -0,0 +1,157 @@
+package transport;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import command.DeviceCommand;
+import devices.Device;
+import devices.DeviceState;
+
+/**
+ * Local stand-in for a hardware gateway. Each batch is answered after a random
+ * latency; failures can be injected per command, per batch (no answer at all, which
+ * shows up as a timeout), or by taking the whole gateway offline.
+ */
+public class SimulatedGateway implements Gateway {
+    private final String name;
+    private final ScheduledExecutorService scheduler;
+    private final long minLatencyMicros;
+    private final long maxLatencyMicros;
+    private volatile double failureRate;
+    private volatile double dropRate;
+    private volatile boolean offline;
+    private volatile StatePushListener pushListener;
+    private final AtomicLong batches;
+    private final AtomicLong commands;
+    
+    /**
+     * Creates a simulated gateway
+     * @param name the gateway name
+     * @param scheduler the scheduler used to deliver delayed responses
+     * @param minLatencyMillis the minimum round-trip time
+     * @param maxLatencyMillis the maximum round-trip time
+     */
+    public SimulatedGateway(String name, ScheduledExecutorService scheduler,
+                            long minLatencyMillis, long maxLatencyMillis) {
+        if (minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis) {
+            throw new IllegalArgumentException("Invalid latency range");
+        }
+        this.name = name;
+        this.scheduler = scheduler;
+        this.minLatencyMicros = minLatencyMillis * 1000;
+        this.maxLatencyMicros = maxLatencyMillis * 1000;
+        this.batches = new AtomicLong();
+        this.commands = new AtomicLong();
+    }
+    
+    @Override
+    public CompletableFuture<boolean[]> execute(List<DeviceCommand> batch) {
+        batches.incrementAndGet();
+        commands.addAndGet(batch.size());
+        CompletableFuture<boolean[]> response = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        
+        if (random.nextDouble() < dropRate) {
+            return response; // Lost request: never answered
+        }
+        
+        boolean[] results = new boolean[batch.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = !offline && random.nextDouble() >= failureRate;
+        }
+        long latency = randomLatency(random);
+        scheduler.schedule(() -> {
+            if (offline) {
+                response.completeExceptionally(new TransportException("Gateway " + name + " is offline"));
+            } else {
+                response.complete(results);
+            }
+        }, latency, TimeUnit.MICROSECONDS);
+        return response;
+    }
+    
+    /**
+     * Answers a poll after a random latency with the device's in-memory state,
+     * which stands in for the state held by real hardware
+     */
+    @Override
+    public CompletableFuture<DeviceState> poll(Device device) {
+        commands.incrementAndGet();
+        CompletableFuture<DeviceState> response = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < dropRate) {
+            return response;
+        }
+        scheduler.schedule(() -> {
+            if (offline) {
+                response.completeExceptionally(new TransportException("Gateway " + name + " is offline"));
+            } else {
+                response.complete(DeviceState.of(device));
+            }
+        }, randomLatency(random), TimeUnit.MICROSECONDS);
+        return response;
+    }
+    
+    @Override
+    public void setPushListener(StatePushListener listener) {
+        this.pushListener = listener;
+    }
+    
+    /**
+     * Simulates a state change reported by the hardware itself
+     * @param device the device that changed
+     * @param state the new state
+     */
+    public void push(Device device, DeviceState state) {
+        StatePushListener listener = pushListener;
+        if (listener != null) {
+            listener.statePushed(device, state);
+        }
+    }
+    
+    private long randomLatency(ThreadLocalRandom random) {
+        return minLatencyMicros + (maxLatencyMicros > minLatencyMicros
+                ? random.nextLong(maxLatencyMicros - minLatencyMicros + 1) : 0);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Sets the probability that a single command in a batch fails
+     * @param failureRate a probability between 0 and 1
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+    
+    /**
+     * Sets the probability that a whole batch is never answered
+     * @param dropRate a probability between 0 and 1
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+    
+    /**
+     * Takes the gateway offline (every batch fails) or back online
+     * @param offline true to fail every batch
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+    
+    public long getBatchCount() {
+        return batches.get();
+    }
+    
+    public long getCommandCount() {
+        return commands.get();
+    }
+}
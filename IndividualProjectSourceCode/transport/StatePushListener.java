@@ -0,0 +1,16 @@
+package transport;
+
+import devices.Device;
+import devices.DeviceState;
+
+/**
+ * Receives state changes pushed by gateways (for example a light switched at the wall)
+ */
+public interface StatePushListener {
+    /**
+     * Called when a gateway reports a device state change
+     * @param device the device whose state changed
+     * @param state the reported state
+     */
+    void statePushed(Device device, DeviceState state);
+}
@@ -0,0 +1,16 @@
+package transport;
+
+/**
+ * Thrown when a device command cannot be delivered
+ */
+public class TransportException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    public TransportException(String message) {
+        super(message);
+    }
+    
+    public TransportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,104 @@
+package transport;
+
+/**
+ * Tuning settings for GatewayTransport
+ */
+public class TransportSettings {
+    private int batchSize = 64;
+    private long lingerMillis = 1;
+    private int maxInFlight = 8;
+    private long timeoutMillis = 1000;
+    private int maxRetries = 3;
+    private long retryBackoffMillis = 20;
+    private int failureThreshold = 5;
+    private long circuitOpenMillis = 2000;
+    
+    /**
+     * Sets the maximum number of commands sent to a gateway in one request
+     */
+    public TransportSettings withBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * Sets how long a partial batch may wait for more commands before it is sent
+     */
+    public TransportSettings withLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how many requests may be pipelined to one gateway at a time
+     */
+    public TransportSettings withMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+    
+    /**
+     * Sets how long to wait for a gateway response before treating the request as failed
+     */
+    public TransportSettings withTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+    
+    /**
+     * Sets how many times a failed command is retried
+     */
+    public TransportSettings withMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+    
+    /**
+     * Sets the base retry delay; it doubles on every attempt
+     */
+    public TransportSettings withRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+        return this;
+    }
+    
+    /**
+     * Sets the consecutive failed requests that open a gateway's circuit, and for how long
+     */
+    public TransportSettings withCircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.circuitOpenMillis = openMillis;
+        return this;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+    
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+    
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+    
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+    
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+    
+    public long getCircuitOpenMillis() {
+        return circuitOpenMillis;
+    }
+}
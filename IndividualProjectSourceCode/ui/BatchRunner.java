@@ -0,0 +1,183 @@
+package ui;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import command.CommandProcessor;
+import core.SmartHomeController;
+
+/**
+ * Non-interactive batch mode: executes a command script from a file or stdin.
+ * A reader thread parses lines into chunks while the calling thread executes them,
+ * so file I/O overlaps with command execution and no menu is rendered.
+ */
+public class BatchRunner {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final String[] END_OF_INPUT = new String[0];
+    
+    private final SmartHomeController controller;
+    private final boolean errorsOnly;
+    private long commandCount;
+    private long errorCount;
+    
+    /**
+     * Creates a batch runner
+     * @param controller the controller to execute commands against
+     * @param errorsOnly true to print only failed commands
+     */
+    public BatchRunner(SmartHomeController controller, boolean errorsOnly) {
+        this.controller = controller;
+        this.errorsOnly = errorsOnly;
+    }
+    
+    /**
+     * Runs a script from a file, or from stdin when the path is "-"
+     * @param path the script path or "-"
+     * @param out where results are written
+     * @return the number of failed commands
+     * @throws IOException if the script cannot be read
+     */
+    public long run(String path, Writer out) throws IOException {
+        Reader source = path.equals("-")
+            ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+            : Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+        try (BufferedReader reader = new BufferedReader(source, 1 << 16)) {
+            return run(reader, out);
+        }
+    }
+    
+    /**
+     * Runs a script read from the given reader
+     * @param reader the script source, one command per line
+     * @param out where results are written
+     * @return the number of failed commands
+     * @throws IOException if reading or writing fails
+     */
+    public long run(BufferedReader reader, Writer out) throws IOException {
+        BlockingQueue<String[]> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        IOException[] readFailure = new IOException[1];
+        
+        Thread readerThread = new Thread(() -> {
+            try {
+                String[] chunk = new String[CHUNK_SIZE];
+                int size = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    chunk[size++] = line;
+                    if (size == CHUNK_SIZE) {
+                        chunks.put(chunk);
+                        chunk = new String[CHUNK_SIZE];
+                        size = 0;
+                    }
+                }
+                if (size > 0) {
+                    chunks.put(java.util.Arrays.copyOf(chunk, size));
+                }
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    chunks.put(END_OF_INPUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "batch-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        
+        CommandProcessor processor = new CommandProcessor(controller);
+        long lineNumber = 0;
+        try {
+            while (true) {
+                String[] chunk = chunks.take();
+                if (chunk == END_OF_INPUT) {
+                    break;
+                }
+                for (String line : chunk) {
+                    lineNumber++;
+                    executeLine(processor, line, lineNumber, out);
+                }
+            }
+            readerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch run interrupted at line " + lineNumber);
+        }
+        out.flush();
+        
+        if (readFailure[0] != null) {
+            throw readFailure[0];
+        }
+        return errorCount;
+    }
+    
+    private void executeLine(CommandProcessor processor, String line, long lineNumber, Writer out) throws IOException {
+        String result;
+        try {
+            result = processor.execute(line);
+        } catch (RuntimeException e) {
+            errorCount++;
+            commandCount++;
+            out.write(Long.toString(lineNumber));
+            out.write(" ERR ");
+            out.write(String.valueOf(e.getMessage()));
+            out.write('\n');
+            return;
+        }
+        if (result == null) {
+            return;
+        }
+        commandCount++;
+        if (!errorsOnly) {
+            out.write(Long.toString(lineNumber));
+            out.write(' ');
+            out.write(result);
+            out.write('\n');
+        }
+    }
+    
+    public long getCommandCount() {
+        return commandCount;
+    }
+    
+    public long getErrorCount() {
+        return errorCount;
+    }
+    
+    /**
+     * Entry point for batch mode
+     * @param controller the controller, already set up
+     * @param path the script path or "-" for stdin
+     * @param errorsOnly true to print only failed commands
+     * @return the process exit code
+     */
+    static int runScript(SmartHomeController controller, String path, boolean errorsOnly) {
+        BatchRunner runner = new BatchRunner(controller, errorsOnly);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        long start = System.nanoTime();
+        try {
+            runner.run(path, out);
+        } catch (IOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            return 1;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Processed %d commands, %d errors in %.2f s%n",
+                runner.getCommandCount(), runner.getErrorCount(), seconds);
+        return runner.getErrorCount() == 0 ? 0 : 3;
+    }
+}
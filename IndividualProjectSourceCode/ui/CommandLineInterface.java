@@ -1,5 +1,6 @@
 package ui;
 
+import actor.ActorRuntime;
 import core.DeviceType;
 import core.Room;
 import core.SmartHomeController;
@@ -11,12 +12,16 @@ import observer.SystemLogger;
 
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Function;
 
 /**
  * A simple command-line interface for the Smart Home Controller
  */
 public class CommandLineInterface {
     private static final String DIVIDER = "----------------------------------------";
+    // Longer room and device lists are searched by name instead of being printed
+    private static final int MAX_LISTED_CHOICES = 20;
+    private static final int MAX_MATCHES = 10;
     private SmartHomeController controller;
     private SystemLogger logger;
     private Scanner scanner;
@@ -54,6 +59,15 @@ public class CommandLineInterface {
      * Sets up the initial system with some default rooms and devices
      */
     private void setupInitialSystem() {
+        addDefaultDevices(controller);
+        registerAutomationModes(controller);
+    }
+    
+    /**
+     * Adds the default rooms and devices
+     * @param controller the controller to populate
+     */
+    public static void addDefaultDevices(SmartHomeController controller) {
         // Add rooms
         controller.addRoom("Living Room");
         controller.addRoom("Kitchen");
@@ -72,8 +86,13 @@ public class CommandLineInterface {
         controller.createDevice("Bedroom", DeviceType.THERMOSTAT, "Thermostat");
         
         controller.createDevice("Bathroom", DeviceType.LIGHT, "Mirror Light");
-        
-        // Register automation modes
+    }
+    
+    /**
+     * Registers the built-in automation modes
+     * @param controller the controller to register the modes with
+     */
+    public static void registerAutomationModes(SmartHomeController controller) {
         controller.registerAutomationMode("night", new strategy.NightModeStrategy());
         controller.registerAutomationMode("morning", new strategy.MorningModeStrategy());
         controller.registerAutomationMode("vacation", new strategy.VacationModeStrategy());
@@ -171,7 +190,7 @@ public class CommandLineInterface {
         
         for (int i = 0; i < devices.size(); i++) {
             Device device = devices.get(i);
-            String status = device.isOn() ? "ON" : "OFF";
+            String status = controller.readState(device).toString();
             System.out.println((i + 1) + ". " + device.getName() + " [" + status + "]");
         }
     }
@@ -189,20 +208,28 @@ public class CommandLineInterface {
             return;
         }
         
-        System.out.println("\nSELECT DEVICE TO CONTROL:");
-        for (int i = 0; i < devices.size(); i++) {
-            Device device = devices.get(i);
-            String status = device.isOn() ? "ON" : "OFF";
-            System.out.println((i + 1) + ". " + device.getName() + " [" + status + "]");
-        }
-        
-        int deviceIndex = getIntInput("Enter device number: ") - 1;
-        if (deviceIndex < 0 || deviceIndex >= devices.size()) {
-            System.out.println("Invalid device selection.");
-            return;
+        Device selectedDevice;
+        if (devices.size() > MAX_LISTED_CHOICES) {
+            selectedDevice = searchChoice("device",
+                    text -> controller.getNameIndex().searchDevices(room, text, MAX_MATCHES),
+                    device -> device.getName() + " [" + (device.isOn() ? "ON" : "OFF") + "]");
+            if (selectedDevice == null) return;
+        } else {
+            System.out.println("\nSELECT DEVICE TO CONTROL:");
+            for (int i = 0; i < devices.size(); i++) {
+                Device device = devices.get(i);
+                String status = device.isOn() ? "ON" : "OFF";
+                System.out.println((i + 1) + ". " + device.getName() + " [" + status + "]");
+            }
+            
+            int deviceIndex = getIntInput("Enter device number: ") - 1;
+            if (deviceIndex < 0 || deviceIndex >= devices.size()) {
+                System.out.println("Invalid device selection.");
+                return;
+            }
+            
+            selectedDevice = devices.get(deviceIndex);
         }
-        
-        Device selectedDevice = devices.get(deviceIndex);
         System.out.println("\nCONTROL OPTIONS FOR " + selectedDevice.getName() + ":");
         System.out.println("1. Turn On");
         System.out.println("2. Turn Off");
@@ -301,7 +328,7 @@ public class CommandLineInterface {
                 return;
         }
         
-        controller.executeCurrentMode();
+        controller.executeCurrentModeAtomically();
         System.out.println("Automation mode activated successfully.");
     }
     
@@ -389,6 +416,10 @@ public class CommandLineInterface {
      * @return the selected room or null if invalid
      */
     private Room selectRoom() {
+        if (controller.getRoomCount() > MAX_LISTED_CHOICES) {
+            return searchChoice("room", text -> controller.getNameIndex().searchRooms(text, MAX_MATCHES),
+                    Room::getName);
+        }
         List<Room> rooms = controller.getAllRooms();
         
         if (rooms.isEmpty()) {
@@ -410,6 +441,44 @@ public class CommandLineInterface {
         return rooms.get(roomIndex);
     }
     
+    /**
+     * Lets the user pick from a long list by typing part of a name and choosing among
+     * the best matches
+     * @param kind what is picked, e.g. "room"
+     * @param search finds the best matches for the text typed
+     * @param label the line shown for a match
+     * @return the chosen item or null if the user gave up
+     */
+    private <T> T searchChoice(String kind, Function<String, List<T>> search, Function<T, String> label) {
+        System.out.print("\nType part of the " + kind + " name (blank to cancel): ");
+        String text = scanner.nextLine().trim();
+        while (!text.isEmpty()) {
+            List<T> matches = search.apply(text);
+            if (matches.isEmpty()) {
+                System.out.print("No " + kind + " matches '" + text + "'. Type again (blank to cancel): ");
+                text = scanner.nextLine().trim();
+                continue;
+            }
+            
+            System.out.println("\nMATCHING " + kind.toUpperCase() + "S:");
+            for (int i = 0; i < matches.size(); i++) {
+                System.out.println((i + 1) + ". " + label.apply(matches.get(i)));
+            }
+            
+            System.out.print("Enter " + kind + " number, or type again to search (blank to cancel): ");
+            text = scanner.nextLine().trim();
+            try {
+                int index = Integer.parseInt(text) - 1;
+                if (index >= 0 && index < matches.size()) {
+                    return matches.get(index);
+                }
+            } catch (NumberFormatException e) {
+                // Not a number: search for the new text
+            }
+        }
+        return null;
+    }
+    
     /**
      * Gets integer input from the user
      * @param prompt the prompt to display
@@ -443,9 +512,44 @@ public class CommandLineInterface {
     }
     
     /**
-     * Main method to start the CLI
+     * Main method to start the CLI.
+     * With --batch &lt;file|-&gt; the script is executed non-interactively instead;
+     * add --errors-only to print only failures and --with-defaults to load the default rooms.
+     * --actors runs each room's commands on its own actor (see actor.ActorRuntime).
      */
     public static void main(String[] args) {
+        String script = null;
+        boolean errorsOnly = false;
+        boolean withDefaults = false;
+        boolean actors = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--batch") && i + 1 < args.length) {
+                script = args[++i];
+            } else if (args[i].equals("--errors-only")) {
+                errorsOnly = true;
+            } else if (args[i].equals("--with-defaults")) {
+                withDefaults = true;
+            } else if (args[i].equals("--actors")) {
+                actors = true;
+            } else {
+                System.err.println("Usage: CommandLineInterface [--batch <file|->] [--errors-only] [--with-defaults] [--actors]");
+                System.exit(2);
+            }
+        }
+        
+        if (actors) {
+            SmartHomeController.getInstance().setActorRuntime(new ActorRuntime());
+        }
+        
+        if (script != null) {
+            SmartHomeController controller = SmartHomeController.getInstance();
+            if (withDefaults) {
+                addDefaultDevices(controller);
+            }
+            registerAutomationModes(controller);
+            System.exit(BatchRunner.runScript(controller, script, errorsOnly));
+        }
+        
         CommandLineInterface cli = new CommandLineInterface();
         cli.run();
     }